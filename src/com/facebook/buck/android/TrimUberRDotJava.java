@@ -30,7 +30,6 @@ import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
 import com.facebook.buck.zip.CustomZipOutputStream;
 import com.facebook.buck.zip.ZipOutputStreams;
-import com.facebook.buck.zip.ZipScrubberStep;
 import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
@@ -75,9 +74,7 @@ class TrimUberRDotJava extends AbstractBuildRule {
     buildableContext.recordArtifact(getPathToOutput());
     return ImmutableList.of(
         new MakeCleanDirectoryStep(getProjectFilesystem(), getPathToOutput().getParent()),
-        new PerformTrimStep(),
-        new ZipScrubberStep(getProjectFilesystem(), getPathToOutput())
-    );
+        new PerformTrimStep());
   }
 
   @Override
@@ -104,7 +101,9 @@ class TrimUberRDotJava extends AbstractBuildRule {
       final ProjectFilesystem projectFilesystem = getProjectFilesystem();
       final Path sourceDir = aaptPackageResources.getPathToGeneratedRDotJavaSrcFiles();
       try (final CustomZipOutputStream output =
-               ZipOutputStreams.newOutputStream(projectFilesystem.resolve(getPathToOutput()))) {
+               ZipOutputStreams.newDeterministicOutputStream(
+                   projectFilesystem.resolve(getPathToOutput()),
+                   ZipOutputStreams.HandleDuplicates.THROW_EXCEPTION)) {
         if (!projectFilesystem.exists(sourceDir)) {
           // dx fails if its input contains no classes.  Rather than add empty input handling
           // to DxStep, the dex merger, and every other step of this chain, just generate a
@@ -52,6 +52,9 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -66,6 +69,7 @@ import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -84,6 +88,10 @@ import java.util.concurrent.atomic.AtomicReference;
 public class WorkspaceAndProjectGenerator {
   private static final Logger LOG = Logger.get(WorkspaceAndProjectGenerator.class);
 
+  // Enough for the deps shared by the projects of a workspace, without keeping an action graph
+  // around for every node in it.
+  private static final int MAX_CACHED_SOURCE_PATH_RESOLVERS = 64;
+
   private final Cell rootCell;
   private final TargetGraph projectGraph;
   private final XcodeWorkspaceConfigDescription.Arg workspaceArguments;
@@ -149,7 +157,9 @@ public class WorkspaceAndProjectGenerator {
     this.cxxPlatforms = cxxPlatforms;
     this.defaultCxxPlatform = defaultCxxPlatform;
     this.buildFileName = buildFileName;
-    this.sourcePathResolverForNode = sourcePathResolverForNode;
+    this.sourcePathResolverForNode = memoizeSourcePathResolvers(
+        sourcePathResolverForNode,
+        MAX_CACHED_SOURCE_PATH_RESOLVERS);
     this.buckEventBus = buckEventBus;
     this.combinedProjectGenerator = Optional.absent();
     this.halideBuckConfig = halideBuckConfig;
@@ -157,6 +167,31 @@ public class WorkspaceAndProjectGenerator {
     this.appleConfig = appleConfig;
   }
 
+  /**
+   * Building a resolver means building the action graph of the node's subgraph, and the headers
+   * and outputs of a node are resolved for every project which depends on it.  The resolvers are
+   * shared by all the project generators, which may run concurrently.  Each one holds on to its
+   * action graph, so only the {@code maximumSize} most recently used ones are kept.
+   */
+  @VisibleForTesting
+  static Function<TargetNode<?>, SourcePathResolver> memoizeSourcePathResolvers(
+      Function<TargetNode<?>, SourcePathResolver> sourcePathResolverForNode,
+      long maximumSize) {
+    final LoadingCache<TargetNode<?>, SourcePathResolver> resolvers = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .build(CacheLoader.from(sourcePathResolverForNode));
+    return new Function<TargetNode<?>, SourcePathResolver>() {
+      @Override
+      public SourcePathResolver apply(TargetNode<?> input) {
+        try {
+          return resolvers.getUnchecked(input);
+        } catch (UncheckedExecutionException e) {
+          throw Throwables.propagate(e.getCause());
+        }
+      }
+    };
+  }
+
   @VisibleForTesting
   Optional<ProjectGenerator> getCombinedProjectGenerator() {
     return combinedProjectGenerator;
@@ -281,7 +281,12 @@ class WorkspaceGenerator {
         "\t<false/>\n" +
         "</dict>\n" +
         "</plist>";
-    projectFilesystem.writeContentsToPath(workspaceSettings, workspaceSettingsPath);
+    if (MorePaths.fileContentsDiffer(
+        new ByteArrayInputStream(workspaceSettings.getBytes(Charsets.UTF_8)),
+        workspaceSettingsPath,
+        projectFilesystem)) {
+      projectFilesystem.writeContentsToPath(workspaceSettings, workspaceSettingsPath);
+    }
     return projectWorkspaceDir;
   }
 }
@@ -102,6 +102,9 @@ public class ArtifactCacheBuckConfig {
   private static final String TWO_LEVEL_CACHING_MAX_SIZE_FIELD_NAME =
       "two_level_cache_maximum_size";
   private static final long TWO_LEVEL_CACHING_MIN_SIZE_DEFAULT = 20 * 1024L;
+  private static final String TWO_LEVEL_CACHING_LOCAL_MAX_SIZE_FIELD_NAME =
+      "two_level_cache_local_max_size";
+  private static final long TWO_LEVEL_CACHING_LOCAL_MAX_SIZE_DEFAULT = 1024 * 1024 * 1024L;
 
   private static final String HYBRID_THRIFT_ENDPOINT = "hybrid_thrift_endpoint";
   private static final String REPOSITORY = "repository";
@@ -283,6 +286,22 @@ public class ArtifactCacheBuckConfig {
             });
   }
 
+  /**
+   * @return how many bytes of artifacts to keep by content hash on this machine, so that their
+   *     contents aren't fetched again for other rule keys.  Zero disables this.
+   */
+  public long getTwoLevelCachingLocalMaxSize() {
+    return buckConfig.getValue(CACHE_SECTION_NAME, TWO_LEVEL_CACHING_LOCAL_MAX_SIZE_FIELD_NAME)
+        .transform(
+            new Function<String, Long>() {
+              @Override
+              public Long apply(String input) {
+                return SizeUnit.parseBytes(input);
+              }
+            })
+        .or(TWO_LEVEL_CACHING_LOCAL_MAX_SIZE_DEFAULT);
+  }
+
   private CacheReadMode getDirCacheReadMode() {
     return getCacheReadMode(CACHE_SECTION_NAME, "dir_mode", DEFAULT_DIR_CACHE_MODE);
   }
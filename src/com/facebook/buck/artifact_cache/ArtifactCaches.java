@@ -201,11 +201,38 @@ public class ArtifactCaches {
         buckEventBus,
         buckConfig.getTwoLevelCachingEnabled(),
         buckConfig.getTwoLevelCachingMinimumSize(),
-        buckConfig.getTwoLevelCachingMaximumSize());
+        buckConfig.getTwoLevelCachingMaximumSize(),
+        createLocalContentCache(buckConfig, projectFilesystem));
 
     return result;
   }
 
+  private static Optional<ArtifactCache> createLocalContentCache(
+      ArtifactCacheBuckConfig buckConfig,
+      ProjectFilesystem projectFilesystem) {
+    long maxSizeBytes = buckConfig.getTwoLevelCachingLocalMaxSize();
+    // A dir cache is looked up before any remote one, so it already holds contents locally.
+    if (maxSizeBytes <= 0 ||
+        buckConfig.getArtifactCacheModes().contains(
+            ArtifactCacheBuckConfig.ArtifactCacheMode.dir)) {
+      return Optional.absent();
+    }
+    Path cacheDir = projectFilesystem.getBuckPaths().getBuckOut().resolve("content_cache");
+    try {
+      return Optional.<ArtifactCache>of(
+          new DirArtifactCache(
+              "content",
+              projectFilesystem,
+              cacheDir,
+              /* doStore */ true,
+              Optional.of(maxSizeBytes)));
+    } catch (IOException e) {
+      throw new HumanReadableException(
+          "Failure initializing artifact cache directory: %s",
+          cacheDir);
+    }
+  }
+
   private static void initializeDistributedCaches(
       ArtifactCacheBuckConfig buckConfig,
       BuckEventBus buckEventBus,
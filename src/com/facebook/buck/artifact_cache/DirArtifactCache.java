@@ -21,8 +21,7 @@ import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.RuleKey;
-import com.facebook.buck.util.DirectoryCleaner;
-import com.facebook.buck.util.DirectoryCleanerArgs;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
@@ -32,6 +31,8 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.io.ByteStreams;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -47,23 +48,35 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An {@link ArtifactCache} storing artifacts in a local directory, which may be shared by several
+ * buck processes.
+ * <p>
+ * Stores and fetches are recorded in a {@link DirArtifactCacheIndex}, which is used to evict the
+ * least recently used entries once the cache grows beyond its maximum size.  Both happen on a
+ * background thread, so that builds don't wait on them.
+ */
 public class DirArtifactCache implements ArtifactCache {
 
   private static final Logger LOG = Logger.get(DirArtifactCache.class);
-  // Ratio of bytes stored to max size that expresses how many bytes need to be stored after we
-  // attempt to delete old files.
-  private static final float STORED_TO_MAX_BYTES_RATIO_TRIM_TRIGGER = 0.5f;
   // How much of the max size to leave if we decide to delete old files.
   private static final float MAX_BYTES_TRIM_RATIO = 2 / 3f;
   private static final String TMP_EXTENSION = ".tmp";
+  private static final long CLOSE_TIMEOUT_MINUTES = 5;
 
   private final String name;
   private final ProjectFilesystem filesystem;
   private final Path cacheDir;
   private final Optional<Long> maxCacheSizeBytes;
   private final boolean doStore;
-  private long bytesSinceLastDeleteOldFiles;
+  private final DirArtifactCacheIndex index;
+  private final ListeningExecutorService indexExecutor;
+  private final AtomicBoolean maintenanceScheduled = new AtomicBoolean(false);
 
   public DirArtifactCache(
       String name,
@@ -72,13 +85,43 @@ public class DirArtifactCache implements ArtifactCache {
       boolean doStore,
       Optional<Long> maxCacheSizeBytes)
       throws IOException {
+    this(
+        name,
+        filesystem,
+        cacheDir,
+        doStore,
+        maxCacheSizeBytes,
+        MoreExecutors.listeningDecorator(
+            MostExecutors.newSingleThreadExecutor("DirArtifactCache index")));
+  }
+
+  /**
+   * @param indexExecutor runs updates to the index and evictions.  It must run one task at a time,
+   *     and is shut down when the cache is closed.
+   */
+  @VisibleForTesting
+  DirArtifactCache(
+      String name,
+      ProjectFilesystem filesystem,
+      Path cacheDir,
+      boolean doStore,
+      Optional<Long> maxCacheSizeBytes,
+      ListeningExecutorService indexExecutor)
+      throws IOException {
     this.name = name;
     this.filesystem = filesystem;
     this.cacheDir = cacheDir;
     this.maxCacheSizeBytes = maxCacheSizeBytes;
     this.doStore = doStore;
-    this.bytesSinceLastDeleteOldFiles = 0L;
+    this.indexExecutor = indexExecutor;
     filesystem.mkdirs(cacheDir);
+    Path cacheDirInFs = filesystem.resolve(cacheDir).normalize();
+    this.index = new DirArtifactCacheIndex(
+        cacheDirInFs,
+        filesystem.resolve(getPathToIndexFolder()).normalize(),
+        ImmutableSet.of(
+            filesystem.resolve(getPathToTempFolder()).normalize(),
+            filesystem.resolve(getPathToIndexFolder()).normalize()));
   }
 
   @Override
@@ -86,25 +129,13 @@ public class DirArtifactCache implements ArtifactCache {
     CacheResult result;
     try {
       // First, build up the metadata from the metadata file.
-      ImmutableMap.Builder<String, String> metadata = ImmutableMap.builder();
-      try (DataInputStream in =
-               new DataInputStream(
-                   filesystem.newFileInputStream(
-                       getPathForRuleKey(ruleKey, Optional.of(".metadata"))))) {
-        int sz = in.readInt();
-        for (int i = 0; i < sz; i++) {
-          String key = in.readUTF();
-          int valSize = in.readInt();
-          byte[] val = new byte[valSize];
-          ByteStreams.readFully(in, val);
-          metadata.put(key, new String(val, Charsets.UTF_8));
-        }
-      }
+      ImmutableMap<String, String> metadata = readMetadata(ruleKey);
 
       // Now copy the artifact out.
       filesystem.copyFile(getPathForRuleKey(ruleKey, Optional.<String>absent()), output.get());
 
-      result = CacheResult.hit(name, metadata.build(), filesystem.getFileSize(output.get()));
+      result = CacheResult.hit(name, metadata, filesystem.getFileSize(output.get()));
+      recordAccess(ruleKey);
     } catch (NoSuchFileException e) {
       result = CacheResult.miss();
     } catch (IOException e) {
@@ -124,6 +155,65 @@ public class DirArtifactCache implements ArtifactCache {
     return result;
   }
 
+  /**
+   * Reads the metadata of a cached artifact, for callers that read the artifact itself straight
+   * from {@link #getArtifactPath(RuleKey)} instead of fetching a copy of it.  Counts as an access
+   * to the artifact for eviction.
+   *
+   * @throws NoSuchFileException if the artifact isn't in the cache.
+   */
+  public ImmutableMap<String, String> fetchMetadata(RuleKey ruleKey) throws IOException {
+    ImmutableMap<String, String> metadata = readMetadata(ruleKey);
+    recordAccess(ruleKey);
+    return metadata;
+  }
+
+  /**
+   * @return the absolute path the artifact for {@code ruleKey} is, or would be, stored at.
+   */
+  public Path getArtifactPath(RuleKey ruleKey) {
+    return filesystem.resolve(getPathForRuleKey(ruleKey, Optional.<String>absent()));
+  }
+
+  public boolean contains(RuleKey ruleKey) {
+    return filesystem.exists(getPathForRuleKey(ruleKey, Optional.<String>absent())) &&
+        filesystem.exists(getPathForRuleKey(ruleKey, Optional.of(".metadata")));
+  }
+
+  /**
+   * @return the absolute path of a new, empty file in the cache's temp folder.  Storing it as a
+   *     {@link BorrowablePath#borrowablePath(Path)} moves it into the cache without copying it.
+   */
+  public Path createTempFileForStore() throws IOException {
+    return filesystem.resolve(
+        filesystem.createTempFile(getPreparedTempFolder(), "incoming", TMP_EXTENSION));
+  }
+
+  private ImmutableMap<String, String> readMetadata(RuleKey ruleKey) throws IOException {
+    ImmutableMap.Builder<String, String> metadata = ImmutableMap.builder();
+    try (DataInputStream in =
+             new DataInputStream(
+                 filesystem.newFileInputStream(
+                     getPathForRuleKey(ruleKey, Optional.of(".metadata"))))) {
+      int sz = in.readInt();
+      for (int i = 0; i < sz; i++) {
+        String key = in.readUTF();
+        int valSize = in.readInt();
+        byte[] val = new byte[valSize];
+        ByteStreams.readFully(in, val);
+        metadata.put(key, new String(val, Charsets.UTF_8));
+      }
+    }
+    return metadata.build();
+  }
+
+  private void recordAccess(RuleKey ruleKey) {
+    if (doStore) {
+      index.recordAccess(getArtifactPath(ruleKey));
+      scheduleMaintenance();
+    }
+  }
+
   @Override
   public ListenableFuture<Void> store(
       ArtifactInfo info,
@@ -158,7 +248,7 @@ public class DirArtifactCache implements ArtifactCache {
             storeArtifactOutput(borrowedAndStoredArtifactPath.get(), artifactPath);
           }
         }
-        bytesSinceLastDeleteOldFiles += filesystem.getFileSize(artifactPath);
+        long entrySizeBytes = filesystem.getFileSize(artifactPath);
 
         // Now, write the meta data artifact.
         Path tmp = filesystem.createTempFile(getPreparedTempFolder(), "metadata", TMP_EXTENSION);
@@ -173,10 +263,11 @@ public class DirArtifactCache implements ArtifactCache {
             }
           }
           filesystem.move(tmp, metadataPath, StandardCopyOption.REPLACE_EXISTING);
-          bytesSinceLastDeleteOldFiles += filesystem.getFileSize(metadataPath);
+          entrySizeBytes += filesystem.getFileSize(metadataPath);
         } finally {
           filesystem.deleteFileAtPathIfExists(tmp);
         }
+        index.recordStore(filesystem.resolve(artifactPath), entrySizeBytes);
       }
 
     } catch (IOException e) {
@@ -187,20 +278,19 @@ public class DirArtifactCache implements ArtifactCache {
           output);
     }
 
-    if (maxCacheSizeBytes.isPresent() &&
-        bytesSinceLastDeleteOldFiles >
-            (maxCacheSizeBytes.get() * STORED_TO_MAX_BYTES_RATIO_TRIM_TRIGGER)) {
-      bytesSinceLastDeleteOldFiles = 0L;
-      deleteOldFiles();
-    }
+    scheduleMaintenance();
 
     return Futures.immediateFuture(null);
   }
 
-  private Path getPathToTempFolder() throws IOException {
+  private Path getPathToTempFolder() {
     return cacheDir.resolve("tmp");
   }
 
+  private Path getPathToIndexFolder() {
+    return cacheDir.resolve("index");
+  }
+
   private Path getPreparedTempFolder() throws IOException {
     Path tmp = getPathToTempFolder();
     if (!filesystem.exists(tmp)) {
@@ -241,7 +331,6 @@ public class DirArtifactCache implements ArtifactCache {
     try {
       filesystem.copyFile(output, tmp);
       filesystem.move(tmp, artifactPath);
-      bytesSinceLastDeleteOldFiles += filesystem.getFileSize(artifactPath);
     } finally {
       filesystem.deleteFileAtPathIfExists(tmp);
     }
@@ -257,32 +346,75 @@ public class DirArtifactCache implements ArtifactCache {
 
   @Override
   public void close() {
-    // Do a cache clean up on exit only if cache was written to.
-    if (bytesSinceLastDeleteOldFiles > 0) {
-      deleteOldFiles();
+    // Write out what was recorded and make room, unless that's already underway.
+    if (index.hasPendingRecords()) {
+      scheduleMaintenance();
+    }
+    indexExecutor.shutdown();
+    try {
+      if (!indexExecutor.awaitTermination(CLOSE_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+        LOG.warn("Timed out updating the index of %s.", cacheDir);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
   }
 
   /**
-   * Deletes files that haven't been accessed recently from the directory cache.
+   * Deletes the least recently used entries from the directory cache, if it is over its size limit.
    */
   @VisibleForTesting
   void deleteOldFiles() {
     if (!maxCacheSizeBytes.isPresent()) {
       return;
     }
+    try {
+      indexExecutor.submit(
+          new Callable<Void>() {
+            @Override
+            public Void call() {
+              updateIndexAndEvict();
+              return null;
+            }
+          }).get();
+    } catch (ExecutionException e) {
+      LOG.error(e.getCause(), "Failed to clean path [%s].", cacheDir);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 
-    Path cacheDirInFs = filesystem.resolve(cacheDir);
+  private void scheduleMaintenance() {
+    if (indexExecutor.isShutdown() || !maintenanceScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    indexExecutor.submit(
+        new Runnable() {
+          @Override
+          public void run() {
+            maintenanceScheduled.set(false);
+            updateIndexAndEvict();
+          }
+        });
+  }
+
+  private void updateIndexAndEvict() {
     try {
-      newDirectoryCleaner().clean(cacheDirInFs);
+      index.flush();
+      if (maxCacheSizeBytes.isPresent() && index.getTotalSizeBytes() > maxCacheSizeBytes.get()) {
+        ImmutableList<Path> evicted =
+            index.evict((long) (maxCacheSizeBytes.get() * MAX_BYTES_TRIM_RATIO));
+        LOG.debug("Evicted %d entries from %s.", evicted.size(), cacheDir);
+      }
     } catch (IOException e) {
-      LOG.error(e, "Failed to clean path [%s].", cacheDirInFs);
+      LOG.error(e, "Failed to clean path [%s].", cacheDir);
     }
   }
 
   @VisibleForTesting
   List<Path> getAllFilesInCache() throws IOException {
     final List<Path> allFiles = new ArrayList<>();
+    final Path indexFolder = filesystem.resolve(getPathToIndexFolder()).normalize();
     Files.walkFileTree(
         filesystem.resolve(cacheDir),
         ImmutableSet.<FileVisitOption>of(),
@@ -293,7 +425,7 @@ public class DirArtifactCache implements ArtifactCache {
           public FileVisitResult preVisitDirectory(
               Path dir, BasicFileAttributes attrs) throws IOException {
             // do not work with files in temp folder as they will be moved later
-            if (dir.equals(getPathToTempFolder())) {
+            if (dir.equals(getPathToTempFolder()) || dir.normalize().equals(indexFolder)) {
               return FileVisitResult.SKIP_SUBTREE;
             }
             return super.preVisitDirectory(dir, attrs);
@@ -311,28 +443,8 @@ public class DirArtifactCache implements ArtifactCache {
     return allFiles;
   }
 
-  private DirectoryCleaner newDirectoryCleaner() {
-    DirectoryCleanerArgs cleanerArgs = DirectoryCleanerArgs.builder()
-        .setPathSelector(
-            new DirectoryCleaner.PathSelector() {
-
-              @Override
-              public Iterable<Path> getCandidatesToDelete(Path rootPath) throws IOException {
-                return getAllFilesInCache();
-              }
-
-              @Override
-              public int comparePaths(
-                  DirectoryCleaner.PathStats path1,
-                  DirectoryCleaner.PathStats path2) {
-                return Long.compare(path1.getLastAccessMillis(), path2.getLastAccessMillis());
-              }
-            })
-        .setMaxTotalSizeBytes(maxCacheSizeBytes.get())
-        .setMaxBytesAfterDeletion((long) (maxCacheSizeBytes.get() * MAX_BYTES_TRIM_RATIO))
-        .setMinAmountOfEntriesToKeep(0)
-        .build();
-
-    return new DirectoryCleaner(cleanerArgs);
+  @VisibleForTesting
+  DirArtifactCacheIndex getIndex() {
+    return index;
   }
 }
@@ -0,0 +1,460 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.CountingInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * An append-only journal of the entries in a {@link DirArtifactCache}, their sizes, and the order
+ * in which they were last used, so that the least recently used entries can be evicted without
+ * walking the whole cache directory.
+ * <p>
+ * The journal is shared by every buck process using the cache directory.  Records are appended in
+ * batches while holding an exclusive lock on a separate lock file, and each process replays the
+ * records appended by others before evicting.  Once the journal is mostly superseded records, it
+ * is rewritten under a new generation number, which readers notice and reload from.
+ * <p>
+ * Recording entries is thread-safe, but {@link #flush()} and {@link #evict(long)} must only be
+ * called from one thread at a time.
+ */
+class DirArtifactCacheIndex {
+
+  private static final Logger LOG = Logger.get(DirArtifactCacheIndex.class);
+
+  private static final int MAGIC = 0x42434958;
+  // The magic number and the generation.
+  private static final int HEADER_SIZE = 4 + 8;
+  private static final byte STORE = 1;
+  private static final byte ACCESS = 2;
+  private static final byte DELETE = 3;
+  private static final String METADATA_EXTENSION = ".metadata";
+  // Rewrite the journal once it is this many times larger than the number of live entries.
+  private static final int COMPACTION_RATIO = 4;
+  private static final int MIN_RECORDS_TO_COMPACT = 1024;
+
+  // Locks on files are held by the whole JVM, so several caches on the same directory in the
+  // same process also need to take turns.
+  private static final ConcurrentMap<Path, ReentrantLock> PROCESS_LOCKS = Maps.newConcurrentMap();
+
+  private final Path cacheDir;
+  private final Path journal;
+  private final Path lockFile;
+  private final ImmutableSet<Path> excludedDirs;
+  private final Queue<Record> pending = new ConcurrentLinkedQueue<>();
+  private final Random random = new Random();
+
+  // Entries in order of least to most recently used.
+  private final LinkedHashMap<String, Long> sizesByPath = new LinkedHashMap<>(16, 0.75f, true);
+  private long totalSizeBytes = 0;
+  private long generation = 0;
+  private long offset = 0;
+  private long records = 0;
+
+  /**
+   * @param cacheDir absolute path of the cache directory.
+   * @param indexDir absolute path of the directory to keep the journal in.
+   * @param excludedDirs directories under {@code cacheDir} which don't contain entries.
+   */
+  DirArtifactCacheIndex(Path cacheDir, Path indexDir, ImmutableSet<Path> excludedDirs) {
+    this.cacheDir = cacheDir;
+    this.journal = indexDir.resolve("journal");
+    this.lockFile = indexDir.resolve("lock");
+    this.excludedDirs = excludedDirs;
+  }
+
+  /**
+   * @param artifact the entry's artifact, whose metadata is stored next to it.
+   * @param sizeBytes the size of the artifact and its metadata.
+   */
+  public void recordStore(Path artifact, long sizeBytes) {
+    pending.add(new Record(STORE, toKey(artifact), sizeBytes));
+  }
+
+  public void recordAccess(Path artifact) {
+    pending.add(new Record(ACCESS, toKey(artifact), 0));
+  }
+
+  public boolean hasPendingRecords() {
+    return !pending.isEmpty();
+  }
+
+  public synchronized long getTotalSizeBytes() {
+    return totalSizeBytes;
+  }
+
+  /**
+   * Appends everything recorded in this process to the journal, and reads in what was appended by
+   * others.  If there is no journal yet, it is created by walking the cache directory.
+   */
+  public void flush() throws IOException {
+    if (pending.isEmpty() && offset > 0 && Files.exists(journal) && Files.size(journal) == offset) {
+      return;
+    }
+    try (Lock lock = lock()) {
+      sync();
+      List<Record> batch = Lists.newArrayList();
+      for (Record record = pending.poll(); record != null; record = pending.poll()) {
+        batch.add(record);
+      }
+      append(batch);
+    }
+  }
+
+  /**
+   * Deletes the least recently used entries until the cache is at most {@code targetSizeBytes}.
+   *
+   * @return the paths of the deleted entries.
+   */
+  public ImmutableList<Path> evict(long targetSizeBytes) throws IOException {
+    ImmutableList.Builder<Path> evicted = ImmutableList.builder();
+    try (Lock lock = lock()) {
+      sync();
+      List<Record> batch = Lists.newArrayList();
+      synchronized (this) {
+        Iterator<Map.Entry<String, Long>> itr = sizesByPath.entrySet().iterator();
+        while (totalSizeBytes > targetSizeBytes && itr.hasNext()) {
+          Map.Entry<String, Long> entry = itr.next();
+          itr.remove();
+          totalSizeBytes -= entry.getValue();
+          Path artifact = cacheDir.resolve(entry.getKey());
+          Files.deleteIfExists(artifact);
+          Files.deleteIfExists(artifact.resolveSibling(
+              artifact.getFileName() + METADATA_EXTENSION));
+          batch.add(new Record(DELETE, entry.getKey(), 0));
+          evicted.add(artifact);
+        }
+      }
+      append(batch);
+      if (records > MIN_RECORDS_TO_COMPACT && records > COMPACTION_RATIO * sizesByPath.size()) {
+        compact();
+      }
+    }
+    return evicted.build();
+  }
+
+  /**
+   * Brings the in-memory view up to date with the journal.  Must be called with the lock held.
+   */
+  private void sync() throws IOException {
+    if (!Files.exists(journal)) {
+      rebuild();
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+      long currentGeneration = readGeneration(channel);
+      if (currentGeneration != generation ||
+          offset < HEADER_SIZE ||
+          channel.size() < offset) {
+        reset(currentGeneration);
+      }
+      channel.position(offset);
+      CountingInputStream counting =
+          new CountingInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+      DataInputStream in = new DataInputStream(counting);
+      long start = offset;
+      while (true) {
+        byte op;
+        String key;
+        long size;
+        try {
+          op = in.readByte();
+          key = in.readUTF();
+          size = in.readLong();
+        } catch (EOFException e) {
+          // Either the end, or a batch which is still being written.
+          break;
+        }
+        apply(new Record(op, key, size));
+        offset = start + counting.getCount();
+      }
+    } catch (IOException | IllegalStateException e) {
+      LOG.warn(e, "Rebuilding unreadable cache index %s.", journal);
+      rebuild();
+    }
+  }
+
+  private synchronized void reset(long newGeneration) {
+    sizesByPath.clear();
+    totalSizeBytes = 0;
+    records = 0;
+    generation = newGeneration;
+    offset = HEADER_SIZE;
+  }
+
+  private synchronized void apply(Record record) {
+    records++;
+    Long previous;
+    switch (record.op) {
+      case STORE:
+        previous = sizesByPath.put(record.key, record.size);
+        totalSizeBytes += record.size - (previous == null ? 0 : previous);
+        break;
+      case ACCESS:
+        // Moves the entry to the most recently used end.
+        sizesByPath.get(record.key);
+        break;
+      case DELETE:
+        previous = sizesByPath.remove(record.key);
+        totalSizeBytes -= previous == null ? 0 : previous;
+        break;
+      default:
+        throw new IllegalStateException("Unknown cache index record type " + record.op);
+    }
+  }
+
+  private void append(List<Record> batch) throws IOException {
+    if (batch.isEmpty()) {
+      return;
+    }
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      for (Record record : batch) {
+        record.writeTo(out);
+      }
+    }
+    try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.APPEND)) {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      offset = channel.size();
+    }
+    for (Record record : batch) {
+      apply(record);
+    }
+  }
+
+  /**
+   * Replaces the journal with one that only has a record for each live entry, in the order they
+   * were last used.
+   */
+  private void compact() throws IOException {
+    List<Record> live = Lists.newArrayList();
+    synchronized (this) {
+      for (Map.Entry<String, Long> entry : sizesByPath.entrySet()) {
+        live.add(new Record(STORE, entry.getKey(), entry.getValue()));
+      }
+    }
+    writeJournal(live);
+  }
+
+  /**
+   * Creates the journal from what is in the cache directory, ordering entries by the last access
+   * time of their files.
+   */
+  private void rebuild() throws IOException {
+    final Map<String, Long> sizes = Maps.newHashMap();
+    final Map<String, Long> accessTimes = Maps.newHashMap();
+    Files.walkFileTree(
+        cacheDir,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            return excludedDirs.contains(dir) ?
+                FileVisitResult.SKIP_SUBTREE :
+                FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            Path artifact = file;
+            String name = file.getFileName().toString();
+            if (name.endsWith(METADATA_EXTENSION)) {
+              artifact = file.resolveSibling(
+                  name.substring(0, name.length() - METADATA_EXTENSION.length()));
+            }
+            String key = toKey(artifact);
+            Long size = sizes.get(key);
+            sizes.put(key, (size == null ? 0 : size) + attrs.size());
+            Long accessTime = accessTimes.get(key);
+            accessTimes.put(
+                key,
+                Math.max(accessTime == null ? 0 : accessTime, attrs.lastAccessTime().toMillis()));
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+            // Files may be deleted by other processes while we walk.
+            if (e instanceof NoSuchFileException) {
+              return FileVisitResult.CONTINUE;
+            }
+            throw e;
+          }
+        });
+
+    List<String> keys = Lists.newArrayList(sizes.keySet());
+    Collections.sort(
+        keys,
+        new Comparator<String>() {
+          @Override
+          public int compare(String a, String b) {
+            return Long.compare(accessTimes.get(a), accessTimes.get(b));
+          }
+        });
+    List<Record> entries = Lists.newArrayListWithCapacity(keys.size());
+    for (String key : keys) {
+      entries.add(new Record(STORE, key, sizes.get(key)));
+    }
+    writeJournal(entries);
+  }
+
+  private void writeJournal(List<Record> entries) throws IOException {
+    long newGeneration = random.nextLong();
+    Path tmp = journal.resolveSibling(journal.getFileName() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeLong(newGeneration);
+      for (Record record : entries) {
+        record.writeTo(out);
+      }
+    }
+    Files.move(tmp, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    reset(newGeneration);
+    for (Record record : entries) {
+      apply(record);
+    }
+    offset = Files.size(journal);
+  }
+
+  private static long readGeneration(FileChannel channel) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    while (header.hasRemaining()) {
+      if (channel.read(header) < 0) {
+        throw new EOFException("Truncated cache index header.");
+      }
+    }
+    header.flip();
+    if (header.getInt() != MAGIC) {
+      throw new IOException("Not a cache index.");
+    }
+    return header.getLong();
+  }
+
+  private String toKey(Path artifact) {
+    return MorePaths.pathWithUnixSeparators(cacheDir.relativize(artifact));
+  }
+
+  private Lock lock() throws IOException {
+    Files.createDirectories(lockFile.getParent());
+    ReentrantLock processLock = PROCESS_LOCKS.get(lockFile);
+    if (processLock == null) {
+      PROCESS_LOCKS.putIfAbsent(lockFile, new ReentrantLock());
+      processLock = PROCESS_LOCKS.get(lockFile);
+    }
+    processLock.lock();
+    try {
+      FileChannel channel = FileChannel.open(
+          lockFile,
+          StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE);
+      try {
+        return new Lock(processLock, channel, channel.lock());
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+    } catch (IOException | RuntimeException e) {
+      processLock.unlock();
+      throw e;
+    }
+  }
+
+  @VisibleForTesting
+  synchronized ImmutableList<String> getEntriesInEvictionOrder() {
+    return ImmutableList.copyOf(sizesByPath.keySet());
+  }
+
+  private static class Lock implements AutoCloseable {
+    private final ReentrantLock processLock;
+    private final FileChannel channel;
+    private final FileLock fileLock;
+
+    public Lock(ReentrantLock processLock, FileChannel channel, FileLock fileLock) {
+      this.processLock = processLock;
+      this.channel = channel;
+      this.fileLock = fileLock;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        fileLock.release();
+        channel.close();
+      } finally {
+        processLock.unlock();
+      }
+    }
+  }
+
+  private static class Record {
+    private final byte op;
+    private final String key;
+    private final long size;
+
+    public Record(byte op, String key, long size) {
+      this.op = op;
+      this.key = key;
+      this.size = size;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+      out.writeByte(op);
+      out.writeUTF(key);
+      out.writeLong(size);
+    }
+  }
+}
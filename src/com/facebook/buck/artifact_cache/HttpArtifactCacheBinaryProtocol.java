@@ -22,6 +22,7 @@ import com.facebook.buck.util.hash.HasherOutputStream;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
@@ -37,9 +38,11 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Map;
 
 /**
@@ -50,6 +53,8 @@ public class HttpArtifactCacheBinaryProtocol {
   private static final HashFunction HASH_FUNCTION = Hashing.crc32();
   // 64MB should be enough for everyone.
   private static final long MAX_METADATA_HEADER_SIZE = 64 * 1024 * 1024;
+  private static final int HASH_CHUNK_SIZE = 64 * 1024;
+  private static final long MULTI_FETCH_MISS = -1;
 
   private HttpArtifactCacheBinaryProtocol() {
     // Utility class, don't instantiate.
@@ -70,11 +75,7 @@ public class HttpArtifactCacheBinaryProtocol {
   public static StoreResponseReadResult readStoreRequest(
       DataInputStream input,
       OutputStream payloadSink) throws IOException {
-    ImmutableSet.Builder<RuleKey> rawRuleKeys = ImmutableSet.builder();
-    int ruleKeysCount = input.readInt();
-    for (int i = 0; i < ruleKeysCount; i++) {
-      rawRuleKeys.add(new RuleKey(input.readUTF()));
-    }
+    ImmutableSet<RuleKey> rawRuleKeys = readRuleKeys(input);
 
     MetadataAndPayloadReadResultInternal resultInternal = readMetadataAndPayload(
         input,
@@ -82,10 +83,45 @@ public class HttpArtifactCacheBinaryProtocol {
 
     StoreResponseReadResult.Builder result =
         StoreResponseReadResult.builder().from(resultInternal);
-    result.setRawKeys(rawRuleKeys.build());
+    result.setRawKeys(rawRuleKeys);
     return result.build();
   }
 
+  /**
+   * Reads one entry of a multi-fetch response, as written by
+   * {@link #createMultiFetchResponseEntryHeader} and {@link #createMultiFetchMissEntry()}.
+   *
+   * @return the fetch response, or absent if the artifact wasn't found.
+   */
+  public static Optional<FetchResponseReadResult> readMultiFetchResponseEntry(
+      DataInputStream input,
+      OutputStream payloadSink) throws IOException {
+    long length = input.readLong();
+    if (length == MULTI_FETCH_MISS) {
+      return Optional.absent();
+    }
+    // Reading a fetch response consumes, and closes, everything that's left of its input.
+    InputStream entry = new FilterInputStream(ByteStreams.limit(input, length)) {
+      @Override
+      public void close() {
+        // Leave the remaining entries readable.
+      }
+    };
+    return Optional.of(readFetchResponse(new DataInputStream(entry), payloadSink));
+  }
+
+  /**
+   * Reads a set of rule keys, as written by {@link #createKeysHeader(ImmutableSet)}.
+   */
+  public static ImmutableSet<RuleKey> readRuleKeys(DataInputStream input) throws IOException {
+    ImmutableSet.Builder<RuleKey> ruleKeys = ImmutableSet.builder();
+    int ruleKeysCount = input.readInt();
+    for (int i = 0; i < ruleKeysCount; i++) {
+      ruleKeys.add(new RuleKey(input.readUTF()));
+    }
+    return ruleKeys.build();
+  }
+
   public static MetadataAndPayloadReadResultInternal readMetadataAndPayload(
       DataInputStream input,
       OutputStream payloadSink) throws IOException {
@@ -148,8 +184,7 @@ public class HttpArtifactCacheBinaryProtocol {
     return result.build();
   }
 
-  @VisibleForTesting
-  static byte[] createKeysHeader(ImmutableSet<RuleKey> ruleKeys) throws IOException {
+  public static byte[] createKeysHeader(ImmutableSet<RuleKey> ruleKeys) throws IOException {
     try (ByteArrayOutputStream out = new ByteArrayOutputStream();
          DataOutputStream data = new DataOutputStream(out)) {
       data.writeInt(ruleKeys.size());
@@ -165,18 +200,46 @@ public class HttpArtifactCacheBinaryProtocol {
       ImmutableSet<RuleKey> ruleKeys,
       ImmutableMap<String, String> metadata,
       ByteSource data) throws IOException {
+    byte[] keysAndMetadata = createKeysAndMetadata(ruleKeys, metadata);
 
-    ByteArrayOutputStream rawOut = new ByteArrayOutputStream();
+    // The end-to-end checksum covers the rule keys, the metadata map and the file data contents.
     Hasher hasher = HASH_FUNCTION.newHasher();
-    try (DataOutputStream out = new DataOutputStream(new HasherOutputStream(hasher, rawOut))) {
+    hasher.putBytes(keysAndMetadata);
+    data.copyTo(new HasherOutputStream(hasher, ByteStreams.nullOutputStream()));
+    return appendHashCode(keysAndMetadata, hasher.hash());
+  }
 
-      // Write the rule keys to the raw metadata, including them in the end-to-end checksum.
+  /**
+   * Like {@link #createMetadataHeader(ImmutableSet, ImmutableMap, ByteSource)}, but for a payload
+   * whose checksum was computed earlier, so that the payload isn't read again.
+   */
+  @VisibleForTesting
+  static byte[] createMetadataHeader(
+      ImmutableSet<RuleKey> ruleKeys,
+      ImmutableMap<String, String> metadata,
+      HashCode payloadHashCode,
+      long payloadSize) throws IOException {
+    byte[] keysAndMetadata = createKeysAndMetadata(ruleKeys, metadata);
+    long crc = crc32Combine(
+        toCrc32(HASH_FUNCTION.hashBytes(keysAndMetadata)),
+        toCrc32(payloadHashCode),
+        payloadSize);
+    return appendHashCode(keysAndMetadata, HashCode.fromInt((int) crc));
+  }
+
+  private static byte[] createKeysAndMetadata(
+      ImmutableSet<RuleKey> ruleKeys,
+      ImmutableMap<String, String> metadata) throws IOException {
+    ByteArrayOutputStream rawOut = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(rawOut)) {
+
+      // Write the rule keys to the raw metadata.
       out.writeInt(ruleKeys.size());
       for (RuleKey ruleKey : ruleKeys) {
         out.writeUTF(ruleKey.toString());
       }
 
-      // Write out the metadata map to the raw metadata, including it in the end-to-end checksum.
+      // Write out the metadata map to the raw metadata.
       out.writeInt(metadata.size());
       for (Map.Entry<String, String> ent : metadata.entrySet()) {
         out.writeUTF(ent.getKey());
@@ -188,14 +251,16 @@ public class HttpArtifactCacheBinaryProtocol {
         }
       }
     }
+    return rawOut.toByteArray();
+  }
 
-    // Add the file data contents to the end-to-end checksum.
-    data.copyTo(new HasherOutputStream(hasher, ByteStreams.nullOutputStream()));
-
-    // Finish the checksum, adding it to the raw metadata
-    rawOut.write(hasher.hash().asBytes());
+  private static byte[] appendHashCode(byte[] keysAndMetadata, HashCode hashCode)
+      throws IOException {
+    // Finish the raw metadata with the checksum.
+    ByteArrayOutputStream rawOut = new ByteArrayOutputStream();
+    rawOut.write(keysAndMetadata);
+    rawOut.write(hashCode.asBytes());
 
-    // Finally, base64 encode the raw bytes to make usable in a HTTP header.
     byte[] bytes = rawOut.toByteArray();
     if (bytes.length > MAX_METADATA_HEADER_SIZE) {
       throw new IOException("Metadata header too big.");
@@ -203,6 +268,141 @@ public class HttpArtifactCacheBinaryProtocol {
     return bytes;
   }
 
+  /**
+   * Computes the checksum of a payload, for use with
+   * {@link #createFetchResponseHeader(ImmutableSet, ImmutableMap, HashCode, long)}.
+   */
+  public static HashCode hashPayload(ByteBuffer payload) {
+    Hasher hasher = HASH_FUNCTION.newHasher();
+    ByteBuffer remaining = payload.duplicate();
+    byte[] chunk = new byte[Math.min(remaining.remaining(), HASH_CHUNK_SIZE)];
+    while (remaining.hasRemaining()) {
+      int length = Math.min(remaining.remaining(), chunk.length);
+      remaining.get(chunk, 0, length);
+      hasher.putBytes(chunk, 0, length);
+    }
+    return hasher.hash();
+  }
+
+  /**
+   * Creates everything in a fetch response that precedes the payload, so that the payload itself
+   * can be sent straight from where it's stored.
+   *
+   * @param payloadHashCode the checksum of the payload, from {@link #hashPayload(ByteBuffer)}.
+   */
+  public static byte[] createFetchResponseHeader(
+      ImmutableSet<RuleKey> ruleKeys,
+      ImmutableMap<String, String> metadata,
+      HashCode payloadHashCode,
+      long payloadSize) throws IOException {
+    return createLengthPrefixedMetadata(
+        createMetadataHeader(ruleKeys, metadata, payloadHashCode, payloadSize));
+  }
+
+  /**
+   * A multi-fetch response is a sequence of entries, one per requested rule key and in the order
+   * they were requested.  A found artifact's entry is the length of its fetch response, followed
+   * by that fetch response.
+   *
+   * @return the start of the entry for a found artifact, up to its payload.
+   */
+  public static byte[] createMultiFetchResponseEntryHeader(
+      ImmutableSet<RuleKey> ruleKeys,
+      ImmutableMap<String, String> metadata,
+      HashCode payloadHashCode,
+      long payloadSize) throws IOException {
+    byte[] fetchResponseHeader =
+        createFetchResponseHeader(ruleKeys, metadata, payloadHashCode, payloadSize);
+    ByteArrayOutputStream rawOut = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(rawOut)) {
+      out.writeLong(fetchResponseHeader.length + payloadSize);
+      out.write(fetchResponseHeader);
+    }
+    return rawOut.toByteArray();
+  }
+
+  /**
+   * @return the multi-fetch response entry for an artifact which wasn't found.
+   */
+  public static byte[] createMultiFetchMissEntry() throws IOException {
+    ByteArrayOutputStream rawOut = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(rawOut)) {
+      out.writeLong(MULTI_FETCH_MISS);
+    }
+    return rawOut.toByteArray();
+  }
+
+  private static byte[] createLengthPrefixedMetadata(byte[] rawMetadata) throws IOException {
+    ByteArrayOutputStream rawOut = new ByteArrayOutputStream();
+    try (DataOutputStream out = new DataOutputStream(rawOut)) {
+      out.writeInt(rawMetadata.length);
+      out.write(rawMetadata);
+    }
+    return rawOut.toByteArray();
+  }
+
+  private static long toCrc32(HashCode hashCode) {
+    return hashCode.asInt() & 0xffffffffL;
+  }
+
+  /**
+   * @return the CRC-32 of the concatenation of two byte sequences, given the CRC-32 of each of
+   *     them and the length of the second, as zlib's {@code crc32_combine()} does.
+   */
+  @VisibleForTesting
+  static long crc32Combine(long crc1, long crc2, long length2) {
+    if (length2 <= 0) {
+      return crc1;
+    }
+
+    // The operator for one zero bit, then for two and four zero bits.
+    long[] even = new long[Integer.SIZE];
+    long[] odd = new long[Integer.SIZE];
+    odd[0] = 0xedb88320L;
+    long row = 1;
+    for (int n = 1; n < Integer.SIZE; n++) {
+      odd[n] = row;
+      row <<= 1;
+    }
+    gf2MatrixSquare(even, odd);
+    gf2MatrixSquare(odd, even);
+
+    // Apply length2 zero bytes to crc1, squaring the operator for each bit of length2.
+    do {
+      gf2MatrixSquare(even, odd);
+      if ((length2 & 1) != 0) {
+        crc1 = gf2MatrixTimes(even, crc1);
+      }
+      length2 >>= 1;
+      if (length2 == 0) {
+        break;
+      }
+      gf2MatrixSquare(odd, even);
+      if ((length2 & 1) != 0) {
+        crc1 = gf2MatrixTimes(odd, crc1);
+      }
+      length2 >>= 1;
+    } while (length2 != 0);
+
+    return crc1 ^ crc2;
+  }
+
+  private static long gf2MatrixTimes(long[] matrix, long vector) {
+    long sum = 0;
+    for (int i = 0; vector != 0; i++, vector >>>= 1) {
+      if ((vector & 1) != 0) {
+        sum ^= matrix[i];
+      }
+    }
+    return sum;
+  }
+
+  private static void gf2MatrixSquare(long[] square, long[] matrix) {
+    for (int n = 0; n < Integer.SIZE; n++) {
+      square[n] = gf2MatrixTimes(matrix, matrix[n]);
+    }
+  }
+
   public static class StoreRequest {
     private final ByteSource payloadSource;
     private final byte[] rawKeys;
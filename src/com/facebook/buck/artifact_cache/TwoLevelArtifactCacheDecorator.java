@@ -33,11 +33,15 @@ import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * The {@link DirArtifactCache} and {@link HttpArtifactCache} caches use a straightforward
@@ -51,6 +55,10 @@ import java.nio.file.Path;
  * This means we only download the artifact when its contents change. This means that rules with
  * different keys but identical outputs require less network bandwidth at the expense of doubling
  * latency for downloading rules whose outputs we had not yet seen.
+ * <p>
+ * Artifacts are also kept by content hash in an optional local cache, which is checked before the
+ * second fetch goes to the delegate, and an artifact is only uploaded once per build even when
+ * several rules produce it.  The stores of all those rules share the outcome of that upload.
  */
 public class TwoLevelArtifactCacheDecorator implements ArtifactCache {
 
@@ -66,11 +74,19 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache {
   private final boolean performTwoLevelStores;
   private final long minimumTwoLevelStoredArtifactSize;
   private final Optional<Long> maximumTwoLevelStoredArtifactSize;
+  private final Optional<ArtifactCache> localContentCache;
+  // Uploads of contents to the delegate during this build, by content hash, which are shared by
+  // all the rules with those contents.
+  private final ConcurrentMap<RuleKey, ListenableFuture<Void>> contentStores =
+      new ConcurrentHashMap<>();
 
   private final TagSetCounter secondLevelCacheHitTypes;
   private final SamplingCounter secondLevelCacheHitBytes;
   private final IntegerCounter secondLevelCacheMisses;
   private final SamplingCounter secondLevelHashComputationTimeMs;
+  private final IntegerCounter localContentCacheHits;
+  private final IntegerCounter fetchBytesSavedByDedup;
+  private final IntegerCounter storeBytesSavedByDedup;
 
   public TwoLevelArtifactCacheDecorator(
       ArtifactCache delegate,
@@ -79,7 +95,31 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache {
       boolean performTwoLevelStores,
       long minimumTwoLevelStoredArtifactSize,
       Optional<Long> maximumTwoLevelStoredArtifactSize) {
+    this(
+        delegate,
+        projectFilesystem,
+        buckEventBus,
+        performTwoLevelStores,
+        minimumTwoLevelStoredArtifactSize,
+        maximumTwoLevelStoredArtifactSize,
+        Optional.<ArtifactCache>absent());
+  }
+
+  /**
+   * @param localContentCache stores artifacts by content hash on this machine.  It is checked
+   *     before fetching an artifact's contents from {@code delegate}, and is closed along with
+   *     this cache.
+   */
+  public TwoLevelArtifactCacheDecorator(
+      ArtifactCache delegate,
+      ProjectFilesystem projectFilesystem,
+      BuckEventBus buckEventBus,
+      boolean performTwoLevelStores,
+      long minimumTwoLevelStoredArtifactSize,
+      Optional<Long> maximumTwoLevelStoredArtifactSize,
+      Optional<ArtifactCache> localContentCache) {
     this.delegate = delegate;
+    this.localContentCache = localContentCache;
     this.projectFilesystem = projectFilesystem;
     this.performTwoLevelStores = performTwoLevelStores;
     this.minimumTwoLevelStoredArtifactSize = minimumTwoLevelStoredArtifactSize;
@@ -114,12 +154,27 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache {
         COUNTER_CATEGORY,
         "second_level_hash_computation_time_ms",
         ImmutableMap.<String, String>of());
+    localContentCacheHits = new IntegerCounter(
+        COUNTER_CATEGORY,
+        "local_content_cache_hits",
+        ImmutableMap.<String, String>of());
+    fetchBytesSavedByDedup = new IntegerCounter(
+        COUNTER_CATEGORY,
+        "fetch_bytes_saved_by_dedup",
+        ImmutableMap.<String, String>of());
+    storeBytesSavedByDedup = new IntegerCounter(
+        COUNTER_CATEGORY,
+        "store_bytes_saved_by_dedup",
+        ImmutableMap.<String, String>of());
     buckEventBus.post(new CounterRegistry.AsyncCounterRegistrationEvent(
         ImmutableSet.of(
             secondLevelCacheHitTypes,
             secondLevelCacheHitBytes,
             secondLevelCacheMisses,
-            secondLevelHashComputationTimeMs)));
+            secondLevelHashComputationTimeMs,
+            localContentCacheHits,
+            fetchBytesSavedByDedup,
+            storeBytesSavedByDedup)));
   }
 
   @Override
@@ -129,9 +184,18 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache {
         !fetchResult.getMetadata().containsKey(METADATA_KEY)) {
       return fetchResult;
     }
-    CacheResult outputFileFetchResult = delegate.fetch(
-        new RuleKey(fetchResult.getMetadata().get(METADATA_KEY)),
-        output);
+    RuleKey contentKey = new RuleKey(fetchResult.getMetadata().get(METADATA_KEY));
+    if (localContentCache.isPresent()) {
+      CacheResult localFetchResult = localContentCache.get().fetch(contentKey, output);
+      if (localFetchResult.getType().isSuccess()) {
+        localContentCacheHits.inc();
+        if (localFetchResult.artifactSizeBytes().isPresent()) {
+          fetchBytesSavedByDedup.inc(localFetchResult.artifactSizeBytes().get());
+        }
+        return fetchResult;
+      }
+    }
+    CacheResult outputFileFetchResult = delegate.fetch(contentKey, output);
     if (!outputFileFetchResult.getType().isSuccess()) {
       secondLevelCacheMisses.inc();
       return outputFileFetchResult;
@@ -143,10 +207,68 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache {
     if (outputFileFetchResult.artifactSizeBytes().isPresent()) {
       secondLevelCacheHitBytes.addSample(outputFileFetchResult.artifactSizeBytes().get());
     }
+    try {
+      storeLocally(contentKey, output.get());
+    } catch (IOException e) {
+      LOG.debug(e, "Could not keep the contents of %s locally.", ruleKey);
+    }
 
     return fetchResult;
   }
 
+  private void storeLocally(RuleKey contentKey, Path artifact) {
+    if (localContentCache.isPresent()) {
+      localContentCache.get().store(
+          ArtifactInfo.builder().addRuleKeys(contentKey).build(),
+          BorrowablePath.notBorrowablePath(artifact));
+    }
+  }
+
+  private ListenableFuture<Void> storeContents(
+      final RuleKey contentKey,
+      BorrowablePath output,
+      final long fileSize) {
+    final SettableFuture<Void> contentStore = SettableFuture.create();
+    ListenableFuture<Void> sharedContentStore = contentStores.putIfAbsent(contentKey, contentStore);
+    if (sharedContentStore != null) {
+      // Another rule is uploading, or already uploaded, the same contents during this build, so
+      // this store only succeeds if that upload does.
+      Futures.addCallback(
+          sharedContentStore,
+          new FutureCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+              storeBytesSavedByDedup.inc(fileSize);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+            }
+          });
+      return sharedContentStore;
+    }
+    Futures.addCallback(
+        contentStore,
+        new FutureCallback<Void>() {
+          @Override
+          public void onSuccess(Void result) {
+          }
+
+          @Override
+          public void onFailure(Throwable t) {
+            // Stores of the same contents after this one upload them again.
+            contentStores.remove(contentKey, contentStore);
+          }
+        });
+    try {
+      contentStore.setFuture(
+          delegate.store(ArtifactInfo.builder().addRuleKeys(contentKey).build(), output));
+    } catch (RuntimeException e) {
+      contentStore.setException(e);
+    }
+    return contentStore;
+  }
+
   @Override
   public ListenableFuture<Void> store(
       final ArtifactInfo info,
@@ -199,6 +321,10 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache {
                     .put(METADATA_KEY, hashCode)
                     .build();
 
+            // Copy the contents before the delegate gets a chance to take them.
+            RuleKey contentKey = new RuleKey(hashCode);
+            storeLocally(contentKey, output.getPath());
+
             return Futures.transform(
                 Futures.allAsList(
                     delegate.store(
@@ -207,9 +333,7 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache {
                             .setMetadata(metadataWithCacheKey)
                             .build(),
                         BorrowablePath.notBorrowablePath(emptyFilePath)),
-                    delegate.store(
-                        ArtifactInfo.builder().addRuleKeys(new RuleKey(hashCode)).build(),
-                        output)
+                    storeContents(contentKey, output, fileSize)
                 ),
                 Functions.constant(true));
           }
@@ -225,6 +349,9 @@ public class TwoLevelArtifactCacheDecorator implements ArtifactCache {
   @Override
   public void close() {
     delegate.close();
+    if (localContentCache.isPresent()) {
+      localContentCache.get().close();
+    }
     try {
       projectFilesystem.deleteFileAtPath(emptyFilePath);
     } catch (IOException e) {
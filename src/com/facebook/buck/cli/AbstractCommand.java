@@ -277,7 +277,10 @@ public abstract class AbstractCommand implements Command {
       loadLimit = (double) buckConfig.getLoadLimit();
     }
 
-    return new ConcurrencyLimit(buckConfig.getNumThreads(), loadLimit);
+    return new ConcurrencyLimit(
+        buckConfig.getNumThreads(),
+        loadLimit,
+        buckConfig.getResourceLimits());
   }
 
   protected ImmutableList<String> getOptions() {
@@ -44,6 +44,8 @@ import com.facebook.buck.util.BuckConstant;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.PatternAndMessage;
 import com.facebook.buck.util.SampleRate;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.ResourceType;
 import com.facebook.buck.util.environment.Architecture;
 import com.facebook.buck.util.environment.EnvironmentFilter;
 import com.facebook.buck.util.environment.Platform;
@@ -61,12 +63,16 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
 
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
@@ -703,6 +709,73 @@ public class BuckConfig {
         .or(CachingBuildEngine.DepFiles.ENABLED);
   }
 
+  /**
+   * @return the order in which the build engine schedules rules which are ready to build.
+   */
+  public CachingBuildEngine.Scheduling getBuildScheduling() {
+    return getEnum("build", "scheduling", CachingBuildEngine.Scheduling.class)
+        .or(CachingBuildEngine.Scheduling.RANDOM);
+  }
+
+  /**
+   * @return the most of each resource that rules may use at once.  CPU slots are the number of
+   *     build threads, and the other resources are unlimited unless capped in {@code [resources]}.
+   */
+  public ResourceAmounts getResourceLimits() {
+    ResourceAmounts limits = ResourceAmounts.ofCpuLimit(getNumThreads());
+    for (ResourceType type : EnumSet.of(ResourceType.MEMORY, ResourceType.DISK_IO)) {
+      Optional<Long> limit = getLong("resources", type.getConfigName());
+      if (limit.isPresent()) {
+        limits = limits.with(type, toResourceAmount("resources", type, limit.get()));
+      }
+    }
+    return limits;
+  }
+
+  /**
+   * @return the resources rules of each type in {@code [resources_per_rule]} need, e.g.
+   *     {@code android_binary = memory_mb=4096, disk_io=1}.  These override only the listed
+   *     resources of what the rules declare themselves.
+   */
+  public ImmutableMap<String, ImmutableMap<ResourceType, Integer>> getResourceAmountsByRuleType() {
+    ImmutableMap.Builder<String, ImmutableMap<ResourceType, Integer>> amountsByType =
+        ImmutableMap.builder();
+    for (String ruleType : getEntriesForSection("resources_per_rule").keySet()) {
+      Map<ResourceType, Integer> amounts = new EnumMap<>(ResourceType.class);
+      for (String entry : getListWithoutComments("resources_per_rule", ruleType)) {
+        List<String> parts = Splitter.on('=').trimResults().splitToList(entry);
+        ResourceType type = null;
+        for (ResourceType candidate : ResourceType.values()) {
+          if (parts.get(0).equals(candidate.getConfigName())) {
+            type = candidate;
+          }
+        }
+        Long amount = parts.size() == 2 ? Longs.tryParse(parts.get(1)) : null;
+        if (type == null || amount == null) {
+          throw new HumanReadableException(
+              "resources_per_rule.%s: expected entries like memory_mb=1024, got '%s'.",
+              ruleType,
+              entry);
+        }
+        amounts.put(type, toResourceAmount("resources_per_rule", type, amount));
+      }
+      amountsByType.put(ruleType, Maps.immutableEnumMap(amounts));
+    }
+    return amountsByType.build();
+  }
+
+  private static int toResourceAmount(String section, ResourceType type, long amount) {
+    if (amount < 0 || amount > Integer.MAX_VALUE) {
+      throw new HumanReadableException(
+          "%s: %s must be between 0 and %d, got %d.",
+          section,
+          type.getConfigName(),
+          Integer.MAX_VALUE,
+          amount);
+    }
+    return (int) amount;
+  }
+
   /**
    * @return the maximum number of entries to support in the depfile cache.
    */
@@ -36,8 +36,8 @@ import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.TargetNodes;
-import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
@@ -50,12 +50,15 @@ import com.google.common.util.concurrent.ListeningExecutorService;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
+import javax.annotation.Nullable;
+
 /**
  * The environment of a Buck query that can evaluate queries to produce a result.
  *
@@ -70,12 +73,23 @@ public class BuckQueryEnvironment implements QueryEnvironment {
 
   private Map<Cell, BuildFileTree> buildFileTrees =  new HashMap<>();
   private TargetGraph graph = TargetGraph.EMPTY;
+  // Built from the graph the first time a traversal needs it, and dropped with the graph, so it
+  // is reused by the queries of one command but not across commands.
+  @Nullable
+  private TargetGraphIndex graphIndex;
 
   @VisibleForTesting
   protected TargetPatternEvaluator targetPatternEvaluator;
 
   private Map<BuildTarget, QueryTarget> buildTargetToQueryTarget = new HashMap<>();
 
+  private final QueryResultCache queryResultCache;
+  // Results are only as fresh as the oldest build file read to compute them, and this environment
+  // keeps the target graph it builds, so every result is cached as of when it was created.
+  private final long buildFileVersion;
+  private final Set<Path> buildFilesRead = new HashSet<>();
+  private final ImmutableList<QueryFunction> functions;
+
   public BuckQueryEnvironment(
       CommandRunnerParams params,
       PerBuildState parserState,
@@ -88,6 +102,14 @@ public class BuckQueryEnvironment implements QueryEnvironment {
             params.getCell().getFilesystem(),
             params.getCell().getBuildFileName()));
     this.targetPatternEvaluator = new TargetPatternEvaluator(params, enableProfiling);
+    this.queryResultCache = params.getQueryResultCache();
+    this.buildFileVersion = params.getParser().getBuildFileVersion();
+
+    ImmutableList.Builder<QueryFunction> functions = ImmutableList.builder();
+    for (QueryFunction function : DEFAULT_QUERY_FUNCTIONS) {
+      functions.add(new CachingQueryFunction(function));
+    }
+    this.functions = functions.build();
   }
 
   public CommandRunnerParams getParams() {
@@ -117,10 +139,19 @@ public class BuckQueryEnvironment implements QueryEnvironment {
    */
   public Set<QueryTarget> evaluateQuery(QueryExpression expr, ListeningExecutorService executor)
       throws QueryException, InterruptedException {
+    String expression = expr.toString();
+    Optional<ImmutableSet<QueryTarget>> cachedResult =
+        queryResultCache.get(params.getParser(), expression);
+    if (cachedResult.isPresent()) {
+      return cachedResult.get();
+    }
+
     Set<String> targetLiterals = new HashSet<>();
     expr.collectTargetPatterns(targetLiterals);
     preloadTargetPatterns(targetLiterals, executor);
-    return expr.eval(this, executor);
+    Set<QueryTarget> result = expr.eval(this, executor);
+    cacheResult(expression, result);
+    return result;
   }
 
   public Set<QueryTarget> evaluateQuery(String query, ListeningExecutorService executor)
@@ -145,17 +176,12 @@ public class BuckQueryEnvironment implements QueryEnvironment {
   TargetNode<?> getNode(QueryTarget target)
       throws QueryException, InterruptedException {
     Preconditions.checkState(target instanceof QueryBuildTarget);
-    ListeningExecutorService executor = null;
+    BuildTarget buildTarget = ((QueryBuildTarget) target).getBuildTarget();
+    buildFilesRead.add(getBuildFile(buildTarget));
     try {
-      executor = com.google.common.util.concurrent.MoreExecutors.listeningDecorator(
-          MostExecutors.newSingleThreadExecutor("buck query.getNode"));
-      return parserState.getTargetNode(((QueryBuildTarget) target).getBuildTarget());
+      return parserState.getTargetNode(buildTarget);
     } catch (BuildTargetException | BuildFileParseException e) {
       throw new QueryException("Error getting target node for %s\n%s", target, e.getMessage());
-    } finally {
-      if (executor != null) {
-        executor.shutdown();
-      }
     }
   }
 
@@ -198,41 +224,68 @@ public class BuckQueryEnvironment implements QueryEnvironment {
   @Override
   public Set<QueryTarget> getFwdDeps(Iterable<QueryTarget> targets)
       throws QueryException, InterruptedException {
-    Set<QueryTarget> result = new LinkedHashSet<>();
-    for (QueryTarget target : targets) {
-      TargetNode<?> node = getNode(target);
-      result.addAll(getTargetsFromBuildTargetsContainer(graph.getOutgoingNodesFor(node)));
-    }
-    return result;
+    TargetGraphIndex index = getGraphIndex();
+    return index.getDirectDeps(index.getIds(targets), /* reverse */ false);
   }
 
   @Override
   public Set<QueryTarget> getReverseDeps(Iterable<QueryTarget> targets)
       throws QueryException, InterruptedException {
-    Set<QueryTarget> result = new LinkedHashSet<>();
-    for (QueryTarget target : targets) {
-      TargetNode<?> node = getNode(target);
-      result.addAll(getTargetsFromBuildTargetsContainer(graph.getIncomingNodesFor(node)));
-    }
-    return result;
+    TargetGraphIndex index = getGraphIndex();
+    return index.getDirectDeps(index.getIds(targets), /* reverse */ true);
   }
 
   @Override
-  public ImmutableSet<QueryTarget> getTransitiveClosure(Set<QueryTarget> targets)
+  public Set<QueryTarget> getTransitiveClosure(Set<QueryTarget> targets)
       throws QueryException, InterruptedException {
-    Set<TargetNode<?>> nodes = new LinkedHashSet<>();
-    for (QueryTarget target : targets) {
-      nodes.add(getNode(target));
+    TargetGraphIndex index = getGraphIndex();
+    return index.toSet(index.getTransitiveClosure(index.getIds(targets)));
+  }
+
+  @Override
+  public Set<QueryTarget> getTransitiveFwdDeps(Set<QueryTarget> targets, int maxDepth)
+      throws QueryException, InterruptedException {
+    TargetGraphIndex index = getGraphIndex();
+    return index.breadthFirst(
+        index.getIds(targets),
+        maxDepth,
+        /* reverse */ false,
+        /* universe */ null);
+  }
+
+  @Override
+  public Set<QueryTarget> getTransitiveReverseDeps(
+      Set<QueryTarget> universe,
+      Set<QueryTarget> targets,
+      int maxDepth)
+      throws QueryException, InterruptedException {
+    TargetGraphIndex index = getGraphIndex();
+    return index.breadthFirst(
+        index.getIds(targets),
+        maxDepth,
+        /* reverse */ true,
+        index.getTransitiveClosure(index.getIds(universe)));
+  }
+
+  @Override
+  public Set<QueryTarget> getAllPaths(Set<QueryTarget> from, Set<QueryTarget> to)
+      throws QueryException, InterruptedException {
+    TargetGraphIndex index = getGraphIndex();
+    return index.toSet(index.getAllPaths(index.getIds(from), index.getIds(to)));
+  }
+
+  private TargetGraphIndex getGraphIndex() {
+    if (graphIndex == null) {
+      graphIndex = TargetGraphIndex.of(graph);
     }
-    // Reusing the existing getSubgraph() for simplicity. It builds the graph when we only need the
-    // nodes. The impact of creating the edges in terms of time and space should be minimal.
-    return getTargetsFromBuildTargetsContainer(graph.getSubgraph(nodes).getNodes());
+    return graphIndex;
   }
 
   private void buildGraphForBuildTargets(Set<BuildTarget> targets)
       throws QueryException, InterruptedException {
     try {
       graph = parserState.buildTargetGraph(targets);
+      graphIndex = null;
     } catch (BuildFileParseException | BuildTargetException | IOException e) {
       throw new QueryException("Error in building dependency graph");
     }
@@ -260,6 +313,7 @@ public class BuckQueryEnvironment implements QueryEnvironment {
       for (BuildTarget buildTarget : getTargetsFromNodes(graph.getNodes())) {
         if (!buildTargetToQueryTarget.containsKey(buildTarget)) {
           buildTargetToQueryTarget.put(buildTarget, QueryBuildTarget.of(buildTarget));
+          buildFilesRead.add(getBuildFile(buildTarget));
         }
       }
     }
@@ -316,6 +370,15 @@ public class BuckQueryEnvironment implements QueryEnvironment {
     try {
       BuildFileTree buildFileTree = Preconditions.checkNotNull(
           buildFileTrees.get(params.getCell()));
+      // Editing the build file a path would belong to can give it an owner.
+      ProjectFilesystem filesystem = params.getCell().getFilesystem();
+      for (String file : files) {
+        Optional<Path> basePath = buildFileTree.getBasePathOfAncestorTarget(Paths.get(file));
+        if (basePath.isPresent()) {
+          buildFilesRead.add(
+              filesystem.resolve(basePath.get()).resolve(params.getCell().getBuildFileName()));
+        }
+      }
       OwnersReport report = OwnersReport.buildOwnersReport(
           params,
           buildFileTree,
@@ -349,7 +412,76 @@ public class BuckQueryEnvironment implements QueryEnvironment {
 
   @Override
   public Iterable<QueryFunction> getFunctions() {
-    return DEFAULT_QUERY_FUNCTIONS;
+    return functions;
+  }
+
+  private Path getBuildFile(BuildTarget target) {
+    Cell cell = params.getCell().getCell(target);
+    return cell.getFilesystem().resolve(target.getBasePath()).resolve(cell.getBuildFileName());
+  }
+
+  private void cacheResult(String expression, Set<QueryTarget> result) {
+    Optional<ImmutableSet<Path>> patternBuildFiles = targetPatternEvaluator.getBuildFilesRead();
+    Optional<ImmutableSet<Path>> buildFiles = Optional.absent();
+    if (patternBuildFiles.isPresent()) {
+      for (QueryTarget target : result) {
+        if (target instanceof QueryBuildTarget) {
+          buildFilesRead.add(getBuildFile(((QueryBuildTarget) target).getBuildTarget()));
+        }
+      }
+      buildFiles = Optional.of(
+          ImmutableSet.<Path>builder()
+              .addAll(patternBuildFiles.get())
+              .addAll(buildFilesRead)
+              .build());
+    }
+    queryResultCache.put(expression, buildFileVersion, buildFiles, ImmutableSet.copyOf(result));
+  }
+
+  /**
+   * Memoizes the results of a function in the {@link QueryResultCache}, so that applications of
+   * it which are shared between queries are only evaluated once.
+   */
+  private class CachingQueryFunction implements QueryFunction {
+
+    private final QueryFunction delegate;
+
+    public CachingQueryFunction(QueryFunction delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public String getName() {
+      return delegate.getName();
+    }
+
+    @Override
+    public int getMandatoryArguments() {
+      return delegate.getMandatoryArguments();
+    }
+
+    @Override
+    public ImmutableList<ArgumentType> getArgumentTypes() {
+      return delegate.getArgumentTypes();
+    }
+
+    @Override
+    public Set<QueryTarget> eval(
+        QueryEnvironment env,
+        ImmutableList<Argument> args,
+        ListeningExecutorService executor) throws QueryException, InterruptedException {
+      // The same form as FunctionExpression.toString(), so whole queries share the entries.
+      String expression = getName() + "(" + Joiner.on(", ").join(args) + ")";
+      Optional<ImmutableSet<QueryTarget>> cachedResult =
+          queryResultCache.get(params.getParser(), expression);
+      if (cachedResult.isPresent()) {
+        return cachedResult.get();
+      }
+
+      Set<QueryTarget> result = delegate.eval(env, args, executor);
+      cacheResult(expression, result);
+      return result;
+    }
   }
 
 }
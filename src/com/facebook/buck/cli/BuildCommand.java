@@ -50,6 +50,7 @@ import com.facebook.buck.parser.TargetNodeSpec;
 import com.facebook.buck.rules.ActionGraph;
 import com.facebook.buck.rules.ActionGraphAndResolver;
 import com.facebook.buck.rules.BuildEngine;
+import com.facebook.buck.rules.BuildEnginePerfStats;
 import com.facebook.buck.rules.BuildEvent;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
@@ -58,12 +59,14 @@ import com.facebook.buck.rules.CachingBuildEngineDelegate;
 import com.facebook.buck.rules.Cell;
 import com.facebook.buck.rules.ConstructorArgMarshaller;
 import com.facebook.buck.rules.LocalCachingBuildEngineDelegate;
+import com.facebook.buck.rules.RuleDurationHistory;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.TargetGraphAndBuildTargets;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.TargetNodeFactory;
 import com.facebook.buck.rules.keys.DefaultRuleKeyBuilderFactory;
+import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.slb.ClientSideSlb;
 import com.facebook.buck.slb.HttpService;
 import com.facebook.buck.slb.LoadBalancedService;
@@ -108,6 +111,7 @@ import org.kohsuke.args4j.Argument;
 import org.kohsuke.args4j.Option;
 
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -130,6 +134,7 @@ public class BuildCommand extends AbstractCommand {
   private static final String SHOW_OUTPUT_LONG_ARG = "--show-output";
   private static final String SHOW_FULL_OUTPUT_LONG_ARG = "--show-full-output";
   private static final String SHOW_RULEKEY_LONG_ARG = "--show-rulekey";
+  private static final String REPORT_PERF_LONG_ARG = "--report-perf";
   private static final String DISTRIBUTED_LONG_ARG = "--distributed";
   private static final String DISTRIBUTED_STATE_DUMP_LONG_ARG = "--distributed-state-dump";
 
@@ -197,6 +202,11 @@ public class BuildCommand extends AbstractCommand {
       usage = "Print the rulekey for each of the built rules.")
   private boolean showRuleKey;
 
+  @Option(
+      name = REPORT_PERF_LONG_ARG,
+      usage = "Print a summary of the time spent in each phase of the build engine.")
+  private boolean reportPerf = false;
+
   @Option(
       name = DISTRIBUTED_LONG_ARG,
       usage = "Whether to run in distributed build mode. (experimental)",
@@ -481,6 +491,8 @@ public class BuildCommand extends AbstractCommand {
               executorService,
               params.getArtifactCache(),
               cachingBuildEngineDelegate,
+              // File hashes come from the build state, not from the files we watch.
+              Optional.<DefaultRuleKeyCache>absent(),
               rootCellBuckConfig,
               targetsToBuild);
         } else {
@@ -653,6 +665,7 @@ public class BuildCommand extends AbstractCommand {
         executor,
         artifactCache,
         new LocalCachingBuildEngineDelegate(params.getFileHashCache()),
+        params.getActionGraphCache().getRuleKeyCache(),
         params.getBuckConfig(),
         buildTargets);
   }
@@ -663,25 +676,35 @@ public class BuildCommand extends AbstractCommand {
       WeightedListeningExecutorService executor,
       ArtifactCache artifactCache,
       CachingBuildEngineDelegate cachingBuildEngineDelegate,
+      Optional<DefaultRuleKeyCache> ruleKeyCache,
       BuckConfig rootCellBuckConfig,
       Iterable<? extends HasBuildTarget> targetsToBuild) throws IOException, InterruptedException {
+    Optional<RuleDurationHistory> ruleDurationHistory = Optional.absent();
+    if (rootCellBuckConfig.getBuildScheduling() == CachingBuildEngine.Scheduling.CRITICAL_PATH) {
+      ruleDurationHistory = Optional.of(
+          RuleDurationHistory.load(params.getCell().getFilesystem(), params.getObjectMapper()));
+    }
+    CachingBuildEngine buildEngine = new CachingBuildEngine(
+        cachingBuildEngineDelegate,
+        executor,
+        getBuildEngineMode().or(rootCellBuckConfig.getBuildEngineMode()),
+        rootCellBuckConfig.getBuildDepFiles(),
+        rootCellBuckConfig.getBuildMaxDepFileCacheEntries(),
+        rootCellBuckConfig.getBuildArtifactCacheSizeLimit(),
+        rootCellBuckConfig.getBuildInputRuleKeyFileSizeLimit(),
+        params.getObjectMapper(),
+        actionGraphAndResolver.getResolver(),
+        rootCellBuckConfig.getKeySeed(),
+        ruleKeyCache,
+        ruleDurationHistory,
+        rootCellBuckConfig.getResourceAmountsByRuleType());
     try (Build build = createBuild(
         rootCellBuckConfig,
         actionGraphAndResolver.getActionGraph(),
         actionGraphAndResolver.getResolver(),
         params.getCell(),
         params.getAndroidPlatformTargetSupplier(),
-        new CachingBuildEngine(
-            cachingBuildEngineDelegate,
-            executor,
-            getBuildEngineMode().or(rootCellBuckConfig.getBuildEngineMode()),
-            rootCellBuckConfig.getBuildDepFiles(),
-            rootCellBuckConfig.getBuildMaxDepFileCacheEntries(),
-            rootCellBuckConfig.getBuildArtifactCacheSizeLimit(),
-            rootCellBuckConfig.getBuildInputRuleKeyFileSizeLimit(),
-            params.getObjectMapper(),
-            actionGraphAndResolver.getResolver(),
-            rootCellBuckConfig.getKeySeed()),
+        buildEngine,
         artifactCache,
         params.getConsole(),
         params.getBuckEventBus(),
@@ -695,12 +718,27 @@ public class BuildCommand extends AbstractCommand {
         Optional.<TargetDeviceOptions>absent(),
         params.getExecutors())) {
       lastBuild = build;
-      return build.executeAndPrintFailuresToEventBus(
+      int exitCode = build.executeAndPrintFailuresToEventBus(
           targetsToBuild,
           isKeepGoing(),
           params.getBuckEventBus(),
           params.getConsole(),
           getPathToBuildReport(rootCellBuckConfig));
+      if (reportPerf) {
+        printPerfReport(params, buildEngine.getPerfStats());
+      }
+      if (ruleDurationHistory.isPresent()) {
+        ruleDurationHistory.get().save(params.getCell().getFilesystem(), params.getObjectMapper());
+      }
+      return exitCode;
+    }
+  }
+
+  private void printPerfReport(CommandRunnerParams params, BuildEnginePerfStats perfStats) {
+    PrintStream stdErr = params.getConsole().getStdErr();
+    stdErr.println("Time spent in each build engine phase:");
+    for (String line : perfStats.getSummary()) {
+      stdErr.println("  " + line);
     }
   }
 
@@ -742,6 +780,9 @@ public class BuildCommand extends AbstractCommand {
     if (shouldReportAbsolutePaths) {
       builder.add(REPORT_ABSOLUTE_PATHS);
     }
+    if (reportPerf) {
+      builder.add(REPORT_PERF_LONG_ARG);
+    }
     return builder.build();
   }
 
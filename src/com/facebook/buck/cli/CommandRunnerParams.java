@@ -66,6 +66,7 @@ class CommandRunnerParams {
   private final Map<ExecutionContext.ExecutorPool, ListeningExecutorService> executors;
   private final BuildEnvironmentDescription buildEnvironmentDescription;
   private final ActionGraphCache actionGraphCache;
+  private final QueryResultCache queryResultCache;
 
   public CommandRunnerParams(
       Console console,
@@ -87,7 +88,8 @@ class CommandRunnerParams {
       FileHashCache fileHashCache,
       Map<ExecutionContext.ExecutorPool, ListeningExecutorService> executors,
       BuildEnvironmentDescription buildEnvironmentDescription,
-      ActionGraphCache actionGraphCache) {
+      ActionGraphCache actionGraphCache,
+      QueryResultCache queryResultCache) {
     this.console = console;
     this.stdIn = stdIn;
     this.cell = cell;
@@ -108,6 +110,7 @@ class CommandRunnerParams {
     this.executors = executors;
     this.buildEnvironmentDescription = buildEnvironmentDescription;
     this.actionGraphCache = actionGraphCache;
+    this.queryResultCache = queryResultCache;
   }
 
   public Console getConsole() {
@@ -186,6 +189,10 @@ class CommandRunnerParams {
     return actionGraphCache;
   }
 
+  public QueryResultCache getQueryResultCache() {
+    return queryResultCache;
+  }
+
   public BuildStamper getBuildStamper() {
     return stamper;
   }
@@ -68,7 +68,7 @@ public class CommandThreadManager implements AutoCloseable {
     this.executor =
         new WeightedListeningExecutorService(
             new ListeningSemaphore(
-                concurrencyLimit.threadLimit,
+                concurrencyLimit.resourceLimits,
                 ListeningSemaphore.Cap.SOFT,
                 ListeningSemaphore.Fairness.FAIR),
             /* defaultPermits */ 1,
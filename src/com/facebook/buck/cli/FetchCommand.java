@@ -32,7 +32,9 @@ import com.facebook.buck.rules.BuildEvent;
 import com.facebook.buck.rules.CachingBuildEngine;
 import com.facebook.buck.rules.Description;
 import com.facebook.buck.rules.LocalCachingBuildEngineDelegate;
+import com.facebook.buck.rules.RuleDurationHistory;
 import com.facebook.buck.rules.TargetGraphAndBuildTargets;
+import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.step.AdbOptions;
 import com.facebook.buck.step.TargetDevice;
 import com.facebook.buck.step.TargetDeviceOptions;
@@ -113,7 +115,10 @@ public class FetchCommand extends BuildCommand {
               params.getBuckConfig().getBuildInputRuleKeyFileSizeLimit(),
               params.getObjectMapper(),
               actionGraphAndResolver.getResolver(),
-              params.getBuckConfig().getKeySeed()),
+              params.getBuckConfig().getKeySeed(),
+              Optional.<DefaultRuleKeyCache>absent(),
+              Optional.<RuleDurationHistory>absent(),
+              params.getBuckConfig().getResourceAmountsByRuleType()),
           params.getArtifactCache(),
           params.getConsole(),
           params.getBuckEventBus(),
@@ -78,6 +78,7 @@ import com.facebook.buck.rules.KnownBuildRuleTypesFactory;
 import com.facebook.buck.rules.RelativeCellName;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
+import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.test.TestConfig;
 import com.facebook.buck.test.TestResultSummaryVerbosity;
@@ -311,6 +312,7 @@ public final class Main {
     private final Optional<WebServer> webServer;
     private final UUID watchmanQueryUUID;
     private final ActionGraphCache actionGraphCache;
+    private final QueryResultCache queryResultCache;
     private final BroadcastEventListener broadcastEventListener;
 
     public Daemon(
@@ -327,7 +329,10 @@ public final class Main {
       this.fileEventBus = new EventBus("file-change-events");
 
       this.broadcastEventListener = new BroadcastEventListener();
-      this.actionGraphCache = new ActionGraphCache(broadcastEventListener);
+      this.actionGraphCache = new ActionGraphCache(
+          broadcastEventListener,
+          Optional.of(new DefaultRuleKeyCache(cell.getFilesystem())));
+      this.queryResultCache = new QueryResultCache();
 
       TypeCoercerFactory typeCoercerFactory = new DefaultTypeCoercerFactory(objectMapper);
       this.parser = new Parser(
@@ -410,6 +415,10 @@ public final class Main {
       return actionGraphCache;
     }
 
+    private QueryResultCache getQueryResultCache() {
+      return queryResultCache;
+    }
+
     private BroadcastEventListener getBroadcastEventListener() {
       return broadcastEventListener;
     }
@@ -1053,6 +1062,7 @@ public final class Main {
           // Create or get Parser and invalidate cached command parameters.
           Parser parser = null;
           ActionGraphCache actionGraphCache = null;
+          QueryResultCache queryResultCache = null;
 
           if (isDaemon) {
             try {
@@ -1075,6 +1085,7 @@ public final class Main {
                   watchmanFreshInstanceAction,
                   watchmanDiagnosticCache);
               actionGraphCache = daemon.getActionGraphCache();
+              queryResultCache = daemon.getQueryResultCache();
             } catch (WatchmanWatcherException | IOException e) {
               buildEventBus.post(
                   ConsoleEvent.warning(
@@ -1087,6 +1098,10 @@ public final class Main {
             actionGraphCache = new ActionGraphCache(broadcastEventListener);
           }
 
+          if (queryResultCache == null) {
+            queryResultCache = new QueryResultCache();
+          }
+
           if (parser == null) {
             TypeCoercerFactory typeCoercerFactory = new DefaultTypeCoercerFactory(objectMapper);
             parser = new Parser(
@@ -1101,6 +1116,10 @@ public final class Main {
           //
           // The counters will be unregistered once the counter registry is closed.
           counterRegistry.registerCounters(parser.getCounters());
+          Optional<DefaultRuleKeyCache> ruleKeyCache = actionGraphCache.getRuleKeyCache();
+          if (ruleKeyCache.isPresent()) {
+            counterRegistry.registerCounters(ruleKeyCache.get().getCounters());
+          }
 
           JavaUtilsLoggingBuildListener.ensureLogFileIsWritten(rootCell.getFilesystem());
 
@@ -1151,7 +1170,8 @@ public final class Main {
                   fileHashCache,
                   executors,
                   buildEnvironmentDescription,
-                  actionGraphCache));
+                  actionGraphCache,
+                  queryResultCache));
           // Wait for HTTP writes to complete.
           closeHttpExecutorService(
               cacheBuckConfig, Optional.of(buildEventBus), httpWriteExecutorService);
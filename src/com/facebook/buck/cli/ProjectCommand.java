@@ -30,6 +30,7 @@ import com.facebook.buck.cxx.CxxBuckConfig;
 import com.facebook.buck.cxx.CxxPlatform;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.event.ProjectGenerationEvent;
+import com.facebook.buck.graph.AcyclicDepthFirstPostOrderTraversal.CycleException;
 import com.facebook.buck.halide.HalideBuckConfig;
 import com.facebook.buck.io.ExecutableFinder;
 import com.facebook.buck.json.BuildFileParseException;
@@ -63,6 +64,7 @@ import com.facebook.buck.rules.ProjectConfig;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.TargetGraphAndTargets;
+import com.facebook.buck.rules.TargetGraphHashing;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.util.HumanReadableException;
@@ -88,6 +90,7 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
@@ -246,6 +249,13 @@ public class ProjectCommand extends BuildCommand {
           "the module representing that target.")
   private boolean excludeArtifacts = false;
 
+  @Option(
+      name = "--incremental",
+      usage = "Only regenerate the IntelliJ modules whose targets changed since the last project " +
+          "generated with this option. Directories added without changing any target are only " +
+          "excluded once their module is regenerated.")
+  private boolean incremental = false;
+
   @Option(
       name = "--skip-build",
       usage = "Don't try to build any of the targets for the generated project.")
@@ -621,7 +631,7 @@ public class ProjectCommand extends BuildCommand {
   private ImmutableSet<BuildTarget> writeProjectAndGetRequiredBuildTargets(
       CommandRunnerParams params,
       final TargetGraphAndTargets targetGraphAndTargets
-  ) throws IOException {
+  ) throws IOException, InterruptedException {
     ActionGraphAndResolver result = Preconditions.checkNotNull(
         ActionGraphCache.getFreshActionGraph(
             params.getBuckEventBus(),
@@ -641,11 +651,38 @@ public class ProjectCommand extends BuildCommand {
         sourcePathResolver,
         params.getCell().getFilesystem(),
         getIntellijAggregationMode(params.getBuckConfig()),
-        params.getBuckConfig());
+        params.getBuckConfig(),
+        getProjectExecutor(params),
+        incremental ?
+            Optional.of(hashTargetGraph(params, targetGraphAndTargets.getTargetGraph())) :
+            Optional.<ImmutableMap<BuildTarget, HashCode>>absent());
 
     return project.write(runIjCleaner, excludeArtifacts);
   }
 
+  private static ListeningExecutorService getProjectExecutor(CommandRunnerParams params) {
+    return Preconditions.checkNotNull(
+        params.getExecutors().get(ExecutionContext.ExecutorPool.PROJECT),
+        "CommandRunnerParams does not have executor for PROJECT pool");
+  }
+
+  private static ImmutableMap<BuildTarget, HashCode> hashTargetGraph(
+      CommandRunnerParams params,
+      TargetGraph targetGraph) {
+    try {
+      return new TargetGraphHashing(
+          params.getBuckEventBus(),
+          targetGraph,
+          params.getFileHashCache(),
+          targetGraph.getNodes())
+          .setNumThreads(params.getBuckConfig().getNumThreads())
+          .setRawHashCache(params.getParser().getTargetNodeRawHashCache())
+          .hashTargetGraph();
+    } catch (CycleException e) {
+      throw new HumanReadableException(e.getMessage());
+    }
+  }
+
   private int buildRequiredTargetsWithoutUsingCacheForAnnotatedTargets(
       CommandRunnerParams params,
       final TargetGraphAndTargets targetGraphAndTargets,
@@ -992,12 +1029,9 @@ public class ProjectCommand extends BuildCommand {
           cxxBuckConfig,
           appleConfig);
       generator.setGroupableTests(groupableTests);
-      ListeningExecutorService executorService = params.getExecutors().get(
-          ExecutionContext.ExecutorPool.PROJECT);
-      Preconditions.checkNotNull(
-          executorService,
-          "CommandRunnerParams does not have executor for PROJECT pool");
-      generator.generateWorkspaceAndDependentProjects(projectGenerators, executorService);
+      generator.generateWorkspaceAndDependentProjects(
+          projectGenerators,
+          getProjectExecutor(params));
       ImmutableSet<BuildTarget> requiredBuildTargetsForWorkspace =
           generator.getRequiredBuildTargets();
       LOG.debug(
@@ -241,7 +241,7 @@ public class QueryCommand extends AbstractCommand {
     if (shouldOutputAttributes()) {
       collectAndPrintAttributes(params, executor, env, queryResult);
     } else if (shouldGenerateDotOutput()) {
-      printDotOutput(params, env, queryResult);
+      printDotOutput(params, env, executor, queryResult);
     } else if (shouldGenerateJsonOutput()) {
       CommandHelper.printJSON(params, queryResult);
     } else {
@@ -253,8 +253,11 @@ public class QueryCommand extends AbstractCommand {
   private void printDotOutput(
       CommandRunnerParams params,
       BuckQueryEnvironment env,
+      ListeningExecutorService executor,
       Set<QueryTarget> queryResult)
       throws IOException, QueryException, InterruptedException {
+    // A cached result may not have needed the target graph to be built.
+    env.buildTransitiveClosure(queryResult, Integer.MAX_VALUE, executor);
     Dot.writeSubgraphOutput(
         env.getTargetGraph(),
         "result_graph",
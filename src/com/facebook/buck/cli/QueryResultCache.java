@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.parser.Parser;
+import com.facebook.buck.query.QueryTarget;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+import java.nio.file.Path;
+
+/**
+ * Results of query expressions, kept between commands by the daemon.
+ * <p>
+ * Each result remembers the build files it was computed from, and is dropped when the {@link
+ * Parser} reports any of them has been invalidated since, so edits to unrelated build files don't
+ * throw it away.
+ */
+public class QueryResultCache {
+
+  private static final Logger LOG = Logger.get(QueryResultCache.class);
+
+  private static final int MAX_ENTRIES = 1000;
+
+  private final Cache<String, Entry> entries =
+      CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).build();
+
+  /**
+   * @param expression a query expression, as printed by
+   *     {@link com.facebook.buck.query.QueryExpression#toString()}.
+   * @return the result of the expression, if it was computed before and is still valid.
+   */
+  public Optional<ImmutableSet<QueryTarget>> get(Parser parser, String expression) {
+    Entry entry = entries.getIfPresent(expression);
+    if (entry == null) {
+      return Optional.absent();
+    }
+    boolean unchanged = entry.buildFiles.isPresent() ?
+        parser.isUnchangedSince(entry.version, entry.buildFiles.get()) :
+        parser.isUnchangedSince(entry.version);
+    if (!unchanged) {
+      LOG.debug("Build files of %s have changed since it was evaluated.", expression);
+      entries.invalidate(expression);
+      return Optional.absent();
+    }
+    return Optional.of(entry.result);
+  }
+
+  /**
+   * @param version the {@link Parser#getBuildFileVersion()} from before the expression was
+   *     evaluated.
+   * @param buildFiles the absolute paths of every build file which was read to compute the result,
+   *     or absent if the result depends on every build file there is.
+   */
+  public void put(
+      String expression,
+      long version,
+      Optional<ImmutableSet<Path>> buildFiles,
+      ImmutableSet<QueryTarget> result) {
+    entries.put(expression, new Entry(version, buildFiles, result));
+  }
+
+  private static class Entry {
+
+    private final long version;
+    private final Optional<ImmutableSet<Path>> buildFiles;
+    private final ImmutableSet<QueryTarget> result;
+
+    public Entry(
+        long version,
+        Optional<ImmutableSet<Path>> buildFiles,
+        ImmutableSet<QueryTarget> result) {
+      this.version = version;
+      this.buildFiles = buildFiles;
+      this.result = result;
+    }
+  }
+}
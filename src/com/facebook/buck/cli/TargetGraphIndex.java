@@ -0,0 +1,355 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.query.QueryBuildTarget;
+import com.facebook.buck.query.QueryTarget;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.TargetNode;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * A read-only view of a {@link TargetGraph} in which every node has a dense integer id, so that
+ * sets of nodes can be represented as {@link BitSet}s and traversals don't have to hash or allocate
+ * per edge.
+ * <p>
+ * Ids are assigned in the natural order of the {@link QueryTarget}s, so iterating over a set of
+ * ids in ascending order yields the targets sorted.
+ * <p>
+ * An index is only as long-lived as the {@link BuckQueryEnvironment} graph it was built from: it is
+ * shared by all the queries a command evaluates against that graph, but not across commands, even
+ * in the daemon.  Each command builds a new graph, and finding an index built for an equal graph
+ * would mean hashing and comparing every node of it.
+ */
+final class TargetGraphIndex {
+
+  private final QueryTarget[] targets;
+  private final Map<BuildTarget, Integer> ids;
+  private final int[][] fwdDeps;
+  private final int[][] reverseDeps;
+
+  private TargetGraphIndex(TargetGraph graph) {
+    SortedMap<QueryTarget, TargetNode<?>> sortedNodes = new TreeMap<>();
+    for (TargetNode<?> node : graph.getNodes()) {
+      sortedNodes.put(QueryBuildTarget.of(node.getBuildTarget()), node);
+    }
+    targets = sortedNodes.keySet().toArray(new QueryTarget[sortedNodes.size()]);
+    TargetNode<?>[] nodes = sortedNodes.values().toArray(new TargetNode<?>[sortedNodes.size()]);
+    ids = new HashMap<>(nodes.length * 2);
+    for (int id = 0; id < nodes.length; id++) {
+      ids.put(nodes[id].getBuildTarget(), id);
+    }
+
+    fwdDeps = new int[nodes.length][];
+    int[] reverseDepCounts = new int[nodes.length];
+    for (int id = 0; id < nodes.length; id++) {
+      fwdDeps[id] = getDepIds(graph.getOutgoingNodesFor(nodes[id]));
+      for (int dep : fwdDeps[id]) {
+        reverseDepCounts[dep]++;
+      }
+    }
+    // Filling the reverse edges in ascending order of the dependent keeps each array sorted.
+    reverseDeps = new int[nodes.length][];
+    for (int id = 0; id < reverseDeps.length; id++) {
+      reverseDeps[id] = new int[reverseDepCounts[id]];
+      reverseDepCounts[id] = 0;
+    }
+    for (int id = 0; id < fwdDeps.length; id++) {
+      for (int dep : fwdDeps[id]) {
+        reverseDeps[dep][reverseDepCounts[dep]++] = id;
+      }
+    }
+  }
+
+  public static TargetGraphIndex of(TargetGraph graph) {
+    return new TargetGraphIndex(graph);
+  }
+
+  private int[] getDepIds(Set<TargetNode<?>> nodes) {
+    int[] result = new int[nodes.size()];
+    int i = 0;
+    for (TargetNode<?> node : nodes) {
+      result[i++] = Preconditions.checkNotNull(ids.get(node.getBuildTarget()));
+    }
+    Arrays.sort(result);
+    return result;
+  }
+
+  public int size() {
+    return targets.length;
+  }
+
+  /**
+   * @return the id of the given target, or -1 if it is not in the graph.
+   */
+  public int getId(QueryTarget target) {
+    if (!(target instanceof QueryBuildTarget)) {
+      return -1;
+    }
+    Integer id = ids.get(((QueryBuildTarget) target).getBuildTarget());
+    return id == null ? -1 : id;
+  }
+
+  public QueryTarget getTarget(int id) {
+    return targets[id];
+  }
+
+  /**
+   * @return the ids of the given targets in iteration order.  Targets which are not in the graph
+   *     have no dependencies or dependents in it, and so are left out.
+   */
+  public int[] getIds(Iterable<QueryTarget> targets) {
+    IntList result = new IntList();
+    for (QueryTarget target : targets) {
+      int id = getId(target);
+      if (id >= 0) {
+        result.add(id);
+      }
+    }
+    return Arrays.copyOf(result.values, result.size);
+  }
+
+  /**
+   * @return the set of targets, as an immutable view which iterates in ascending id order.
+   */
+  public Set<QueryTarget> toSet(BitSet members) {
+    return new DenseQueryTargetSet(this, members, null);
+  }
+
+  /**
+   * @return the set of targets, as an immutable view which iterates in the given order.
+   */
+  public Set<QueryTarget> toSet(int[] order, int length) {
+    BitSet members = new BitSet(targets.length);
+    for (int i = 0; i < length; i++) {
+      members.set(order[i]);
+    }
+    return new DenseQueryTargetSet(this, members, Arrays.copyOf(order, length));
+  }
+
+  /**
+   * @return the direct forward (or reverse) dependencies of each of the given targets, in the order
+   *     the targets are given and then ascending order.
+   */
+  public Set<QueryTarget> getDirectDeps(int[] roots, boolean reverse) {
+    int[][] edges = reverse ? reverseDeps : fwdDeps;
+    BitSet seen = new BitSet(targets.length);
+    IntList order = new IntList();
+    for (int root : roots) {
+      for (int dep : edges[root]) {
+        if (!seen.get(dep)) {
+          seen.set(dep);
+          order.add(dep);
+        }
+      }
+    }
+    return toSet(order.values, order.size);
+  }
+
+  /**
+   * @return every target reachable from the roots, including the roots themselves.
+   */
+  public BitSet getTransitiveClosure(int[] roots) {
+    BitSet visited = new BitSet(targets.length);
+    IntList stack = new IntList();
+    for (int root : roots) {
+      if (!visited.get(root)) {
+        visited.set(root);
+        stack.add(root);
+      }
+    }
+    while (stack.size > 0) {
+      for (int dep : fwdDeps[stack.values[--stack.size]]) {
+        if (!visited.get(dep)) {
+          visited.set(dep);
+          stack.add(dep);
+        }
+      }
+    }
+    return visited;
+  }
+
+  /**
+   * Breadth first search from the roots, level by level, until there are no more unvisited nodes
+   * or {@code maxDepth} levels have been traversed past the roots.
+   *
+   * @param universe if not null, targets outside of it are neither returned nor traversed.
+   * @return the targets in the order they were reached, which is the order of the roots followed by
+   *     each following level in turn.
+   */
+  public Set<QueryTarget> breadthFirst(
+      int[] roots,
+      int maxDepth,
+      boolean reverse,
+      @Nullable BitSet universe) {
+    int[][] edges = reverse ? reverseDeps : fwdDeps;
+    BitSet visited = new BitSet(targets.length);
+    IntList order = new IntList();
+    IntList current = new IntList();
+    for (int root : roots) {
+      current.add(root);
+    }
+
+    // Iterating maxDepth+1 times because the first one processes the roots.
+    for (int depth = 0; depth <= maxDepth && current.size > 0; depth++) {
+      int levelStart = order.size;
+      for (int i = 0; i < current.size; i++) {
+        int id = current.values[i];
+        if (!visited.get(id) && (universe == null || universe.get(id))) {
+          visited.set(id);
+          order.add(id);
+        }
+      }
+      IntList next = new IntList();
+      BitSet queued = new BitSet(targets.length);
+      for (int i = levelStart; i < order.size; i++) {
+        for (int dep : edges[order.values[i]]) {
+          if (!visited.get(dep) && !queued.get(dep)) {
+            queued.set(dep);
+            next.add(dep);
+          }
+        }
+      }
+      current = next;
+    }
+    return toSet(order.values, order.size);
+  }
+
+  /**
+   * @return the targets which lie on a path from any of {@code from} to any of {@code to},
+   *     including both ends.
+   */
+  public BitSet getAllPaths(int[] from, int[] to) {
+    BitSet reachable = getTransitiveClosure(from);
+    BitSet result = new BitSet(targets.length);
+    IntList worklist = new IntList();
+    for (int id : to) {
+      if (reachable.get(id) && !result.get(id)) {
+        result.set(id);
+        worklist.add(id);
+      }
+    }
+    while (worklist.size > 0) {
+      for (int dependent : reverseDeps[worklist.values[--worklist.size]]) {
+        if (reachable.get(dependent) && !result.get(dependent)) {
+          result.set(dependent);
+          worklist.add(dependent);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * A growable array of ids, which saves boxing every id on the way through a traversal.
+   */
+  private static class IntList {
+    private int[] values = new int[16];
+    private int size = 0;
+
+    public void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+  }
+
+  /**
+   * An immutable set of targets from a {@link TargetGraphIndex}, which tests membership with a
+   * single bit lookup.
+   */
+  private static class DenseQueryTargetSet extends AbstractSet<QueryTarget> {
+
+    private final TargetGraphIndex index;
+    private final BitSet members;
+    @Nullable private final int[] order;
+    private final int size;
+
+    public DenseQueryTargetSet(
+        TargetGraphIndex index,
+        BitSet members,
+        @Nullable int[] order) {
+      this.index = index;
+      this.members = members;
+      this.order = order;
+      this.size = members.cardinality();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      if (!(o instanceof QueryTarget)) {
+        return false;
+      }
+      int id = index.getId((QueryTarget) o);
+      return id >= 0 && members.get(id);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public Iterator<QueryTarget> iterator() {
+      if (order != null) {
+        return Iterators.forArray(resolve(order));
+      }
+      int[] ids = new int[size];
+      int i = 0;
+      for (int id = members.nextSetBit(0); id >= 0; id = members.nextSetBit(id + 1)) {
+        ids[i++] = id;
+      }
+      return Iterators.forArray(resolve(ids));
+    }
+
+    private QueryTarget[] resolve(int[] ids) {
+      QueryTarget[] result = new QueryTarget[ids.length];
+      for (int i = 0; i < ids.length; i++) {
+        result[i] = index.getTarget(ids[i]);
+      }
+      return result;
+    }
+
+    @Override
+    public int hashCode() {
+      return super.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (o instanceof DenseQueryTargetSet && ((DenseQueryTargetSet) o).index == index) {
+        return members.equals(((DenseQueryTargetSet) o).members);
+      }
+      return super.equals(o);
+    }
+  }
+}
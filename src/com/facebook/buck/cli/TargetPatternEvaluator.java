@@ -20,6 +20,7 @@ import com.facebook.buck.json.BuildFileParseException;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetException;
+import com.facebook.buck.parser.BuildFileSpec;
 import com.facebook.buck.parser.BuildTargetPatternTargetNodeParser;
 import com.facebook.buck.parser.ParserConfig;
 import com.facebook.buck.parser.SpeculativeParsing;
@@ -27,8 +28,10 @@ import com.facebook.buck.parser.TargetNodeSpec;
 import com.facebook.buck.query.QueryBuildTarget;
 import com.facebook.buck.query.QueryFileTarget;
 import com.facebook.buck.query.QueryTarget;
+import com.facebook.buck.rules.Cell;
 import com.facebook.buck.util.MoreMaps;
 import com.google.common.base.Functions;
+import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -39,8 +42,10 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class TargetPatternEvaluator {
   private static final Logger LOG = Logger.get(TargetPatternEvaluator.class);
@@ -52,6 +57,9 @@ public class TargetPatternEvaluator {
 
   private Map<String, ImmutableSet<QueryTarget>> resolvedTargets = new HashMap<>();
 
+  private Set<Path> buildFilesRead = new HashSet<>();
+  private boolean allBuildFilesRead = false;
+
   public TargetPatternEvaluator(CommandRunnerParams params, boolean enableProfiling) {
     this.enableProfiling = enableProfiling;
     this.params = params;
@@ -113,6 +121,16 @@ public class TargetPatternEvaluator {
     return resolved.build();
   }
 
+  /**
+   * @return the absolute paths of the build files which have been read to resolve the patterns so
+   *     far, or absent if the patterns match targets in any build file there is.
+   */
+  public Optional<ImmutableSet<Path>> getBuildFilesRead() {
+    return allBuildFilesRead ?
+        Optional.<ImmutableSet<Path>>absent() :
+        Optional.of(ImmutableSet.copyOf(buildFilesRead));
+  }
+
   ImmutableSet<QueryTarget> resolveFilePattern(String pattern) throws IOException {
     ImmutableSet<Path> filePaths =
         PathArguments.getCanonicalFilesUnderProjectRoot(projectRoot, ImmutableList.of(pattern))
@@ -133,7 +151,19 @@ public class TargetPatternEvaluator {
     // The returned list of nodes maintains the spec list ordering.
     List<TargetNodeSpec> specs = new ArrayList<>();
     for (String pattern : patterns) {
-      specs.add(targetNodeSpecParser.parse(params.getCell().getCellRoots(), pattern));
+      TargetNodeSpec spec = targetNodeSpecParser.parse(params.getCell().getCellRoots(), pattern);
+      specs.add(spec);
+
+      BuildFileSpec buildFileSpec = spec.getBuildFileSpec();
+      if (buildFileSpec.isRecursive()) {
+        allBuildFilesRead = true;
+      } else {
+        Cell cell = params.getCell().getCell(buildFileSpec.getCellPath());
+        buildFilesRead.add(
+            cell.getFilesystem()
+                .resolve(buildFileSpec.getBasePath())
+                .resolve(cell.getBuildFileName()));
+      }
     }
     ImmutableList<ImmutableSet<BuildTarget>> buildTargets =
         params.getParser().resolveTargetSpecs(
@@ -24,6 +24,7 @@ import com.facebook.buck.graph.GraphTraversable;
 import com.facebook.buck.hashing.FileHashLoader;
 import com.facebook.buck.hashing.FilePathHashLoader;
 import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.json.BuildFileParseException;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildFileTree;
@@ -33,10 +34,11 @@ import com.facebook.buck.model.HasBuildTarget;
 import com.facebook.buck.model.HasSourceUnderTest;
 import com.facebook.buck.model.HasTests;
 import com.facebook.buck.model.InMemoryBuildFileTree;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.parser.BuildFileSpec;
+import com.facebook.buck.parser.NoSuchBuildTargetException;
 import com.facebook.buck.parser.ParserConfig;
 import com.facebook.buck.parser.TargetNodePredicateSpec;
-import com.facebook.buck.rules.ActionGraph;
 import com.facebook.buck.rules.ActionGraphAndResolver;
 import com.facebook.buck.rules.ActionGraphCache;
 import com.facebook.buck.rules.BuildRule;
@@ -49,6 +51,8 @@ import com.facebook.buck.rules.TargetGraphAndTargetNodes;
 import com.facebook.buck.rules.TargetGraphAndTargets;
 import com.facebook.buck.rules.TargetGraphHashing;
 import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.rules.TargetNodeRawHashCache;
+import com.facebook.buck.rules.TargetNodeRawHashManifest;
 import com.facebook.buck.rules.TargetNodes;
 import com.facebook.buck.rules.keys.DefaultRuleKeyBuilderFactory;
 import com.facebook.buck.util.HumanReadableException;
@@ -65,6 +69,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -74,9 +79,11 @@ import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
 import org.immutables.value.Value;
@@ -88,17 +95,26 @@ import java.io.PrintStream;
 import java.io.StringWriter;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 public class TargetsCommand extends AbstractCommand {
 
   private static final Logger LOG = Logger.get(TargetsCommand.class);
 
+  /**
+   * How many targets per thread may have their results computed ahead of the one being printed in
+   * {@code --streaming} mode.
+   */
+  private static final int STREAMING_TARGETS_PER_THREAD = 16;
+
   private static final Function<TargetNode<?>, Iterable<BuildTarget>> NODE_TO_TEST_TARGETS =
       new Function<TargetNode<?>, Iterable<BuildTarget>>() {
         @Override
@@ -185,6 +201,27 @@ public class TargetsCommand extends AbstractCommand {
   @SuppressFieldNotInitialized
   private Supplier<ImmutableSet<String>> targetHashModifiedPaths;
 
+  @Option(name = "--incremental-target-hash",
+      usage = "Modifies computation of target hashes. Reuses the hashes of targets' own inputs " +
+          "saved by the previous run with this option, except for targets which reference a " +
+          "file from --target-hash-changed-paths. Only effective when --target-hash-file-mode " +
+          "is PATHS_AND_CONTENTS.")
+  private boolean isIncrementalTargetHash;
+
+  @Option(name = "--target-hash-changed-paths",
+      usage = "With --incremental-target-hash, every file changed since the previous run with " +
+          "--incremental-target-hash, for example as listed by `watchman since`. If omitted, " +
+          "no saved hashes are reused.",
+      handler = StringSetOptionHandler.class)
+  @SuppressFieldNotInitialized
+  private Supplier<ImmutableSet<String>> targetHashChangedPaths;
+
+  @Option(name = "--streaming",
+      usage = "Print each target as soon as its results are available, rather than once they " +
+          "have been computed for every target. Rule keys and outputs are computed in parallel. " +
+          "With --json, a JSON object is printed on each line instead of a single JSON array.")
+  private boolean isStreaming;
+
   @Option(name = "--output-attributes",
       usage = "List of attributes to output, --output-attributes attr1 att2 ... attrN. " +
           "Attributes can be regular expressions. ",
@@ -251,6 +288,11 @@ public class TargetsCommand extends AbstractCommand {
     return isShowTargetHash;
   }
 
+  /** @return {@code true} if {@code --streaming} was specified. */
+  public boolean isStreaming() {
+    return isStreaming;
+  }
+
   /** @return mode passed to {@code --target-hash-file-mode}. */
   public TargetHashFileMode getTargetHashFileMode() {
     return targetHashFileMode;
@@ -285,11 +327,30 @@ public class TargetsCommand extends AbstractCommand {
         .toSet();
   }
 
+  /** @return {@code true} if {@code --incremental-target-hash} was specified. */
+  public boolean isIncrementalTargetHash() {
+    return isIncrementalTargetHash;
+  }
+
+  /** @return absolute paths passed to {@code --target-hash-changed-paths}. */
+  public ImmutableSet<Path> getTargetHashChangedPaths(Path projectRoot) {
+    ImmutableSet.Builder<Path> changedPaths = ImmutableSet.builder();
+    for (String path : targetHashChangedPaths.get()) {
+      changedPaths.add(projectRoot.resolve(path).normalize());
+    }
+    return changedPaths.build();
+  }
+
   @Override
   public int runWithoutHelp(CommandRunnerParams params) throws IOException, InterruptedException {
     if (isShowRuleKey() && isShowTargetHash()) {
       throw new HumanReadableException("Cannot show rule key and target hash at the same time.");
     }
+    if (isIncrementalTargetHash() &&
+        getTargetHashFileMode() != TargetHashFileMode.PATHS_AND_CONTENTS) {
+      throw new HumanReadableException(
+          "--incremental-target-hash requires --target-hash-file-mode=PATHS_AND_CONTENTS.");
+    }
 
     try (CommandThreadManager pool = new CommandThreadManager(
         "Targets",
@@ -325,14 +386,26 @@ public class TargetsCommand extends AbstractCommand {
 
     if (isShowCellPath() || isShowOutput() || isShowFullOutput() || isShowRuleKey() ||
         isShowTargetHash()) {
-      ImmutableMap<BuildTarget, ShowOptions> showRulesResult;
       TargetGraphAndBuildTargets targetGraphAndBuildTargetsForShowRules =
           buildTargetGraphAndTargetsForShowRules(params, executor, buildRuleTypes);
-      showRulesResult = computeShowRules(
-          params,
-          executor,
+      TargetGraphAndTargetNodes targetGraphAndTargetNodes =
           TargetGraphAndTargetNodes.fromTargetGraphAndBuildTargets(
-              targetGraphAndBuildTargetsForShowRules));
+              targetGraphAndBuildTargetsForShowRules);
+      ShowOptionsComputer showOptionsComputer =
+          createShowOptionsComputer(params, executor, targetGraphAndTargetNodes);
+
+      if (isStreaming()) {
+        printShowRulesStreaming(
+            params,
+            executor,
+            targetGraphAndTargetNodes.getTargetNodes(),
+            showOptionsComputer);
+        return 0;
+      }
+
+      ImmutableMap<BuildTarget, ShowOptions> showRulesResult = computeShowRules(
+          targetGraphAndTargetNodes.getTargetNodes(),
+          showOptionsComputer);
 
       if (shouldUseJsonFormat()) {
         Iterable<TargetNode<?>> matchingNodes =
@@ -424,7 +497,17 @@ public class TargetsCommand extends AbstractCommand {
       ListeningExecutorService executor,
       SortedMap<String, TargetNode<?>> matchingNodes)
       throws IOException, InterruptedException, BuildFileParseException {
-    if (shouldUseJsonFormat()) {
+    if (shouldUseJsonFormat() && isStreaming()) {
+      PatternsMatcher attributesPatternsMatcher = new PatternsMatcher(getOutputAttributes());
+      for (TargetNode<?> targetNode : matchingNodes.values()) {
+        printJsonLineForTarget(
+            params,
+            executor,
+            targetNode,
+            Optional.<ShowOptions>absent(),
+            attributesPatternsMatcher);
+      }
+    } else if (shouldUseJsonFormat()) {
       printJsonForTargets(
           params,
           executor,
@@ -533,24 +616,90 @@ public class TargetsCommand extends AbstractCommand {
       CommandRunnerParams params) {
     for (Entry<BuildTarget, ShowOptions> entry :
         ImmutableSortedMap.copyOf(showRulesResult).entrySet()) {
-      ImmutableList.Builder<String> builder = ImmutableList.builder();
-      builder.add(entry.getKey().getFullyQualifiedName());
-      ShowOptions showOptions = entry.getValue();
-      if (showOptions.getRuleKey().isPresent()) {
-        builder.add(showOptions.getRuleKey().get());
-      }
-      if (isShowCellPath()) {
-        builder.add(entry.getKey().getCellPath().toString());
-      }
-      if (showOptions.getOutputPath().isPresent()) {
-        builder.add(showOptions.getOutputPath().get());
-      }
-      if (showOptions.getTargetHash().isPresent()) {
-        builder.add(showOptions.getTargetHash().get());
+      params.getConsole().getStdOut().println(formatShowRule(entry.getKey(), entry.getValue()));
+    }
+
+  }
+
+  private String formatShowRule(BuildTarget buildTarget, ShowOptions showOptions) {
+    ImmutableList.Builder<String> builder = ImmutableList.builder();
+    builder.add(buildTarget.getFullyQualifiedName());
+    if (showOptions.getRuleKey().isPresent()) {
+      builder.add(showOptions.getRuleKey().get());
+    }
+    if (isShowCellPath()) {
+      builder.add(buildTarget.getCellPath().toString());
+    }
+    if (showOptions.getOutputPath().isPresent()) {
+      builder.add(showOptions.getOutputPath().get());
+    }
+    if (showOptions.getTargetHash().isPresent()) {
+      builder.add(showOptions.getTargetHash().get());
+    }
+    return Joiner.on(' ').join(builder.build());
+  }
+
+  /**
+   * Prints the targets in order, each as soon as its {@link ShowOptions} have been computed.  The
+   * options of at most a few targets per thread are computed ahead of the one being printed, so
+   * the memory used doesn't grow with the number of targets.
+   */
+  private void printShowRulesStreaming(
+      CommandRunnerParams params,
+      ListeningExecutorService executor,
+      Iterable<TargetNode<?>> targetNodes,
+      final ShowOptionsComputer showOptionsComputer)
+      throws IOException, InterruptedException, BuildFileParseException, BuildTargetException {
+    PatternsMatcher attributesPatternsMatcher = new PatternsMatcher(getOutputAttributes());
+    int maxPending = STREAMING_TARGETS_PER_THREAD * params.getBuckConfig().getNumThreads();
+    Deque<Pair<TargetNode<?>, ListenableFuture<ShowOptions>>> pending = new ArrayDeque<>();
+
+    for (final TargetNode<?> targetNode :
+        Ordering.natural().onResultOf(HasBuildTarget.TO_TARGET).sortedCopy(targetNodes)) {
+      pending.add(
+          new Pair<TargetNode<?>, ListenableFuture<ShowOptions>>(
+              targetNode,
+              executor.submit(
+                  new Callable<ShowOptions>() {
+                    @Override
+                    public ShowOptions call() throws NoSuchBuildTargetException {
+                      return showOptionsComputer.compute(targetNode.getBuildTarget());
+                    }
+                  })));
+      if (pending.size() >= maxPending) {
+        printStreamedShowRule(params, executor, pending.remove(), attributesPatternsMatcher);
       }
-      params.getConsole().getStdOut().println(Joiner.on(' ').join(builder.build()));
     }
+    while (!pending.isEmpty()) {
+      printStreamedShowRule(params, executor, pending.remove(), attributesPatternsMatcher);
+    }
+  }
 
+  private void printStreamedShowRule(
+      CommandRunnerParams params,
+      ListeningExecutorService executor,
+      Pair<TargetNode<?>, ListenableFuture<ShowOptions>> targetAndShowOptions,
+      PatternsMatcher attributesPatternsMatcher)
+      throws IOException, InterruptedException, BuildFileParseException, BuildTargetException {
+    TargetNode<?> targetNode = targetAndShowOptions.getFirst();
+    ShowOptions showOptions;
+    try {
+      showOptions = targetAndShowOptions.getSecond().get();
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), BuildTargetException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+    if (shouldUseJsonFormat()) {
+      printJsonLineForTarget(
+          params,
+          executor,
+          targetNode,
+          Optional.of(showOptions),
+          attributesPatternsMatcher);
+    } else {
+      params.getConsole().getStdOut().println(
+          formatShowRule(targetNode.getBuildTarget(), showOptions));
+    }
   }
 
   @Override
@@ -705,57 +854,20 @@ public class TargetsCommand extends AbstractCommand {
 
     while (targetNodeIterator.hasNext()) {
       TargetNode<?> targetNode = targetNodeIterator.next();
-      Map<String, Object> sortedTargetRule;
-      sortedTargetRule = params.getParser().getRawTargetNode(
-          params.getBuckEventBus(),
-          params.getCell(),
-          getEnableParserProfiling(),
+      Optional<Map<String, Object>> sortedTargetRule = getJsonForTarget(
+          params,
           executor,
-          targetNode);
-      if (sortedTargetRule == null) {
-        params.getConsole().printErrorText(
-            "unable to find rule for target " +
-                targetNode.getBuildTarget().getFullyQualifiedName());
+          targetNode,
+          Optional.fromNullable(showRulesResult.get(targetNode.getBuildTarget())),
+          attributesPatternsMatcher);
+      if (!sortedTargetRule.isPresent()) {
         continue;
       }
 
-      sortedTargetRule = attributesPatternsMatcher.filterMatchingMapKeys(sortedTargetRule);
-
-      ShowOptions showOptions = showRulesResult.get(targetNode.getBuildTarget());
-      if (showOptions != null) {
-        putIfValuePresentAndMatches(
-            ShowOptionsName.RULE_KEY.getName(),
-            showOptions.getRuleKey(),
-            sortedTargetRule,
-            attributesPatternsMatcher);
-        putIfValuePresentAndMatches(
-            ShowOptionsName.OUTPUT_PATH.getName(),
-            showOptions.getOutputPath(),
-            sortedTargetRule,
-            attributesPatternsMatcher);
-        putIfValuePresentAndMatches(
-            ShowOptionsName.TARGET_HASH.getName(),
-            showOptions.getTargetHash(),
-            sortedTargetRule,
-            attributesPatternsMatcher);
-      }
-      String fullyQualifiedNameAttribute = "fully_qualified_name";
-      if (attributesPatternsMatcher.matches(fullyQualifiedNameAttribute)) {
-        sortedTargetRule.put(
-            fullyQualifiedNameAttribute,
-            targetNode.getBuildTarget().getFullyQualifiedName());
-      }
-      String cellPathAttribute = "buck.cell_path";
-      if (isShowCellPath() && attributesPatternsMatcher.matches(cellPathAttribute)) {
-        sortedTargetRule.put(
-            cellPathAttribute,
-            targetNode.getBuildTarget().getCellPath());
-      }
-
       // Print the build rule information as JSON.
       StringWriter stringWriter = new StringWriter();
       try {
-        mapper.writerWithDefaultPrettyPrinter().writeValue(stringWriter, sortedTargetRule);
+        mapper.writerWithDefaultPrettyPrinter().writeValue(stringWriter, sortedTargetRule.get());
       } catch (IOException e) {
         // Shouldn't be possible while writing to a StringWriter...
         throw new RuntimeException(e);
@@ -770,6 +882,84 @@ public class TargetsCommand extends AbstractCommand {
     params.getConsole().getStdOut().println("]");
   }
 
+  /**
+   * Prints the JSON representation of a single target on a line of its own, so that targets can
+   * be printed without knowing whether more of them follow.
+   */
+  private void printJsonLineForTarget(
+      CommandRunnerParams params,
+      ListeningExecutorService executor,
+      TargetNode<?> targetNode,
+      Optional<ShowOptions> showOptions,
+      PatternsMatcher attributesPatternsMatcher)
+      throws BuildFileParseException, IOException, InterruptedException {
+    Optional<Map<String, Object>> sortedTargetRule = getJsonForTarget(
+        params,
+        executor,
+        targetNode,
+        showOptions,
+        attributesPatternsMatcher);
+    if (sortedTargetRule.isPresent()) {
+      params.getConsole().getStdOut().println(
+          params.getObjectMapper().writeValueAsString(sortedTargetRule.get()));
+    }
+  }
+
+  private Optional<Map<String, Object>> getJsonForTarget(
+      CommandRunnerParams params,
+      ListeningExecutorService executor,
+      TargetNode<?> targetNode,
+      Optional<ShowOptions> showOptions,
+      PatternsMatcher attributesPatternsMatcher)
+      throws BuildFileParseException, InterruptedException {
+    Map<String, Object> sortedTargetRule;
+    sortedTargetRule = params.getParser().getRawTargetNode(
+        params.getBuckEventBus(),
+        params.getCell(),
+        getEnableParserProfiling(),
+        executor,
+        targetNode);
+    if (sortedTargetRule == null) {
+      params.getConsole().printErrorText(
+          "unable to find rule for target " +
+              targetNode.getBuildTarget().getFullyQualifiedName());
+      return Optional.absent();
+    }
+
+    sortedTargetRule = attributesPatternsMatcher.filterMatchingMapKeys(sortedTargetRule);
+
+    if (showOptions.isPresent()) {
+      putIfValuePresentAndMatches(
+          ShowOptionsName.RULE_KEY.getName(),
+          showOptions.get().getRuleKey(),
+          sortedTargetRule,
+          attributesPatternsMatcher);
+      putIfValuePresentAndMatches(
+          ShowOptionsName.OUTPUT_PATH.getName(),
+          showOptions.get().getOutputPath(),
+          sortedTargetRule,
+          attributesPatternsMatcher);
+      putIfValuePresentAndMatches(
+          ShowOptionsName.TARGET_HASH.getName(),
+          showOptions.get().getTargetHash(),
+          sortedTargetRule,
+          attributesPatternsMatcher);
+    }
+    String fullyQualifiedNameAttribute = "fully_qualified_name";
+    if (attributesPatternsMatcher.matches(fullyQualifiedNameAttribute)) {
+      sortedTargetRule.put(
+          fullyQualifiedNameAttribute,
+          targetNode.getBuildTarget().getFullyQualifiedName());
+    }
+    String cellPathAttribute = "buck.cell_path";
+    if (isShowCellPath() && attributesPatternsMatcher.matches(cellPathAttribute)) {
+      sortedTargetRule.put(
+          cellPathAttribute,
+          targetNode.getBuildTarget().getCellPath());
+    }
+    return Optional.of(sortedTargetRule);
+  }
+
   private void putIfValuePresentAndMatches(
       String key,
       Optional<String> value,
@@ -795,24 +985,39 @@ public class TargetsCommand extends AbstractCommand {
    * for to each target rule
    */
   private ImmutableMap<BuildTarget, ShowOptions> computeShowRules(
+      Iterable<TargetNode<?>> targetNodes,
+      ShowOptionsComputer showOptionsComputer) throws NoSuchBuildTargetException {
+    ImmutableMap.Builder<BuildTarget, ShowOptions> builder =  new ImmutableMap.Builder<>();
+    for (TargetNode<?> targetNode : targetNodes) {
+      builder.put(
+          targetNode.getBuildTarget(),
+          showOptionsComputer.compute(targetNode.getBuildTarget()));
+    }
+    return builder.build();
+  }
+
+  /**
+   * Computes what the {@link ShowOptions} of the given targets have in common: their target hashes
+   * and the action graph their outputs and rule keys come from.
+   */
+  private ShowOptionsComputer createShowOptionsComputer(
       CommandRunnerParams params,
       ListeningExecutorService executor,
       TargetGraphAndTargetNodes targetGraphAndTargetNodes)
       throws IOException, InterruptedException, BuildFileParseException, BuildTargetException,
         CycleException {
 
-    Map<BuildTarget, ShowOptions.Builder> showOptionBuilderMap = new HashMap<>();
+    Optional<ImmutableMap<BuildTarget, HashCode>> targetHashes = Optional.absent();
     if (isShowTargetHash()) {
-      computeShowTargetHash(
-          params,
-          executor,
-          targetGraphAndTargetNodes,
-          showOptionBuilderMap);
+      targetHashes = Optional.of(
+          computeShowTargetHash(
+              params,
+              executor,
+              targetGraphAndTargetNodes));
     }
 
     // We only need the action graph if we're showing the output or the keys, and the
     // RuleKeyBuilderFactory if we're showing the keys.
-    Optional<ActionGraph> actionGraph = Optional.absent();
     Optional<BuildRuleResolver> buildRuleResolver = Optional.absent();
     Optional<DefaultRuleKeyBuilderFactory> ruleKeyBuilderFactory = Optional.absent();
     if (isShowRuleKey() || isShowOutput() || isShowFullOutput()) {
@@ -820,7 +1025,6 @@ public class TargetsCommand extends AbstractCommand {
           ActionGraphCache.getFreshActionGraph(
               params.getBuckEventBus(),
               targetGraphAndTargetNodes.getTargetGraph()));
-      actionGraph = Optional.of(result.getActionGraph());
       buildRuleResolver = Optional.of(result.getResolver());
       if (isShowRuleKey()) {
         ruleKeyBuilderFactory = Optional.<DefaultRuleKeyBuilderFactory>of(
@@ -831,29 +1035,12 @@ public class TargetsCommand extends AbstractCommand {
       }
     }
 
-    for (TargetNode<?> targetNode : targetGraphAndTargetNodes.getTargetNodes()) {
-      ShowOptions.Builder showOptionsBuilder =
-          getShowOptionBuilder(showOptionBuilderMap, targetNode.getBuildTarget());
-      Preconditions.checkNotNull(showOptionsBuilder);
-      if (actionGraph.isPresent()) {
-        BuildRule rule = buildRuleResolver.get().requireRule(targetNode.getBuildTarget());
-        if (isShowRuleKey()) {
-          showOptionsBuilder.setRuleKey(ruleKeyBuilderFactory.get().build(rule).toString());
-        }
-        if (isShowOutput() || isShowFullOutput()) {
-          Optional<Path> outputPath = getUserFacingOutputPath(rule, isShowFullOutput());
-          if (outputPath.isPresent()) {
-            showOptionsBuilder.setOutputPath(outputPath.get().toString());
-          }
-        }
-      }
-    }
-
-    ImmutableMap.Builder<BuildTarget, ShowOptions> builder =  new ImmutableMap.Builder<>();
-    for (Entry<BuildTarget, ShowOptions.Builder> entry : showOptionBuilderMap.entrySet()) {
-      builder.put(entry.getKey(), entry.getValue().build());
-    }
-    return builder.build();
+    return new ShowOptionsComputer(
+        targetHashes,
+        buildRuleResolver,
+        ruleKeyBuilderFactory,
+        isShowOutput() || isShowFullOutput(),
+        isShowFullOutput());
   }
 
   static Optional<Path> getUserFacingOutputPath(final BuildRule rule, boolean absolute) {
@@ -924,11 +1111,10 @@ public class TargetsCommand extends AbstractCommand {
         "Invalid value for target hash file mode: " + targetHashFileMode);
   }
 
-  private void computeShowTargetHash(
+  private ImmutableMap<BuildTarget, HashCode> computeShowTargetHash(
       CommandRunnerParams params,
       ListeningExecutorService executor,
-      TargetGraphAndTargetNodes targetGraphAndTargetNodes,
-      Map<BuildTarget, ShowOptions.Builder> showRulesResult)
+      TargetGraphAndTargetNodes targetGraphAndTargetNodes)
       throws IOException, InterruptedException, BuildFileParseException, BuildTargetException,
       CycleException {
     LOG.debug("Getting target hash for %s", targetGraphAndTargetNodes.getTargetNodes());
@@ -944,23 +1130,46 @@ public class TargetsCommand extends AbstractCommand {
     FileHashLoader fileHashLoader = createOrGetFileHashLoader(params);
 
     // Hash each target's rule description and contents of any files.
-    ImmutableMap<BuildTarget, HashCode> buildTargetHashes =
+    TargetGraphHashing targetGraphHashing =
         new TargetGraphHashing(
             params.getBuckEventBus(),
             targetGraphWithTests,
             fileHashLoader,
             targetGraphAndNodesWithTests.getTargetNodes())
-        .setNumThreads(params.getBuckConfig().getNumThreads())
-        .hashTargetGraph();
+        .setNumThreads(params.getBuckConfig().getNumThreads());
+    Optional<TargetNodeRawHashManifest> rawHashManifest = Optional.absent();
+    if (isIncrementalTargetHash()) {
+      ProjectFilesystem filesystem = params.getCell().getFilesystem();
+      ImmutableSet<Path> changedPaths = getTargetHashChangedPaths(filesystem.getRootPath());
+      Optional<TargetNodeRawHashCache> daemonRawHashCache =
+          Optional.of(params.getParser().getTargetNodeRawHashCache());
+      if (changedPaths.isEmpty()) {
+        // There's no telling which of the saved hashes are stale, so rehash everything and save
+        // the hashes for the next run.
+        params.getBuckEventBus().post(
+            ConsoleEvent.warning(
+                "--incremental-target-hash was given without --target-hash-changed-paths, so " +
+                    "every target is rehashed."));
+        rawHashManifest = Optional.of(
+            TargetNodeRawHashManifest.create(filesystem, daemonRawHashCache));
+      } else {
+        rawHashManifest = Optional.of(
+            TargetNodeRawHashManifest.load(filesystem, changedPaths, daemonRawHashCache));
+      }
+      targetGraphHashing.setRawHashCache(rawHashManifest.get());
+    } else if (getTargetHashFileMode() == TargetHashFileMode.PATHS_AND_CONTENTS) {
+      // The parser's cached raw hashes are only valid for hashes of the actual file contents.
+      targetGraphHashing.setRawHashCache(params.getParser().getTargetNodeRawHashCache());
+    }
+    ImmutableMap<BuildTarget, HashCode> buildTargetHashes = targetGraphHashing.hashTargetGraph();
+    if (rawHashManifest.isPresent()) {
+      rawHashManifest.get().save();
+    }
 
-    ImmutableMap<BuildTarget, HashCode> finalHashes = rehashWithTestsIfNeeded(
+    return rehashWithTestsIfNeeded(
         targetGraphWithTests,
         targetGraphAndTargetNodes.getTargetNodes(),
         buildTargetHashes);
-
-    for (TargetNode<?> targetNode : targetGraphAndTargetNodes.getTargetNodes()) {
-      processTargetHash(targetNode.getBuildTarget(), showRulesResult, finalHashes);
-    }
   }
 
   private ImmutableMap<BuildTarget, HashCode> rehashWithTestsIfNeeded(
@@ -1018,15 +1227,6 @@ public class TargetsCommand extends AbstractCommand {
     hashesWithTests.put(node.getBuildTarget(), hasher.hash());
   }
 
-  private void processTargetHash(
-      BuildTarget buildTarget,
-      Map<BuildTarget, ShowOptions.Builder> showRulesResult,
-      ImmutableMap<BuildTarget, HashCode> finalHashes) {
-    ShowOptions.Builder showOptionsBuilder = getShowOptionBuilder(showRulesResult, buildTarget);
-    HashCode hashCode = getHashCodeOrThrow(finalHashes, buildTarget);
-    showOptionsBuilder.setTargetHash(hashCode.toString());
-  }
-
   private static HashCode getHashCodeOrThrow(
       Map<BuildTarget, HashCode> buildTargetHashCodes,
       BuildTarget buildTarget) {
@@ -1082,15 +1282,51 @@ public class TargetsCommand extends AbstractCommand {
     }
   }
 
-  private ShowOptions.Builder getShowOptionBuilder(
-      Map<BuildTarget, ShowOptions.Builder> showRulesBuilderMap,
-      BuildTarget buildTarget) {
-    if (!showRulesBuilderMap.containsKey(buildTarget)) {
-      ShowOptions.Builder builder = ShowOptions.builder();
-      showRulesBuilderMap.put(buildTarget, builder);
-      return builder;
+  /**
+   * Computes the {@link ShowOptions} of individual targets from what they have in common.  Can be
+   * used from several threads at once.
+   */
+  private static class ShowOptionsComputer {
+
+    private final Optional<ImmutableMap<BuildTarget, HashCode>> targetHashes;
+    private final Optional<BuildRuleResolver> buildRuleResolver;
+    private final Optional<DefaultRuleKeyBuilderFactory> ruleKeyBuilderFactory;
+    private final boolean showOutput;
+    private final boolean showFullOutput;
+
+    public ShowOptionsComputer(
+        Optional<ImmutableMap<BuildTarget, HashCode>> targetHashes,
+        Optional<BuildRuleResolver> buildRuleResolver,
+        Optional<DefaultRuleKeyBuilderFactory> ruleKeyBuilderFactory,
+        boolean showOutput,
+        boolean showFullOutput) {
+      this.targetHashes = targetHashes;
+      this.buildRuleResolver = buildRuleResolver;
+      this.ruleKeyBuilderFactory = ruleKeyBuilderFactory;
+      this.showOutput = showOutput;
+      this.showFullOutput = showFullOutput;
+    }
+
+    public ShowOptions compute(BuildTarget buildTarget) throws NoSuchBuildTargetException {
+      ShowOptions.Builder showOptionsBuilder = ShowOptions.builder();
+      if (targetHashes.isPresent()) {
+        showOptionsBuilder.setTargetHash(
+            getHashCodeOrThrow(targetHashes.get(), buildTarget).toString());
+      }
+      if (buildRuleResolver.isPresent()) {
+        BuildRule rule = buildRuleResolver.get().requireRule(buildTarget);
+        if (ruleKeyBuilderFactory.isPresent()) {
+          showOptionsBuilder.setRuleKey(ruleKeyBuilderFactory.get().build(rule).toString());
+        }
+        if (showOutput) {
+          Optional<Path> outputPath = getUserFacingOutputPath(rule, showFullOutput);
+          if (outputPath.isPresent()) {
+            showOptionsBuilder.setOutputPath(outputPath.get().toString());
+          }
+        }
+      }
+      return showOptionsBuilder.build();
     }
-    return showRulesBuilderMap.get(buildTarget);
   }
 
   @Value.Immutable
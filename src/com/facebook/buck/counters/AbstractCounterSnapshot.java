@@ -17,6 +17,7 @@
 package com.facebook.buck.counters;
 
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSetMultimap;
 
@@ -32,8 +33,15 @@ abstract class AbstractCounterSnapshot {
     return builder;
   }
 
+  @JsonProperty("category")
   abstract String getCategory();
+
+  @JsonProperty("tags")
   abstract ImmutableMap<String, String> getTags();
+
+  @JsonProperty("tagSets")
   abstract ImmutableSetMultimap<String, String> getTagSets();
+
+  @JsonProperty("values")
   abstract ImmutableMap<String, Long> getValues();
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the distribution of a non-negative quantity (typically a latency) without taking locks.
+ * <p>
+ * Samples are counted in log-linear buckets, in the style of an HDR histogram: every power of two
+ * is split into {@code 2^SUB_BUCKET_BITS} equally sized buckets, so reported percentiles are
+ * within 12.5% of the true value whatever the magnitude of the samples. Recording a sample is a
+ * handful of atomic increments, which makes the counter cheap enough for build engine hot paths.
+ */
+public class HistogramCounter extends Counter {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKET_COUNT =
+      (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+  public HistogramCounter(String category, String name, ImmutableMap<String, String> tags) {
+    super(category, name, tags);
+  }
+
+  public void addSample(long value) {
+    Preconditions.checkArgument(value >= 0, "Histogram samples must be non-negative: %s", value);
+    buckets.incrementAndGet(bucketIndex(value));
+    sum.addAndGet(value);
+    updateMin(value);
+    updateMax(value);
+    count.incrementAndGet();
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMin() {
+    return count.get() == 0 ? 0 : min.get();
+  }
+
+  public long getMax() {
+    return count.get() == 0 ? 0 : max.get();
+  }
+
+  public long getAverage() {
+    long samples = count.get();
+    return samples == 0 ? 0 : sum.get() / samples;
+  }
+
+  /**
+   * @return an upper bound for the given percentile (in the range [0, 100]) of the samples
+   *     recorded since the last flush, or 0 if there are none.
+   */
+  public long getPercentile(double percentile) {
+    long[] snapshot = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = buckets.get(i);
+    }
+    return percentileOf(snapshot, percentile, getMax());
+  }
+
+  @Override
+  public Optional<CounterSnapshot> flush() {
+    // Draining bucket by bucket means a sample recorded concurrently with a flush may be
+    // attributed to either interval, but it is never lost or counted twice.
+    long[] snapshot = new long[BUCKET_COUNT];
+    long samples = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = buckets.getAndSet(i, 0);
+      samples += snapshot[i];
+    }
+    long total = sum.getAndSet(0);
+    long minValue = min.getAndSet(Long.MAX_VALUE);
+    long maxValue = max.getAndSet(Long.MIN_VALUE);
+    count.addAndGet(-samples);
+    if (samples == 0) {
+      return Optional.absent();
+    }
+
+    CounterSnapshot.Builder builder = CounterSnapshot.builderForCounter(this);
+    builder.putValues(getName() + "_count", samples);
+    builder.putValues(getName() + "_avg", total / samples);
+    builder.putValues(getName() + "_min", minValue);
+    builder.putValues(getName() + "_max", maxValue);
+    builder.putValues(getName() + "_p50", percentileOf(snapshot, 50, maxValue));
+    builder.putValues(getName() + "_p90", percentileOf(snapshot, 90, maxValue));
+    builder.putValues(getName() + "_p99", percentileOf(snapshot, 99, maxValue));
+    return Optional.of(builder.build());
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+    int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+    return (shift + 1) * SUB_BUCKET_COUNT + subBucket;
+  }
+
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int shift = index / SUB_BUCKET_COUNT - 1;
+    long subBucket = index % SUB_BUCKET_COUNT;
+    long upperBound = ((SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    // The top bucket's bound overflows.
+    return upperBound < 0 ? Long.MAX_VALUE : upperBound;
+  }
+
+  private static long percentileOf(long[] snapshot, double percentile, long maxValue) {
+    long samples = 0;
+    for (long bucket : snapshot) {
+      samples += bucket;
+    }
+    if (samples == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(samples * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      seen += snapshot[i];
+      if (seen >= rank) {
+        return Math.min(bucketUpperBound(i), maxValue);
+      }
+    }
+    return maxValue;
+  }
+
+  private void updateMin(long value) {
+    long current = min.get();
+    while (value < current && !min.compareAndSet(current, value)) {
+      current = min.get();
+    }
+  }
+
+  private void updateMax(long value) {
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+}
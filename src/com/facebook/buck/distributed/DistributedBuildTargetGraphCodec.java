@@ -25,6 +25,7 @@ import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.graph.MutableDirectedGraph;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetInterner;
 import com.facebook.buck.model.Flavor;
 import com.facebook.buck.model.UnflavoredBuildTarget;
 import com.facebook.buck.parser.ParserTargetNodeFactory;
@@ -116,10 +117,11 @@ public class DistributedBuildTargetGraphCodec {
         .transform(Flavor.TO_FLAVOR)
         .toSet();
 
-    return BuildTarget.builder()
-        .setUnflavoredBuildTarget(unflavoredBuildTarget)
-        .setFlavors(flavors)
-        .build();
+    return BuildTargetInterner.intern(
+        BuildTarget.builder()
+            .setUnflavoredBuildTarget(unflavoredBuildTarget)
+            .setFlavors(flavors)
+            .build());
   }
 
   public TargetGraph createTargetGraph(
@@ -19,6 +19,7 @@ package com.facebook.buck.httpserver;
 import com.facebook.buck.artifact_cache.ArtifactCache;
 import com.facebook.buck.artifact_cache.ArtifactInfo;
 import com.facebook.buck.artifact_cache.CacheResult;
+import com.facebook.buck.artifact_cache.DirArtifactCache;
 import com.facebook.buck.artifact_cache.HttpArtifactCacheBinaryProtocol;
 import com.facebook.buck.artifact_cache.StoreResponseReadResult;
 import com.facebook.buck.io.BorrowablePath;
@@ -26,10 +27,19 @@ import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.RuleKey;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
 import com.google.common.io.ByteSource;
 
+import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
@@ -37,17 +47,42 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
  * Implements a really simple cache server on top of the local dircache.
+ * <p>
+ * When the served cache is a {@link DirArtifactCache}, artifacts are sent straight from the files
+ * in the cache without blocking a server thread, uploads are written straight into the cache, and
+ * several artifacts can be looked up or fetched in one request:
+ * <ul>
+ *   <li>{@code POST /artifacts/contains} takes a set of rule keys, and returns those which are in
+ *   the cache, both as written by {@link HttpArtifactCacheBinaryProtocol#createKeysHeader}.</li>
+ *   <li>{@code POST /artifacts/multi_fetch} takes a set of rule keys in the same way, and returns
+ *   a multi-fetch response, as read by
+ *   {@link HttpArtifactCacheBinaryProtocol#readMultiFetchResponseEntry}.</li>
+ * </ul>
  */
 public class ArtifactCacheHandler extends AbstractHandler {
   private static final Logger LOG = Logger.get(ArtifactCacheHandler.class);
+  private static final long MAX_CACHED_PAYLOAD_HASH_CODES = 10000;
+
+  // Payload checksums of recently served artifacts, keyed by path, size and modification time.
+  private final Cache<String, HashCode> payloadHashCodes =
+      CacheBuilder.newBuilder().maximumSize(MAX_CACHED_PAYLOAD_HASH_CODES).build();
 
   private final ProjectFilesystem projectFilesystem;
   private Optional<ArtifactCache> artifactCache;
@@ -75,18 +110,32 @@ public class ArtifactCacheHandler extends AbstractHandler {
         status = handleGet(baseRequest, response);
       } else if (method.equals("PUT")) {
         status = handlePut(baseRequest, response);
+      } else if (method.equals("POST")) {
+        status = handlePost(baseRequest, response);
+      }
+      if (!baseRequest.isAsyncStarted()) {
+        response.setStatus(status);
       }
-      response.setStatus(status);
     } catch (Exception e) {
       LOG.error(e, "Exception when handling request %s", target);
       e.printStackTrace(response.getWriter());
       response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
     } finally {
-      response.flushBuffer();
+      // Responses sent asynchronously are completed by whoever finishes writing them.
+      if (!baseRequest.isAsyncStarted()) {
+        response.flushBuffer();
+      }
       baseRequest.setHandled(true);
     }
   }
 
+  private Optional<DirArtifactCache> getDirArtifactCache() {
+    if (artifactCache.isPresent() && artifactCache.get() instanceof DirArtifactCache) {
+      return Optional.of((DirArtifactCache) artifactCache.get());
+    }
+    return Optional.absent();
+  }
+
   private int handleGet(Request baseRequest, HttpServletResponse response) throws IOException {
     if (!artifactCache.isPresent()) {
       response.getWriter().write("Serving local cache is disabled for this instance.");
@@ -102,6 +151,11 @@ public class ArtifactCacheHandler extends AbstractHandler {
 
     RuleKey ruleKey = RuleKey.TO_RULE_KEY.apply(pathElements[3]);
 
+    Optional<DirArtifactCache> dirCache = getDirArtifactCache();
+    if (dirCache.isPresent()) {
+      return handleDirCacheGet(dirCache.get(), ruleKey, baseRequest, response);
+    }
+
     Path temp = null;
     try {
       projectFilesystem.mkdirs(projectFilesystem.getBuckPaths().getScratchDir());
@@ -141,13 +195,19 @@ public class ArtifactCacheHandler extends AbstractHandler {
       return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
     }
 
+    Optional<DirArtifactCache> dirCache = getDirArtifactCache();
     Path temp = null;
     try {
-      projectFilesystem.mkdirs(projectFilesystem.getBuckPaths().getScratchDir());
-      temp = projectFilesystem.createTempFile(
-          projectFilesystem.getBuckPaths().getScratchDir(),
-          "incoming_upload",
-          ".tmp");
+      if (dirCache.isPresent()) {
+        // Write the upload into the cache's own temp folder, so that storing it is just a move.
+        temp = dirCache.get().createTempFileForStore();
+      } else {
+        projectFilesystem.mkdirs(projectFilesystem.getBuckPaths().getScratchDir());
+        temp = projectFilesystem.createTempFile(
+            projectFilesystem.getBuckPaths().getScratchDir(),
+            "incoming_upload",
+            ".tmp");
+      }
 
       StoreResponseReadResult storeRequest;
       try (DataInputStream requestInputData = new DataInputStream(baseRequest.getInputStream());
@@ -167,7 +227,9 @@ public class ArtifactCacheHandler extends AbstractHandler {
               .setRuleKeys(storeRequest.getRuleKeys())
               .setMetadata(storeRequest.getMetadata())
               .build(),
-          BorrowablePath.notBorrowablePath(temp));
+          dirCache.isPresent() ?
+              BorrowablePath.borrowablePath(temp) :
+              BorrowablePath.notBorrowablePath(temp));
       return HttpServletResponse.SC_ACCEPTED;
     } finally {
       if (temp != null) {
@@ -176,4 +238,185 @@ public class ArtifactCacheHandler extends AbstractHandler {
     }
 
   }
+
+  private int handlePost(Request baseRequest, HttpServletResponse response) throws IOException {
+    Optional<DirArtifactCache> dirCache = getDirArtifactCache();
+    if (!dirCache.isPresent()) {
+      response.getWriter().write("Batched requests need a local directory cache.");
+      return HttpServletResponse.SC_NOT_IMPLEMENTED;
+    }
+
+    String path = baseRequest.getUri().getPath();
+    String[] pathElements = path.split("/");
+    if (pathElements.length != 3) {
+      response.getWriter().write("Incorrect url format.");
+      return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    ImmutableSet<RuleKey> ruleKeys;
+    try (DataInputStream requestInputData = new DataInputStream(baseRequest.getInputStream())) {
+      ruleKeys = HttpArtifactCacheBinaryProtocol.readRuleKeys(requestInputData);
+    }
+
+    if (pathElements[2].equals("contains")) {
+      ImmutableSet.Builder<RuleKey> found = ImmutableSet.builder();
+      for (RuleKey ruleKey : ruleKeys) {
+        if (dirCache.get().contains(ruleKey)) {
+          found.add(ruleKey);
+        }
+      }
+      byte[] body = HttpArtifactCacheBinaryProtocol.createKeysHeader(found.build());
+      response.setContentLength(body.length);
+      response.getOutputStream().write(body);
+      return HttpServletResponse.SC_OK;
+    } else if (pathElements[2].equals("multi_fetch")) {
+      final DirArtifactCache cache = dirCache.get();
+      // Each artifact is only mapped once the previous one has been sent, so that a request for
+      // many keys doesn't hold on to all of their mappings for the whole response.  Entries say how
+      // long they are, so the response is sent without a length.
+      response.setStatus(HttpServletResponse.SC_OK);
+      writeAsync(
+          baseRequest,
+          FluentIterable.from(ruleKeys).transformAndConcat(
+              new Function<RuleKey, Iterable<ByteBuffer>>() {
+                @Override
+                public Iterable<ByteBuffer> apply(RuleKey ruleKey) {
+                  return createMultiFetchEntry(cache, ruleKey);
+                }
+              }));
+      return HttpServletResponse.SC_OK;
+    }
+
+    response.getWriter().write("Incorrect url format.");
+    return HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+  }
+
+  private int handleDirCacheGet(
+      DirArtifactCache dirCache,
+      RuleKey ruleKey,
+      Request baseRequest,
+      HttpServletResponse response) throws IOException {
+    Optional<ServedArtifact> artifact = readArtifact(dirCache, ruleKey);
+    if (!artifact.isPresent()) {
+      return HttpServletResponse.SC_NOT_FOUND;
+    }
+
+    ByteBuffer header = ByteBuffer.wrap(
+        HttpArtifactCacheBinaryProtocol.createFetchResponseHeader(
+            ImmutableSet.of(ruleKey),
+            artifact.get().metadata,
+            artifact.get().payloadHashCode,
+            artifact.get().payload.remaining()));
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentLengthLong(header.remaining() + artifact.get().payload.remaining());
+    writeAsync(baseRequest, ImmutableList.of(header, artifact.get().payload));
+    return HttpServletResponse.SC_OK;
+  }
+
+  private ImmutableList<ByteBuffer> createMultiFetchEntry(
+      DirArtifactCache dirCache,
+      RuleKey ruleKey) {
+    Optional<ServedArtifact> artifact = readArtifact(dirCache, ruleKey);
+    try {
+      if (!artifact.isPresent()) {
+        return ImmutableList.of(
+            ByteBuffer.wrap(HttpArtifactCacheBinaryProtocol.createMultiFetchMissEntry()));
+      }
+      return ImmutableList.of(
+          ByteBuffer.wrap(
+              HttpArtifactCacheBinaryProtocol.createMultiFetchResponseEntryHeader(
+                  ImmutableSet.of(ruleKey),
+                  artifact.get().metadata,
+                  artifact.get().payloadHashCode,
+                  artifact.get().payload.remaining())),
+          artifact.get().payload);
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  /**
+   * Maps an artifact's file into memory, so it's sent to the client straight from the page cache.
+   *
+   * @return the artifact, or absent if it's missing or can't be read, which clients treat as a
+   *     miss, as they do for failed fetches from the cache.
+   */
+  private Optional<ServedArtifact> readArtifact(DirArtifactCache dirCache, RuleKey ruleKey) {
+    try {
+      ImmutableMap<String, String> metadata = dirCache.fetchMetadata(ruleKey);
+      Path artifactPath = dirCache.getArtifactPath(ruleKey);
+      BasicFileAttributes attributes =
+          Files.readAttributes(artifactPath, BasicFileAttributes.class);
+      ByteBuffer payload;
+      try (FileChannel channel = FileChannel.open(artifactPath, StandardOpenOption.READ)) {
+        if (channel.size() > Integer.MAX_VALUE) {
+          throw new IOException("Artifact is too large to map into memory.");
+        }
+        payload = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      String hashCodeKey = String.format(
+          "%s:%d:%d",
+          artifactPath,
+          attributes.size(),
+          attributes.lastModifiedTime().toMillis());
+      HashCode payloadHashCode = payloadHashCodes.getIfPresent(hashCodeKey);
+      if (payloadHashCode == null) {
+        payloadHashCode = HttpArtifactCacheBinaryProtocol.hashPayload(payload);
+        payloadHashCodes.put(hashCodeKey, payloadHashCode);
+      }
+      return Optional.of(new ServedArtifact(metadata, payload, payloadHashCode));
+    } catch (NoSuchFileException e) {
+      return Optional.absent();
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to read artifact %s from the cache.", ruleKey);
+      return Optional.absent();
+    }
+  }
+
+  /**
+   * Writes the buffers as the rest of the response, without holding on to the current thread while
+   * the client reads them.  Each buffer is only taken from {@code buffers} once the previous one
+   * has been written.
+   */
+  private static void writeAsync(Request baseRequest, Iterable<ByteBuffer> buffers) {
+    final AsyncContext asyncContext = baseRequest.startAsync();
+    // Large artifacts take a while to send, so rely on the connection's idle timeout instead.
+    asyncContext.setTimeout(0);
+    final HttpOutput output = baseRequest.getResponse().getHttpOutput();
+    final Iterator<ByteBuffer> remaining = buffers.iterator();
+    output.setWriteListener(
+        new WriteListener() {
+          @Override
+          public void onWritePossible() throws IOException {
+            while (output.isReady()) {
+              if (!remaining.hasNext()) {
+                asyncContext.complete();
+                return;
+              }
+              output.write(remaining.next());
+            }
+          }
+
+          @Override
+          public void onError(Throwable t) {
+            LOG.warn(t, "Failed to send artifacts.");
+            asyncContext.complete();
+          }
+        });
+  }
+
+  private static class ServedArtifact {
+    private final ImmutableMap<String, String> metadata;
+    private final ByteBuffer payload;
+    private final HashCode payloadHashCode;
+
+    public ServedArtifact(
+        ImmutableMap<String, String> metadata,
+        ByteBuffer payload,
+        HashCode payloadHashCode) {
+      this.metadata = metadata;
+      this.payload = payload;
+      this.payloadHashCode = payloadHashCode;
+    }
+  }
 }
@@ -17,6 +17,7 @@
 package com.facebook.buck.httpserver;
 
 import com.facebook.buck.cli.ProgressEvent;
+import com.facebook.buck.counters.CountersSnapshotEvent;
 import com.facebook.buck.event.BuckEventListener;
 import com.facebook.buck.event.CompilerErrorEvent;
 import com.facebook.buck.event.ConsoleEvent;
@@ -72,6 +73,11 @@ public class WebServerBuckEventListener implements BuckEventListener {
     streamingWebSocketServlet.tellClients(finished);
   }
 
+  @Subscribe
+  public void countersSnapshot(CountersSnapshotEvent event) {
+    streamingWebSocketServlet.tellClients(event);
+  }
+
   @Subscribe
   public void testRunStarted(TestRunEvent.Started event) {
     streamingWebSocketServlet.tellClients(event);
@@ -86,6 +86,11 @@ abstract class AbstractBuckPaths {
     return getBuckOut().resolve("cache");
   }
 
+  @Value.Derived
+  public Path getTargetHashesDir() {
+    return getBuckOut().resolve("target_hashes");
+  }
+
   @Value.Derived
   public Path getTmpDir() {
     return getBuckOut().resolve("tmp");
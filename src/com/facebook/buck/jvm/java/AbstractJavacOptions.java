@@ -79,6 +79,16 @@ abstract class AbstractJavacOptions implements RuleKeyAppendable {
     JDK,
   }
 
+  public enum AbiGenerationMode {
+    /** Generate ABI jars from the compiled classes of a library. */
+    CLASS,
+    /**
+     * Generate ABI jars from the sources of a library, so that they don't wait for the library to
+     * be compiled.  Libraries which need annotation processing always use {@link #CLASS}.
+     */
+    SOURCE,
+  }
+
   protected abstract Optional<Path> getJavacPath();
   protected abstract Optional<SourcePath> getJavacJarPath();
 
@@ -87,6 +97,11 @@ abstract class AbstractJavacOptions implements RuleKeyAppendable {
     return SpoolMode.INTERMEDIATE_TO_DISK;
   }
 
+  @Value.Default
+  public AbiGenerationMode getAbiGenerationMode() {
+    return AbiGenerationMode.CLASS;
+  }
+
   @Value.Default
   protected boolean isProductionBuild() {
     return false;
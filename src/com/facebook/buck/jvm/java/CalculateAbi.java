@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java;
 
+import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.model.Flavor;
@@ -71,8 +72,12 @@ public class CalculateAbi extends AbstractBuildRule implements SupportsInputBase
   }
 
   private Path getAbiJarPath() {
-    return BuildTargets.getGenPath(getProjectFilesystem(), getBuildTarget(), "%s")
-        .resolve(String.format("%s-abi.jar", getBuildTarget().getShortName()));
+    return getAbiJarPath(getProjectFilesystem(), getBuildTarget());
+  }
+
+  static Path getAbiJarPath(ProjectFilesystem filesystem, BuildTarget target) {
+    return BuildTargets.getGenPath(filesystem, target, "%s")
+        .resolve(String.format("%s-abi.jar", target.getShortName()));
   }
 
   @Override
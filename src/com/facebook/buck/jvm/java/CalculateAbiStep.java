@@ -25,6 +25,7 @@ import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
+import com.google.common.hash.HashCode;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -51,9 +52,7 @@ public class CalculateAbiStep implements Step {
   public StepExecutionResult execute(ExecutionContext context) {
     Sha1HashCode abiKey;
     try {
-      Path out = getPathToHash(context, buildableContext);
-
-      abiKey = filesystem.computeSha1(out);
+      abiKey = calculateAbiKey(context, buildableContext);
     } catch (IOException e) {
       context.logError(e, "Failed to calculate ABI for %s.", binaryJar);
       return StepExecutionResult.ERROR;
@@ -64,22 +63,26 @@ public class CalculateAbiStep implements Step {
     return StepExecutionResult.SUCCESS;
   }
 
-  private Path getPathToHash(
+  private Sha1HashCode calculateAbiKey(
       ExecutionContext context,
       BuildableContext buildableContext) throws IOException {
     Path binJar = filesystem.resolve(binaryJar);
 
     try {
-      new StubJar(binJar).writeTo(filesystem, abiJar);
+      // The stub jar is hashed as it's written, rather than being read back afterwards.
+      HashCode abiHash = new StubJar(binJar).writeTo(
+          filesystem,
+          abiJar,
+          context.getExecutorService(ExecutionContext.ExecutorPool.CPU));
       buildableContext.recordArtifact(abiJar);
-      return abiJar;
+      return Sha1HashCode.fromHashCode(abiHash);
     } catch (IllegalArgumentException e) {
       // Thrown when ASM chokes on an input file. Fall back to the input jar, but warn the user.
       context.postEvent(
           ConsoleEvent.warning(
               "Unable to create abi jar from %s. Falling back to hashing that jar",
               binaryJar));
-      return binJar;
+      return filesystem.computeSha1(binJar);
     }
   }
 
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargets;
+import com.facebook.buck.rules.AbstractBuildRule;
+import com.facebook.buck.rules.AddToRuleKey;
+import com.facebook.buck.rules.BuildContext;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleParams;
+import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.keys.SupportsInputBasedRuleKey;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
+import com.facebook.buck.step.fs.MkdirStep;
+import com.facebook.buck.step.fs.RmStep;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
+
+import java.nio.file.Path;
+
+/**
+ * Calculates the ABI jar of a {@code java_library} from its sources and the ABI jars of its deps,
+ * so that it is available without waiting for the library, or any of its deps, to be compiled.
+ *
+ * @see JavacOptions.AbiGenerationMode#SOURCE
+ */
+public class CalculateSourceAbi extends AbstractBuildRule implements SupportsInputBasedRuleKey {
+
+  @AddToRuleKey
+  private final ImmutableSortedSet<SourcePath> srcs;
+  @AddToRuleKey
+  private final JavacOptions javacOptions;
+  @AddToRuleKey
+  private final ImmutableSortedSet<SourcePath> abiClasspath;
+  private final Path outputPath;
+
+  public CalculateSourceAbi(
+      BuildRuleParams buildRuleParams,
+      SourcePathResolver resolver,
+      ImmutableSortedSet<SourcePath> srcs,
+      JavacOptions javacOptions,
+      ImmutableSortedSet<SourcePath> abiClasspath) {
+    super(buildRuleParams, resolver);
+    this.srcs = srcs;
+    this.javacOptions = javacOptions;
+    this.abiClasspath = abiClasspath;
+    this.outputPath = CalculateAbi.getAbiJarPath(getProjectFilesystem(), getBuildTarget());
+  }
+
+  public static CalculateSourceAbi of(
+      BuildTarget target,
+      SourcePathResolver pathResolver,
+      BuildRuleParams libraryParams,
+      Iterable<? extends SourcePath> srcs,
+      JavacOptions javacOptions,
+      Iterable<? extends SourcePath> abiClasspath) {
+    ImmutableSortedSet<SourcePath> sortedSrcs = ImmutableSortedSet.copyOf(srcs);
+    ImmutableSortedSet<SourcePath> sortedAbiClasspath = ImmutableSortedSet.copyOf(abiClasspath);
+    return new CalculateSourceAbi(
+        libraryParams.copyWithChanges(
+            target,
+            Suppliers.ofInstance(
+                ImmutableSortedSet.copyOf(
+                    pathResolver.filterBuildRuleInputs(
+                        Iterables.concat(
+                            sortedSrcs,
+                            sortedAbiClasspath,
+                            javacOptions.getInputs(pathResolver))))),
+            Suppliers.ofInstance(ImmutableSortedSet.<BuildRule>of())),
+        pathResolver,
+        sortedSrcs,
+        javacOptions,
+        sortedAbiClasspath);
+  }
+
+  /**
+   * @return whether the ABI of a library can be calculated from its sources alone.  Annotation
+   *     processors may generate classes which are part of the ABI, and postprocessing may change
+   *     any of them, so libraries using either need to be compiled first.
+   */
+  public static boolean isSupported(
+      JavacOptions javacOptions,
+      Iterable<? extends SourcePath> srcs,
+      Iterable<String> postprocessClassesCommands,
+      SourcePathResolver resolver) {
+    if (javacOptions.getAbiGenerationMode() != JavacOptions.AbiGenerationMode.SOURCE ||
+        javacOptions.getJavacSource() != JavacOptions.JavacSource.JDK ||
+        !javacOptions.getAnnotationProcessingParams().isEmpty() ||
+        !Iterables.isEmpty(postprocessClassesCommands) ||
+        Iterables.isEmpty(srcs)) {
+      return false;
+    }
+    for (SourcePath src : srcs) {
+      if (!resolver.getRelativePath(src).toString().endsWith(".java")) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public ImmutableList<Step> getBuildSteps(
+      BuildContext context,
+      BuildableContext buildableContext) {
+    ImmutableSortedSet.Builder<Path> classpath = ImmutableSortedSet.naturalOrder();
+    for (SourcePath abiJar : abiClasspath) {
+      classpath.add(getResolver().getAbsolutePath(abiJar));
+    }
+    Path workingDirectory =
+        BuildTargets.getScratchPath(getProjectFilesystem(), getBuildTarget(), "lib__%s__scratch");
+    return ImmutableList.of(
+        new MkdirStep(getProjectFilesystem(), outputPath.getParent()),
+        new RmStep(getProjectFilesystem(), outputPath, /* shouldForceDeletion */ true),
+        new MakeCleanDirectoryStep(getProjectFilesystem(), workingDirectory),
+        new CalculateSourceAbiStep(
+            buildableContext,
+            getProjectFilesystem(),
+            javacOptions,
+            ImmutableSortedSet.copyOf(getResolver().deprecatedAllPaths(srcs)),
+            classpath.build(),
+            workingDirectory,
+            outputPath));
+  }
+
+  @Override
+  public Path getPathToOutput() {
+    return outputPath;
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.jvm.java.abi.StubGeneratingProcessor;
+import com.facebook.buck.rules.BuildableContext;
+import com.facebook.buck.rules.keys.AbiRule;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.HumanReadableException;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.hash.HashCode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Writes the ABI jar of a library from its sources, by running the in-process javac only as far as
+ * annotation processing with a {@link StubGeneratingProcessor}.
+ */
+public class CalculateSourceAbiStep implements Step {
+
+  private final BuildableContext buildableContext;
+  private final ProjectFilesystem filesystem;
+  private final JavacOptions javacOptions;
+  private final ImmutableSortedSet<Path> javaSourceFilePaths;
+  private final ImmutableSortedSet<Path> classpathEntries;
+  private final Path workingDirectory;
+  private final Path abiJar;
+
+  public CalculateSourceAbiStep(
+      BuildableContext buildableContext,
+      ProjectFilesystem filesystem,
+      JavacOptions javacOptions,
+      ImmutableSortedSet<Path> javaSourceFilePaths,
+      ImmutableSortedSet<Path> classpathEntries,
+      Path workingDirectory,
+      Path abiJar) {
+    this.buildableContext = buildableContext;
+    this.filesystem = filesystem;
+    this.javacOptions = javacOptions;
+    this.javaSourceFilePaths = javaSourceFilePaths;
+    this.classpathEntries = classpathEntries;
+    this.workingDirectory = workingDirectory;
+    this.abiJar = abiJar;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) {
+    JavaCompiler compiler;
+    synchronized (ToolProvider.class) {
+      // See JdkProvidedInMemoryJavac for why this is synchronized.
+      compiler = ToolProvider.getSystemJavaCompiler();
+    }
+    if (compiler == null) {
+      throw new HumanReadableException(
+          "No system compiler found. Did you install the JRE instead of the JDK?");
+    }
+
+    DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+    StandardJavaFileManager fileManager =
+        compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8);
+    StubGeneratingProcessor processor = new StubGeneratingProcessor();
+    ImmutableList.Builder<File> sourceFiles = ImmutableList.builder();
+    for (Path path : javaSourceFilePaths) {
+      sourceFiles.add(filesystem.resolve(path).toFile());
+    }
+    boolean isSuccess;
+    try {
+      JavaCompiler.CompilationTask task = compiler.getTask(
+          new PrintWriter(context.getStdErr()),
+          fileManager,
+          diagnostics,
+          ImmutableList.<String>builder()
+              .addAll(
+                  JavacStep.getOptions(
+                      javacOptions,
+                      filesystem,
+                      workingDirectory,
+                      context,
+                      classpathEntries))
+              .add("-proc:only")
+              .build(),
+          /* classes */ null,
+          fileManager.getJavaFileObjectsFromFiles(sourceFiles.build()));
+      task.setProcessors(ImmutableList.of(processor));
+      isSuccess = task.call();
+    } finally {
+      try {
+        fileManager.close();
+      } catch (IOException e) {
+        context.logError(e, "Unable to close java filemanager.");
+      }
+    }
+
+    if (!isSuccess) {
+      if (context.getVerbosity().shouldPrintStandardInformation()) {
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+          context.getStdErr().println(DiagnosticPrettyPrinter.format(diagnostic));
+        }
+      }
+      return StepExecutionResult.ERROR;
+    }
+
+    HashCode abiHash;
+    try {
+      abiHash = processor.writeTo(filesystem, abiJar);
+    } catch (IOException e) {
+      context.logError(e, "Failed to write ABI jar %s.", abiJar);
+      return StepExecutionResult.ERROR;
+    }
+    buildableContext.recordArtifact(abiJar);
+    buildableContext.addMetadata(AbiRule.ABI_KEY_ON_DISK_METADATA, abiHash.toString());
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public String getShortName() {
+    return "calculate_source_abi";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format(
+        "%s %s",
+        getShortName(),
+        Joiner.on(' ').join(javaSourceFilePaths));
+  }
+}
@@ -19,6 +19,7 @@ package com.facebook.buck.jvm.java;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.rules.ArchiveMemberSourcePath;
 import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.ObjectMappers;
@@ -53,6 +54,14 @@ class DefaultClassUsageFileReader {
         ImmutableMap.builder();
 
     for (BuildRule dep : deps) {
+      if (dep instanceof CalculateSourceAbi) {
+        // Dependents compile against these ABI jars in place of the output jars of the deps.
+        jarAbsolutePathToAbiJarSourcePathBuilder.put(
+            dep.getProjectFilesystem().resolve(dep.getPathToOutput()),
+            new BuildTargetSourcePath(dep.getBuildTarget()));
+        continue;
+      }
+
       if (!(dep instanceof HasJavaAbi)) {
         continue;
       }
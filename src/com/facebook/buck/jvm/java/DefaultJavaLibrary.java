@@ -37,6 +37,7 @@ import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.BuildableProperties;
 import com.facebook.buck.rules.ExportDependencies;
+import com.facebook.buck.rules.HasRuntimeDeps;
 import com.facebook.buck.rules.InitializableFromDisk;
 import com.facebook.buck.rules.OnDiskBuildInfo;
 import com.facebook.buck.rules.SourcePath;
@@ -58,10 +59,12 @@ import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import com.google.common.hash.HashCode;
 import com.google.common.reflect.ClassPath;
@@ -97,7 +100,7 @@ import javax.annotation.Nullable;
 public class DefaultJavaLibrary extends AbstractBuildRule
     implements JavaLibrary, HasClasspathEntries, ExportDependencies,
     InitializableFromDisk<JavaLibrary.Data>, AndroidPackageable,
-    SupportsInputBasedRuleKey, SupportsDependencyFileRuleKey, HasTests {
+    SupportsInputBasedRuleKey, SupportsDependencyFileRuleKey, HasTests, HasRuntimeDeps {
 
   private static final BuildableProperties OUTPUT_TYPE = new BuildableProperties(LIBRARY);
 
@@ -116,6 +119,10 @@ public class DefaultJavaLibrary extends AbstractBuildRule
   private final ImmutableList<String> postprocessClassesCommands;
   private final ImmutableSortedSet<BuildRule> exportedDeps;
   private final ImmutableSortedSet<BuildRule> providedDeps;
+  // The declared deps of the rule, before any are replaced by the rules calculating their ABI jars.
+  private final Supplier<ImmutableSortedSet<BuildRule>> classpathDeclaredDeps;
+  // Deps compiled against through the ABI jars calculated from their sources, keyed to those rules.
+  private final ImmutableSortedMap<BuildRule, BuildRule> sourceAbiDeps;
   // Some classes need to override this when enhancing deps (see AndroidLibrary).
   private final ImmutableSet<Path> additionalClasspathEntries;
   private final Supplier<ImmutableSet<Path>>
@@ -194,6 +201,52 @@ public class DefaultJavaLibrary extends AbstractBuildRule
       Optional<String> mavenCoords,
       ImmutableSortedSet<BuildTarget> tests,
       ImmutableSet<Pattern> classesToRemoveFromJar) {
+    this(
+        params,
+        resolver,
+        srcs,
+        resources,
+        generatedSourceFolder,
+        proguardConfig,
+        postprocessClassesCommands,
+        exportedDeps,
+        providedDeps,
+        abiJar,
+        trackClassUsage,
+        additionalClasspathEntries,
+        compileStepFactory,
+        resourcesRoot,
+        mavenCoords,
+        tests,
+        classesToRemoveFromJar,
+        /* sourceAbiDeps */ ImmutableSortedMap.<BuildRule, BuildRule>of());
+  }
+
+  /**
+   * @param sourceAbiDeps deps to compile against through the ABI jars calculated from their
+   *     sources (see {@link CalculateSourceAbi}), keyed to the rules calculating them.  This rule
+   *     depends on those rules instead of the deps, so it can be compiled without waiting for the
+   *     deps to be, and the deps become runtime deps of it.
+   */
+  public DefaultJavaLibrary(
+      final BuildRuleParams params,
+      SourcePathResolver resolver,
+      Set<? extends SourcePath> srcs,
+      Set<? extends SourcePath> resources,
+      Optional<Path> generatedSourceFolder,
+      Optional<SourcePath> proguardConfig,
+      ImmutableList<String> postprocessClassesCommands,
+      ImmutableSortedSet<BuildRule> exportedDeps,
+      ImmutableSortedSet<BuildRule> providedDeps,
+      SourcePath abiJar,
+      boolean trackClassUsage,
+      ImmutableSet<Path> additionalClasspathEntries,
+      CompileToJarStepFactory compileStepFactory,
+      Optional<Path> resourcesRoot,
+      Optional<String> mavenCoords,
+      ImmutableSortedSet<BuildTarget> tests,
+      ImmutableSet<Pattern> classesToRemoveFromJar,
+      ImmutableSortedMap<BuildRule, BuildRule> sourceAbiDeps) {
     this(
         params,
         resolver,
@@ -219,7 +272,8 @@ public class DefaultJavaLibrary extends AbstractBuildRule
         resourcesRoot,
         mavenCoords,
         tests,
-        classesToRemoveFromJar);
+        classesToRemoveFromJar,
+        sourceAbiDeps);
   }
 
   private DefaultJavaLibrary(
@@ -240,9 +294,11 @@ public class DefaultJavaLibrary extends AbstractBuildRule
       Optional<Path> resourcesRoot,
       Optional<String> mavenCoords,
       ImmutableSortedSet<BuildTarget> tests,
-      ImmutableSet<Pattern> classesToRemoveFromJar) {
+      ImmutableSet<Pattern> classesToRemoveFromJar,
+      ImmutableSortedMap<BuildRule, BuildRule> sourceAbiDeps) {
     super(
-        params.appendExtraDeps(new Supplier<Iterable<? extends BuildRule>>() {
+        withSourceAbiDeps(params, sourceAbiDeps).appendExtraDeps(
+            new Supplier<Iterable<? extends BuildRule>>() {
               @Override
               public Iterable<? extends BuildRule> get() {
                 return resolver.filterBuildRuleInputs(abiClasspath.get());
@@ -268,6 +324,8 @@ public class DefaultJavaLibrary extends AbstractBuildRule
     this.postprocessClassesCommands = postprocessClassesCommands;
     this.exportedDeps = exportedDeps;
     this.providedDeps = providedDeps;
+    this.classpathDeclaredDeps = params.getDeclaredDeps();
+    this.sourceAbiDeps = sourceAbiDeps;
     this.additionalClasspathEntries = FluentIterable
         .from(additionalClasspathEntries)
         .transform(getProjectFilesystem().getAbsolutifier())
@@ -279,7 +337,10 @@ public class DefaultJavaLibrary extends AbstractBuildRule
     this.abiJar = abiJar;
     this.trackClassUsage = trackClassUsage;
     this.abiClasspath = abiClasspath;
-    this.deps = params.getDeps();
+    this.deps = ImmutableSortedSet.<BuildRule>naturalOrder()
+        .addAll(params.getDeps())
+        .addAll(sourceAbiDeps.values())
+        .build();
     if (!srcs.isEmpty() || !resources.isEmpty()) {
       this.outputJar = Optional.of(getOutputJarPath(getBuildTarget(), getProjectFilesystem()));
     } else {
@@ -332,6 +393,34 @@ public class DefaultJavaLibrary extends AbstractBuildRule
     this.classesToRemoveFromJar = classesToRemoveFromJar;
   }
 
+  private static BuildRuleParams withSourceAbiDeps(
+      BuildRuleParams params,
+      ImmutableSortedMap<BuildRule, BuildRule> sourceAbiDeps) {
+    if (sourceAbiDeps.isEmpty()) {
+      return params;
+    }
+    return params.copyWithDeps(
+        replaceWithSourceAbis(params.getDeclaredDeps(), sourceAbiDeps),
+        replaceWithSourceAbis(params.getExtraDeps(), sourceAbiDeps));
+  }
+
+  private static Supplier<ImmutableSortedSet<BuildRule>> replaceWithSourceAbis(
+      final Supplier<ImmutableSortedSet<BuildRule>> deps,
+      final ImmutableSortedMap<BuildRule, BuildRule> sourceAbiDeps) {
+    return Suppliers.memoize(
+        new Supplier<ImmutableSortedSet<BuildRule>>() {
+          @Override
+          public ImmutableSortedSet<BuildRule> get() {
+            ImmutableSortedSet.Builder<BuildRule> replaced = ImmutableSortedSet.naturalOrder();
+            for (BuildRule dep : deps.get()) {
+              BuildRule sourceAbi = sourceAbiDeps.get(dep);
+              replaced.add(sourceAbi == null ? dep : sourceAbi);
+            }
+            return replaced.build();
+          }
+        });
+  }
+
   private Path getPathToAbiOutputDir() {
     return BuildTargets.getGenPath(getProjectFilesystem(), getBuildTarget(), "lib__%s__abi");
   }
@@ -381,7 +470,7 @@ public class DefaultJavaLibrary extends AbstractBuildRule
 
   @Override
   public ImmutableSortedSet<BuildRule> getDepsForTransitiveClasspathEntries() {
-    return ImmutableSortedSet.copyOf(Sets.union(getDeclaredDeps(), exportedDeps));
+    return ImmutableSortedSet.copyOf(Sets.union(classpathDeclaredDeps.get(), exportedDeps));
   }
 
   @Override
@@ -469,10 +558,15 @@ public class DefaultJavaLibrary extends AbstractBuildRule
         .filter(Predicates.notNull())
         .toSet();
 
-    ImmutableSortedSet<Path> declared = ImmutableSortedSet.<Path>naturalOrder()
-        .addAll(declaredClasspathEntries.values())
-        .addAll(provided)
-        .build();
+    // Deps with an ABI jar calculated from source are compiled against through it, as they may
+    // not have been built yet.
+    ImmutableMap<Path, Path> sourceAbiJars = getSourceAbiJars();
+    ImmutableSortedSet.Builder<Path> declaredBuilder = ImmutableSortedSet.naturalOrder();
+    for (Path entry : Iterables.concat(declaredClasspathEntries.values(), provided)) {
+      Path sourceAbiJar = sourceAbiJars.get(entry);
+      declaredBuilder.add(sourceAbiJar == null ? entry : sourceAbiJar);
+    }
+    ImmutableSortedSet<Path> declared = declaredBuilder.build();
 
 
     // Make sure that this directory exists because ABI information will be written here.
@@ -585,6 +679,17 @@ public class DefaultJavaLibrary extends AbstractBuildRule
     return steps.build();
   }
 
+  private ImmutableMap<Path, Path> getSourceAbiJars() {
+    ImmutableMap.Builder<Path, Path> sourceAbiJars = ImmutableMap.builder();
+    for (BuildRule dep : sourceAbiDeps.keySet()) {
+      BuildRule sourceAbi = sourceAbiDeps.get(dep);
+      sourceAbiJars.put(
+          getResolver().getAbsolutePath(new BuildTargetSourcePath(dep.getBuildTarget())),
+          getResolver().getAbsolutePath(new BuildTargetSourcePath(sourceAbi.getBuildTarget())));
+    }
+    return sourceAbiJars.build();
+  }
+
   /**
    * Instructs this rule to report the ABI it has on disk as its current ABI.
    */
@@ -621,10 +726,19 @@ public class DefaultJavaLibrary extends AbstractBuildRule
   public Iterable<AndroidPackageable> getRequiredPackageables() {
     return AndroidPackageableCollector.getPackageableRules(ImmutableSortedSet.copyOf(
             Sets.difference(
-                Sets.union(getDeclaredDeps(), exportedDeps),
+                Sets.union(classpathDeclaredDeps.get(), exportedDeps),
                 providedDeps)));
   }
 
+  /**
+   * The deps compiled against through their source ABI jars still need to be built for this
+   * library to be used.
+   */
+  @Override
+  public ImmutableSortedSet<BuildRule> getRuntimeDeps() {
+    return sourceAbiDeps.keySet();
+  }
+
   @Override
   public Optional<String> getMavenCoords() {
     return mavenCoords;
@@ -67,6 +67,10 @@ public class JavaBuckConfig {
     // work fine.
     boolean trackClassUsage = delegate.getBooleanValue("java", "track_class_usage", true);
 
+    AbstractJavacOptions.AbiGenerationMode abiGenerationMode = delegate
+        .getEnum("java", "abi_generation_mode", AbstractJavacOptions.AbiGenerationMode.class)
+        .or(AbstractJavacOptions.AbiGenerationMode.CLASS);
+
     ImmutableMap<String, String> allEntries = delegate.getEntriesForSection("java");
     ImmutableMap.Builder<String, String> bootclasspaths = ImmutableMap.builder();
     for (Map.Entry<String, String> entry : allEntries.entrySet()) {
@@ -85,6 +89,7 @@ public class JavaBuckConfig {
         .addAllExtraArguments(extraArguments)
         .setSafeAnnotationProcessors(safeAnnotationProcessors)
         .setTrackClassUsageNotDisabled(trackClassUsage)
+        .setAbiGenerationMode(abiGenerationMode)
         .build();
   }
 
@@ -459,6 +459,13 @@ public class JavaFileParser {
     return new JavaFileParser(AST.JLS8, javaVersion);
   }
 
+  /**
+   * @return the version of the language the sources are parsed as, such as {@code "1.7"}.
+   */
+  public String getJavaVersion() {
+    return javaVersion;
+  }
+
   public ImmutableSortedSet<String> getExportedSymbolsFromString(String code) {
     return extractFeaturesFromJavaCode(code).providedSymbols;
   }
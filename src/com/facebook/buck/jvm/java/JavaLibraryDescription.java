@@ -184,16 +184,18 @@ public class JavaLibraryDescription implements Description<JavaLibraryDescriptio
 
     ImmutableSortedSet<BuildRule> exportedDeps = resolver.getAllRules(args.exportedDeps.get());
 
+    BuildRuleParams javaLibraryParams = params.appendExtraDeps(
+        Iterables.concat(
+            BuildRules.getExportedRules(
+                Iterables.concat(
+                    params.getDeclaredDeps().get(),
+                    exportedDeps,
+                    resolver.getAllRules(args.providedDeps.get()))),
+            pathResolver.filterBuildRuleInputs(
+                javacOptions.getInputs(pathResolver))));
+
     DefaultJavaLibrary newJavaLibrary = new DefaultJavaLibrary(
-        params.appendExtraDeps(
-            Iterables.concat(
-                BuildRules.getExportedRules(
-                    Iterables.concat(
-                        params.getDeclaredDeps().get(),
-                        exportedDeps,
-                        resolver.getAllRules(args.providedDeps.get()))),
-                pathResolver.filterBuildRuleInputs(
-                    javacOptions.getInputs(pathResolver)))),
+        javaLibraryParams,
         pathResolver,
         args.srcs.get(),
         validateResources(
@@ -213,7 +215,10 @@ public class JavaLibraryDescription implements Description<JavaLibraryDescriptio
         args.resourcesRoot,
         args.mavenCoords,
         args.tests.get(),
-        javacOptions.getClassesToRemoveFromJar());
+        javacOptions.getClassesToRemoveFromJar(),
+        // Deps whose ABI jars are calculated from source were created before this library, and
+        // are compiled against through those jars so the compile doesn't wait for theirs.
+        JavaLibraryRules.getSourceAbiDeps(resolver, javaLibraryParams.getDeps()));
 
 
     DefaultJavaLibrary defaultJavaLibrary = newJavaLibrary;
@@ -224,12 +229,29 @@ public class JavaLibraryDescription implements Description<JavaLibraryDescriptio
     }
 
     try {
-      resolver.addToIndex(
-          CalculateAbi.of(
-              abiJarTarget,
-              pathResolver,
-              params,
-              new BuildTargetSourcePath(defaultJavaLibrary.getBuildTarget())));
+      if (CalculateSourceAbi.isSupported(
+              javacOptions,
+              args.srcs.get(),
+              args.postprocessClassesCommands.get(),
+              pathResolver)) {
+        // Signatures only refer to the ABI of the deps on the classpath, so their ABI jars are
+        // all it takes to calculate ours.
+        resolver.addToIndex(
+            CalculateSourceAbi.of(
+                abiJarTarget,
+                pathResolver,
+                params,
+                args.srcs.get(),
+                javacOptions,
+                JavaLibraryRules.getAbiInputs(javaLibraryParams.getDeps())));
+      } else {
+        resolver.addToIndex(
+            CalculateAbi.of(
+                abiJarTarget,
+                pathResolver,
+                params,
+                new BuildTargetSourcePath(defaultJavaLibrary.getBuildTarget())));
+      }
     } catch (IllegalStateException ise) {
     }
 
@@ -24,6 +24,8 @@ import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
 import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.BuildableContext;
 import com.facebook.buck.rules.OnDiskBuildInfo;
 import com.facebook.buck.util.sha1.Sha1HashCode;
@@ -130,4 +132,30 @@ public class JavaLibraryRules {
     return abiRules.build();
   }
 
+  /**
+   * @return the {@link HasJavaAbi} rules among {@code deps} whose ABI jars are calculated from
+   *     their sources, keyed to the {@link CalculateSourceAbi} rules doing so.
+   */
+  public static ImmutableSortedMap<BuildRule, BuildRule> getSourceAbiDeps(
+      BuildRuleResolver resolver,
+      Iterable<? extends BuildRule> deps) {
+    ImmutableSortedMap.Builder<BuildRule, BuildRule> sourceAbiDeps =
+        ImmutableSortedMap.naturalOrder();
+    for (BuildRule dep : deps) {
+      if (!(dep instanceof HasJavaAbi)) {
+        continue;
+      }
+      Optional<SourcePath> abiJar = ((HasJavaAbi) dep).getAbiJar();
+      if (!abiJar.isPresent() || !(abiJar.get() instanceof BuildTargetSourcePath)) {
+        continue;
+      }
+      Optional<BuildRule> abiRule =
+          resolver.getRuleOptional(((BuildTargetSourcePath) abiJar.get()).getTarget());
+      if (abiRule.isPresent() && abiRule.get() instanceof CalculateSourceAbi) {
+        sourceAbiDeps.put(dep, abiRule.get());
+      }
+    }
+    return sourceAbiDeps.build();
+  }
+
 }
@@ -0,0 +1,699 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.signature.SignatureVisitor;
+import org.objectweb.asm.signature.SignatureWriter;
+
+import java.io.IOException;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+
+import javax.annotation.Nullable;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.type.TypeVariable;
+import javax.lang.model.type.WildcardType;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.SimpleAnnotationValueVisitor6;
+import javax.lang.model.util.Types;
+
+/**
+ * Generates stubs of the classes declared in the sources being compiled from javac's model of
+ * them, rather than from compiled class files. Run as the only processor of a compilation with
+ * {@code -proc:only}, javac stops once the sources have been entered, so the ABI of a library can
+ * be produced without attributing or generating code for any method bodies.
+ * <p>
+ * Like the stubs produced by {@link StubJar}, these contain no code and no private members.
+ * Anonymous and local classes can't be seen from source, so they're left out.
+ */
+@SupportedAnnotationTypes("*")
+public class StubGeneratingProcessor extends AbstractProcessor {
+
+  private final SortedMap<String, byte[]> stubs = Maps.newTreeMap();
+
+  @Nullable
+  private Elements elements;
+  @Nullable
+  private Types types;
+  private int classFileVersion;
+
+  @Override
+  public synchronized void init(ProcessingEnvironment processingEnv) {
+    super.init(processingEnv);
+    this.elements = processingEnv.getElementUtils();
+    this.types = processingEnv.getTypeUtils();
+    this.classFileVersion = getClassFileVersion(processingEnv.getSourceVersion());
+  }
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+      stubType(type);
+    }
+    for (PackageElement pkg : ElementFilter.packagesIn(roundEnv.getRootElements())) {
+      stubPackage(pkg);
+    }
+    // We only look, so leave the annotations to anything else that wants them.
+    return false;
+  }
+
+  /**
+   * @return the stubbed class files, keyed by their path within a jar.
+   */
+  public ImmutableSortedMap<String, byte[]> getStubs() {
+    return ImmutableSortedMap.copyOfSorted(stubs);
+  }
+
+  /**
+   * Writes the stubbed classes to a jar at {@code path}.
+   *
+   * @return the SHA-1 of the written jar, computed as it is written.
+   */
+  public HashCode writeTo(ProjectFilesystem filesystem, Path path) throws IOException {
+    return StubJar.writeStubs(
+        filesystem,
+        path,
+        ImmutableList.copyOf(stubs.keySet()),
+        ImmutableList.copyOf(stubs.values()));
+  }
+
+  private static int getClassFileVersion(SourceVersion sourceVersion) {
+    if (sourceVersion.compareTo(SourceVersion.RELEASE_6) <= 0) {
+      return Opcodes.V1_6;
+    } else if (sourceVersion.compareTo(SourceVersion.RELEASE_7) == 0) {
+      return Opcodes.V1_7;
+    }
+    return Opcodes.V1_8;
+  }
+
+  private void stubPackage(PackageElement pkg) {
+    // javac only writes a package-info class when the package carries annotations.
+    if (pkg.getAnnotationMirrors().isEmpty()) {
+      return;
+    }
+    String name = pkg.getQualifiedName().toString().replace('.', '/') + "/package-info";
+    ClassWriter writer = new ClassWriter(0);
+    writer.visit(
+        classFileVersion,
+        Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT | Opcodes.ACC_SYNTHETIC,
+        name,
+        null,
+        "java/lang/Object",
+        null);
+    writeAnnotations(writer, pkg);
+    writer.visitEnd();
+    stubs.put(name + ".class", writer.toByteArray());
+  }
+
+  private void stubType(TypeElement type) {
+    String name = getInternalName(type);
+    ClassWriter writer = new ClassWriter(0);
+
+    TypeMirror superclass = type.getSuperclass();
+    String superName;
+    if (superclass.getKind() != TypeKind.NONE) {
+      superName = getInternalName(superclass);
+    } else {
+      // Interfaces extend Object as far as the JVM is concerned.  Object itself extends nothing.
+      superName = type.getKind().isInterface() ? "java/lang/Object" : null;
+    }
+    String[] interfaces = new String[type.getInterfaces().size()];
+    for (int i = 0; i < interfaces.length; i++) {
+      interfaces[i] = getInternalName(type.getInterfaces().get(i));
+    }
+
+    writer.visit(
+        classFileVersion,
+        getClassAccess(type) | getDeprecatedAccess(type),
+        name,
+        getClassSignature(type),
+        superName,
+        interfaces);
+
+    writeAnnotations(writer, type);
+
+    if (type.getNestingKind() == NestingKind.MEMBER) {
+      writer.visitInnerClass(
+          name,
+          getInternalName((TypeElement) type.getEnclosingElement()),
+          type.getSimpleName().toString(),
+          getInnerClassAccess(type));
+    }
+
+    List<TypeElement> memberTypes = ElementFilter.typesIn(type.getEnclosedElements());
+    for (TypeElement memberType : memberTypes) {
+      writer.visitInnerClass(
+          getInternalName(memberType),
+          name,
+          memberType.getSimpleName().toString(),
+          getInnerClassAccess(memberType));
+    }
+
+    // Sort members, so that reordering them in the source doesn't change the ABI.
+    SortedMap<String, VariableElement> fields = Maps.newTreeMap();
+    for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+      if (!field.getModifiers().contains(Modifier.PRIVATE)) {
+        fields.put(field.getSimpleName().toString(), field);
+      }
+    }
+    for (VariableElement field : fields.values()) {
+      writeField(writer, field);
+    }
+
+    SortedMap<String, ExecutableElement> methods = Maps.newTreeMap();
+    for (ExecutableElement method : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (!method.getModifiers().contains(Modifier.PRIVATE)) {
+        methods.put("<init>" + getMethodDescriptor(method), method);
+      }
+    }
+    for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+      if (!method.getModifiers().contains(Modifier.PRIVATE)) {
+        methods.put(method.getSimpleName() + getMethodDescriptor(method), method);
+      }
+    }
+    for (ExecutableElement method : methods.values()) {
+      writeMethod(writer, method);
+    }
+
+    writer.visitEnd();
+    stubs.put(name + ".class", writer.toByteArray());
+
+    for (TypeElement memberType : memberTypes) {
+      stubType(memberType);
+    }
+  }
+
+  private void writeField(ClassWriter writer, VariableElement field) {
+    int access = getAccess(field.getModifiers()) | getDeprecatedAccess(field);
+    if (field.getKind() == ElementKind.ENUM_CONSTANT) {
+      access |= Opcodes.ACC_ENUM;
+    }
+    FieldVisitor visitor = writer.visitField(
+        access,
+        field.getSimpleName().toString(),
+        getDescriptor(field.asType()),
+        isGeneric(field.asType()) ? getTypeSignature(field.asType()) : null,
+        getConstantValue(field));
+    for (AnnotationMirror annotation : field.getAnnotationMirrors()) {
+      RetentionPolicy retention = getRetention(annotation);
+      if (retention != RetentionPolicy.SOURCE) {
+        writeAnnotation(
+            visitor.visitAnnotation(
+                getDescriptor(annotation.getAnnotationType()),
+                retention == RetentionPolicy.RUNTIME),
+            annotation);
+      }
+    }
+    visitor.visitEnd();
+  }
+
+  private void writeMethod(ClassWriter writer, ExecutableElement method) {
+    int access = getAccess(method.getModifiers()) | getDeprecatedAccess(method);
+    if (method.isVarArgs()) {
+      access |= Opcodes.ACC_VARARGS;
+    }
+    String[] exceptions = new String[method.getThrownTypes().size()];
+    for (int i = 0; i < exceptions.length; i++) {
+      exceptions[i] = getInternalName(method.getThrownTypes().get(i));
+    }
+    boolean isConstructor = method.getKind() == ElementKind.CONSTRUCTOR;
+    MethodVisitor visitor = writer.visitMethod(
+        access,
+        isConstructor ? "<init>" : method.getSimpleName().toString(),
+        getMethodDescriptor(method),
+        getMethodSignature(method),
+        exceptions);
+
+    for (AnnotationMirror annotation : method.getAnnotationMirrors()) {
+      RetentionPolicy retention = getRetention(annotation);
+      if (retention != RetentionPolicy.SOURCE) {
+        writeAnnotation(
+            visitor.visitAnnotation(
+                getDescriptor(annotation.getAnnotationType()),
+                retention == RetentionPolicy.RUNTIME),
+            annotation);
+      }
+    }
+    List<? extends VariableElement> parameters = method.getParameters();
+    for (int i = 0; i < parameters.size(); i++) {
+      for (AnnotationMirror annotation : parameters.get(i).getAnnotationMirrors()) {
+        RetentionPolicy retention = getRetention(annotation);
+        if (retention != RetentionPolicy.SOURCE) {
+          writeAnnotation(
+              visitor.visitParameterAnnotation(
+                  i,
+                  getDescriptor(annotation.getAnnotationType()),
+                  retention == RetentionPolicy.RUNTIME),
+              annotation);
+        }
+      }
+    }
+
+    AnnotationValue defaultValue = method.getDefaultValue();
+    if (defaultValue != null) {
+      AnnotationVisitor defaultVisitor = visitor.visitAnnotationDefault();
+      writeAnnotationValue(defaultVisitor, null, defaultValue);
+      defaultVisitor.visitEnd();
+    }
+    visitor.visitEnd();
+  }
+
+  private void writeAnnotations(ClassWriter writer, Element element) {
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      RetentionPolicy retention = getRetention(annotation);
+      if (retention != RetentionPolicy.SOURCE) {
+        writeAnnotation(
+            writer.visitAnnotation(
+                getDescriptor(annotation.getAnnotationType()),
+                retention == RetentionPolicy.RUNTIME),
+            annotation);
+      }
+    }
+  }
+
+  private void writeAnnotation(AnnotationVisitor visitor, AnnotationMirror annotation) {
+    SortedMap<String, AnnotationValue> values = Maps.newTreeMap();
+    for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+        annotation.getElementValues().entrySet()) {
+      values.put(entry.getKey().getSimpleName().toString(), entry.getValue());
+    }
+    for (Map.Entry<String, AnnotationValue> entry : values.entrySet()) {
+      writeAnnotationValue(visitor, entry.getKey(), entry.getValue());
+    }
+    visitor.visitEnd();
+  }
+
+  private void writeAnnotationValue(
+      final AnnotationVisitor visitor,
+      @Nullable final String name,
+      AnnotationValue value) {
+    value.accept(
+        new SimpleAnnotationValueVisitor6<Void, Void>() {
+          @Override
+          protected Void defaultAction(Object constant, Void aVoid) {
+            visitor.visit(name, constant);
+            return null;
+          }
+
+          @Override
+          public Void visitType(TypeMirror type, Void aVoid) {
+            visitor.visit(name, Type.getType(getDescriptor(type)));
+            return null;
+          }
+
+          @Override
+          public Void visitEnumConstant(VariableElement constant, Void aVoid) {
+            visitor.visitEnum(
+                name,
+                getDescriptor(constant.asType()),
+                constant.getSimpleName().toString());
+            return null;
+          }
+
+          @Override
+          public Void visitAnnotation(AnnotationMirror annotation, Void aVoid) {
+            writeAnnotation(
+                visitor.visitAnnotation(name, getDescriptor(annotation.getAnnotationType())),
+                annotation);
+            return null;
+          }
+
+          @Override
+          public Void visitArray(List<? extends AnnotationValue> values, Void aVoid) {
+            AnnotationVisitor arrayVisitor = visitor.visitArray(name);
+            for (AnnotationValue value : values) {
+              writeAnnotationValue(arrayVisitor, null, value);
+            }
+            arrayVisitor.visitEnd();
+            return null;
+          }
+        },
+        null);
+  }
+
+  private static RetentionPolicy getRetention(AnnotationMirror annotation) {
+    Retention retention =
+        annotation.getAnnotationType().asElement().getAnnotation(Retention.class);
+    return retention == null ? RetentionPolicy.CLASS : retention.value();
+  }
+
+  @Nullable
+  private static Object getConstantValue(VariableElement field) {
+    Object value = field.getConstantValue();
+    // The class file stores the narrower constants as ints.
+    if (value instanceof Boolean) {
+      return (Boolean) value ? 1 : 0;
+    } else if (value instanceof Character) {
+      return (int) (Character) value;
+    } else if (value instanceof Byte || value instanceof Short) {
+      return ((Number) value).intValue();
+    }
+    return value;
+  }
+
+  private int getDeprecatedAccess(Element element) {
+    return Preconditions.checkNotNull(elements).isDeprecated(element) ?
+        Opcodes.ACC_DEPRECATED :
+        0;
+  }
+
+  private static int getClassAccess(TypeElement type) {
+    Set<Modifier> modifiers = type.getModifiers();
+    // Nested classes are at most public in their own class files.
+    int access = modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.PROTECTED) ?
+        Opcodes.ACC_PUBLIC :
+        0;
+    if (modifiers.contains(Modifier.FINAL)) {
+      access |= Opcodes.ACC_FINAL;
+    }
+    return access | getKindAccess(type);
+  }
+
+  private static int getInnerClassAccess(TypeElement type) {
+    return getAccess(type.getModifiers()) | getKindAccess(type);
+  }
+
+  private static int getKindAccess(TypeElement type) {
+    switch (type.getKind()) {
+      case ANNOTATION_TYPE:
+        return Opcodes.ACC_ANNOTATION | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT;
+      case INTERFACE:
+        return Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT;
+      case ENUM:
+        return Opcodes.ACC_ENUM | Opcodes.ACC_SUPER;
+      default:
+        return type.getModifiers().contains(Modifier.ABSTRACT) ?
+            Opcodes.ACC_ABSTRACT | Opcodes.ACC_SUPER :
+            Opcodes.ACC_SUPER;
+    }
+  }
+
+  private static int getAccess(Set<Modifier> modifiers) {
+    int access = 0;
+    for (Modifier modifier : modifiers) {
+      switch (modifier) {
+        case PUBLIC:
+          access |= Opcodes.ACC_PUBLIC;
+          break;
+        case PROTECTED:
+          access |= Opcodes.ACC_PROTECTED;
+          break;
+        case PRIVATE:
+          access |= Opcodes.ACC_PRIVATE;
+          break;
+        case ABSTRACT:
+          access |= Opcodes.ACC_ABSTRACT;
+          break;
+        case STATIC:
+          access |= Opcodes.ACC_STATIC;
+          break;
+        case FINAL:
+          access |= Opcodes.ACC_FINAL;
+          break;
+        case TRANSIENT:
+          access |= Opcodes.ACC_TRANSIENT;
+          break;
+        case VOLATILE:
+          access |= Opcodes.ACC_VOLATILE;
+          break;
+        case SYNCHRONIZED:
+          access |= Opcodes.ACC_SYNCHRONIZED;
+          break;
+        case NATIVE:
+          access |= Opcodes.ACC_NATIVE;
+          break;
+        case STRICTFP:
+          access |= Opcodes.ACC_STRICT;
+          break;
+        default:
+          break;
+      }
+    }
+    return access;
+  }
+
+  private String getInternalName(TypeElement type) {
+    return Preconditions.checkNotNull(elements).getBinaryName(type).toString().replace('.', '/');
+  }
+
+  private String getInternalName(TypeMirror type) {
+    if (type.getKind() == TypeKind.TYPEVAR) {
+      return getInternalName(Preconditions.checkNotNull(types).erasure(type));
+    }
+    return getInternalName((TypeElement) ((DeclaredType) type).asElement());
+  }
+
+  private String getMethodDescriptor(ExecutableElement method) {
+    StringBuilder descriptor = new StringBuilder("(");
+    if (method.getKind() == ElementKind.CONSTRUCTOR) {
+      // javac passes the implicit arguments of these constructors first.
+      TypeElement owner = (TypeElement) method.getEnclosingElement();
+      if (owner.getKind() == ElementKind.ENUM) {
+        descriptor.append("Ljava/lang/String;I");
+      } else if (owner.getNestingKind() == NestingKind.MEMBER &&
+          !owner.getModifiers().contains(Modifier.STATIC)) {
+        descriptor.append(getDescriptor(owner.getEnclosingElement().asType()));
+      }
+    }
+    for (VariableElement parameter : method.getParameters()) {
+      descriptor.append(getDescriptor(parameter.asType()));
+    }
+    return descriptor.append(')').append(getDescriptor(method.getReturnType())).toString();
+  }
+
+  private String getDescriptor(TypeMirror type) {
+    switch (type.getKind()) {
+      case ARRAY:
+        return "[" + getDescriptor(((ArrayType) type).getComponentType());
+      case DECLARED:
+      case ERROR:
+      case TYPEVAR:
+        return "L" + getInternalName(type) + ";";
+      default:
+        return String.valueOf(getPrimitiveDescriptor(type));
+    }
+  }
+
+  private static char getPrimitiveDescriptor(TypeMirror type) {
+    switch (type.getKind()) {
+      case BOOLEAN:
+        return 'Z';
+      case BYTE:
+        return 'B';
+      case CHAR:
+        return 'C';
+      case DOUBLE:
+        return 'D';
+      case FLOAT:
+        return 'F';
+      case INT:
+        return 'I';
+      case LONG:
+        return 'J';
+      case SHORT:
+        return 'S';
+      case VOID:
+        return 'V';
+      default:
+        throw new IllegalArgumentException("Unexpected type: " + type);
+    }
+  }
+
+  /**
+   * @return whether {@code type} can only be described fully by a generic signature.
+   */
+  private static boolean isGeneric(TypeMirror type) {
+    switch (type.getKind()) {
+      case ARRAY:
+        return isGeneric(((ArrayType) type).getComponentType());
+      case TYPEVAR:
+        return true;
+      case DECLARED:
+        DeclaredType declaredType = (DeclaredType) type;
+        return !declaredType.getTypeArguments().isEmpty() ||
+            isGeneric(declaredType.getEnclosingType());
+      default:
+        return false;
+    }
+  }
+
+  @Nullable
+  private String getClassSignature(TypeElement type) {
+    boolean generic = !type.getTypeParameters().isEmpty() || isGeneric(type.getSuperclass());
+    for (TypeMirror iface : type.getInterfaces()) {
+      generic |= isGeneric(iface);
+    }
+    if (!generic) {
+      return null;
+    }
+
+    SignatureWriter signature = new SignatureWriter();
+    writeTypeParameters(signature, type.getTypeParameters());
+    if (type.getSuperclass().getKind() != TypeKind.NONE) {
+      writeType(signature.visitSuperclass(), type.getSuperclass());
+    } else {
+      signature.visitSuperclass().visitClassType("java/lang/Object");
+      signature.visitEnd();
+    }
+    for (TypeMirror iface : type.getInterfaces()) {
+      writeType(signature.visitInterface(), iface);
+    }
+    return signature.toString();
+  }
+
+  @Nullable
+  private String getMethodSignature(ExecutableElement method) {
+    boolean generic =
+        !method.getTypeParameters().isEmpty() || isGeneric(method.getReturnType());
+    for (VariableElement parameter : method.getParameters()) {
+      generic |= isGeneric(parameter.asType());
+    }
+    boolean genericThrows = false;
+    for (TypeMirror thrown : method.getThrownTypes()) {
+      genericThrows |= isGeneric(thrown);
+    }
+    if (!generic && !genericThrows) {
+      return null;
+    }
+
+    SignatureWriter signature = new SignatureWriter();
+    writeTypeParameters(signature, method.getTypeParameters());
+    for (VariableElement parameter : method.getParameters()) {
+      writeType(signature.visitParameterType(), parameter.asType());
+    }
+    writeType(signature.visitReturnType(), method.getReturnType());
+    if (genericThrows) {
+      for (TypeMirror thrown : method.getThrownTypes()) {
+        writeType(signature.visitExceptionType(), thrown);
+      }
+    }
+    return signature.toString();
+  }
+
+  private String getTypeSignature(TypeMirror type) {
+    SignatureWriter signature = new SignatureWriter();
+    writeType(signature, type);
+    return signature.toString();
+  }
+
+  private void writeTypeParameters(
+      SignatureVisitor visitor,
+      List<? extends TypeParameterElement> typeParameters) {
+    for (TypeParameterElement typeParameter : typeParameters) {
+      visitor.visitFormalTypeParameter(typeParameter.getSimpleName().toString());
+      List<? extends TypeMirror> bounds = typeParameter.getBounds();
+      for (int i = 0; i < bounds.size(); i++) {
+        TypeMirror bound = bounds.get(i);
+        // A leading interface bound leaves the class bound empty.
+        boolean isInterface = bound.getKind() == TypeKind.DECLARED &&
+            ((DeclaredType) bound).asElement().getKind().isInterface();
+        if (i == 0 && !isInterface) {
+          writeType(visitor.visitClassBound(), bound);
+        } else {
+          writeType(visitor.visitInterfaceBound(), bound);
+        }
+      }
+    }
+  }
+
+  private void writeType(SignatureVisitor visitor, TypeMirror type) {
+    switch (type.getKind()) {
+      case ARRAY:
+        writeType(visitor.visitArrayType(), ((ArrayType) type).getComponentType());
+        break;
+      case TYPEVAR:
+        visitor.visitTypeVariable(
+            ((TypeVariable) type).asElement().getSimpleName().toString());
+        break;
+      case DECLARED:
+      case ERROR:
+        writeClassType(visitor, (DeclaredType) type);
+        visitor.visitEnd();
+        break;
+      default:
+        visitor.visitBaseType(getPrimitiveDescriptor(type));
+        break;
+    }
+  }
+
+  private void writeClassType(SignatureVisitor visitor, DeclaredType type) {
+    TypeMirror enclosingType = type.getEnclosingType();
+    if (enclosingType.getKind() == TypeKind.DECLARED && isGeneric(enclosingType)) {
+      writeClassType(visitor, (DeclaredType) enclosingType);
+      visitor.visitInnerClassType(type.asElement().getSimpleName().toString());
+    } else {
+      visitor.visitClassType(getInternalName(type));
+    }
+    for (TypeMirror typeArgument : type.getTypeArguments()) {
+      if (typeArgument.getKind() != TypeKind.WILDCARD) {
+        writeType(visitor.visitTypeArgument(SignatureVisitor.INSTANCEOF), typeArgument);
+        continue;
+      }
+      WildcardType wildcard = (WildcardType) typeArgument;
+      if (wildcard.getExtendsBound() != null) {
+        writeType(visitor.visitTypeArgument(SignatureVisitor.EXTENDS), wildcard.getExtendsBound());
+      } else if (wildcard.getSuperBound() != null) {
+        writeType(visitor.visitTypeArgument(SignatureVisitor.SUPER), wildcard.getSuperBound());
+      } else {
+        visitor.visitTypeArgument();
+      }
+    }
+  }
+}
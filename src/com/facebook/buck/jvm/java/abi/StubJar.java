@@ -23,65 +23,221 @@ import static org.objectweb.asm.ClassReader.SKIP_FRAMES;
 import com.facebook.buck.io.HashingDeterministicJarWriter;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingOutputStream;
 import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.objectweb.asm.ClassReader;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarOutputStream;
 
 public class StubJar {
 
+  // Below this many classes per thread, handing work to other threads costs more than it saves.
+  private static final int MIN_CLASSES_PER_THREAD = 64;
+  private static final int MAX_THREADS = Runtime.getRuntime().availableProcessors();
+
+  // Stubs of the classes we've seen, keyed by a hash of the class file.  Libraries are mostly
+  // rebuilt after a few of their classes change, so the rest can skip being parsed again.
+  private static final long STUB_CACHE_MAX_BYTES = 64 * 1024 * 1024;
+  private static final Cache<HashCode, byte[]> STUB_CACHE = CacheBuilder.newBuilder()
+      .maximumWeight(STUB_CACHE_MAX_BYTES)
+      .weigher(
+          new Weigher<HashCode, byte[]>() {
+            @Override
+            public int weigh(HashCode key, byte[] value) {
+              return value.length;
+            }
+          })
+      .build();
+
   private final Path toMirror;
 
+  @VisibleForTesting
+  static void invalidateStubCache() {
+    STUB_CACHE.invalidateAll();
+  }
+
   public StubJar(Path toMirror) {
     this.toMirror = Preconditions.checkNotNull(toMirror);
   }
 
-  public void writeTo(ProjectFilesystem filesystem, Path path) throws IOException {
+  /**
+   * @return the SHA-1 of the written jar.
+   */
+  public HashCode writeTo(ProjectFilesystem filesystem, Path path) throws IOException {
+    return writeTo(filesystem, path, MoreExecutors.newDirectExecutorService());
+  }
+
+  /**
+   * Writes the stub jar, stubbing classes on {@code executor} as well as the calling thread.
+   * Tasks submitted to {@code executor} are waited for, so it should not queue them behind
+   * work which is itself waiting on this call.
+   *
+   * @return the SHA-1 of the written jar, computed as it is written.
+   */
+  public HashCode writeTo(
+      ProjectFilesystem filesystem,
+      Path path,
+      ListeningExecutorService executor) throws IOException {
+    return writeTo(filesystem, path, executor, MAX_THREADS);
+  }
+
+  /**
+   * @param maxThreads the most threads, including the calling one, to stub classes on.
+   */
+  @VisibleForTesting
+  HashCode writeTo(
+      ProjectFilesystem filesystem,
+      Path path,
+      ListeningExecutorService executor,
+      int maxThreads) throws IOException {
+    // Reading is cheap and sequential, so do it up front and stub in parallel afterwards.
+    final List<String> fileNames = Lists.newArrayList();
+    final List<byte[]> classes = Lists.newArrayList();
+    Walker walker = Walkers.getWalkerFor(toMirror);
+    walker.walk(
+        new FileAction() {
+          @Override
+          public void visit(Path relativizedPath, InputStream stream) throws IOException {
+            String fileName = MorePaths.pathWithUnixSeparators(relativizedPath);
+            if (fileName.endsWith(".class")) {
+              fileNames.add(fileName);
+              classes.add(ByteStreams.toByteArray(stream));
+            }
+          }
+        });
+    byte[][] stubs = getStubClassBytes(fileNames, classes, executor, maxThreads);
+    return writeStubs(filesystem, path, fileNames, Arrays.asList(stubs));
+  }
+
+  /**
+   * Writes already stubbed classes to a jar at {@code path}.
+   *
+   * @return the SHA-1 of the written jar, computed as it is written.
+   */
+  static HashCode writeStubs(
+      ProjectFilesystem filesystem,
+      Path path,
+      List<String> fileNames,
+      List<byte[]> stubs) throws IOException {
     Preconditions.checkState(!filesystem.exists(path), "Output file already exists: %s)", path);
 
     if (path.getParent() != null && !filesystem.exists(path.getParent())) {
       filesystem.createParentDirs(path);
     }
 
-    Walker walker = Walkers.getWalkerFor(toMirror);
+    HashingOutputStream hashingStream = new HashingOutputStream(
+        Hashing.sha1(),
+        new BufferedOutputStream(filesystem.newFileOutputStream(path)));
     try (
         HashingDeterministicJarWriter jar = new HashingDeterministicJarWriter(
-            new JarOutputStream(
-                filesystem.newFileOutputStream(path)))) {
-      final CreateStubAction createStubAction = new CreateStubAction(jar);
-      walker.walk(createStubAction);
+            new JarOutputStream(hashingStream))) {
+      for (int i = 0; i < stubs.size(); i++) {
+        jar.writeEntry(fileNames.get(i), ByteSource.wrap(stubs.get(i)));
+      }
     }
+    return hashingStream.hash();
   }
 
-  private static class CreateStubAction implements FileAction {
-    private final HashingDeterministicJarWriter writer;
-
-    public CreateStubAction(HashingDeterministicJarWriter writer) {
-      this.writer = writer;
+  private static byte[][] getStubClassBytes(
+      List<String> fileNames,
+      List<byte[]> classes,
+      ListeningExecutorService executor,
+      int maxThreads) throws IOException {
+    byte[][] stubs = new byte[classes.size()][];
+    AtomicInteger nextClass = new AtomicInteger();
+    StubClassesTask stubClasses = new StubClassesTask(fileNames, classes, stubs, nextClass);
+
+    int helperCount = Math.min(maxThreads, stubs.length / MIN_CLASSES_PER_THREAD) - 1;
+    List<ListenableFuture<Void>> helpers = Lists.newArrayList();
+    for (int i = 0; i < helperCount; i++) {
+      helpers.add(executor.submit(stubClasses));
     }
-
-    @Override
-    public void visit(Path relativizedPath, InputStream stream) throws IOException {
-      String fileName = MorePaths.pathWithUnixSeparators(relativizedPath);
-      if (!fileName.endsWith(".class")) {
-        return;
-      }
-
-      ByteSource stubClassBytes = getStubClassBytes(stream, fileName);
-      writer.writeEntry(fileName, stubClassBytes);
+    try {
+      stubClasses.call();
+      Futures.allAsList(helpers).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      // Stop the helpers from picking up more work if we failed.
+      nextClass.set(stubs.length);
     }
+    return stubs;
+  }
+
+  private static byte[] getStubClassBytes(String fileName, byte[] classBytes) throws IOException {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    hasher.putString(fileName, StandardCharsets.UTF_8);
+    hasher.putBytes(classBytes);
+    HashCode key = hasher.hash();
 
-    private ByteSource getStubClassBytes(InputStream stream,
-        String fileName) throws IOException {
-      ClassReader classReader = new ClassReader(stream);
+    byte[] stub = STUB_CACHE.getIfPresent(key);
+    if (stub == null) {
+      ClassReader classReader = new ClassReader(classBytes);
       ClassMirror visitor = new ClassMirror(fileName);
       classReader.accept(visitor, SKIP_CODE | SKIP_DEBUG | SKIP_FRAMES);
-      return visitor.getStubClassBytes();
+      stub = visitor.getStubClassBytes().read();
+      STUB_CACHE.put(key, stub);
+    }
+    return stub;
+  }
+
+  /**
+   * Stubs classes until there are none left to claim, so that any number of threads can share the
+   * work.
+   */
+  private static class StubClassesTask implements Callable<Void> {
+    private final List<String> fileNames;
+    private final List<byte[]> classes;
+    private final byte[][] stubs;
+    private final AtomicInteger nextClass;
+
+    public StubClassesTask(
+        List<String> fileNames,
+        List<byte[]> classes,
+        byte[][] stubs,
+        AtomicInteger nextClass) {
+      this.fileNames = fileNames;
+      this.classes = classes;
+      this.stubs = stubs;
+      this.nextClass = nextClass;
+    }
+
+    @Override
+    public Void call() throws IOException {
+      for (int i = nextClass.getAndIncrement(); i < stubs.length; i = nextClass.getAndIncrement()) {
+        stubs[i] = getStubClassBytes(fileNames.get(i), classes.get(i));
+      }
+      return null;
     }
   }
 }
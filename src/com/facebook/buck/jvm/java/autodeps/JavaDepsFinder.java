@@ -57,6 +57,7 @@ import com.google.common.collect.Ordering;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
@@ -200,14 +201,22 @@ public class JavaDepsFinder {
   public DependencyInfo findDependencyInfoForGraph(final TargetGraph graph) {
     final DependencyInfo dependencyInfo = new DependencyInfo();
 
+    // Extracting the symbols is the expensive part, so start it for every Java rule up front and
+    // let the build engine do it in parallel, while the graph is walked on a single thread below.
+    final Map<TargetNode<?>, JavaSymbolsRule> symbolsRules = new HashMap<>();
+    final Map<TargetNode<?>, ListenableFuture<BuildResult>> symbolsResults = new HashMap<>();
+    for (TargetNode<?> node : graph.getNodes()) {
+      if (RULES_TO_VISIT.contains(node.getDescription().getBuildRuleType())) {
+        JavaSymbolsRule symbolsRule = createJavaSymbolsRule(node, hasAutodeps(node));
+        symbolsRules.put(node, symbolsRule);
+        symbolsResults.put(node, buildEngine.build(buildContext, symbolsRule));
+      }
+    }
+
     // Walk the graph and for each Java rule we find, do the following:
     // 1. Make note if it has autodeps = True.
     // 2. If it does, record its required symbols.
     // 3. Record the Java entities it provides (regardless of whether autodeps = True).
-    //
-    // Currently, we traverse the entire target graph using a single thread. However, the work to
-    // visit each node could be done in parallel, so long as the updates to the above collections
-    // were thread-safe.
     new AbstractBottomUpTraversal<TargetNode<?>, Void>(graph) {
       @Override
       public void visit(TargetNode<?> node) {
@@ -242,7 +251,7 @@ public class JavaDepsFinder {
           dependencyInfo.ruleToRulesThatExportIt.put(graph.get(exportedDep), node);
         }
 
-        Symbols symbols = getJavaFileFeatures(node, autodeps);
+        Symbols symbols = getJavaFileFeatures(symbolsRules.get(node), symbolsResults.get(node));
         if (autodeps) {
           dependencyInfo.ruleToRequiredSymbols.putAll(node, symbols.required);
           dependencyInfo.ruleToExportedSymbols.putAll(node, symbols.exported);
@@ -372,7 +381,15 @@ public class JavaDepsFinder {
     return depsForBuildFiles;
   }
 
-  private Symbols getJavaFileFeatures(TargetNode<?> node, boolean shouldRecordRequiredSymbols) {
+  private static boolean hasAutodeps(TargetNode<?> node) {
+    Object arg = node.getConstructorArg();
+    return arg instanceof JavaLibraryDescription.Arg &&
+        ((JavaLibraryDescription.Arg) arg).autodeps.or(false);
+  }
+
+  private JavaSymbolsRule createJavaSymbolsRule(
+      TargetNode<?> node,
+      boolean shouldRecordRequiredSymbols) {
     // Build a JavaLibrarySymbolsFinder to create the JavaFileFeatures. By making use of Buck's
     // build cache, we can often avoid running a Java parser.
     BuildTarget buildTarget = node.getBuildTarget();
@@ -395,14 +412,18 @@ public class JavaDepsFinder {
       symbolsFinder = new PrebuiltJarSymbolsFinder(arg.binaryJar);
     }
 
-    // Build the rule, leveraging Buck's build cache.
-    JavaSymbolsRule buildRule = new JavaSymbolsRule(
+    return new JavaSymbolsRule(
         buildTarget,
         symbolsFinder,
         generatedSymbols,
         objectMapper,
         node.getRuleFactoryParams().getProjectFilesystem());
-    ListenableFuture<BuildResult> future = buildEngine.build(buildContext, buildRule);
+  }
+
+  private static Symbols getJavaFileFeatures(
+      JavaSymbolsRule buildRule,
+      ListenableFuture<BuildResult> future) {
+    // The rule was built leveraging Buck's build cache.
     BuildResult result = Futures.getUnchecked(future);
 
     Symbols features;
@@ -411,7 +432,9 @@ public class JavaDepsFinder {
     } else {
       Throwable failure = result.getFailure();
       Preconditions.checkNotNull(failure);
-      throw new RuntimeException("Failed to extract Java symbols for " + buildTarget, failure);
+      throw new RuntimeException(
+          "Failed to extract Java symbols for " + buildRule.getBuildTarget(),
+          failure);
     }
     return features;
   }
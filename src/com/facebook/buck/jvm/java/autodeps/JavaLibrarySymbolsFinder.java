@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java.autodeps;
 
+import com.facebook.buck.hashing.StringHashing;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.jvm.java.JavaFileParser;
 import com.facebook.buck.rules.PathSourcePath;
@@ -25,10 +26,16 @@ import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Ordering;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 
 import java.io.IOException;
@@ -50,6 +57,24 @@ final class JavaLibrarySymbolsFinder implements JavaSymbolsRule.SymbolsFinder {
   private static final Predicate<Object> IS_PATH_SOURCE_PATH =
       Predicates.instanceOf(PathSourcePath.class);
 
+  // Features of the files we've parsed, keyed by a hash of their contents and the language
+  // version.  A library's symbols are extracted again whenever any of its files change, so this
+  // saves parsing the ones which didn't, and survives between commands in the daemon.
+  private static final long FEATURES_CACHE_MAX_CHARS = 32 * 1024 * 1024;
+  private static final Cache<HashCode, JavaFileParser.JavaFileFeatures> FEATURES_CACHE =
+      CacheBuilder.newBuilder()
+          .maximumWeight(FEATURES_CACHE_MAX_CHARS)
+          .weigher(
+              new Weigher<HashCode, JavaFileParser.JavaFileFeatures>() {
+                @Override
+                public int weigh(HashCode key, JavaFileParser.JavaFileFeatures value) {
+                  return countChars(value.providedSymbols) +
+                      countChars(value.requiredSymbols) +
+                      countChars(value.exportedSymbols);
+                }
+              })
+          .build();
+
   private final ImmutableSortedSet<SourcePath> srcs;
 
   private final JavaFileParser javaFileParser;
@@ -88,8 +113,7 @@ final class JavaLibrarySymbolsFinder implements JavaSymbolsRule.SymbolsFinder {
         throw new RuntimeException(e);
       }
 
-      JavaFileParser.JavaFileFeatures features = javaFileParser
-          .extractFeaturesFromJavaCode(code);
+      JavaFileParser.JavaFileFeatures features = extractFeatures(code);
       if (shouldRecordRequiredSymbols) {
         requiredSymbols.addAll(features.requiredSymbols);
         exportedSymbols.addAll(features.exportedSymbols);
@@ -104,6 +128,28 @@ final class JavaLibrarySymbolsFinder implements JavaSymbolsRule.SymbolsFinder {
         FluentIterable.from(exportedSymbols).filter(NOT_A_BUILT_IN_SYMBOL));
   }
 
+  private JavaFileParser.JavaFileFeatures extractFeatures(String code) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    StringHashing.hashStringAndLength(hasher, javaFileParser.getJavaVersion());
+    hasher.putString(code, Charsets.UTF_8);
+    HashCode key = hasher.hash();
+
+    JavaFileParser.JavaFileFeatures features = FEATURES_CACHE.getIfPresent(key);
+    if (features == null) {
+      features = javaFileParser.extractFeaturesFromJavaCode(code);
+      FEATURES_CACHE.put(key, features);
+    }
+    return features;
+  }
+
+  private static int countChars(Iterable<String> symbols) {
+    int count = 0;
+    for (String symbol : symbols) {
+      count += symbol.length();
+    }
+    return count;
+  }
+
   @Override
   public void appendToRuleKey(RuleKeyObjectSink sink) {
     sink
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.intellij;
+
+import com.facebook.buck.hashing.StringHashing;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.rules.TargetNode;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Ordering;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Resources;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of what each IntelliJ module was generated from, so that an incremental project
+ * generation only has to render the modules whose targets changed since the previous one.
+ * <p>
+ * A module's hash covers the hashes of its targets, which include the contents of their inputs and
+ * those of their transitive deps, the elements the module depends on and the layout of all the
+ * modules in the project.  Directories which appear without any target changing are not picked up
+ * as excludes until the module is next rendered.
+ */
+class IjModuleHashes {
+
+  private static final Logger LOG = Logger.get(IjModuleHashes.class);
+
+  private static final String MANIFEST_NAME = "intellij-module-hashes";
+
+  private final ProjectFilesystem projectFilesystem;
+  private final ImmutableMap<Path, HashCode> previousHashes;
+  private final ImmutableMap<Path, HashCode> currentHashes;
+
+  @VisibleForTesting
+  IjModuleHashes(
+      ProjectFilesystem projectFilesystem,
+      ImmutableMap<Path, HashCode> previousHashes,
+      ImmutableMap<Path, HashCode> currentHashes) {
+    this.projectFilesystem = projectFilesystem;
+    this.previousHashes = previousHashes;
+    this.currentHashes = currentHashes;
+  }
+
+  /**
+   * Hashes the given modules and reads the hashes they had when they were last written.
+   *
+   * @param targetHashes hashes of every target in the module graph, as computed by
+   *     {@link com.facebook.buck.rules.TargetGraphHashing}.
+   * @param excludeArtifacts whether the modules are generated without references to artifacts.
+   */
+  public static IjModuleHashes load(
+      ProjectFilesystem projectFilesystem,
+      IjModuleGraph moduleGraph,
+      ImmutableSet<IjModule> modules,
+      ImmutableMap<BuildTarget, HashCode> targetHashes,
+      boolean excludeArtifacts) throws IOException {
+    Hasher projectHasher = Hashing.sha1().newHasher();
+    projectHasher.putBytes(
+        Resources.asByteSource(Resources.getResource(IjProjectWriter.class, "ij-module.st"))
+            .hash(Hashing.sha1())
+            .asBytes());
+    projectHasher.putBoolean(excludeArtifacts);
+    // Excludes stop at the base paths of nested modules, so every module depends on those.
+    for (Path basePath :
+        ImmutableSortedSet.copyOf(Ordering.natural(), modulesBasePaths(modules))) {
+      StringHashing.hashStringAndLength(projectHasher, basePath.toString());
+    }
+    HashCode projectHash = projectHasher.hash();
+
+    ImmutableMap.Builder<Path, HashCode> currentHashes = ImmutableMap.builder();
+    for (IjModule module : modules) {
+      currentHashes.put(
+          module.getModuleImlFilePath(),
+          hashModule(module, moduleGraph, targetHashes, projectHash));
+    }
+    return new IjModuleHashes(
+        projectFilesystem,
+        readManifest(projectFilesystem),
+        currentHashes.build());
+  }
+
+  /**
+   * Forgets the hashes recorded by the last incremental generation, because the modules are about
+   * to be written without keeping track of them.
+   */
+  public static void invalidate(ProjectFilesystem projectFilesystem) throws IOException {
+    projectFilesystem.deleteFileAtPathIfExists(getManifestPath(projectFilesystem));
+  }
+
+  /**
+   * @return whether the module's file was written from the same inputs by a previous generation,
+   *     and is still there.
+   */
+  public boolean isUpToDate(IjModule module) {
+    Path path = module.getModuleImlFilePath();
+    HashCode previous = previousHashes.get(path);
+    return previous != null &&
+        previous.equals(currentHashes.get(path)) &&
+        projectFilesystem.exists(path);
+  }
+
+  /**
+   * Records the hashes of all the modules, once they have all been written.
+   */
+  public void save() throws IOException {
+    StringBuilder manifest = new StringBuilder();
+    for (Map.Entry<Path, HashCode> entry :
+        ImmutableSortedMap.copyOf(currentHashes, Ordering.natural()).entrySet()) {
+      manifest.append(entry.getValue()).append(' ').append(entry.getKey()).append('\n');
+    }
+    Path manifestPath = getManifestPath(projectFilesystem);
+    projectFilesystem.createParentDirs(manifestPath);
+    projectFilesystem.writeContentsToPath(manifest.toString(), manifestPath);
+  }
+
+  private static ImmutableSet<Path> modulesBasePaths(ImmutableSet<IjModule> modules) {
+    ImmutableSet.Builder<Path> basePaths = ImmutableSet.builder();
+    for (IjModule module : modules) {
+      basePaths.add(module.getModuleBasePath());
+    }
+    return basePaths.build();
+  }
+
+  private static HashCode hashModule(
+      IjModule module,
+      IjModuleGraph moduleGraph,
+      ImmutableMap<BuildTarget, HashCode> targetHashes,
+      HashCode projectHash) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putBytes(projectHash.asBytes());
+    StringHashing.hashStringAndLength(hasher, module.getModuleBasePath().toString());
+
+    ImmutableSortedMap.Builder<String, HashCode> targets =
+        ImmutableSortedMap.naturalOrder();
+    for (TargetNode<?> node : module.getTargets()) {
+      BuildTarget target = node.getBuildTarget();
+      targets.put(target.toString(), Preconditions.checkNotNull(targetHashes.get(target)));
+    }
+    for (Map.Entry<String, HashCode> entry : targets.build().entrySet()) {
+      StringHashing.hashStringAndLength(hasher, entry.getKey());
+      hasher.putBytes(entry.getValue().asBytes());
+    }
+
+    // Which module a dep ends up in depends on the aggregation of the whole graph, so the names
+    // of the elements depended upon are hashed as well as the targets themselves.
+    ImmutableSortedMap.Builder<String, String> deps = ImmutableSortedMap.naturalOrder();
+    for (Map.Entry<IjProjectElement, IjModuleGraph.DependencyType> entry :
+        moduleGraph.getDepsFor(module).entrySet()) {
+      deps.put(entry.getKey().getName(), entry.getValue().name());
+    }
+    for (Map.Entry<String, String> entry : deps.build().entrySet()) {
+      StringHashing.hashStringAndLength(hasher, entry.getKey());
+      StringHashing.hashStringAndLength(hasher, entry.getValue());
+    }
+    return hasher.hash();
+  }
+
+  private static Path getManifestPath(ProjectFilesystem projectFilesystem) {
+    return projectFilesystem.getBuckPaths().getScratchDir().resolve(MANIFEST_NAME);
+  }
+
+  private static ImmutableMap<Path, HashCode> readManifest(ProjectFilesystem projectFilesystem) {
+    Optional<String> manifest =
+        projectFilesystem.readFileIfItExists(getManifestPath(projectFilesystem));
+    if (!manifest.isPresent()) {
+      return ImmutableMap.of();
+    }
+    ImmutableMap.Builder<Path, HashCode> hashes = ImmutableMap.builder();
+    for (String line : Splitter.on('\n').omitEmptyStrings().split(manifest.get())) {
+      List<String> parts = Splitter.on(' ').limit(2).splitToList(line);
+      try {
+        hashes.put(Paths.get(parts.get(1)), HashCode.fromString(parts.get(0)));
+      } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+        LOG.warn(e, "Ignoring malformed module hashes in %s.", getManifestPath(projectFilesystem));
+        return ImmutableMap.of();
+      }
+    }
+    return hashes.build();
+  }
+}
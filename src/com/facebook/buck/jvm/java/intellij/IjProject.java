@@ -38,7 +38,10 @@ import com.facebook.buck.rules.TargetGraphAndTargets;
 import com.facebook.buck.rules.TargetNode;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -56,6 +59,8 @@ public class IjProject {
   private final ProjectFilesystem projectFilesystem;
   private final IjModuleGraph.AggregationMode aggregationMode;
   private final BuckConfig buckConfig;
+  private final ListeningExecutorService executor;
+  private final Optional<ImmutableMap<BuildTarget, HashCode>> targetHashes;
 
   public IjProject(
       TargetGraphAndTargets targetGraphAndTargets,
@@ -65,7 +70,9 @@ public class IjProject {
       SourcePathResolver sourcePathResolver,
       ProjectFilesystem projectFilesystem,
       IjModuleGraph.AggregationMode aggregationMode,
-      BuckConfig buckConfig) {
+      BuckConfig buckConfig,
+      ListeningExecutorService executor,
+      Optional<ImmutableMap<BuildTarget, HashCode>> targetHashes) {
     this.targetGraphAndTargets = targetGraphAndTargets;
     this.javaPackageFinder = javaPackageFinder;
     this.javaFileParser = javaFileParser;
@@ -74,11 +81,16 @@ public class IjProject {
     this.projectFilesystem = projectFilesystem;
     this.aggregationMode = aggregationMode;
     this.buckConfig = buckConfig;
+    this.executor = executor;
+    this.targetHashes = targetHashes;
   }
 
   /**
    * Write the project to disk.
    *
+   * If the hashes of the targets were given, only the modules whose hashes changed since the last
+   * time the project was written with them are rendered.
+   *
    * @param runPostGenerationCleaner Whether or not the post-generation cleaner should be run.
    * @return set of {@link BuildTarget}s which should be built in order for the project to index
    *   correctly.
@@ -87,7 +99,7 @@ public class IjProject {
   public ImmutableSet<BuildTarget> write(
       boolean runPostGenerationCleaner,
       boolean excludeArtifacts)
-      throws IOException {
+      throws IOException, InterruptedException {
     final ImmutableSet.Builder<BuildTarget> requiredBuildTargets = ImmutableSet.builder();
     IjLibraryFactory libraryFactory = new DefaultIjLibraryFactory(
         new DefaultIjLibraryFactory.IjLibraryFactoryResolver() {
@@ -210,10 +222,23 @@ public class IjProject {
         projectFilesystem,
         IjProjectTemplateDataPreparer.createPackageLookupPathSet(moduleGraph),
         javaPackageFinder);
-    IjProjectWriter writer = new IjProjectWriter(
-        new IjProjectTemplateDataPreparer(parsingJavaPackageFinder, moduleGraph, projectFilesystem),
-        projectFilesystem);
-    writer.write(buckConfig, runPostGenerationCleaner);
+    IjProjectTemplateDataPreparer templateDataPreparer =
+        new IjProjectTemplateDataPreparer(parsingJavaPackageFinder, moduleGraph, projectFilesystem);
+    Optional<IjModuleHashes> moduleHashes = Optional.absent();
+    if (targetHashes.isPresent()) {
+      moduleHashes = Optional.of(
+          IjModuleHashes.load(
+              projectFilesystem,
+              moduleGraph,
+              templateDataPreparer.getModulesToBeWritten(),
+              targetHashes.get(),
+              excludeArtifacts));
+    } else {
+      // The modules written now won't match the hashes recorded by an incremental run.
+      IjModuleHashes.invalidate(projectFilesystem);
+    }
+    IjProjectWriter writer = new IjProjectWriter(templateDataPreparer, projectFilesystem);
+    writer.write(buckConfig, runPostGenerationCleaner, executor, moduleHashes);
     return requiredBuildTargets.build();
   }
 }
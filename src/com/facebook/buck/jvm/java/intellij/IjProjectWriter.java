@@ -19,11 +19,16 @@ package com.facebook.buck.jvm.java.intellij;
 import com.facebook.buck.cli.BuckConfig;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.concurrent.MoreFutures;
 import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import com.google.common.collect.FluentIterable;
 import com.google.common.hash.Hashing;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 import org.stringtemplate.v4.AutoIndentWriter;
 import org.stringtemplate.v4.ST;
@@ -36,12 +41,20 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Writes the serialized representations of IntelliJ project components to disk.
  */
 public class IjProjectWriter {
 
+  private static final Logger LOG = Logger.get(IjProjectWriter.class);
+
   public static final char DELIMITER = '%';
   public static final Path IDEA_CONFIG_DIR_PREFIX = Paths.get(".idea");
   public static final Path LIBRARIES_PREFIX = IDEA_CONFIG_DIR_PREFIX.resolve("libraries");
@@ -62,6 +75,10 @@ public class IjProjectWriter {
     }
   }
 
+  // Every module and library is rendered from the same few templates, so they're only read once.
+  private static final ConcurrentMap<StringTemplateFile, String> TEMPLATES =
+      new ConcurrentHashMap<>();
+
   private IjProjectTemplateDataPreparer projectDataPreparer;
   private ProjectFilesystem projectFilesystem;
 
@@ -72,27 +89,74 @@ public class IjProjectWriter {
     this.projectFilesystem = projectFilesystem;
   }
 
-  public void write(BuckConfig buckConfig, boolean runPostGenerationCleaner) throws IOException {
+  /**
+   * Renders the modules and libraries in parallel on the given executor.  Files whose contents
+   * haven't changed are left untouched.
+   *
+   * @param moduleHashes if present, modules which are up to date according to it aren't rendered
+   *     at all, and it is saved once all the others have been written.
+   */
+  public void write(
+      BuckConfig buckConfig,
+      boolean runPostGenerationCleaner,
+      ListeningExecutorService executor,
+      final Optional<IjModuleHashes> moduleHashes) throws IOException, InterruptedException {
     IJProjectCleaner cleaner = new IJProjectCleaner(projectFilesystem);
+    projectFilesystem.mkdirs(MODULES_PREFIX);
+    projectFilesystem.mkdirs(LIBRARIES_PREFIX);
+
+    List<Callable<Path>> writers = new ArrayList<>();
+    for (final IjModule module : projectDataPreparer.getModulesToBeWritten()) {
+      if (moduleHashes.isPresent() && moduleHashes.get().isUpToDate(module)) {
+        cleaner.doNotDelete(module.getModuleImlFilePath());
+        continue;
+      }
+      writers.add(
+          new Callable<Path>() {
+            @Override
+            public Path call() throws IOException {
+              return writeModule(module);
+            }
+          });
+    }
+    for (final IjLibrary library : projectDataPreparer.getLibrariesToBeWritten()) {
+      writers.add(
+          new Callable<Path>() {
+            @Override
+            public Path call() throws IOException {
+              return writeLibrary(library);
+            }
+          });
+    }
+    LOG.debug(
+        "Writing %d of %d modules and libraries.",
+        writers.size(),
+        projectDataPreparer.getModulesToBeWritten().size() +
+            projectDataPreparer.getLibrariesToBeWritten().size());
 
-    for (IjModule module : projectDataPreparer.getModulesToBeWritten()) {
-      Path generatedModuleFile = writeModule(module);
-      cleaner.doNotDelete(generatedModuleFile);
+    List<Path> generatedFiles;
+    try {
+      generatedFiles = MoreFutures.getAll(executor, writers);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
     }
-    for (IjLibrary library : projectDataPreparer.getLibrariesToBeWritten()) {
-      Path generatedLibraryFile = writeLibrary(library);
-      cleaner.doNotDelete(generatedLibraryFile);
+    for (Path generatedFile : generatedFiles) {
+      cleaner.doNotDelete(generatedFile);
     }
     Path indexFile = writeModulesIndex();
     cleaner.doNotDelete(indexFile);
 
+    if (moduleHashes.isPresent()) {
+      moduleHashes.get().save();
+    }
+
     if (runPostGenerationCleaner) {
       cleaner.clean(buckConfig, LIBRARIES_PREFIX);
     }
   }
 
   private Path writeModule(IjModule module) throws IOException {
-    projectFilesystem.mkdirs(MODULES_PREFIX);
     Path path = module.getModuleImlFilePath();
 
     ST moduleContents = getST(StringTemplateFile.MODULE_TEMPLATE);
@@ -115,7 +179,6 @@ public class IjProjectWriter {
   }
 
   private Path writeLibrary(IjLibrary library) throws IOException {
-    projectFilesystem.mkdirs(LIBRARIES_PREFIX);
     Path path = LIBRARIES_PREFIX.resolve(library.getName() + ".xml");
 
     ST contents = getST(StringTemplateFile.LIBRARY_TEMPLATE);
@@ -143,8 +206,12 @@ public class IjProjectWriter {
   }
 
   private static ST getST(StringTemplateFile file) throws IOException {
-    URL templateUrl = Resources.getResource(IjProjectWriter.class, file.getFileName());
-    String template = Resources.toString(templateUrl, StandardCharsets.UTF_8);
+    String template = TEMPLATES.get(file);
+    if (template == null) {
+      URL templateUrl = Resources.getResource(IjProjectWriter.class, file.getFileName());
+      template = Resources.toString(templateUrl, StandardCharsets.UTF_8);
+      TEMPLATES.put(file, template);
+    }
     return new ST(template, DELIMITER, DELIMITER);
   }
 
@@ -171,7 +238,7 @@ public class IjProjectWriter {
     try {
       danglingTempFile = true;
       try (OutputStream outputStream = projectFilesystem.newFileOutputStream(tempFile)) {
-        outputStream.write(contents.render().getBytes());
+        outputStream.write(renderedContentsBytes);
       }
       projectFilesystem.createParentDirs(path);
       projectFilesystem.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
@@ -75,7 +75,9 @@ import java.nio.file.Path;
 abstract class AbstractNativeExecutableStarter implements Starter, NativeLinkTarget {
 
   private static final String NATIVE_STARTER_CXX_SOURCE =
-      "com/facebook/buck/lua/native-starter.cpp.in";
+      "com/facebook/buck/lua/native-starter.cpp";
+  private static final String NATIVE_STARTER_CONFIG_CXX_SOURCE =
+      "com/facebook/buck/lua/native-starter-config.cpp.in";
 
   abstract BuildRuleParams getBaseParams();
   abstract BuildRuleResolver getRuleResolver();
@@ -91,15 +93,64 @@ abstract class AbstractNativeExecutableStarter implements Starter, NativeLinkTar
   abstract Optional<Path> getRelativePythonModulesDir();
   abstract Optional<Path> getRelativeNativeLibsDir();
 
-  private String getNativeStarterCxxSourceTemplate() {
+  private static String getResource(String name) {
     try {
-      return Resources.toString(Resources.getResource(NATIVE_STARTER_CXX_SOURCE), Charsets.UTF_8);
+      return Resources.toString(Resources.getResource(name), Charsets.UTF_8);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
 
+  private AbstractCxxLibrary getNativeStarterLibraryRule() {
+    return getNativeStarterLibrary().isPresent() ?
+        getRuleResolver().getRuleWithType(
+            getNativeStarterLibrary().get(),
+            AbstractCxxLibrary.class) :
+        getLuaConfig().getLuaCxxLibrary(getRuleResolver());
+  }
+
+  /**
+   * The bulk of the starter doesn't depend on the binary, so it's compiled once per starter library
+   * and platform, under the library's target, and shared by all the binaries using it.  Only the
+   * small configuration source is compiled for each binary.  The Lua library doubles as the starter
+   * library when none is given, but then the starter is compiled differently, so it gets its own
+   * flavor.
+   */
+  private BuildRuleParams getSharedParams() {
+    return getBaseParams().copyWithChanges(
+        getNativeStarterLibraryRule().getBuildTarget().withAppendedFlavors(
+            ImmutableFlavor.of(
+                getNativeStarterLibrary().isPresent() ?
+                    "lua-native-starter" :
+                    "lua-builtin-native-starter")),
+        Suppliers.ofInstance(ImmutableSortedSet.<BuildRule>of()),
+        Suppliers.ofInstance(ImmutableSortedSet.<BuildRule>of()));
+  }
+
   private CxxSource getNativeStarterCxxSource() {
+    BuildTarget target =
+        BuildTarget.builder(getSharedParams().getBuildTarget())
+            .addFlavors(ImmutableFlavor.of("cxx-source"))
+            .build();
+    if (!getRuleResolver().getRuleOptional(target).isPresent()) {
+      getRuleResolver().addToIndex(
+          new WriteFile(
+              getSharedParams().copyWithBuildTarget(target),
+              getPathResolver(),
+              getResource(NATIVE_STARTER_CXX_SOURCE),
+              BuildTargets.getGenPath(
+                  getBaseParams().getProjectFilesystem(),
+                  target,
+                  "%s/native-starter.cpp"),
+              /* executable */ false));
+    }
+    return CxxSource.of(
+        CxxSource.Type.CXX,
+        new BuildTargetSourcePath(target),
+        ImmutableList.<String>of());
+  }
+
+  private CxxSource getNativeStarterConfigCxxSource() {
     BuildTarget target =
         BuildTarget.builder(getBaseParams().getBuildTarget())
             .addFlavors(ImmutableFlavor.of("native-starter-cxx-source"))
@@ -117,18 +168,18 @@ abstract class AbstractNativeExecutableStarter implements Starter, NativeLinkTar
                   Suppliers.ofInstance(ImmutableSortedSet.<BuildRule>of()),
                   Suppliers.ofInstance(ImmutableSortedSet.<BuildRule>of())),
               getPathResolver(),
-              getNativeStarterCxxSourceTemplate(),
+              getResource(NATIVE_STARTER_CONFIG_CXX_SOURCE),
               BuildTargets.getGenPath(
                   getBaseParams().getProjectFilesystem(),
                   templateTarget,
-                  "%s/native-starter.cpp.in"),
+                  "%s/native-starter-config.cpp.in"),
             /* executable */ false));
 
       Path output =
           BuildTargets.getGenPath(
               getBaseParams().getProjectFilesystem(),
               target,
-              "%s/native-starter.cpp");
+              "%s/native-starter-config.cpp");
       getRuleResolver().addToIndex(
           WriteStringTemplateRule.from(
               getBaseParams(),
@@ -176,19 +227,14 @@ abstract class AbstractNativeExecutableStarter implements Starter, NativeLinkTar
   }
 
   public Iterable<? extends AbstractCxxLibrary> getNativeStarterDeps() {
-    return ImmutableList.of(
-        getNativeStarterLibrary().isPresent() ?
-            getRuleResolver().getRuleWithType(
-                getNativeStarterLibrary().get(),
-                AbstractCxxLibrary.class) :
-            getLuaConfig().getLuaCxxLibrary(getRuleResolver()));
+    return ImmutableList.of(getNativeStarterLibraryRule());
   }
 
   private NativeLinkableInput getNativeLinkableInput() throws NoSuchBuildTargetException {
     Iterable<? extends AbstractCxxLibrary> nativeStarterDeps = getNativeStarterDeps();
     ImmutableMap<CxxPreprocessAndCompile, SourcePath> objects =
         CxxSourceRuleFactory.requirePreprocessAndCompileRules(
-            getBaseParams(),
+            getSharedParams(),
             getRuleResolver(),
             getPathResolver(),
             getCxxBuckConfig(),
@@ -209,6 +255,19 @@ abstract class AbstractNativeExecutableStarter implements Starter, NativeLinkTar
             getCxxBuckConfig().getPreprocessMode(),
             ImmutableMap.of("native-starter.cpp", getNativeStarterCxxSource()),
             CxxSourceRuleFactory.PicType.PDC);
+    ImmutableMap<CxxPreprocessAndCompile, SourcePath> configObjects =
+        CxxSourceRuleFactory.requirePreprocessAndCompileRules(
+            getBaseParams(),
+            getRuleResolver(),
+            getPathResolver(),
+            getCxxBuckConfig(),
+            getCxxPlatform(),
+            ImmutableList.<CxxPreprocessorInput>of(),
+            ImmutableMultimap.<CxxSource.Type, String>of(),
+            Optional.<SourcePath>absent(),
+            getCxxBuckConfig().getPreprocessMode(),
+            ImmutableMap.of("native-starter-config.cpp", getNativeStarterConfigCxxSource()),
+            CxxSourceRuleFactory.PicType.PDC);
     return NativeLinkableInput.builder()
         .addAllArgs(
             getRelativeNativeLibsDir().isPresent() ?
@@ -221,6 +280,7 @@ abstract class AbstractNativeExecutableStarter implements Starter, NativeLinkTar
                             getRelativeNativeLibsDir().get().toString()))) :
                 ImmutableList.<com.facebook.buck.rules.args.Arg>of())
         .addAllArgs(SourcePathArg.from(getPathResolver(), objects.values()))
+        .addAllArgs(SourcePathArg.from(getPathResolver(), configObjects.values()))
         .build();
   }
 
@@ -14,26 +14,26 @@
  * under the License.
  */
 
-#include \<libgen.h>
-#include \<limits.h>
-#include \<stdio.h>
-#include \<stdlib.h>
-#include \<string.h>
+#include <libgen.h>
+#include <limits.h>
+#include <stdio.h>
+#include <stdlib.h>
+#include <string.h>
 
-#include \<sstream>
-#include \<string>
+#include <sstream>
+#include <string>
 
 #ifdef BUILTIN_NATIVE_STARTER
 extern "C" {
-#include \<lua.h>
-#include \<lualib.h>
-#include \<lauxlib.h>
+#include <lua.h>
+#include <lualib.h>
+#include <lauxlib.h>
 }
 #endif
 
 static std::string repr(int x) {
   std::ostringstream s;
-  s \<\< std::dec \<\< x;
+  s << std::dec << x;
   return s.str();
 }
 
@@ -133,20 +133,23 @@ static int run_starter(
 }
 #endif
 
+// Set by the configuration source compiled into each binary, so that this source may be compiled
+// once and shared between them.
+extern const char *native_starter_main_module;
+extern const char *native_starter_modules_dir;
+extern const char *native_starter_py_modules_dir;
+extern const char *native_starter_extension_suffix;
+
 int main(int argc, const char ** argv) {
-  const char *main_module = <MAIN_MODULE>;
-  const char *modules_dir = <MODULES_DIR>;
-  const char *py_modules_dir = <PY_MODULES_DIR>;
-  const char *extension_suffix = <EXT_SUFFIX>;
   return run_starter(
     argc,
     argv,
-    main_module,
-    modules_dir != NULL ?
-      join(dirname(realpath(argv[0])), modules_dir).c_str() :
+    native_starter_main_module,
+    native_starter_modules_dir != NULL ?
+      join(dirname(realpath(argv[0])), native_starter_modules_dir).c_str() :
       NULL,
-    py_modules_dir != NULL ?
-      join(dirname(realpath(argv[0])), py_modules_dir).c_str() :
+    native_starter_py_modules_dir != NULL ?
+      join(dirname(realpath(argv[0])), native_starter_py_modules_dir).c_str() :
       NULL,
-    extension_suffix);
+    native_starter_extension_suffix);
 }
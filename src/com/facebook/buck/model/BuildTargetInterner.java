@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.model;
+
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.nio.file.Path;
+
+/**
+ * Hands out canonical instances of {@link BuildTarget}s and the values they are built from, so
+ * that the parser, the type coercers and the distributed build codec share a single copy of each
+ * target for the lifetime of the daemon.
+ * <p>
+ * Canonical instances compare equal by reference, which the generated {@code equals()} methods
+ * check before comparing fields. The interners are weak, so targets which are no longer referenced
+ * (e.g. after their build file has been invalidated) can still be garbage collected.
+ */
+public final class BuildTargetInterner {
+
+  private static final Interner<Path> CELL_PATHS = Interners.newWeakInterner();
+  private static final Interner<Flavor> FLAVORS = Interners.newWeakInterner();
+  private static final Interner<UnflavoredBuildTarget> UNFLAVORED_TARGETS =
+      Interners.newWeakInterner();
+  private static final Interner<BuildTarget> TARGETS = Interners.newWeakInterner();
+
+  private BuildTargetInterner() {
+    // Utility class.
+  }
+
+  public static Path internCellPath(Path cellPath) {
+    return CELL_PATHS.intern(cellPath);
+  }
+
+  public static Flavor intern(Flavor flavor) {
+    return FLAVORS.intern(flavor);
+  }
+
+  public static UnflavoredBuildTarget intern(UnflavoredBuildTarget target) {
+    Path cellPath = internCellPath(target.getCellPath());
+    if (cellPath != target.getCellPath()) {
+      target = UnflavoredBuildTarget.builder()
+          .from(target)
+          .setCellPath(cellPath)
+          .build();
+    }
+    return UNFLAVORED_TARGETS.intern(target);
+  }
+
+  public static BuildTarget intern(BuildTarget target) {
+    UnflavoredBuildTarget unflavored = intern(target.getUnflavoredBuildTarget());
+    boolean componentsAreCanonical = unflavored == target.getUnflavoredBuildTarget();
+
+    ImmutableSortedSet.Builder<Flavor> flavors = ImmutableSortedSet.naturalOrder();
+    for (Flavor flavor : target.getFlavors()) {
+      Flavor canonicalFlavor = intern(flavor);
+      componentsAreCanonical &= canonicalFlavor == flavor;
+      flavors.add(canonicalFlavor);
+    }
+
+    if (!componentsAreCanonical) {
+      target = BuildTarget.of(unflavored, flavors.build());
+    }
+    return TARGETS.intern(target);
+  }
+}
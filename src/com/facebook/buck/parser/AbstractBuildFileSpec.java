@@ -54,16 +54,16 @@ abstract class AbstractBuildFileSpec {
 
   // Base path where to find either a single build file or to recursively for many build files.
   @Value.Parameter
-  abstract Path getBasePath();
+  public abstract Path getBasePath();
 
   // If present, this indicates that the above path should be recursively searched for build files,
   // and that the paths enumerated here should be ignored.
   @Value.Parameter
-  abstract boolean isRecursive();
+  public abstract boolean isRecursive();
 
   // The absolute cell path in which the build spec exists
   @Value.Parameter
-  abstract Path getCellPath();
+  public abstract Path getCellPath();
 
   public static BuildFileSpec fromRecursivePath(Path basePath, Path cellPath) {
     return BuildFileSpec.of(basePath, /* recursive */ true, cellPath);
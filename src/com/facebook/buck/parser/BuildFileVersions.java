@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records when the parsed contents of each build file were last invalidated, so that anything
+ * computed from a set of build files can later be checked for staleness without having to be
+ * notified of every change.
+ * <p>
+ * Versions only ever increase.  A result computed after reading {@link #getCurrentVersion()} is
+ * still valid for as long as {@link #isUnchangedSince} holds for the build files it was computed
+ * from.
+ */
+class BuildFileVersions {
+
+  private final AtomicLong currentVersion = new AtomicLong();
+  private final ConcurrentMap<Path, Long> invalidatedBuildFiles = new ConcurrentHashMap<>();
+  private volatile long lastInvalidationOfAll = 0;
+  private volatile long lastInvalidationOfAny = 0;
+
+  public long getCurrentVersion() {
+    return currentVersion.get();
+  }
+
+  /**
+   * Records that the nodes parsed from the given build file are no longer valid.
+   */
+  public synchronized void invalidate(Path buildFile) {
+    long version = currentVersion.incrementAndGet();
+    invalidatedBuildFiles.put(buildFile, version);
+    lastInvalidationOfAny = version;
+  }
+
+  /**
+   * Records that every build file may have changed, for example because the environment they are
+   * evaluated in, or the set of build files itself, has changed.
+   */
+  public synchronized void invalidateAll() {
+    lastInvalidationOfAll = currentVersion.incrementAndGet();
+    lastInvalidationOfAny = lastInvalidationOfAll;
+  }
+
+  /**
+   * @return whether none of the given build files have been invalidated since {@code version} was
+   *     the current version.
+   */
+  public boolean isUnchangedSince(long version, Iterable<Path> buildFiles) {
+    if (lastInvalidationOfAll > version) {
+      return false;
+    }
+    for (Path buildFile : buildFiles) {
+      Long invalidated = invalidatedBuildFiles.get(buildFile);
+      if (invalidated != null && invalidated > version) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return whether no build file at all has been invalidated since {@code version} was the
+   *     current version.
+   */
+  public boolean isUnchangedSince(long version) {
+    return lastInvalidationOfAny <= version;
+  }
+}
@@ -19,16 +19,20 @@ package com.facebook.buck.parser;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetException;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.model.UnflavoredBuildTarget;
 import com.facebook.buck.rules.Cell;
+import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.util.concurrent.AutoCloseableLock;
 import com.facebook.buck.util.concurrent.AutoCloseableReadWriteUpdateLock;
 import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
+import com.google.common.hash.HashCode;
 
 import java.nio.file.Path;
 import java.util.HashMap;
@@ -85,19 +89,30 @@ class DaemonicCellState {
   private final ConcurrentMapCache<Path, ImmutableSet<Map<String, Object>>> allRawNodes;
   @GuardedBy("rawAndComputedNodesLock")
   private final ConcurrentMap<Class<?>, CacheImpl<?>> typedNodeCaches;
+  @GuardedBy("rawAndComputedNodesLock")
+  private final Map<BuildTarget, Pair<TargetNode<?>, HashCode>> nodeRawHashes;
+  @GuardedBy("rawAndComputedNodesLock")
+  private final SetMultimap<Path, BuildTarget> nodeRawHashInputs;
+  // Bumped on every invalidation, so that raw hashes computed across one aren't cached.
+  @GuardedBy("rawAndComputedNodesLock")
+  private long nodeRawHashGeneration;
 
   private final AutoCloseableReadWriteUpdateLock rawAndComputedNodesLock;
   private final int parsingThreads;
+  private final BuildFileVersions buildFileVersions;
 
-  DaemonicCellState(Cell cell, int parsingThreads) {
+  DaemonicCellState(Cell cell, int parsingThreads, BuildFileVersions buildFileVersions) {
     this.cell = cell;
     this.parsingThreads = parsingThreads;
+    this.buildFileVersions = buildFileVersions;
     this.cellRoot = cell.getRoot();
     this.buildFileDependents = HashMultimap.create();
     this.targetsCornucopia = HashMultimap.create();
     this.buildFileConfigs = new HashMap<>();
     this.allRawNodes = new ConcurrentMapCache<>(parsingThreads);
     this.typedNodeCaches = Maps.newConcurrentMap();
+    this.nodeRawHashes = new HashMap<>();
+    this.nodeRawHashInputs = HashMultimap.create();
     this.rawAndComputedNodesLock = new AutoCloseableReadWriteUpdateLock();
   }
 
@@ -157,8 +172,55 @@ class DaemonicCellState {
     }
   }
 
+  HashCode getNodeRawHash(TargetNode<?> node, Supplier<HashCode> loader) {
+    long generation;
+    try (AutoCloseableLock readLock = rawAndComputedNodesLock.readLock()) {
+      Pair<TargetNode<?>, HashCode> entry = nodeRawHashes.get(node.getBuildTarget());
+      // Only hand out hashes computed for this exact node, in case it has since been re-parsed.
+      if (entry != null && entry.getFirst() == node) {
+        return entry.getSecond();
+      }
+      generation = nodeRawHashGeneration;
+    }
+
+    // Computed without holding the lock, as it may read all the node's input files.
+    HashCode rawHash = loader.get();
+
+    try (AutoCloseableLock writeLock = rawAndComputedNodesLock.writeLock()) {
+      if (generation != nodeRawHashGeneration) {
+        LOG.verbose("Not caching raw hash of %s, invalidated while computing it", node);
+        return rawHash;
+      }
+      nodeRawHashes.put(node.getBuildTarget(), new Pair<TargetNode<?>, HashCode>(node, rawHash));
+      for (Path input : node.getInputs()) {
+        nodeRawHashInputs.put(input, node.getBuildTarget());
+      }
+    }
+    return rawHash;
+  }
+
+  /**
+   * Drops the raw hashes of all nodes which have {@code path}, or a directory containing it, as
+   * one of their inputs.
+   */
+  @GuardedBy("rawAndComputedNodesLock")
+  private void invalidateNodeRawHashesForInput(Path path) {
+    if (!path.startsWith(cellRoot)) {
+      return;
+    }
+    for (Path input = cellRoot.relativize(path); input != null; input = input.getParent()) {
+      for (BuildTarget target : nodeRawHashInputs.removeAll(input)) {
+        LOG.verbose("Invalidating raw hash of %s for input %s", target, input);
+        nodeRawHashes.remove(target);
+      }
+    }
+  }
+
   int invalidatePath(Path path) {
     try (AutoCloseableLock writeLock = rawAndComputedNodesLock.writeLock()) {
+      nodeRawHashGeneration++;
+      invalidateNodeRawHashesForInput(path);
+
       int invalidatedRawNodes = 0;
       ImmutableSet<Map<String, Object>> rawNodes = allRawNodes.getIfPresent(path);
       if (rawNodes != null) {
@@ -171,9 +233,13 @@ class DaemonicCellState {
           for (CacheImpl<?> cache : typedNodeCaches.values()) {
             cache.allComputedNodes.invalidateAll(targetsCornucopia.get(target));
           }
+          for (BuildTarget flavoredTarget : targetsCornucopia.get(target)) {
+            nodeRawHashes.remove(flavoredTarget);
+          }
           targetsCornucopia.removeAll(target);
         }
         allRawNodes.invalidate(path);
+        buildFileVersions.invalidate(path);
       }
 
       // We may have been given a file that other build files depend on. Iteratively remove those.
@@ -31,6 +31,8 @@ import com.facebook.buck.model.BuildTargetException;
 import com.facebook.buck.model.FilesystemBackedBuildFileTree;
 import com.facebook.buck.parser.PipelineNodeCache.Cache;
 import com.facebook.buck.rules.Cell;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.rules.TargetNodeRawHashCache;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.util.concurrent.AutoCloseableLock;
 import com.facebook.buck.util.concurrent.AutoCloseableReadWriteUpdateLock;
@@ -38,6 +40,7 @@ import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
 import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -49,6 +52,7 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
+import com.google.common.hash.HashCode;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import java.nio.file.Path;
@@ -256,6 +260,23 @@ class DaemonicParserState {
     }
   }
 
+  /**
+   * Keeps the raw hashes of target nodes in the state of the cell they were parsed in, so they are
+   * dropped along with the nodes themselves, or when one of their inputs changes.
+   */
+  private class DaemonicNodeRawHashCache implements TargetNodeRawHashCache {
+
+    @Override
+    public HashCode get(TargetNode<?> node, Supplier<HashCode> loader) {
+      DaemonicCellState state = getCellState(node.getBuildTarget().getCellPath());
+      // Only nodes which came out of this parser state can be invalidated correctly.
+      if (state == null) {
+        return loader.get();
+      }
+      return state.getNodeRawHash(node, loader);
+    }
+  }
+
 
   private final TypeCoercerFactory typeCoercerFactory;
   private final TagSetCounter cacheInvalidatedByEnvironmentVariableChangeCounter;
@@ -276,11 +297,14 @@ class DaemonicParserState {
   @GuardedBy("cellStateLock")
   private final ConcurrentMap<Class<?>, DaemonicCache<?>> typedNodeCaches;
   private final DaemonicRawCache rawNodeCache;
+  private final DaemonicNodeRawHashCache nodeRawHashCache;
 
   private final int parsingThreads;
 
   private final LoadingCache<Cell, BuildFileTree> buildFileTrees;
 
+  private final BuildFileVersions buildFileVersions;
+
   /**
    * Environment used by build files. If the environment is changed, then build files need to be
    * reevaluated with the new environment, so the environment used when populating the rule cache
@@ -344,6 +368,7 @@ class DaemonicParserState {
             return new FilesystemBackedBuildFileTree(cell.getFilesystem(), cell.getBuildFileName());
           }
         });
+    this.buildFileVersions = new BuildFileVersions();
     this.cachedEnvironment = ImmutableMap.of();
     this.cachedIncludes = new ConcurrentHashMap<>();
     this.cellPathToDaemonicState =
@@ -353,6 +378,7 @@ class DaemonicParserState {
             parsingThreads);
 
     this.rawNodeCache = new DaemonicRawCache();
+    this.nodeRawHashCache = new DaemonicNodeRawHashCache();
     this.typedNodeCaches =
         new ConcurrentHashMap<>(
             DEFAULT_TYPE_CACHE_COUNT,
@@ -388,10 +414,19 @@ class DaemonicParserState {
     return rawNodeCache;
   }
 
+  public TargetNodeRawHashCache getNodeRawHashCache() {
+    return nodeRawHashCache;
+  }
+
   @Nullable
   private DaemonicCellState getCellState(Cell cell) {
+    return getCellState(cell.getRoot());
+  }
+
+  @Nullable
+  private DaemonicCellState getCellState(Path cellRoot) {
     try (AutoCloseableLock readLock = cellStateLock.readLock()) {
-      return cellPathToDaemonicState.get(cell.getRoot());
+      return cellPathToDaemonicState.get(cellRoot);
     }
   }
 
@@ -399,7 +434,7 @@ class DaemonicParserState {
     try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
       DaemonicCellState state = cellPathToDaemonicState.get(cell.getRoot());
       if (state == null) {
-        state = new DaemonicCellState(cell, parsingThreads);
+        state = new DaemonicCellState(cell, parsingThreads, buildFileVersions);
         cellPathToDaemonicState.put(cell.getRoot(), state);
       }
       return state;
@@ -443,6 +478,9 @@ class DaemonicParserState {
             // Added or removed files can affect globs, so invalidate the package build file
             // "containing" {@code path} unless its filename matches a temp file pattern.
             if (!isTempFile(cell, path)) {
+              // Globs aside, an added or removed file can change which build files exist and which
+              // of them owns a path, so anything derived from the build files may be stale.
+              buildFileVersions.invalidateAll();
               invalidateContainingBuildFile(cell, buildFiles, path);
             } else {
               LOG.debug(
@@ -629,6 +667,7 @@ class DaemonicParserState {
     try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
       boolean invalidated = cellPathToDaemonicState.containsKey(cell.getRoot());
       cellPathToDaemonicState.remove(cell.getRoot());
+      buildFileVersions.invalidateAll();
       if (invalidated) {
         LOG.debug("Cell cache data invalidated.");
       } else {
@@ -644,6 +683,7 @@ class DaemonicParserState {
     try (AutoCloseableLock writeLock = cellStateLock.writeLock()) {
       boolean invalidated = !cellPathToDaemonicState.isEmpty();
       cellPathToDaemonicState.clear();
+      buildFileVersions.invalidateAll();
       if (invalidated) {
         LOG.debug("Cache data invalidated.");
       } else {
@@ -654,6 +694,30 @@ class DaemonicParserState {
     }
   }
 
+  /**
+   * @return a version to later pass to {@link #isUnchangedSince(long, Iterable)}, taken before
+   *     reading anything from this state.
+   */
+  public long getBuildFileVersion() {
+    return buildFileVersions.getCurrentVersion();
+  }
+
+  /**
+   * @return whether none of the given absolute paths to build files have been invalidated since
+   *     {@code version} was returned by {@link #getBuildFileVersion()}.
+   */
+  public boolean isUnchangedSince(long version, Iterable<Path> buildFiles) {
+    return buildFileVersions.isUnchangedSince(version, buildFiles);
+  }
+
+  /**
+   * @return whether no build file at all has been invalidated since {@code version} was returned
+   *     by {@link #getBuildFileVersion()}.
+   */
+  public boolean isUnchangedSince(long version) {
+    return buildFileVersions.isUnchangedSince(version);
+  }
+
   public ImmutableList<Counter> getCounters() {
     return ImmutableList.of(
         cacheInvalidatedByEnvironmentVariableChangeCounter,
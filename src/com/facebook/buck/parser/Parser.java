@@ -39,6 +39,7 @@ import com.facebook.buck.rules.TargetGraph;
 import com.facebook.buck.rules.TargetGraphAndBuildTargets;
 import com.facebook.buck.rules.TargetGroup;
 import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.rules.TargetNodeRawHashCache;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreMaps;
@@ -112,6 +113,30 @@ public class Parser {
     return marshaller;
   }
 
+  /**
+   * @return a version which, along with {@link #isUnchangedSince(long, Iterable)}, tells whether
+   *     results computed from the build files parsed from now on have since become stale.
+   */
+  public long getBuildFileVersion() {
+    return permState.getBuildFileVersion();
+  }
+
+  /**
+   * @return whether none of the given absolute paths to build files, nor the set of build files as
+   *     a whole, have changed since {@code version} was returned by {@link #getBuildFileVersion()}.
+   */
+  public boolean isUnchangedSince(long version, Iterable<Path> buildFiles) {
+    return permState.isUnchangedSince(version, buildFiles);
+  }
+
+  /**
+   * @return whether no build file at all has changed since {@code version} was returned by
+   *     {@link #getBuildFileVersion()}.
+   */
+  public boolean isUnchangedSince(long version) {
+    return permState.isUnchangedSince(version);
+  }
+
   @VisibleForTesting
   ImmutableSet<Map<String, Object>> getRawTargetNodes(
       BuckEventBus eventBus,
@@ -675,6 +700,10 @@ public class Parser {
     permState.invalidateBasedOn(event);
   }
 
+  public TargetNodeRawHashCache getTargetNodeRawHashCache() {
+    return permState.getNodeRawHashCache();
+  }
+
   public void recordParseStartTime(BuckEventBus eventBus) {
     LOG.debug(eventBus.toString());
     // Does nothing
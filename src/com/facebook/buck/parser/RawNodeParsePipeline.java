@@ -18,6 +18,7 @@ package com.facebook.buck.parser;
 import com.facebook.buck.io.MorePaths;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetException;
+import com.facebook.buck.model.BuildTargetInterner;
 import com.facebook.buck.model.UnflavoredBuildTarget;
 import com.facebook.buck.parser.PipelineNodeCache.Cache;
 import com.facebook.buck.parser.PipelineNodeCache.JobSupplier;
@@ -74,9 +75,10 @@ public class RawNodeParsePipeline extends ParsePipeline<Map<String, Object>> {
               basePath,
               otherBasePath));
     }
-    return UnflavoredBuildTarget.builder(UnflavoredBuildTarget.BUILD_TARGET_PREFIX + basePath, name)
-        .setCellPath(cellRoot)
-        .build();
+    return BuildTargetInterner.intern(
+        UnflavoredBuildTarget.builder(UnflavoredBuildTarget.BUILD_TARGET_PREFIX + basePath, name)
+            .setCellPath(cellRoot)
+            .build());
   }
 
   @Override
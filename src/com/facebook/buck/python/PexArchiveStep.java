@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.python;
+
+import com.facebook.buck.event.ConsoleEvent;
+import com.facebook.buck.io.MoreFiles;
+import com.facebook.buck.io.MorePaths;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.zip.CustomZipEntry;
+import com.facebook.buck.zip.CustomZipOutputStream;
+import com.facebook.buck.zip.PreviousZipEntries;
+import com.facebook.buck.zip.ZipOutputStreams;
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.io.ByteStreams;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+
+/**
+ * Zips up a PEX which the PEX builder has laid out in a directory into an executable PEX.
+ * <p>
+ * Files whose contents haven't changed since the PEX was last built are copied from it compressed,
+ * and the rest are compressed in parallel.  The PEX is the same whether or not there was a
+ * previous one to copy from.
+ */
+public class PexArchiveStep implements Step {
+
+  private static final Logger LOG = Logger.get(PexArchiveStep.class);
+
+  private final ProjectFilesystem filesystem;
+  private final Path directory;
+  private final Path shebangFile;
+  private final Path destination;
+
+  /**
+   * @param directory the PEX laid out by the PEX builder.
+   * @param shebangFile holds the shebang line for the PEX, as written by the PEX builder.
+   * @param destination the PEX to write, replacing any previous one.
+   */
+  public PexArchiveStep(
+      ProjectFilesystem filesystem,
+      Path directory,
+      Path shebangFile,
+      Path destination) {
+    this.filesystem = filesystem;
+    this.directory = directory;
+    this.shebangFile = shebangFile;
+    this.destination = destination;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) throws InterruptedException {
+    Path temporary = destination.resolveSibling(destination.getFileName() + "~");
+    try {
+      Optional<String> shebang = filesystem.readFirstLine(shebangFile);
+      if (!shebang.isPresent()) {
+        context.postEvent(ConsoleEvent.severe("No shebang line in %s", shebangFile));
+        return StepExecutionResult.ERROR;
+      }
+
+      try (CustomZipOutputStream out =
+               ZipOutputStreams.newIncrementalOutputStream(
+                   new BufferedOutputStream(filesystem.newFileOutputStream(temporary)),
+                   (shebang.get() + "\n").getBytes(Charsets.UTF_8),
+                   readPreviousEntries(),
+                   context.getExecutorService(ExecutionContext.ExecutorPool.CPU),
+                   context.getConcurrencyLimit().threadLimit)) {
+        for (Map.Entry<String, Path> file : getFilesByEntryName().entrySet()) {
+          CustomZipEntry entry = new CustomZipEntry(file.getKey());
+          entry.setExternalAttributes(filesystem.getFileAttributesForZipEntry(file.getValue()));
+          out.putNextEntry(entry);
+          try (InputStream input = filesystem.newFileInputStream(file.getValue())) {
+            ByteStreams.copy(input, out);
+          }
+          out.closeEntry();
+        }
+      }
+
+      // Other packaging styles may have left a directory here.
+      if (filesystem.isDirectory(destination)) {
+        filesystem.deleteRecursively(destination);
+      }
+      filesystem.move(temporary, destination, StandardCopyOption.REPLACE_EXISTING);
+      MoreFiles.makeExecutable(filesystem.resolve(destination));
+    } catch (IOException e) {
+      context.logError(e, "Error creating PEX %s", destination);
+      return StepExecutionResult.ERROR;
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  private PreviousZipEntries readPreviousEntries() {
+    if (!filesystem.isFile(destination)) {
+      return PreviousZipEntries.empty();
+    }
+    try {
+      return PreviousZipEntries.read(filesystem.resolve(destination));
+    } catch (IOException e) {
+      LOG.debug(e, "Not reusing the entries of %s.", destination);
+      return PreviousZipEntries.empty();
+    }
+  }
+
+  private ImmutableSortedMap<String, Path> getFilesByEntryName() throws IOException {
+    // Sorted, as the PEX builder sorts them, so that the PEX doesn't depend on the order the file
+    // system lists them in.
+    ImmutableSortedMap.Builder<String, Path> files = ImmutableSortedMap.naturalOrder();
+    for (Path file : filesystem.getFilesUnderPath(directory)) {
+      files.put(MorePaths.pathWithUnixSeparators(directory.relativize(file)), file);
+    }
+    return files.build();
+  }
+
+  @Override
+  public String getShortName() {
+    return "pex_archive";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format("pex_archive %s %s", directory, destination);
+  }
+}
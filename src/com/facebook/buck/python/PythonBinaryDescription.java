@@ -257,6 +257,7 @@ public class PythonBinaryDescription implements
             // the build.
             ImmutableSortedSet.copyOf(
                 Sets.difference(params.getDeclaredDeps().get(), componentDeps)),
+            pythonBuckConfig.getPexArchiver(),
             pythonBuckConfig.shouldCacheBinaries());
 
       default:
@@ -319,9 +319,27 @@ public class PythonBuckConfig {
         .or(PackageStyle.STANDALONE);
   }
 
+  public PexArchiver getPexArchiver() {
+    return delegate.getEnum(SECTION, "pex_archiver", PexArchiver.class)
+        .or(PexArchiver.PYTHON);
+  }
+
   public enum PackageStyle {
     STANDALONE,
     INPLACE,
   }
 
+  /**
+   * What zips up standalone PEXes.
+   */
+  public enum PexArchiver {
+    /** The PEX builder, which compresses every file of the PEX again on each build. */
+    PYTHON,
+    /**
+     * Buck, which copies the compressed files of the previous PEX that haven't changed, and
+     * compresses the others in parallel.
+     */
+    JAVA,
+  }
+
 }
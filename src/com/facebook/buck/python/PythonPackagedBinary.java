@@ -58,6 +58,8 @@ public class PythonPackagedBinary extends PythonBinary implements HasRuntimeDeps
   private final PythonEnvironment pythonEnvironment;
   @AddToRuleKey
   private final ImmutableSet<String> preloadLibraries;
+  @AddToRuleKey
+  private final PythonBuckConfig.PexArchiver pexArchiver;
   private final ImmutableSortedSet<BuildRule> runtimeDeps;
   private final boolean cache;
 
@@ -74,6 +76,7 @@ public class PythonPackagedBinary extends PythonBinary implements HasRuntimeDeps
       PythonPackageComponents components,
       ImmutableSet<String> preloadLibraries,
       ImmutableSortedSet<BuildRule> runtimeDeps,
+      PythonBuckConfig.PexArchiver pexArchiver,
       boolean cache) {
     super(params, resolver, pythonPlatform, mainModule, components, preloadLibraries, pexExtension);
     this.builder = builder;
@@ -84,6 +87,7 @@ public class PythonPackagedBinary extends PythonBinary implements HasRuntimeDeps
     this.components = components;
     this.preloadLibraries = preloadLibraries;
     this.runtimeDeps = runtimeDeps;
+    this.pexArchiver = pexArchiver;
     this.cache = cache;
   }
 
@@ -113,36 +117,44 @@ public class PythonPackagedBinary extends PythonBinary implements HasRuntimeDeps
     // Make sure the parent directory exists.
     steps.add(new MkdirStep(getProjectFilesystem(), binPath.getParent()));
 
-    // Delete any other pex that was there (when switching between pex styles).
-    steps.add(new RmStep(getProjectFilesystem(), binPath, /* force */ true, /* recurse */ true));
-
     Path workingDirectory = BuildTargets.getGenPath(
         getProjectFilesystem(),
         getBuildTarget(),
         "__%s__working_directory");
     steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), workingDirectory));
 
-    // Generate and return the PEX build step.
-    steps.add(
-        new PexStep(
+    switch (pexArchiver) {
+      case PYTHON:
+        // Delete any other pex that was there (when switching between pex styles).
+        steps.add(
+            new RmStep(getProjectFilesystem(), binPath, /* force */ true, /* recurse */ true));
+        steps.add(createPexStep(workingDirectory, binPath, ImmutableList.<String>of()));
+        break;
+
+      case JAVA:
+        // The PEX builder only lays the PEX out, and the previous PEX is kept for the unchanged
+        // files to be copied from as it is zipped up.
+        Path layoutDirectory = BuildTargets.getGenPath(
+            getProjectFilesystem(),
+            getBuildTarget(),
+            "__%s__pex_layout");
+        Path shebangFile = BuildTargets.getGenPath(
             getProjectFilesystem(),
-            builder.getEnvironment(getResolver()),
-            ImmutableList.<String>builder()
-                .addAll(builder.getCommandPrefix(getResolver()))
-                .addAll(buildArgs)
-                .build(),
-            pythonEnvironment.getPythonPath(),
-            pythonEnvironment.getPythonVersion(),
-            workingDirectory,
-            binPath,
-            mainModule,
-            getResolver().getMappedPaths(components.getModules()),
-            getResolver().getMappedPaths(components.getResources()),
-            getResolver().getMappedPaths(components.getNativeLibraries()),
-            ImmutableSet.copyOf(
-                getResolver().deprecatedAllPaths(components.getPrebuiltLibraries())),
-            preloadLibraries,
-            components.isZipSafe().or(true)));
+            getBuildTarget(),
+            "__%s__pex_shebang");
+        steps.add(new MakeCleanDirectoryStep(getProjectFilesystem(), layoutDirectory));
+        steps.add(
+            createPexStep(
+                workingDirectory,
+                layoutDirectory,
+                ImmutableList.of(
+                    "--directory",
+                    "--zip-layout-shebang-file",
+                    getProjectFilesystem().resolve(shebangFile).toString())));
+        steps.add(
+            new PexArchiveStep(getProjectFilesystem(), layoutDirectory, shebangFile, binPath));
+        break;
+    }
 
     // Record the executable package for caching.
     buildableContext.recordArtifact(getBinPath());
@@ -150,6 +162,32 @@ public class PythonPackagedBinary extends PythonBinary implements HasRuntimeDeps
     return steps.build();
   }
 
+  private PexStep createPexStep(
+      Path workingDirectory,
+      Path destination,
+      ImmutableList<String> extraArgs) {
+    return new PexStep(
+        getProjectFilesystem(),
+        builder.getEnvironment(getResolver()),
+        ImmutableList.<String>builder()
+            .addAll(builder.getCommandPrefix(getResolver()))
+            .addAll(buildArgs)
+            .addAll(extraArgs)
+            .build(),
+        pythonEnvironment.getPythonPath(),
+        pythonEnvironment.getPythonVersion(),
+        workingDirectory,
+        destination,
+        mainModule,
+        getResolver().getMappedPaths(components.getModules()),
+        getResolver().getMappedPaths(components.getResources()),
+        getResolver().getMappedPaths(components.getNativeLibraries()),
+        ImmutableSet.copyOf(
+            getResolver().deprecatedAllPaths(components.getPrebuiltLibraries())),
+        preloadLibraries,
+        components.isZipSafe().or(true));
+  }
+
   @Override
   public ImmutableSortedSet<BuildRule> getRuntimeDeps() {
     return runtimeDeps;
@@ -84,6 +84,9 @@ def main():
     parser = optparse.OptionParser(usage="usage: %prog [options] output")
     parser.add_option('--entry-point', default='__main__')
     parser.add_option('--directory', action='store_true', default=False)
+    # With --directory, freeze the PEX as for zipping it up, which is then left to the caller,
+    # and write its shebang line to the given file.
+    parser.add_option('--zip-layout-shebang-file', default=None)
     parser.add_option('--no-zip-safe', action='store_false', dest='zip_safe', default=True)
     parser.add_option('--python', default='')
     parser.add_option('--python-version', default='')
@@ -168,7 +171,11 @@ def main():
         # NOTE(agallagher): see rationale above.
         pex_builder.add_resource(dereference_symlinks(src), dst)
 
-    if options.directory:
+    if options.directory and options.zip_layout_shebang_file:
+        pex_builder.freeze()
+        with open(options.zip_layout_shebang_file, 'w') as shebang_file:
+            shebang_file.write(interpreter.identity.hashbang() + '\n')
+    elif options.directory:
         pex_builder.freeze(code_hash=False, bytecode_compile=False)
     else:
         pex_builder.build(output)
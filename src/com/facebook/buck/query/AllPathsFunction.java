@@ -33,12 +33,9 @@ package com.facebook.buck.query;
 import com.facebook.buck.query.QueryEnvironment.Argument;
 import com.facebook.buck.query.QueryEnvironment.ArgumentType;
 import com.facebook.buck.query.QueryEnvironment.QueryFunction;
-import com.facebook.buck.util.MoreSets;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
-import java.util.Collection;
 import java.util.Set;
 
 /**
@@ -82,27 +79,8 @@ public class AllPathsFunction implements QueryFunction {
     Set<QueryTarget> fromSet = from.eval(env, executor);
     Set<QueryTarget> toSet = to.eval(env, executor);
 
-    // Algorithm:
-    // 1) compute "reachableFromX", the forward transitive closure of the "from" set;
-    // 2) find the intersection of "reachableFromX" with the "to" set, and traverse the graph using
-    //    the reverse dependencies. This will effectively compute the intersection between the nodes
-    //    reachable from the "from" set and the reverse transitive closure of the "to" set.
-
     env.buildTransitiveClosure(fromSet, Integer.MAX_VALUE, executor);
-
-    Set<QueryTarget> reachableFromX = env.getTransitiveClosure(fromSet);
-    Set<QueryTarget> result = MoreSets.intersection(reachableFromX, toSet);
-    Collection<QueryTarget> worklist = result;
-    while (!worklist.isEmpty()) {
-      Collection<QueryTarget> reverseDeps = env.getReverseDeps(worklist);
-      worklist = Lists.newArrayList();
-      for (QueryTarget target : reverseDeps) {
-        if (reachableFromX.contains(target) && result.add(target)) {
-          worklist.add(target);
-        }
-      }
-    }
-    return result;
+    return env.getAllPaths(fromSet, toSet);
   }
 
 }
@@ -33,12 +33,9 @@ package com.facebook.buck.query;
 import com.facebook.buck.query.QueryEnvironment.Argument;
 import com.facebook.buck.query.QueryEnvironment.ArgumentType;
 import com.facebook.buck.query.QueryEnvironment.QueryFunction;
-import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
-import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -86,23 +83,7 @@ public class DepsFunction implements QueryFunction {
     int depthBound = args.size() > 1 ? args.get(1).getInteger() : Integer.MAX_VALUE;
     env.buildTransitiveClosure(argumentSet, depthBound, executor);
 
-    // LinkedHashSet preserves the order of insertion when iterating over the values.
-    // The order by which we traverse the result is meaningful because the dependencies are
-    // traversed level-by-level.
-    Set<QueryTarget> result = new LinkedHashSet<>();
-    Set<QueryTarget> current = argumentSet;
-
-    // Iterating depthBound+1 times because the first one processes the given argument set.
-    for (int i = 0; i <= depthBound; i++) {
-      Set<QueryTarget> next = env.getFwdDeps(
-          Iterables.filter(current, Predicates.not(Predicates.in(result))));
-      result.addAll(current);
-      if (next.isEmpty()) {
-        break;
-      }
-      current = next;
-    }
-    return result;
+    return env.getTransitiveFwdDeps(argumentSet, depthBound);
   }
 
 }
@@ -201,6 +201,34 @@ public interface QueryEnvironment {
   Set<QueryTarget> getTransitiveClosure(Set<QueryTarget> targets)
       throws QueryException, InterruptedException;
 
+  /**
+   * Returns the targets reachable from "targets" by following at most "maxDepth" forward
+   * dependency edges, including "targets" themselves.  The result is ordered level by level, as
+   * in a breadth first search.  Callers must ensure that {@link #buildTransitiveClosure} has been
+   * called for "targets" with at least the same depth.
+   */
+  Set<QueryTarget> getTransitiveFwdDeps(Set<QueryTarget> targets, int maxDepth)
+      throws QueryException, InterruptedException;
+
+  /**
+   * Returns the targets in the forward transitive closure of "universe" which reach any of
+   * "targets" by following at most "maxDepth" dependency edges, including those of "targets" in
+   * the universe.  The result is ordered level by level, as in a breadth first search.  Callers
+   * must ensure that {@link #buildTransitiveClosure} has been called for "universe".
+   */
+  Set<QueryTarget> getTransitiveReverseDeps(
+      Set<QueryTarget> universe,
+      Set<QueryTarget> targets,
+      int maxDepth)
+      throws QueryException, InterruptedException;
+
+  /**
+   * Returns the targets on any dependency path from one of "from" to one of "to", including both
+   * ends.  Callers must ensure that {@link #buildTransitiveClosure} has been called for "from".
+   */
+  Set<QueryTarget> getAllPaths(Set<QueryTarget> from, Set<QueryTarget> to)
+      throws QueryException, InterruptedException;
+
   /**
    * Construct the dependency graph for a depth-bounded forward transitive closure
    * of all nodes in "targetNodes".  The identity of the calling expression is
@@ -33,14 +33,9 @@ package com.facebook.buck.query;
 import com.facebook.buck.query.QueryEnvironment.Argument;
 import com.facebook.buck.query.QueryEnvironment.ArgumentType;
 import com.facebook.buck.query.QueryEnvironment.QueryFunction;
-import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Iterables;
 import com.google.common.util.concurrent.ListeningExecutorService;
 
-import java.util.Collection;
-import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
@@ -87,32 +82,9 @@ public class RdepsFunction implements QueryFunction {
       ListeningExecutorService executor) throws QueryException, InterruptedException {
     Set<QueryTarget> universeSet = args.get(0).getExpression().eval(env, executor);
     env.buildTransitiveClosure(universeSet, Integer.MAX_VALUE, executor);
-    final Predicate<QueryTarget> inUniversePredicate = Predicates.in(
-        env.getTransitiveClosure(universeSet));
-
-    // LinkedHashSet preserves the order of insertion when iterating over the values.
-    // The order by which we traverse the result is meaningful because the dependencies are
-    // traversed level-by-level.
-    Set<QueryTarget> visited = new LinkedHashSet<>();
     Set<QueryTarget> argumentSet = args.get(1).getExpression().eval(env, executor);
-    Collection<QueryTarget> current = argumentSet;
-
     int depthBound = args.size() > 2 ? args.get(2).getInteger() : Integer.MAX_VALUE;
-    // Iterating depthBound+1 times because the first one processes the given argument set.
-    for (int i = 0; i <= depthBound; i++) {
-      // Restrict the search to nodes in the transitive closure of the universe set.
-      Iterable<QueryTarget> currentInUniverse = Iterables.filter(current, inUniversePredicate);
-
-      // Filter nodes visited before.
-      Collection<QueryTarget> next = env.getReverseDeps(
-          Iterables.filter(currentInUniverse, Predicates.not(Predicates.in(visited))));
-      Iterables.addAll(visited, currentInUniverse);
-      if (next.isEmpty()) {
-        break;
-      }
-      current = next;
-    }
-    return visited;
+    return env.getTransitiveReverseDeps(universeSet, argumentSet, depthBound);
   }
 
 }
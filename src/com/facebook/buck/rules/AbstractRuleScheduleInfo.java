@@ -16,10 +16,13 @@
 
 package com.facebook.buck.rules;
 
+import com.facebook.buck.util.concurrent.ResourceType;
 import com.facebook.buck.util.immutables.BuckStyleImmutable;
 
 import org.immutables.value.Value;
 
+import java.util.Map;
+
 /**
  * Used to override how the build engine schedules a build rule.
  */
@@ -38,4 +41,42 @@ abstract class AbstractRuleScheduleInfo {
     return 1;
   }
 
+  /**
+   * @return the peak memory, in megabytes, the rule's steps are expected to use.
+   */
+  @Value.Default
+  public int getMemoryMegabytes() {
+    return 0;
+  }
+
+  /**
+   * @return the number of disk IO tokens the rule's steps hold while running.
+   */
+  @Value.Default
+  public int getDiskIOTokens() {
+    return 0;
+  }
+
+  /**
+   * @return this schedule info, with the given resource amounts replacing the ones it has.
+   *     Resources which aren't given are left as they are.
+   */
+  public RuleScheduleInfo withResourceAmounts(Map<ResourceType, Integer> amounts) {
+    RuleScheduleInfo.Builder info = RuleScheduleInfo.builder().from(this);
+    for (Map.Entry<ResourceType, Integer> amount : amounts.entrySet()) {
+      switch (amount.getKey()) {
+        case CPU:
+          info.setJobsMultiplier(amount.getValue());
+          break;
+        case MEMORY:
+          info.setMemoryMegabytes(amount.getValue());
+          break;
+        case DISK_IO:
+          info.setDiskIOTokens(amount.getValue());
+          break;
+      }
+    }
+    return info.build();
+  }
+
 }
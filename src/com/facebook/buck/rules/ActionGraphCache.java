@@ -27,8 +27,10 @@ import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.Pair;
 import com.facebook.buck.parser.NoSuchBuildTargetException;
 import com.facebook.buck.rules.keys.ContentAgnosticRuleKeyBuilderFactory;
+import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.util.HumanReadableException;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
 import com.google.common.collect.MapDifference;
 import com.google.common.collect.Maps;
 import com.google.common.eventbus.Subscribe;
@@ -51,9 +53,25 @@ public class ActionGraphCache {
   @Nullable
   private Pair<TargetGraph, ActionGraphAndResolver> lastActionGraph;
   private BroadcastEventListener broadcastEventListener;
+  private final Optional<DefaultRuleKeyCache> ruleKeyCache;
 
   public ActionGraphCache(BroadcastEventListener broadcastEventListener) {
+    this(broadcastEventListener, Optional.<DefaultRuleKeyCache>absent());
+  }
+
+  /**
+   * @param ruleKeyCache keeps the default rule keys of the cached {@link ActionGraph} between
+   *     builds.  It is invalidated along with this cache and by the file change events it sees.
+   */
+  public ActionGraphCache(
+      BroadcastEventListener broadcastEventListener,
+      Optional<DefaultRuleKeyCache> ruleKeyCache) {
     this.broadcastEventListener = broadcastEventListener;
+    this.ruleKeyCache = ruleKeyCache;
+  }
+
+  public Optional<DefaultRuleKeyCache> getRuleKeyCache() {
+    return ruleKeyCache;
   }
 
   /**
@@ -85,6 +103,7 @@ public class ActionGraphCache {
         } else {
           LOG.info("ActionGraph cache miss. TargetGraphs mismatched.");
         }
+        invalidateRuleKeyCache();
         lastActionGraph = new Pair<TargetGraph, ActionGraphAndResolver>(
             targetGraph,
             createActionGraph(
@@ -240,6 +259,10 @@ public class ActionGraphCache {
 
   @Subscribe
   public void invalidateBasedOn(WatchEvent<?> event) throws InterruptedException {
+    if (ruleKeyCache.isPresent()) {
+      ruleKeyCache.get().invalidateBasedOn(event);
+    }
+
     // We invalidate in every case except a modify event.
     if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) {
       LOG.info("ActionGraphCache invalidation due to Watchman event %s.", event);
@@ -257,6 +280,14 @@ public class ActionGraphCache {
 
   private void invalidateCache() {
     lastActionGraph = null;
+    invalidateRuleKeyCache();
+  }
+
+  private void invalidateRuleKeyCache() {
+    // Rule keys are cached by identity, so they are useless once the graph is dropped.
+    if (ruleKeyCache.isPresent()) {
+      ruleKeyCache.get().invalidateAll();
+    }
   }
 
   @VisibleForTesting
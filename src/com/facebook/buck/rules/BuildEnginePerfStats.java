@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.CounterRegistry;
+import com.facebook.buck.counters.CounterSnapshot;
+import com.facebook.buck.counters.HistogramCounter;
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.util.concurrent.ResourceType;
+import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Latency histograms for the phases {@link CachingBuildEngine} goes through for each rule.
+ * <p>
+ * Samples are recorded per phase and rule type into {@link HistogramCounter}s, which are
+ * registered with the {@link CounterRegistry} the first time they are used and hence show up in
+ * the periodic {@link com.facebook.buck.counters.CountersSnapshotEvent}s. A second set of
+ * histograms, which is never flushed, accumulates every sample of the build for
+ * {@link #getSummary()}.
+ * <p>
+ * The time rules spend queued for each {@link ResourceType} of the build's executor is reported
+ * in the same snapshots.
+ */
+public class BuildEnginePerfStats {
+
+  private static final String COUNTER_CATEGORY = "buck_build_engine";
+
+  public enum Phase {
+    RULE_KEY("rule_key"),
+    CACHE_FETCH("cache_fetch"),
+    UNZIP("unzip"),
+    DEP_WAIT("dep_wait"),
+    CACHE_CHECK("cache_check"),
+    STEPS("steps"),
+    UPLOAD("upload"),
+    ;
+
+    private final String counterName;
+
+    Phase(String counterName) {
+      this.counterName = counterName;
+    }
+
+    public String getCounterName() {
+      return counterName;
+    }
+  }
+
+  private final ConcurrentMap<String, HistogramCounter> countersByPhaseAndType =
+      Maps.newConcurrentMap();
+  private final ImmutableMap<Phase, HistogramCounter> totals;
+  private final AtomicBoolean resourceQueueTimesRegistered = new AtomicBoolean(false);
+
+  public BuildEnginePerfStats() {
+    Map<Phase, HistogramCounter> totals = new EnumMap<>(Phase.class);
+    for (Phase phase : Phase.values()) {
+      totals.put(
+          phase,
+          new HistogramCounter(
+              COUNTER_CATEGORY,
+              phase.getCounterName() + "_micros",
+              ImmutableMap.<String, String>of()));
+    }
+    this.totals = ImmutableMap.copyOf(totals);
+  }
+
+  /**
+   * Records that {@code rule} spent the time since {@code startNanos} (as returned by
+   * {@link System#nanoTime()}) in {@code phase}.
+   */
+  public void recordSince(BuckEventBus eventBus, Phase phase, BuildRule rule, long startNanos) {
+    long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, System.nanoTime() - startNanos));
+    getCounter(eventBus, phase, rule.getType()).addSample(micros);
+    totals.get(phase).addSample(micros);
+  }
+
+  /**
+   * Starts reporting how long work submitted to {@code service} has spent waiting for each
+   * resource.  Only the first call has any effect.
+   */
+  public void registerResourceQueueTimes(
+      BuckEventBus eventBus,
+      WeightedListeningExecutorService service) {
+    if (resourceQueueTimesRegistered.compareAndSet(false, true)) {
+      eventBus.post(
+          new CounterRegistry.AsyncCounterRegistrationEvent(
+              ImmutableList.<Counter>of(new ResourceQueueTimeCounter(service))));
+    }
+  }
+
+  public ImmutableMap<Phase, HistogramCounter> getTotals() {
+    return totals;
+  }
+
+  /**
+   * @return one human readable line per phase that saw any samples during this build.
+   */
+  public ImmutableList<String> getSummary() {
+    ImmutableList.Builder<String> lines = ImmutableList.builder();
+    for (Map.Entry<Phase, HistogramCounter> entry : totals.entrySet()) {
+      HistogramCounter histogram = entry.getValue();
+      if (histogram.getCount() == 0) {
+        continue;
+      }
+      lines.add(
+          String.format(
+              "%-12s count=%-6d total=%-8s avg=%-8s p50=%-8s p90=%-8s p99=%-8s max=%s",
+              entry.getKey().getCounterName(),
+              histogram.getCount(),
+              formatMicros(histogram.getAverage() * histogram.getCount()),
+              formatMicros(histogram.getAverage()),
+              formatMicros(histogram.getPercentile(50)),
+              formatMicros(histogram.getPercentile(90)),
+              formatMicros(histogram.getPercentile(99)),
+              formatMicros(histogram.getMax())));
+    }
+    return lines.build();
+  }
+
+  private HistogramCounter getCounter(BuckEventBus eventBus, Phase phase, String ruleType) {
+    String key = phase.getCounterName() + ":" + ruleType;
+    HistogramCounter counter = countersByPhaseAndType.get(key);
+    if (counter != null) {
+      return counter;
+    }
+    HistogramCounter newCounter = new HistogramCounter(
+        COUNTER_CATEGORY,
+        phase.getCounterName() + "_micros",
+        ImmutableMap.of("rule_type", ruleType));
+    counter = countersByPhaseAndType.putIfAbsent(key, newCounter);
+    if (counter != null) {
+      return counter;
+    }
+    eventBus.post(
+        new CounterRegistry.AsyncCounterRegistrationEvent(ImmutableList.<Counter>of(newCounter)));
+    return newCounter;
+  }
+
+  private static String formatMicros(long micros) {
+    if (micros < 1000) {
+      return micros + "us";
+    }
+    if (micros < 1000 * 1000) {
+      return String.format("%.1fms", micros / 1000.0);
+    }
+    return String.format("%.2fs", micros / (1000.0 * 1000.0));
+  }
+
+  /**
+   * Reports the queue time accumulated per resource since the previous flush.
+   */
+  private static class ResourceQueueTimeCounter extends Counter {
+
+    private final WeightedListeningExecutorService service;
+    private final Map<ResourceType, Long> flushed = new EnumMap<>(ResourceType.class);
+
+    public ResourceQueueTimeCounter(WeightedListeningExecutorService service) {
+      super(COUNTER_CATEGORY, "resource_queue_time", ImmutableMap.<String, String>of());
+      this.service = service;
+    }
+
+    @Override
+    public synchronized Optional<CounterSnapshot> flush() {
+      CounterSnapshot.Builder builder = CounterSnapshot.builderForCounter(this);
+      boolean queued = false;
+      for (Map.Entry<ResourceType, Long> entry : service.getQueueTimeMillis().entrySet()) {
+        Long previous = flushed.put(entry.getKey(), entry.getValue());
+        long delta = entry.getValue() - (previous == null ? 0 : previous);
+        builder.putValues(entry.getKey().getConfigName() + "_queue_millis", delta);
+        queued |= delta > 0;
+      }
+      if (!queued) {
+        return Optional.absent();
+      }
+      return Optional.of(builder.build());
+    }
+  }
+}
@@ -35,6 +35,7 @@ import com.facebook.buck.rules.keys.AbiRule;
 import com.facebook.buck.rules.keys.AbiRuleKeyBuilderFactory;
 import com.facebook.buck.rules.keys.DefaultDependencyFileRuleKeyBuilderFactory;
 import com.facebook.buck.rules.keys.DefaultRuleKeyBuilderFactory;
+import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.rules.keys.DependencyFileEntry;
 import com.facebook.buck.rules.keys.DependencyFileRuleKeyBuilderFactory;
 import com.facebook.buck.rules.keys.InputBasedRuleKeyBuilderFactory;
@@ -47,7 +48,10 @@ import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.MoreFunctions;
 import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.cache.FileHashCache;
+import com.facebook.buck.util.concurrent.ListeningSemaphore;
 import com.facebook.buck.util.concurrent.MoreFutures;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.ResourceType;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.facebook.buck.zip.Unzip;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -91,6 +95,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -98,6 +103,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -143,7 +149,13 @@ public class CachingBuildEngine implements BuildEngine {
   private final Optional<Long> artifactCacheSizeLimit;
   private final LoadingCache<ProjectFilesystem, FileHashCache> fileHashCaches;
   private final LoadingCache<ProjectFilesystem, RuleKeyFactories> ruleKeyFactories;
+  private final BuildEnginePerfStats perfStats = new BuildEnginePerfStats();
+  private final Optional<RuleDurationHistory> ruleDurationHistory;
+  private final ImmutableMap<String, ImmutableMap<ResourceType, Integer>>
+      resourceAmountsByRuleType;
 
+  @Nullable
+  private CriticalPathEstimator criticalPathEstimator = null;
 
   public CachingBuildEngine(
       CachingBuildEngineDelegate cachingBuildEngineDelegate,
@@ -155,7 +167,10 @@ public class CachingBuildEngine implements BuildEngine {
       final long inputRuleKeyFileSizeLimit,
       ObjectMapper objectMapper,
       final BuildRuleResolver resolver,
-      final int keySeed) {
+      final int keySeed,
+      final Optional<DefaultRuleKeyCache> defaultRuleKeyCache,
+      Optional<RuleDurationHistory> ruleDurationHistory,
+      ImmutableMap<String, ImmutableMap<ResourceType, Integer>> resourceAmountsByRuleType) {
     this.cachingBuildEngineDelegate = cachingBuildEngineDelegate;
 
     this.ruleDeps = new RuleDepsCache(service);
@@ -168,6 +183,8 @@ public class CachingBuildEngine implements BuildEngine {
     this.artifactCacheSizeLimit = artifactCacheSizeLimit;
     this.objectMapper = objectMapper;
     this.pathResolver = new SourcePathResolver(resolver);
+    this.ruleDurationHistory = ruleDurationHistory;
+    this.resourceAmountsByRuleType = resourceAmountsByRuleType;
 
     this.fileHashCaches = cachingBuildEngineDelegate.createFileHashCacheLoader();
     this.ruleKeyFactories = CacheBuilder.newBuilder()
@@ -178,7 +195,8 @@ public class CachingBuildEngine implements BuildEngine {
                 keySeed,
                 fileHashCaches.get(filesystem),
                 resolver,
-                inputRuleKeyFileSizeLimit);
+                inputRuleKeyFileSizeLimit,
+                defaultRuleKeyCache);
           }
         });
   }
@@ -195,7 +213,9 @@ public class CachingBuildEngine implements BuildEngine {
       long maxDepFileCacheEntries,
       Optional<Long> artifactCacheSizeLimit,
       SourcePathResolver pathResolver,
-      final Function<? super ProjectFilesystem, RuleKeyFactories> ruleKeyFactoriesFunction) {
+      final Function<? super ProjectFilesystem, RuleKeyFactories> ruleKeyFactoriesFunction,
+      Optional<RuleDurationHistory> ruleDurationHistory,
+      ImmutableMap<String, ImmutableMap<ResourceType, Integer>> resourceAmountsByRuleType) {
     this.cachingBuildEngineDelegate = cachingBuildEngineDelegate;
 
     this.ruleDeps = new RuleDepsCache(service);
@@ -208,6 +228,8 @@ public class CachingBuildEngine implements BuildEngine {
     this.artifactCacheSizeLimit = artifactCacheSizeLimit;
     this.objectMapper = ObjectMappers.newDefaultInstance();
     this.pathResolver = pathResolver;
+    this.ruleDurationHistory = ruleDurationHistory;
+    this.resourceAmountsByRuleType = resourceAmountsByRuleType;
 
     this.fileHashCaches = cachingBuildEngineDelegate.createFileHashCacheLoader();
     this.ruleKeyFactories = CacheBuilder.newBuilder()
@@ -240,6 +262,13 @@ public class CachingBuildEngine implements BuildEngine {
         Futures.immediateFuture(BuildResult.success(buildRule, success, cacheResult)));
   }
 
+  /**
+   * @return the latencies of the phases each rule went through so far in this build.
+   */
+  public BuildEnginePerfStats getPerfStats() {
+    return perfStats;
+  }
+
   @Override
   public boolean isRuleBuilt(BuildTarget buildTarget) throws InterruptedException {
     ListenableFuture<BuildResult> resultFuture = results.get(buildTarget);
@@ -259,7 +288,7 @@ public class CachingBuildEngine implements BuildEngine {
       ConcurrentLinkedQueue<ListenableFuture<Void>> asyncCallbacks) {
     List<ListenableFuture<BuildResult>> depResults =
         Lists.newArrayListWithExpectedSize(rule.getDeps().size());
-    for (BuildRule dep : shuffled(rule.getDeps())) {
+    for (BuildRule dep : getDepsInSchedulingOrder(rule, context)) {
       depResults.add(getBuildRuleResultWithRuntimeDeps(dep, context, asyncCallbacks));
     }
     return Futures.allAsList(depResults);
@@ -271,6 +300,49 @@ public class CachingBuildEngine implements BuildEngine {
     return rulesList;
   }
 
+  // Without duration estimates, deps are dispatched in random order.  Otherwise, the deps with the
+  // longest estimated critical path are dispatched first.
+  private List<BuildRule> getDepsInSchedulingOrder(BuildRule rule, BuildContext context) {
+    if (!ruleDurationHistory.isPresent()) {
+      return shuffled(rule.getDeps());
+    }
+    final CriticalPathEstimator estimator = getCriticalPathEstimator(context);
+    ArrayList<BuildRule> rulesList = Lists.newArrayList(rule.getDeps());
+    Collections.sort(
+        rulesList,
+        new Comparator<BuildRule>() {
+          @Override
+          public int compare(BuildRule a, BuildRule b) {
+            return Long.compare(
+                estimator.getRemainingCriticalPath(b),
+                estimator.getRemainingCriticalPath(a));
+          }
+        });
+    return rulesList;
+  }
+
+  private long getSchedulingPriority(BuildRule rule, BuildContext context) {
+    if (!ruleDurationHistory.isPresent()) {
+      return ListeningSemaphore.DEFAULT_PRIORITY;
+    }
+    return getCriticalPathEstimator(context).getRemainingCriticalPath(rule);
+  }
+
+  private synchronized CriticalPathEstimator getCriticalPathEstimator(BuildContext context) {
+    if (criticalPathEstimator == null) {
+      final RuleDurationHistory history = ruleDurationHistory.get();
+      criticalPathEstimator = new CriticalPathEstimator(
+          context.getActionGraph().getNodes(),
+          new Function<BuildRule, Long>() {
+            @Override
+            public Long apply(BuildRule input) {
+              return history.estimateDurationMillis(input);
+            }
+          });
+    }
+    return criticalPathEstimator;
+  }
+
   private AsyncFunction<Optional<BuildResult>, BuildResult> buildLocally(
       final BuildRule rule,
       final BuildContext context,
@@ -288,8 +360,9 @@ public class CachingBuildEngine implements BuildEngine {
         }
 
         // Otherwise, build the rule.  We re-submit via the service so that we schedule
-        // it with the custom weight assigned to this rules steps.
+        // it with the custom weight and resources assigned to this rules steps.
         RuleScheduleInfo ruleScheduleInfo = getRuleScheduleInfo(rule);
+        perfStats.registerResourceQueueTimes(context.getEventBus(), service);
         return service.submit(
             new Callable<BuildResult>() {
               @Override
@@ -309,7 +382,11 @@ public class CachingBuildEngine implements BuildEngine {
                 }
               }
             },
-            DEFAULT_BUILD_WEIGHT * ruleScheduleInfo.getJobsMultiplier());
+            ResourceAmounts.of(
+                DEFAULT_BUILD_WEIGHT * ruleScheduleInfo.getJobsMultiplier(),
+                ruleScheduleInfo.getMemoryMegabytes(),
+                ruleScheduleInfo.getDiskIOTokens()),
+            getSchedulingPriority(rule, context));
       }
     };
   }
@@ -473,12 +550,18 @@ public class CachingBuildEngine implements BuildEngine {
       }
 
       // 3. Build deps.
+      final long depWaitStart = System.nanoTime();
       ListenableFuture<List<BuildResult>> getDepResults =
           Futures.transformAsync(
               getDepResults(rule, context, asyncCallbacks),
               new AsyncFunction<List<BuildResult>, List<BuildResult>>() {
                 @Override
                 public ListenableFuture<List<BuildResult>> apply(List<BuildResult> input) {
+                  perfStats.recordSince(
+                      context.getEventBus(),
+                      BuildEnginePerfStats.Phase.DEP_WAIT,
+                      rule,
+                      depWaitStart);
                   return Futures.transform(
                       markRuleAsUsed(rule, context.getEventBus()),
                       Functions.constant(input));
@@ -494,7 +577,14 @@ public class CachingBuildEngine implements BuildEngine {
       ListenableFuture<Optional<BuildResult>> checkCachesResult =
           Futures.transformAsync(
               getDepResults,
-              ruleAsyncFunction(rule, context, checkCachesCallback),
+              ruleAsyncFunction(
+                  rule,
+                  context,
+                  timedAsyncFunction(
+                      rule,
+                      context,
+                      BuildEnginePerfStats.Phase.CACHE_CHECK,
+                      checkCachesCallback)),
               service);
 
       // 5. Build the current rule locally, if we have to.
@@ -828,7 +918,13 @@ public class CachingBuildEngine implements BuildEngine {
 
                   // If this rule is cacheable, upload it to the cache.
                   if (outputSize.isPresent() && shouldUploadToCache(rule, outputSize.get())) {
+                    long uploadStart = System.nanoTime();
                     uploadToCache(success);
+                    perfStats.recordSince(
+                        context.getEventBus(),
+                        BuildEnginePerfStats.Phase.UPLOAD,
+                        rule,
+                        uploadStart);
                   }
 
                   // Calculate the hash of outputs that were built locally and are cacheable.
@@ -1039,7 +1135,14 @@ public class CachingBuildEngine implements BuildEngine {
                            context.getEventBus(),
                            rule,
                            keyFactories.defaultRuleKeyBuilderFactory)) {
-                return keyFactories.defaultRuleKeyBuilderFactory.build(rule);
+                long start = System.nanoTime();
+                RuleKey ruleKey = keyFactories.defaultRuleKeyBuilderFactory.build(rule);
+                perfStats.recordSince(
+                    context.getEventBus(),
+                    BuildEnginePerfStats.Phase.RULE_KEY,
+                    rule,
+                    start);
+                return ruleKey;
               }
             }
           },
@@ -1102,16 +1205,31 @@ public class CachingBuildEngine implements BuildEngine {
     // TODO(bolinfest): Change ArtifactCache.fetch() so that it returns a File instead of takes one.
     // Then we could download directly from the remote cache into the on-disk cache and unzip it
     // from there.
+    long fetchStart = System.nanoTime();
     CacheResult cacheResult =
         fetchArtifactForBuildable(ruleKey, lazyZipPath, artifactCache, buildInfoRecorder);
-
-    return unzipArtifactFromCacheResult(
+    perfStats.recordSince(
+        buildContext.getEventBus(),
+        BuildEnginePerfStats.Phase.CACHE_FETCH,
+        rule,
+        fetchStart);
+
+    long unzipStart = System.nanoTime();
+    CacheResult unzipResult = unzipArtifactFromCacheResult(
                     rule,
                     ruleKey,
                     lazyZipPath,
                     buildContext,
                     filesystem,
                     cacheResult);
+    if (cacheResult.getType().isSuccess()) {
+      perfStats.recordSince(
+          buildContext.getEventBus(),
+          BuildEnginePerfStats.Phase.UNZIP,
+          rule,
+          unzipStart);
+    }
+    return unzipResult;
   }
 
   private CacheResult unzipArtifactFromCacheResult(
@@ -1230,6 +1348,10 @@ public class CachingBuildEngine implements BuildEngine {
     }
 
     long end = System.nanoTime();
+    perfStats.recordSince(context.getEventBus(), BuildEnginePerfStats.Phase.STEPS, rule, start);
+    if (ruleDurationHistory.isPresent()) {
+      ruleDurationHistory.get().record(rule, TimeUnit.NANOSECONDS.toMillis(end - start));
+    }
     LOG.debug("Build completed: %s %s (%dns)",
         rule.getType(),
         rule.getFullyQualifiedName(),
@@ -1388,20 +1510,15 @@ public class CachingBuildEngine implements BuildEngine {
       rule.getProjectFilesystem().createParentDirs(manifestPath);
     }
 
-    // If the manifest is larger than the max size, just truncate it.  It might be nice to support
-    // some sort of LRU management here to avoid evicting everything, but it'll take some care to do
-    // this efficiently and it's not clear how much benefit this will give us.
-    if (manifest.size() >= maxDepFileCacheEntries) {
-      manifest = new Manifest();
-    }
-
-    // Update the manifest with the new output rule key.
+    // Update the manifest with the new output rule key, and then evict the least recently added
+    // entries to keep it within the max size.
     manifest.addEntry(
         fileHashCaches.getUnchecked(rule.getProjectFilesystem()),
         key,
         pathResolver,
         manifestKey.getSecond(),
         inputs);
+    manifest.evictOldestEntries(maxDepFileCacheEntries);
 
     // Serialize the manifest to disk.
     try (OutputStream outputStream =
@@ -1626,11 +1743,20 @@ public class CachingBuildEngine implements BuildEngine {
     return Optional.absent();
   }
 
-  private static RuleScheduleInfo getRuleScheduleInfo(BuildRule rule) {
-    if (rule instanceof OverrideScheduleRule) {
-      return ((OverrideScheduleRule) rule).getRuleScheduleInfo();
+  /**
+   * @return how to schedule {@code rule}, where the resources configured for its type take
+   *     precedence over the ones the rule declares itself.
+   */
+  private RuleScheduleInfo getRuleScheduleInfo(BuildRule rule) {
+    RuleScheduleInfo declared =
+        rule instanceof OverrideScheduleRule ?
+            ((OverrideScheduleRule) rule).getRuleScheduleInfo() :
+            RuleScheduleInfo.DEFAULT;
+    ImmutableMap<ResourceType, Integer> configured = resourceAmountsByRuleType.get(rule.getType());
+    if (configured == null) {
+      return declared;
     }
-    return RuleScheduleInfo.DEFAULT;
+    return declared.withResourceAmounts(configured);
   }
 
   /**
@@ -1652,6 +1778,19 @@ public class CachingBuildEngine implements BuildEngine {
     POPULATE_FROM_REMOTE_CACHE,
   }
 
+  /**
+   * The order in which rules are dispatched and, once their deps are built, run.
+   */
+  public enum Scheduling {
+
+    // Dispatch the deps of each rule in random order and run rules in the order they become ready.
+    RANDOM,
+
+    // Dispatch and run the rules with the longest estimated remaining critical path first, using
+    // the durations of rules recorded in previous builds.
+    CRITICAL_PATH,
+  }
+
   /**
    * Whether to use dependency files or not.
    */
@@ -1682,6 +1821,25 @@ public class CachingBuildEngine implements BuildEngine {
     };
   }
 
+  // Wrap an async function so that the time it takes to run is recorded against the given phase.
+  private <F, T> AsyncFunction<F, T> timedAsyncFunction(
+      final BuildRule rule,
+      final BuildContext context,
+      final BuildEnginePerfStats.Phase phase,
+      final AsyncFunction<F, T> delegate) {
+    return new AsyncFunction<F, T>() {
+      @Override
+      public ListenableFuture<T> apply(@Nullable F input) throws Exception {
+        long start = System.nanoTime();
+        try {
+          return delegate.apply(input);
+        } finally {
+          perfStats.recordSince(context.getEventBus(), phase, rule, start);
+        }
+      }
+    };
+  }
+
   @VisibleForTesting
   static class RuleKeyFactories {
     public final RuleKeyBuilderFactory<RuleKey> defaultRuleKeyBuilderFactory;
@@ -1693,12 +1851,14 @@ public class CachingBuildEngine implements BuildEngine {
         int seed,
         FileHashCache fileHashCache,
         BuildRuleResolver ruleResolver,
-        long inputRuleKeyFileSizeLimit) {
+        long inputRuleKeyFileSizeLimit,
+        Optional<DefaultRuleKeyCache> defaultRuleKeyCache) {
       SourcePathResolver pathResolver = new SourcePathResolver(ruleResolver);
       DefaultRuleKeyBuilderFactory defaultRuleKeyBuilderFactory = new DefaultRuleKeyBuilderFactory(
           seed,
           fileHashCache,
-          pathResolver);
+          pathResolver,
+          defaultRuleKeyCache);
 
       return new RuleKeyFactories(
           defaultRuleKeyBuilderFactory,
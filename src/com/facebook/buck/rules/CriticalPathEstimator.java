@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.model.BuildTarget;
+import com.google.common.base.Function;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Estimates, for each rule in an action graph, the length of the longest chain of rules which
+ * can only start once it has been built, including the rule itself.
+ * <p>
+ * Starting the rules with the longest remaining critical path first keeps long serial chains
+ * (e.g. ProGuard, dexing and packaging an APK) from being started late in the build.
+ */
+public class CriticalPathEstimator {
+
+  private final ImmutableMap<BuildTarget, Long> remainingCriticalPaths;
+  private final Function<? super BuildRule, Long> durationEstimates;
+
+  public CriticalPathEstimator(
+      Iterable<BuildRule> rules,
+      Function<? super BuildRule, Long> durationEstimates) {
+    this.durationEstimates = durationEstimates;
+
+    // Collect the rules and the reverse edges of the graph.
+    Set<BuildRule> allRules = Sets.newHashSet();
+    ListMultimap<BuildRule, BuildRule> dependents = ArrayListMultimap.create();
+    Deque<BuildRule> toVisit = new ArrayDeque<>();
+    for (BuildRule rule : rules) {
+      if (allRules.add(rule)) {
+        toVisit.add(rule);
+      }
+    }
+    while (!toVisit.isEmpty()) {
+      BuildRule rule = toVisit.remove();
+      for (BuildRule dep : rule.getDeps()) {
+        dependents.put(dep, rule);
+        if (allRules.add(dep)) {
+          toVisit.add(dep);
+        }
+      }
+    }
+
+    // Walk from the rules nothing depends on down to the leaves, visiting a rule once all of its
+    // dependents have been visited.
+    Map<BuildRule, Integer> unvisitedDependents = Maps.newHashMap();
+    for (BuildRule rule : allRules) {
+      int count = dependents.get(rule).size();
+      if (count == 0) {
+        toVisit.add(rule);
+      } else {
+        unvisitedDependents.put(rule, count);
+      }
+    }
+    Map<BuildTarget, Long> remainingCriticalPaths = Maps.newHashMap();
+    while (!toVisit.isEmpty()) {
+      BuildRule rule = toVisit.remove();
+      long longestDependentPath = 0;
+      for (BuildRule dependent : dependents.get(rule)) {
+        longestDependentPath =
+            Math.max(longestDependentPath, remainingCriticalPaths.get(dependent.getBuildTarget()));
+      }
+      remainingCriticalPaths.put(
+          rule.getBuildTarget(),
+          durationEstimates.apply(rule) + longestDependentPath);
+      for (BuildRule dep : rule.getDeps()) {
+        int remaining = unvisitedDependents.get(dep) - 1;
+        if (remaining == 0) {
+          unvisitedDependents.remove(dep);
+          toVisit.add(dep);
+        } else {
+          unvisitedDependents.put(dep, remaining);
+        }
+      }
+    }
+    this.remainingCriticalPaths = ImmutableMap.copyOf(remainingCriticalPaths);
+  }
+
+  /**
+   * @return the estimated time, in the unit of the duration estimates, from when {@code rule}
+   *     starts building until everything depending on it can be built.
+   */
+  public long getRemainingCriticalPath(BuildRule rule) {
+    Long remaining = remainingCriticalPaths.get(rule.getBuildTarget());
+    return remaining == null ? durationEstimates.apply(rule) : remaining;
+  }
+}
@@ -30,6 +30,7 @@ import com.google.common.collect.Multimaps;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.primitives.Ints;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -38,21 +39,44 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.NoSuchFileException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * Maps the hashes of the inputs a rule actually used to the dep-file {@link RuleKey} it was built
+ * with, so that a matching artifact can be found in the cache without building the rule.
+ * <p>
+ * Entries which used the same set of inputs form a group, and within a group entries are indexed
+ * by a signature of their input hashes.  A lookup hashes each input at most once and then does one
+ * map lookup per group, rather than comparing every entry input by input.  Entries are kept in the
+ * order they were added, so the oldest can be evicted once the manifest grows too large.
+ */
 public class Manifest {
 
-  private static final int VERSION = 0;
+  private static final int LEGACY_VERSION = 0;
+  private static final int VERSION = 1;
 
   private final List<String> headers;
   private final Map<String, Integer> headerIndices;
 
   private final List<Pair<Integer, HashCode>> hashes;
-  private final Map<HashCode, Integer> hashIndices;
+  private final Map<Pair<Integer, HashCode>, Integer> hashIndices;
+
+  // The sorted header indices of each group, and each group's entries keyed by signature.
+  private final List<int[]> groups;
+  private final Map<List<Integer>, Integer> groupIndices;
+  private final List<Map<HashCode, RuleKey>> groupEntries;
 
-  private final List<Pair<RuleKey, int[]>> entries;
+  // Oldest first.
+  private final LinkedHashMap<RuleKey, Entry> entries;
+  private long nextSequenceNumber = 0;
 
   /**
    * Create an empty manifest.
@@ -62,67 +86,163 @@ public class Manifest {
     headerIndices = new HashMap<>();
     hashes = new ArrayList<>();
     hashIndices = new HashMap<>();
-    entries = new ArrayList<>();
+    groups = new ArrayList<>();
+    groupIndices = new HashMap<>();
+    groupEntries = new ArrayList<>();
+    entries = new LinkedHashMap<>();
   }
 
   /**
    * Deserialize an existing manifest from the given {@link InputStream}.
    */
   public Manifest(InputStream rawInput) throws IOException {
+    this();
     DataInputStream input = new DataInputStream(rawInput);
 
-    Preconditions.checkState(input.readInt() == VERSION);
+    int version = input.readInt();
+    if (version == LEGACY_VERSION) {
+      readLegacy(input);
+      return;
+    }
+    Preconditions.checkState(version == VERSION, "Unknown manifest version %s", version);
 
     int numberOfHeaders = input.readInt();
-    headers = new ArrayList<>(numberOfHeaders);
-    headerIndices = new HashMap<>(numberOfHeaders);
     for (int index = 0; index < numberOfHeaders; index++) {
-      String header = input.readUTF();
-      headers.add(header);
-      headerIndices.put(header, index);
+      addHeader(input.readUTF());
+    }
+
+    int numberOfHashes = input.readInt();
+    for (int index = 0; index < numberOfHashes; index++) {
+      int headerIndex = input.readInt();
+      addHash(headerIndex, HashCode.fromBytes(readBytes(input)));
+    }
+
+    int numberOfGroups = input.readInt();
+    int[][] groupHeaders = new int[numberOfGroups][];
+    for (int groupIndex = 0; groupIndex < numberOfGroups; groupIndex++) {
+      int[] headerIndices = new int[input.readInt()];
+      for (int index = 0; index < headerIndices.length; index++) {
+        headerIndices[index] = input.readInt();
+      }
+      groupHeaders[groupIndex] = headerIndices;
+    }
+
+    int numberOfEntries = input.readInt();
+    for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
+      int[] headerIndices = groupHeaders[input.readInt()];
+      SortedMap<Integer, Integer> entryHashes = new TreeMap<>();
+      for (int headerIndex : headerIndices) {
+        entryHashes.put(headerIndex, input.readInt());
+      }
+      RuleKey key = new RuleKey(HashCode.fromBytes(readBytes(input)));
+      addEntry(key, entryHashes);
+    }
+  }
+
+  private void readLegacy(DataInputStream input) throws IOException {
+    int numberOfHeaders = input.readInt();
+    for (int index = 0; index < numberOfHeaders; index++) {
+      addHeader(input.readUTF());
     }
 
     int numberOfHashes = input.readInt();
-    hashes = new ArrayList<>(numberOfHashes);
-    hashIndices = new HashMap<>(numberOfHashes);
+    List<Integer> legacyHashIndices = new ArrayList<>(numberOfHashes);
     for (int index = 0; index < numberOfHashes; index++) {
       int headerIndex = input.readInt();
-      HashCode headerHash = HashCode.fromString(input.readUTF());
-      hashes.add(new Pair<>(headerIndex, headerHash));
-      hashIndices.put(headerHash, index);
+      legacyHashIndices.add(addHash(headerIndex, HashCode.fromString(input.readUTF())));
     }
 
     int numberOfEntries = input.readInt();
-    entries = new ArrayList<>(numberOfEntries);
     for (int entryIndex = 0; entryIndex < numberOfEntries; entryIndex++) {
       int numberOfEntryHashes = input.readInt();
-      int[] entryHashes = new int[numberOfEntryHashes];
-      for (int hashIndex = 0; hashIndex < numberOfEntryHashes; hashIndex++) {
-        entryHashes[hashIndex] = input.readInt();
+      SortedMap<Integer, Integer> entryHashes = new TreeMap<>();
+      for (int index = 0; index < numberOfEntryHashes; index++) {
+        int hashIndex = legacyHashIndices.get(input.readInt());
+        entryHashes.put(hashes.get(hashIndex).getFirst(), hashIndex);
       }
-      RuleKey key = new RuleKey(input.readUTF());
-      entries.add(new Pair<>(key, entryHashes));
+      addEntry(new RuleKey(input.readUTF()), entryHashes);
     }
   }
 
-  private Integer addHash(String header, HashCode hash) {
+  private static byte[] readBytes(DataInputStream input) throws IOException {
+    byte[] bytes = new byte[input.readUnsignedShort()];
+    input.readFully(bytes);
+    return bytes;
+  }
+
+  private static void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+    output.writeShort(bytes.length);
+    output.write(bytes);
+  }
+
+  private int addHeader(String header) {
     Integer headerIndex = headerIndices.get(header);
     if (headerIndex == null) {
       headers.add(header);
       headerIndex = headers.size() - 1;
       headerIndices.put(header, headerIndex);
     }
+    return headerIndex;
+  }
 
-    Integer hashIndex = hashIndices.get(hash);
+  private int addHash(int headerIndex, HashCode hash) {
+    Pair<Integer, HashCode> headerAndHash = new Pair<>(headerIndex, hash);
+    Integer hashIndex = hashIndices.get(headerAndHash);
     if (hashIndex == null) {
-      hashes.add(new Pair<>(headerIndex, hash));
+      hashes.add(headerAndHash);
       hashIndex = hashes.size() - 1;
-      hashIndices.put(hash, hashIndex);
+      hashIndices.put(headerAndHash, hashIndex);
     }
-
     return hashIndex;
   }
 
+  private int addGroup(int[] headerIndices) {
+    List<Integer> key = Ints.asList(headerIndices);
+    Integer groupIndex = groupIndices.get(key);
+    if (groupIndex == null) {
+      groups.add(headerIndices);
+      groupEntries.add(new HashMap<HashCode, RuleKey>());
+      groupIndex = groups.size() - 1;
+      groupIndices.put(key, groupIndex);
+    }
+    return groupIndex;
+  }
+
+  private HashCode getSignature(int[] hashIndices) {
+    Hasher hasher = Hashing.md5().newHasher();
+    for (int hashIndex : hashIndices) {
+      hasher.putBytes(hashes.get(hashIndex).getSecond().asBytes());
+    }
+    return hasher.hash();
+  }
+
+  /**
+   * Adds an entry, replacing any existing entry with the same key or with the same input hashes.
+   *
+   * @param entryHashes the index of the hash of each input, keyed by the index of its header.
+   */
+  private void addEntry(RuleKey key, SortedMap<Integer, Integer> entryHashes) {
+    int groupIndex = addGroup(Ints.toArray(entryHashes.keySet()));
+    int[] entryHashIndices = Ints.toArray(entryHashes.values());
+    HashCode signature = getSignature(entryHashIndices);
+
+    removeEntry(key);
+    RuleKey existing = groupEntries.get(groupIndex).get(signature);
+    if (existing != null) {
+      removeEntry(existing);
+    }
+
+    entries.put(key, new Entry(groupIndex, entryHashIndices, signature, nextSequenceNumber++));
+    groupEntries.get(groupIndex).put(signature, key);
+  }
+
+  private void removeEntry(RuleKey key) {
+    Entry entry = entries.remove(key);
+    if (entry != null) {
+      groupEntries.get(entry.groupIndex).remove(entry.signature);
+    }
+  }
+
   @VisibleForTesting
   protected static HashCode hashSourcePathGroup(
       FileHashCache fileHashCache,
@@ -150,50 +270,86 @@ public class Manifest {
     }
   }
 
-  private boolean hashesMatch(
+  /**
+   * @return the {@link RuleKey} of the entry that matches the on disk hashes provided by
+   *     {@code fileHashCache}.  Should several entries match, the most recently added one is used.
+   */
+  public Optional<RuleKey> lookup(
       FileHashCache fileHashCache,
       SourcePathResolver resolver,
-      ImmutableListMultimap<String, SourcePath> universe,
-      int[] hashIndices)
+      ImmutableSet<SourcePath> universe)
       throws IOException {
-    for (int hashIndex : hashIndices) {
-      Pair<Integer, HashCode> hashEntry = hashes.get(hashIndex);
-      String header = headers.get(hashEntry.getFirst());
-      ImmutableList<SourcePath> candidates = universe.get(header);
+    ImmutableListMultimap<String, SourcePath> mappedUniverse =
+        Multimaps.index(universe, sourcePathToManifestHeaderFunction(resolver));
+
+    // The on-disk hash of each header, computed the first time a group needs it.
+    Map<Integer, Optional<HashCode>> onDiskHashes = new HashMap<>();
+
+    Entry best = null;
+    RuleKey bestKey = null;
+    for (int groupIndex = 0; groupIndex < groups.size(); groupIndex++) {
+      Map<HashCode, RuleKey> candidates = groupEntries.get(groupIndex);
       if (candidates.isEmpty()) {
-        return false;
+        continue;
       }
-      HashCode onDiskHeaderHash;
-      try {
-        onDiskHeaderHash = hashSourcePathGroup(fileHashCache, resolver, candidates);
-      } catch (NoSuchFileException e) {
-        return false;
+      HashCode signature =
+          getOnDiskSignature(
+              fileHashCache,
+              resolver,
+              mappedUniverse,
+              groups.get(groupIndex),
+              onDiskHashes);
+      RuleKey key = signature == null ? null : candidates.get(signature);
+      if (key == null) {
+        continue;
       }
-      HashCode headerHash = hashEntry.getSecond();
-      if (!headerHash.equals(onDiskHeaderHash)) {
-        return false;
+      Entry entry = entries.get(key);
+      if (best == null || entry.sequenceNumber > best.sequenceNumber) {
+        best = entry;
+        bestKey = key;
       }
     }
-    return true;
+    return Optional.fromNullable(bestKey);
   }
 
-  /**
-   * @return the {@link RuleKey} of the entry that matches the on disk hashes provided by
-   *     {@code fileHashCache}.
-   */
-  public Optional<RuleKey> lookup(
+  @Nullable
+  private HashCode getOnDiskSignature(
       FileHashCache fileHashCache,
       SourcePathResolver resolver,
-      ImmutableSet<SourcePath> universe)
+      ImmutableListMultimap<String, SourcePath> universe,
+      int[] headerIndices,
+      Map<Integer, Optional<HashCode>> onDiskHashes)
       throws IOException {
-    ImmutableListMultimap<String, SourcePath> mappedUniverse =
-        Multimaps.index(universe, sourcePathToManifestHeaderFunction(resolver));
-    for (Pair<RuleKey, int[]> entry : entries) {
-      if (hashesMatch(fileHashCache, resolver, mappedUniverse, entry.getSecond())) {
-        return Optional.of(entry.getFirst());
+    Hasher hasher = Hashing.md5().newHasher();
+    for (int headerIndex : headerIndices) {
+      Optional<HashCode> onDiskHash = onDiskHashes.get(headerIndex);
+      if (onDiskHash == null) {
+        onDiskHash = getOnDiskHash(fileHashCache, resolver, universe, headers.get(headerIndex));
+        onDiskHashes.put(headerIndex, onDiskHash);
+      }
+      if (!onDiskHash.isPresent()) {
+        return null;
       }
+      hasher.putBytes(onDiskHash.get().asBytes());
+    }
+    return hasher.hash();
+  }
+
+  private static Optional<HashCode> getOnDiskHash(
+      FileHashCache fileHashCache,
+      SourcePathResolver resolver,
+      ImmutableListMultimap<String, SourcePath> universe,
+      String header)
+      throws IOException {
+    ImmutableList<SourcePath> candidates = universe.get(header);
+    if (candidates.isEmpty()) {
+      return Optional.absent();
+    }
+    try {
+      return Optional.of(hashSourcePathGroup(fileHashCache, resolver, candidates));
+    } catch (NoSuchFileException e) {
+      return Optional.absent();
     }
-    return Optional.absent();
   }
 
   private static Function<SourcePath, String> sourcePathToManifestHeaderFunction(
@@ -226,8 +382,7 @@ public class Manifest {
       ImmutableSet<SourcePath> universe,
       ImmutableSet<SourcePath> inputs)
       throws IOException {
-    int index = 0;
-    int[] hashIndices = new int[inputs.size()];
+    SortedMap<Integer, Integer> entryHashes = new TreeMap<>();
     ImmutableListMultimap<String, SourcePath> sortedUniverse =
         Multimaps.index(
             universe,
@@ -236,41 +391,90 @@ public class Manifest {
       String relativePath = sourcePathToManifestHeader(input, resolver);
       ImmutableList<SourcePath> paths = sortedUniverse.get(relativePath);
       Preconditions.checkState(!paths.isEmpty());
-      hashIndices[index++] =
-          addHash(
-              relativePath,
-              hashSourcePathGroup(fileHashCache, resolver, paths));
+      int headerIndex = addHeader(relativePath);
+      entryHashes.put(
+          headerIndex,
+          addHash(headerIndex, hashSourcePathGroup(fileHashCache, resolver, paths)));
     }
-    entries.add(new Pair<>(key, hashIndices));
+    addEntry(key, entryHashes);
   }
 
   /**
-   * Serializes the manifest to the given {@link OutputStream}.
+   * Evicts the least recently added entries until there are at most {@code maxEntries} left.
+   */
+  public void evictOldestEntries(long maxEntries) {
+    while (entries.size() > maxEntries) {
+      removeEntry(entries.keySet().iterator().next());
+    }
+  }
+
+  /**
+   * Serializes the manifest to the given {@link OutputStream}.  Only the headers, hashes and groups
+   * still used by an entry are written.
    */
   public void serialize(OutputStream rawOutput) throws IOException {
     DataOutputStream output = new DataOutputStream(rawOutput);
 
+    int[] groupRemap = new int[groups.size()];
+    int[] hashRemap = new int[hashes.size()];
+    int[] headerRemap = new int[headers.size()];
+    Arrays.fill(groupRemap, -1);
+    Arrays.fill(hashRemap, -1);
+    Arrays.fill(headerRemap, -1);
+    List<Integer> liveGroups = new ArrayList<>();
+    List<Integer> liveHashes = new ArrayList<>();
+    List<Integer> liveHeaders = new ArrayList<>();
+    for (Entry entry : entries.values()) {
+      if (groupRemap[entry.groupIndex] == -1) {
+        groupRemap[entry.groupIndex] = liveGroups.size();
+        liveGroups.add(entry.groupIndex);
+        for (int headerIndex : groups.get(entry.groupIndex)) {
+          if (headerRemap[headerIndex] == -1) {
+            headerRemap[headerIndex] = liveHeaders.size();
+            liveHeaders.add(headerIndex);
+          }
+        }
+      }
+      for (int hashIndex : entry.hashIndices) {
+        if (hashRemap[hashIndex] == -1) {
+          hashRemap[hashIndex] = liveHashes.size();
+          liveHashes.add(hashIndex);
+        }
+      }
+    }
+
     output.writeInt(VERSION);
 
-    output.writeInt(headers.size());
-    for (String header : headers) {
-      output.writeUTF(header);
+    output.writeInt(liveHeaders.size());
+    for (int headerIndex : liveHeaders) {
+      output.writeUTF(headers.get(headerIndex));
     }
 
-    output.writeInt(hashes.size());
-    for (Pair<Integer, HashCode> hash : hashes) {
-      output.writeInt(hash.getFirst());
-      output.writeUTF(hash.getSecond().toString());
+    output.writeInt(liveHashes.size());
+    for (int hashIndex : liveHashes) {
+      Pair<Integer, HashCode> hash = hashes.get(hashIndex);
+      output.writeInt(headerRemap[hash.getFirst()]);
+      writeBytes(output, hash.getSecond().asBytes());
+    }
+
+    output.writeInt(liveGroups.size());
+    for (int groupIndex : liveGroups) {
+      int[] headerIndices = groups.get(groupIndex);
+      output.writeInt(headerIndices.length);
+      for (int headerIndex : headerIndices) {
+        output.writeInt(headerRemap[headerIndex]);
+      }
     }
 
     output.writeInt(entries.size());
-    for (Pair<RuleKey, int[]> entry : entries) {
-      output.writeInt(entry.getSecond().length);
-      for (int hashIndex : entry.getSecond()) {
-        output.writeInt(hashIndex);
+    for (Map.Entry<RuleKey, Entry> entry : entries.entrySet()) {
+      output.writeInt(groupRemap[entry.getValue().groupIndex]);
+      for (int hashIndex : entry.getValue().hashIndices) {
+        output.writeInt(hashRemap[hashIndex]);
       }
-      output.writeUTF(entry.getFirst().toString());
+      writeBytes(output, entry.getKey().getHashCode().asBytes());
     }
+    output.flush();
   }
 
   public int size() {
@@ -280,15 +484,15 @@ public class Manifest {
   @VisibleForTesting
   ImmutableMap<RuleKey, ImmutableMap<String, HashCode>> toMap() {
     ImmutableMap.Builder<RuleKey, ImmutableMap<String, HashCode>> builder = ImmutableMap.builder();
-    for (Pair<RuleKey, int[]> entry : entries) {
+    for (Map.Entry<RuleKey, Entry> entry : entries.entrySet()) {
       ImmutableMap.Builder<String, HashCode> entryBuilder = ImmutableMap.builder();
-      for (int hashIndex : entry.getSecond()) {
+      for (int hashIndex : entry.getValue().hashIndices) {
         Pair<Integer, HashCode> hashEntry = hashes.get(hashIndex);
         String header = headers.get(hashEntry.getFirst());
         HashCode headerHash = hashEntry.getSecond();
         entryBuilder.put(header, headerHash);
       }
-      builder.put(entry.getFirst(), entryBuilder.build());
+      builder.put(entry.getKey(), entryBuilder.build());
     }
     return builder.build();
   }
@@ -297,15 +501,30 @@ public class Manifest {
   static Manifest fromMap(ImmutableMap<RuleKey, ImmutableMap<String, HashCode>> map) {
     Manifest manifest = new Manifest();
     for (Map.Entry<RuleKey, ImmutableMap<String, HashCode>> entry : map.entrySet()) {
-      int entryHashIndex = 0;
-      int[] entryHashIndices = new int[entry.getValue().size()];
+      SortedMap<Integer, Integer> entryHashes = new TreeMap<>();
       for (Map.Entry<String, HashCode> innerEntry : entry.getValue().entrySet()) {
-        entryHashIndices[entryHashIndex++] =
-            manifest.addHash(innerEntry.getKey(), innerEntry.getValue());
+        int headerIndex = manifest.addHeader(innerEntry.getKey());
+        entryHashes.put(headerIndex, manifest.addHash(headerIndex, innerEntry.getValue()));
       }
-      manifest.entries.add(new Pair<>(entry.getKey(), entryHashIndices));
+      manifest.addEntry(entry.getKey(), entryHashes);
     }
     return manifest;
   }
 
+  private static class Entry {
+
+    private final int groupIndex;
+    // The hash of each of the group's headers, in the same order.
+    private final int[] hashIndices;
+    private final HashCode signature;
+    private final long sequenceNumber;
+
+    public Entry(int groupIndex, int[] hashIndices, HashCode signature, long sequenceNumber) {
+      this.groupIndex = groupIndex;
+      this.hashIndices = hashIndices;
+      this.signature = signature;
+      this.sequenceNumber = sequenceNumber;
+    }
+  }
+
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Locally stored durations of the steps of rules built in previous builds, used to estimate how
+ * long a rule will take to build.
+ * <p>
+ * Estimates only come from what was loaded, so that they are stable for the duration of a build.
+ * Durations recorded during the build are merged in when the history is saved.
+ */
+public class RuleDurationHistory {
+
+  private static final Logger LOG = Logger.get(RuleDurationHistory.class);
+
+  private static final String FILE_NAME = "rule_durations.json";
+
+  // Used when nothing at all is known, so that the estimated critical path is the longest chain.
+  private static final long DEFAULT_DURATION_MILLIS = 1;
+
+  private final ImmutableMap<String, Long> durationsByTarget;
+  private final ImmutableMap<String, String> typesByTarget;
+  private final ImmutableMap<String, Long> averageDurationsByType;
+  private final long averageDuration;
+  private final ConcurrentMap<String, Map.Entry<String, Long>> recorded =
+      Maps.newConcurrentMap();
+
+  @VisibleForTesting
+  RuleDurationHistory(Map<String, ? extends Map<String, Long>> durationsByTypeAndTarget) {
+    ImmutableMap.Builder<String, Long> durationsByTarget = ImmutableMap.builder();
+    ImmutableMap.Builder<String, String> typesByTarget = ImmutableMap.builder();
+    ImmutableMap.Builder<String, Long> averageDurationsByType = ImmutableMap.builder();
+    long total = 0;
+    long count = 0;
+    for (Map.Entry<String, ? extends Map<String, Long>> type :
+         durationsByTypeAndTarget.entrySet()) {
+      long typeTotal = 0;
+      for (Map.Entry<String, Long> target : type.getValue().entrySet()) {
+        durationsByTarget.put(target.getKey(), target.getValue());
+        typesByTarget.put(target.getKey(), type.getKey());
+        typeTotal += target.getValue();
+      }
+      if (!type.getValue().isEmpty()) {
+        averageDurationsByType.put(type.getKey(), typeTotal / type.getValue().size());
+        total += typeTotal;
+        count += type.getValue().size();
+      }
+    }
+    this.durationsByTarget = durationsByTarget.build();
+    this.typesByTarget = typesByTarget.build();
+    this.averageDurationsByType = averageDurationsByType.build();
+    this.averageDuration = count == 0 ? DEFAULT_DURATION_MILLIS : total / count;
+  }
+
+  public static RuleDurationHistory load(ProjectFilesystem filesystem, ObjectMapper objectMapper) {
+    Path path = getPath(filesystem);
+    if (filesystem.exists(path)) {
+      try (InputStream input = filesystem.newFileInputStream(path)) {
+        Map<String, Map<String, Long>> durations = objectMapper.readValue(
+            input,
+            new TypeReference<Map<String, Map<String, Long>>>() {});
+        return new RuleDurationHistory(durations);
+      } catch (IOException | RuntimeException e) {
+        LOG.warn(e, "Ignoring unreadable rule duration history at %s.", path);
+      }
+    }
+    return new RuleDurationHistory(ImmutableMap.<String, Map<String, Long>>of());
+  }
+
+  /**
+   * @return the last recorded duration of {@code rule}, falling back to the average duration of
+   *     rules of the same type and then to the average of all rules.
+   */
+  public long estimateDurationMillis(BuildRule rule) {
+    Long duration = durationsByTarget.get(rule.getFullyQualifiedName());
+    if (duration == null) {
+      duration = averageDurationsByType.get(rule.getType());
+    }
+    return duration == null ? averageDuration : duration;
+  }
+
+  public void record(BuildRule rule, long durationMillis) {
+    recorded.put(
+        rule.getFullyQualifiedName(),
+        Maps.immutableEntry(rule.getType(), durationMillis));
+  }
+
+  /**
+   * Merges the durations recorded during this build into the history on disk.  Failing to do so
+   * only makes estimates worse, so errors are logged rather than propagated.
+   */
+  public void save(ProjectFilesystem filesystem, ObjectMapper objectMapper) {
+    if (recorded.isEmpty()) {
+      return;
+    }
+
+    SortedMap<String, SortedMap<String, Long>> durations = Maps.newTreeMap();
+    for (Map.Entry<String, Long> entry : durationsByTarget.entrySet()) {
+      if (!recorded.containsKey(entry.getKey())) {
+        put(durations, typesByTarget.get(entry.getKey()), entry.getKey(), entry.getValue());
+      }
+    }
+    for (Map.Entry<String, Map.Entry<String, Long>> entry : recorded.entrySet()) {
+      put(durations, entry.getValue().getKey(), entry.getKey(), entry.getValue().getValue());
+    }
+
+    Path path = getPath(filesystem);
+    try {
+      filesystem.createParentDirs(path);
+      try (OutputStream output = filesystem.newFileOutputStream(path)) {
+        objectMapper.writeValue(output, durations);
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "Failed to save rule duration history to %s.", path);
+    }
+  }
+
+  private static void put(
+      SortedMap<String, SortedMap<String, Long>> durations,
+      String type,
+      String target,
+      long duration) {
+    SortedMap<String, Long> durationsForType = durations.get(type);
+    if (durationsForType == null) {
+      durationsForType = Maps.newTreeMap();
+      durations.put(type, durationsForType);
+    }
+    durationsForType.put(target, duration);
+  }
+
+  private static Path getPath(ProjectFilesystem filesystem) {
+    return filesystem.getBuckPaths().getLogDir().resolve(FILE_NAME);
+  }
+}
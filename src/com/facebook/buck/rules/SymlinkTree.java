@@ -23,8 +23,7 @@ import com.facebook.buck.step.AbstractExecutionStep;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
-import com.facebook.buck.step.fs.MakeCleanDirectoryStep;
-import com.facebook.buck.step.fs.SymlinkTreeStep;
+import com.facebook.buck.step.fs.SyncSymlinkTreeStep;
 import com.facebook.buck.util.MoreMaps;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
@@ -196,14 +195,17 @@ public class SymlinkTree
   // 1) We don't currently support caching symlinks.
   // 2) It's almost certainly always more expensive to cache them rather than just re-create them.
   // 3) The symlinks are absolute.
+  // Only the links which changed since the tree was last generated are touched.
   @Override
   public ImmutableList<Step> getPostBuildSteps(
       BuildContext context,
       BuildableContext buildableContext) {
     return ImmutableList.of(
         getVerifiyStep(),
-        new MakeCleanDirectoryStep(getProjectFilesystem(), root),
-        new SymlinkTreeStep(getProjectFilesystem(), root, getResolver().getMappedPaths(links)));
+        new SyncSymlinkTreeStep(
+            getProjectFilesystem(),
+            root,
+            getResolver().getMappedPaths(links)));
   }
 
   public Path getRoot() {
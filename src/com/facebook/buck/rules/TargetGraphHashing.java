@@ -29,7 +29,9 @@ import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.util.HumanReadableException;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Maps;
@@ -61,7 +63,8 @@ public class TargetGraphHashing {
   private final TargetGraph targetGraph;
   private final FileHashLoader fileHashLoader;
   private final Iterable<TargetNode<?>> roots;
-  private int numThreads = 1;
+  private int numThreads = Runtime.getRuntime().availableProcessors();
+  private Optional<TargetNodeRawHashCache> rawHashCache = Optional.absent();
 
   public TargetGraphHashing(
       final BuckEventBus eventBus,
@@ -106,19 +109,23 @@ public class TargetGraphHashing {
 
       // Execute tasks in parallel
       ForkJoinPool pool = new ForkJoinPool(numThreads);
-      for (ForkJoinTask<HashCode> task : tasksToSchedule) {
-        pool.execute(task);
+      try {
+        for (ForkJoinTask<HashCode> task : tasksToSchedule) {
+          pool.execute(task);
+        }
+
+        // Wait for all scheduled tasks to complete
+        return ImmutableMap.copyOf(Maps.transformEntries(
+            buildTargetHashes,
+            new Maps.EntryTransformer<BuildTarget, ForkJoinTask<HashCode>, HashCode>() {
+              @Override
+              public HashCode transformEntry(BuildTarget key, ForkJoinTask<HashCode> value) {
+                return value.join();
+              }
+            }));
+      } finally {
+        pool.shutdown();
       }
-
-      // Wait for all scheduled tasks to complete
-      return ImmutableMap.copyOf(Maps.transformEntries(
-          buildTargetHashes,
-          new Maps.EntryTransformer<BuildTarget, ForkJoinTask<HashCode>, HashCode>() {
-            @Override
-            public HashCode transformEntry(BuildTarget key, ForkJoinTask<HashCode> value) {
-              return value.join();
-            }
-          }));
     }
   }
 
@@ -128,6 +135,15 @@ public class TargetGraphHashing {
     return this;
   }
 
+  /**
+   * Reuse the hashes of nodes' own inputs from {@code rawHashCache}, so that only the nodes which
+   * changed since they were last hashed need to look at their input files again.
+   */
+  public TargetGraphHashing setRawHashCache(TargetNodeRawHashCache rawHashCache) {
+    this.rawHashCache = Optional.of(rawHashCache);
+    return this;
+  }
+
   private class HashNodeTask extends RecursiveTask<HashCode> {
     private final TargetNode<?> node;
     private Map<BuildTarget, ForkJoinTask<HashCode>> buildTargetHashes;
@@ -149,6 +165,39 @@ public class TargetGraphHashing {
     private HashCode hashNode() {
       Hasher hasher = Hashing.sha1().newHasher();
       LOG.verbose("Hashing node %s", node);
+      hasher.putBytes(getRawHash().asBytes());
+
+      // hash each dependency's build target and that build target's own hash.
+      for (BuildTarget dependency : node.getDeps()) {
+        ForkJoinTask<HashCode> dependencyHashCodeTask = buildTargetHashes.get(dependency);
+        Preconditions.checkState(dependencyHashCodeTask != null);
+        HashCode dependencyHashCode = dependencyHashCodeTask.join();
+        Preconditions.checkState(dependencyHashCode != null);
+        LOG.verbose("Node %s: adding dependency %s (%s)", node, dependency, dependencyHashCode);
+        StringHashing.hashStringAndLength(hasher, dependency.toString());
+        hasher.putBytes(dependencyHashCode.asBytes());
+      }
+      HashCode result = hasher.hash();
+      LOG.debug("Hash for target %s: %s", node.getBuildTarget(), result);
+      return result;
+    }
+
+    private HashCode getRawHash() {
+      if (!rawHashCache.isPresent()) {
+        return computeRawHash();
+      }
+      return rawHashCache.get().get(
+          node,
+          new Supplier<HashCode>() {
+            @Override
+            public HashCode get() {
+              return computeRawHash();
+            }
+          });
+    }
+
+    private HashCode computeRawHash() {
+      Hasher hasher = Hashing.sha1().newHasher();
       // Hash the node's build target and rules.
       StringHashing.hashStringAndLength(hasher, node.getBuildTarget().toString());
       HashCode targetRuleHashCode = node.getRawInputsHashCode();
@@ -170,20 +219,7 @@ public class TargetGraphHashing {
             node.getBuildTarget()
         );
       }
-
-      // hash each dependency's build target and that build target's own hash.
-      for (BuildTarget dependency : node.getDeps()) {
-        ForkJoinTask<HashCode> dependencyHashCodeTask = buildTargetHashes.get(dependency);
-        Preconditions.checkState(dependencyHashCodeTask != null);
-        HashCode dependencyHashCode = dependencyHashCodeTask.join();
-        Preconditions.checkState(dependencyHashCode != null);
-        LOG.verbose("Node %s: adding dependency %s (%s)", node, dependency, dependencyHashCode);
-        StringHashing.hashStringAndLength(hasher, dependency.toString());
-        hasher.putBytes(dependencyHashCode.asBytes());
-      }
-      HashCode result = hasher.hash();
-      LOG.debug("Hash for target %s: %s", node.getBuildTarget(), result);
-      return result;
+      return hasher.hash();
     }
   }
 
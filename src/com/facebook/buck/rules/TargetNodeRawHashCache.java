@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.google.common.base.Supplier;
+import com.google.common.hash.HashCode;
+
+/**
+ * Memoizes the part of a {@link TargetNode}'s hash which does not depend on its deps: the build
+ * target, the raw inputs of the rule and the contents of its input files.
+ * <p>
+ * Implementations must drop a node's entry whenever the node itself is invalidated or any of its
+ * input files change.
+ */
+public interface TargetNodeRawHashCache {
+
+  /**
+   * @return the cached raw hash of {@code node}, or else the one computed by {@code loader}.  A
+   *     computed hash is not cached if the node may have been invalidated while computing it.
+   */
+  HashCode get(TargetNode<?> node, Supplier<HashCode> loader);
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.HashCode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A {@link TargetNodeRawHashCache} which is saved between runs of buck, so that hashing a target
+ * graph only has to read the input files of the targets which changed since the previous run.
+ * <p>
+ * A saved raw hash is reused if the node was parsed from the same raw inputs as when it was saved
+ * and none of its input files are among the paths which are said to have changed since.  The
+ * changed paths must therefore include every file modified since the previous run, for example as
+ * reported by {@code watchman since} or the source control system.
+ * <p>
+ * Only the nodes which were hashed during a run are saved, since there is no telling whether the
+ * others are affected by the paths which changed.
+ */
+public class TargetNodeRawHashManifest implements TargetNodeRawHashCache {
+
+  private static final Logger LOG = Logger.get(TargetNodeRawHashManifest.class);
+
+  private static final String MANIFEST_NAME = "raw_hashes";
+  private static final String MANIFEST_VERSION = "1";
+
+  private final ProjectFilesystem projectFilesystem;
+  private final ImmutableMap<String, Entry> previousEntries;
+  private final ImmutableSet<Path> changedPaths;
+  private final ImmutableSet<Path> changedPathsAndAncestors;
+  private final Optional<TargetNodeRawHashCache> delegate;
+  private final ConcurrentMap<String, Entry> currentEntries = new ConcurrentHashMap<>();
+
+  private TargetNodeRawHashManifest(
+      ProjectFilesystem projectFilesystem,
+      ImmutableMap<String, Entry> previousEntries,
+      ImmutableSet<Path> changedPaths,
+      Optional<TargetNodeRawHashCache> delegate) {
+    this.projectFilesystem = projectFilesystem;
+    this.previousEntries = previousEntries;
+    this.changedPaths = changedPaths;
+    ImmutableSet.Builder<Path> changedPathsAndAncestors = ImmutableSet.builder();
+    for (Path changedPath : changedPaths) {
+      for (Path path = changedPath; path != null; path = path.getParent()) {
+        changedPathsAndAncestors.add(path);
+      }
+    }
+    this.changedPathsAndAncestors = changedPathsAndAncestors.build();
+    this.delegate = delegate;
+  }
+
+  /**
+   * Reads the raw hashes saved by the previous run.
+   *
+   * @param changedPaths absolute paths of every file changed since the previous run.
+   * @param delegate a cache to look raw hashes up in first, such as the daemon's.
+   */
+  public static TargetNodeRawHashManifest load(
+      ProjectFilesystem projectFilesystem,
+      ImmutableSet<Path> changedPaths,
+      Optional<TargetNodeRawHashCache> delegate) {
+    return new TargetNodeRawHashManifest(
+        projectFilesystem,
+        readManifest(projectFilesystem),
+        changedPaths,
+        delegate);
+  }
+
+  /**
+   * Starts over without reusing any of the raw hashes saved by the previous run, for when the files
+   * changed since are unknown.
+   *
+   * @param delegate a cache to look raw hashes up in first, such as the daemon's.
+   */
+  public static TargetNodeRawHashManifest create(
+      ProjectFilesystem projectFilesystem,
+      Optional<TargetNodeRawHashCache> delegate) {
+    return new TargetNodeRawHashManifest(
+        projectFilesystem,
+        ImmutableMap.<String, Entry>of(),
+        ImmutableSet.<Path>of(),
+        delegate);
+  }
+
+  @Override
+  public HashCode get(final TargetNode<?> node, final Supplier<HashCode> loader) {
+    Supplier<HashCode> manifestLoader =
+        new Supplier<HashCode>() {
+          @Override
+          public HashCode get() {
+            return getSavedRawHash(node).or(loader);
+          }
+        };
+    HashCode rawHash =
+        delegate.isPresent() ?
+            delegate.get().get(node, manifestLoader) :
+            manifestLoader.get();
+    currentEntries.put(
+        node.getBuildTarget().toString(),
+        new Entry(node.getRawInputsHashCode(), rawHash));
+    return rawHash;
+  }
+
+  private Optional<HashCode> getSavedRawHash(TargetNode<?> node) {
+    Entry entry = previousEntries.get(node.getBuildTarget().toString());
+    if (entry == null ||
+        !entry.rawInputsHash.equals(node.getRawInputsHashCode()) ||
+        referencesChangedPath(node)) {
+      return Optional.absent();
+    }
+    return Optional.of(entry.rawHash);
+  }
+
+  /**
+   * Records the raw hashes of the nodes which were hashed, for the next run to reuse.
+   */
+  public void save() throws IOException {
+    StringBuilder manifest = new StringBuilder();
+    manifest.append(MANIFEST_VERSION).append('\n');
+    for (Map.Entry<String, Entry> entry :
+        ImmutableSortedMap.copyOf(currentEntries).entrySet()) {
+      manifest
+          .append(entry.getValue().rawInputsHash).append(' ')
+          .append(entry.getValue().rawHash).append(' ')
+          .append(entry.getKey()).append('\n');
+    }
+    Path manifestPath = getManifestPath(projectFilesystem);
+    projectFilesystem.createParentDirs(manifestPath);
+    projectFilesystem.writeContentsToPath(manifest.toString(), manifestPath);
+  }
+
+  private boolean referencesChangedPath(TargetNode<?> node) {
+    if (changedPaths.isEmpty()) {
+      return false;
+    }
+    ProjectFilesystem cellFilesystem = node.getRuleFactoryParams().getProjectFilesystem();
+    for (Path input : node.getInputs()) {
+      Path absoluteInput = cellFilesystem.resolve(input);
+      // Inputs may be directories containing changed files, or be contained in changed
+      // directories.
+      if (changedPathsAndAncestors.contains(absoluteInput)) {
+        return true;
+      }
+      for (Path path = absoluteInput.getParent(); path != null; path = path.getParent()) {
+        if (changedPaths.contains(path)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static Path getManifestPath(ProjectFilesystem projectFilesystem) {
+    return projectFilesystem.getBuckPaths().getTargetHashesDir().resolve(MANIFEST_NAME);
+  }
+
+  private static ImmutableMap<String, Entry> readManifest(ProjectFilesystem projectFilesystem) {
+    Optional<String> manifest =
+        projectFilesystem.readFileIfItExists(getManifestPath(projectFilesystem));
+    if (!manifest.isPresent()) {
+      return ImmutableMap.of();
+    }
+    List<String> lines = Splitter.on('\n').omitEmptyStrings().splitToList(manifest.get());
+    if (lines.isEmpty() || !lines.get(0).equals(MANIFEST_VERSION)) {
+      return ImmutableMap.of();
+    }
+    ImmutableMap.Builder<String, Entry> entries = ImmutableMap.builder();
+    try {
+      for (String line : lines.subList(1, lines.size())) {
+        List<String> parts = Splitter.on(' ').limit(3).splitToList(line);
+        entries.put(
+            parts.get(2),
+            new Entry(HashCode.fromString(parts.get(0)), HashCode.fromString(parts.get(1))));
+      }
+      return entries.build();
+    } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+      LOG.warn(e, "Ignoring malformed raw hashes in %s.", getManifestPath(projectFilesystem));
+      return ImmutableMap.of();
+    }
+  }
+
+  private static class Entry {
+
+    private final HashCode rawInputsHash;
+    private final HashCode rawHash;
+
+    public Entry(HashCode rawInputsHash, HashCode rawHash) {
+      this.rawInputsHash = rawInputsHash;
+      this.rawHash = rawHash;
+    }
+  }
+}
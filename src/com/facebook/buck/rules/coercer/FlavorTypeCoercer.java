@@ -17,6 +17,7 @@
 package com.facebook.buck.rules.coercer;
 
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTargetInterner;
 import com.facebook.buck.model.Flavor;
 import com.facebook.buck.model.ImmutableFlavor;
 import com.facebook.buck.rules.CellPathResolver;
@@ -36,7 +37,7 @@ public class FlavorTypeCoercer extends LeafTypeCoercer<Flavor> {
       Path pathRelativeToProjectRoot,
       Object object) throws CoerceFailedException {
     if (object instanceof String) {
-      return ImmutableFlavor.of((String) object);
+      return BuildTargetInterner.intern(ImmutableFlavor.of((String) object));
     }
     throw CoerceFailedException.simple(object, getOutputClass());
   }
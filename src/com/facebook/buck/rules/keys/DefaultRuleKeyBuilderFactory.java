@@ -17,6 +17,7 @@
 package com.facebook.buck.rules.keys;
 
 import com.facebook.buck.hashing.FileHashLoader;
+import com.facebook.buck.io.ArchiveMemberPath;
 import com.facebook.buck.rules.AbstractBuildRule;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.RuleKey;
@@ -25,11 +26,22 @@ import com.facebook.buck.rules.RuleKeyBuilder;
 import com.facebook.buck.rules.RuleKeyBuilderFactory;
 import com.facebook.buck.rules.RuleKeyObjectSink;
 import com.facebook.buck.rules.SourcePathResolver;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
 /**
  * A {@link RuleKeyBuilderFactory} which adds some default settings to {@link RuleKey}s.
@@ -40,49 +52,74 @@ public class DefaultRuleKeyBuilderFactory
   protected final LoadingCache<RuleKeyAppendable, RuleKey> ruleKeyCache;
   private final FileHashLoader hashLoader;
   private final SourcePathResolver pathResolver;
+  private final Optional<DefaultRuleKeyCache> persistentCache;
 
   public DefaultRuleKeyBuilderFactory(
       int seed,
       FileHashLoader hashLoader,
       SourcePathResolver pathResolver) {
+    this(seed, hashLoader, pathResolver, Optional.<DefaultRuleKeyCache>absent());
+  }
+
+  /**
+   * @param persistentCache if present, keys of rules and appendables are looked up there before
+   *     being computed, and kept there along with the inputs they were computed from.
+   */
+  public DefaultRuleKeyBuilderFactory(
+      int seed,
+      FileHashLoader hashLoader,
+      SourcePathResolver pathResolver,
+      Optional<DefaultRuleKeyCache> persistentCache) {
     super(seed);
+    this.hashLoader = hashLoader;
+    this.pathResolver = pathResolver;
+    this.persistentCache = persistentCache;
     this.ruleKeyCache = CacheBuilder.newBuilder().weakKeys().build(
         new CacheLoader<RuleKeyAppendable, RuleKey>() {
           @Override
           public RuleKey load(@Nonnull RuleKeyAppendable appendable) throws Exception {
+            if (DefaultRuleKeyBuilderFactory.this.persistentCache.isPresent()) {
+              return DefaultRuleKeyBuilderFactory.this.persistentCache.get().get(
+                  appendable,
+                  new Function<RuleKeyAppendable, DefaultRuleKeyCache.Computation>() {
+                    @Override
+                    public DefaultRuleKeyCache.Computation apply(RuleKeyAppendable input) {
+                      Builder subKeyBuilder = newBuilder();
+                      input.appendToRuleKey(subKeyBuilder);
+                      return subKeyBuilder.toComputation(subKeyBuilder.build());
+                    }
+                  });
+            }
             RuleKeyBuilder<RuleKey> subKeyBuilder = newBuilder();
             appendable.appendToRuleKey(subKeyBuilder);
             return subKeyBuilder.build();
           }
         });
-    this.hashLoader = hashLoader;
-    this.pathResolver = pathResolver;
   }
 
   protected DefaultRuleKeyBuilderFactory getDefaultRuleKeyBuilderFactory() {
     return this;
   }
 
-  private RuleKeyBuilder<RuleKey> newBuilder() {
-    return new RuleKeyBuilder<RuleKey>(pathResolver, hashLoader) {
-      @Override
-      protected RuleKeyBuilder<RuleKey> setBuildRule(BuildRule rule) {
-        return setSingleValue(getDefaultRuleKeyBuilderFactory().build(rule));
-      }
-
-      @Override
-      public RuleKeyBuilder<RuleKey> setAppendableRuleKey(
-          String key,
-          RuleKeyAppendable appendable) {
-        RuleKey subKey = ruleKeyCache.getUnchecked(appendable);
-        return setAppendableRuleKey(key, subKey);
-      }
+  private Builder newBuilder() {
+    return new Builder(persistentCache.isPresent() ? new RecordedInputs() : null);
+  }
 
-      @Override
-      public RuleKey build() {
-        return buildRuleKey();
-      }
-    };
+  @Override
+  protected RuleKey computeRuleKey(BuildRule buildRule) {
+    if (!persistentCache.isPresent()) {
+      return super.computeRuleKey(buildRule);
+    }
+    return persistentCache.get().get(
+        buildRule,
+        new Function<BuildRule, DefaultRuleKeyCache.Computation>() {
+          @Override
+          public DefaultRuleKeyCache.Computation apply(BuildRule input) {
+            // Our builders are always created by `newBuilder()`.
+            Builder builder = (Builder) newInstance(input);
+            return builder.toComputation(builder.build());
+          }
+        });
   }
 
   @Override
@@ -110,4 +147,83 @@ public class DefaultRuleKeyBuilderFactory
     return builder;
   }
 
+  /**
+   * The files and the other rules and appendables a key was computed from, recorded when keys are
+   * kept in a {@link DefaultRuleKeyCache}.
+   */
+  private static class RecordedInputs {
+    private final Set<Path> paths = new HashSet<>();
+    private final Set<Object> deps = Sets.newIdentityHashSet();
+  }
+
+  private class Builder extends RuleKeyBuilder<RuleKey> {
+
+    @Nullable
+    private final RecordedInputs inputs;
+
+    public Builder(@Nullable RecordedInputs inputs) {
+      super(pathResolver, inputs == null ? hashLoader : recordingHashLoader(hashLoader, inputs));
+      this.inputs = inputs;
+    }
+
+    @Override
+    protected RuleKeyBuilder<RuleKey> setBuildRule(BuildRule rule) {
+      if (inputs != null) {
+        inputs.deps.add(rule);
+      }
+      return setSingleValue(getDefaultRuleKeyBuilderFactory().build(rule));
+    }
+
+    @Override
+    public RuleKeyBuilder<RuleKey> setAppendableRuleKey(
+        String key,
+        RuleKeyAppendable appendable) {
+      if (inputs != null && appendable instanceof BuildRule) {
+        // The persistent cache is keyed by identity, and the rule's own key lives under this
+        // object, so compute the appendable part inline and record its inputs as ours.
+        Builder subKeyBuilder = new Builder(inputs);
+        appendable.appendToRuleKey(subKeyBuilder);
+        return setAppendableRuleKey(key, subKeyBuilder.build());
+      }
+      RuleKey subKey = ruleKeyCache.getUnchecked(appendable);
+      if (inputs != null) {
+        inputs.deps.add(appendable);
+      }
+      return setAppendableRuleKey(key, subKey);
+    }
+
+    @Override
+    public RuleKey build() {
+      return buildRuleKey();
+    }
+
+    private DefaultRuleKeyCache.Computation toComputation(RuleKey ruleKey) {
+      Preconditions.checkNotNull(inputs);
+      return new DefaultRuleKeyCache.Computation(ruleKey, inputs.paths, inputs.deps);
+    }
+  }
+
+  private static FileHashLoader recordingHashLoader(
+      final FileHashLoader delegate,
+      final RecordedInputs inputs) {
+    return new FileHashLoader() {
+      @Override
+      public HashCode get(Path path) throws IOException {
+        inputs.paths.add(path);
+        return delegate.get(path);
+      }
+
+      @Override
+      public long getSize(Path path) throws IOException {
+        inputs.paths.add(path);
+        return delegate.getSize(path);
+      }
+
+      @Override
+      public HashCode get(ArchiveMemberPath archiveMemberPath) throws IOException {
+        inputs.paths.add(archiveMemberPath.getArchivePath());
+        return delegate.get(archiveMemberPath);
+      }
+    };
+  }
 }
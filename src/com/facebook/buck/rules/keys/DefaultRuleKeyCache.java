@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import com.facebook.buck.counters.Counter;
+import com.facebook.buck.counters.IntegerCounter;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.io.WatchEvents;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.rules.RuleKey;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.MapMaker;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps default {@link RuleKey}s of build rules and
+ * {@link com.facebook.buck.rules.RuleKeyAppendable}s alive between builds, so that a daemon only
+ * needs to recompute the keys affected by the files that changed since the last build.
+ * <p>
+ * Objects are compared by identity, so entries are only useful for as long as the action graph
+ * they belong to is reused.  For every key, the files it hashed and the other objects whose keys
+ * it embedded are recorded, so that a change to a file invalidates the keys that read it along
+ * with everything that (transitively) depends on them.  Keys which read files that are not
+ * watched (outside of the project root, or ignored, or under buck-out) are never cached.
+ */
+public class DefaultRuleKeyCache {
+
+  private static final Logger LOG = Logger.get(DefaultRuleKeyCache.class);
+
+  private static final String COUNTER_CATEGORY = "buck_rule_key_cache";
+
+  private final ProjectFilesystem filesystem;
+
+  private final Cache<Object, RuleKey> ruleKeys = CacheBuilder.newBuilder().weakKeys().build();
+
+  // Reverse edges used for invalidation, guarded by `this`.
+  private final Map<Object, Set<Object>> dependentsOfObjects =
+      new MapMaker().weakKeys().makeMap();
+  private final Map<Path, Set<Object>> dependentsOfPaths = new HashMap<>();
+
+  // Bumped on every invalidation, so that keys computed from state that was invalidated while
+  // they were being computed are not cached.  Guarded by `this`.
+  private long generation = 0;
+
+  private final IntegerCounter hits;
+  private final IntegerCounter misses;
+  private final IntegerCounter invalidations;
+
+  public DefaultRuleKeyCache(ProjectFilesystem filesystem) {
+    this.filesystem = filesystem;
+    this.hits = new IntegerCounter(COUNTER_CATEGORY, "hits", ImmutableMap.<String, String>of());
+    this.misses =
+        new IntegerCounter(COUNTER_CATEGORY, "misses", ImmutableMap.<String, String>of());
+    this.invalidations =
+        new IntegerCounter(COUNTER_CATEGORY, "invalidations", ImmutableMap.<String, String>of());
+  }
+
+  /**
+   * @return the cached key for {@code object}, computing and recording it with {@code create} if
+   *     it isn't cached.
+   */
+  public <T> RuleKey get(T object, Function<? super T, Computation> create) {
+    RuleKey ruleKey = ruleKeys.getIfPresent(object);
+    if (ruleKey != null) {
+      hits.inc();
+      return ruleKey;
+    }
+    misses.inc();
+    long startGeneration = getGeneration();
+    Computation computation = create.apply(object);
+    record(object, computation, startGeneration);
+    return computation.getRuleKey();
+  }
+
+  private synchronized long getGeneration() {
+    return generation;
+  }
+
+  private synchronized void record(Object object, Computation computation, long startGeneration) {
+    if (startGeneration != generation || !isCacheable(computation)) {
+      return;
+    }
+    for (Object dep : computation.getDeps()) {
+      Set<Object> dependents = dependentsOfObjects.get(dep);
+      if (dependents == null) {
+        dependents = newWeakSet();
+        dependentsOfObjects.put(dep, dependents);
+      }
+      dependents.add(object);
+    }
+    for (Path input : computation.getInputs()) {
+      Set<Object> dependents = dependentsOfPaths.get(input);
+      if (dependents == null) {
+        dependents = newWeakSet();
+        dependentsOfPaths.put(input, dependents);
+      }
+      dependents.add(object);
+    }
+    ruleKeys.put(object, computation.getRuleKey());
+  }
+
+  private boolean isCacheable(Computation computation) {
+    // If one of our deps wasn't cached, nothing would invalidate us when it changes.
+    for (Object dep : computation.getDeps()) {
+      if (ruleKeys.getIfPresent(dep) == null) {
+        return false;
+      }
+    }
+    for (Path input : computation.getInputs()) {
+      if (!isWatched(input)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean isWatched(Path absolutePath) {
+    if (!absolutePath.startsWith(filesystem.getRootPath())) {
+      return false;
+    }
+    Path relativePath = filesystem.getRootPath().relativize(absolutePath);
+    return !relativePath.startsWith(filesystem.getBuckPaths().getBuckOut()) &&
+        !filesystem.isIgnored(relativePath);
+  }
+
+  /**
+   * Called with the file change events of the project root to invalidate the keys computed from
+   * the changed paths.  {@link Path}s contained within events must all be relative to the
+   * {@link ProjectFilesystem} root.
+   */
+  public synchronized void invalidateBasedOn(WatchEvent<?> event) {
+    if (!WatchEvents.isPathChangeEvent(event)) {
+      // Non-path change event, likely an overflow due to many change events.
+      invalidateAll();
+      return;
+    }
+    generation++;
+    Path path = filesystem.getRootPath().resolve((Path) event.context()).normalize();
+    LOG.verbose("Invalidating rule keys depending on %s", path);
+    // Keys that hashed a directory depend on everything underneath it.
+    Deque<Object> toInvalidate = new ArrayDeque<>();
+    for (Path input = path; input != null; input = input.getParent()) {
+      Set<Object> dependents = dependentsOfPaths.remove(input);
+      if (dependents != null) {
+        toInvalidate.addAll(dependents);
+      }
+    }
+    while (!toInvalidate.isEmpty()) {
+      Object object = toInvalidate.pop();
+      if (ruleKeys.getIfPresent(object) != null) {
+        ruleKeys.invalidate(object);
+        invalidations.inc();
+      }
+      Set<Object> dependents = dependentsOfObjects.remove(object);
+      if (dependents != null) {
+        toInvalidate.addAll(dependents);
+      }
+    }
+  }
+
+  public synchronized void invalidateAll() {
+    generation++;
+    invalidations.inc(ruleKeys.size());
+    ruleKeys.invalidateAll();
+    dependentsOfObjects.clear();
+    dependentsOfPaths.clear();
+  }
+
+  @VisibleForTesting
+  boolean isCached(Object object) {
+    return ruleKeys.getIfPresent(object) != null;
+  }
+
+  public ImmutableList<Counter> getCounters() {
+    return ImmutableList.<Counter>of(hits, misses, invalidations);
+  }
+
+  private static Set<Object> newWeakSet() {
+    return Collections.newSetFromMap(new MapMaker().weakKeys().<Object, Boolean>makeMap());
+  }
+
+  /**
+   * The result of computing a key: the key itself, the absolute paths of the files it hashed and
+   * the objects whose keys it embedded.
+   */
+  public static class Computation {
+    private final RuleKey ruleKey;
+    private final ImmutableSet<Path> inputs;
+    private final ImmutableList<Object> deps;
+
+    public Computation(RuleKey ruleKey, Iterable<Path> inputs, Iterable<?> deps) {
+      this.ruleKey = ruleKey;
+      this.inputs = ImmutableSet.copyOf(inputs);
+      this.deps = ImmutableList.copyOf(deps);
+    }
+
+    public RuleKey getRuleKey() {
+      return ruleKey;
+    }
+
+    public ImmutableSet<Path> getInputs() {
+      return inputs;
+    }
+
+    public ImmutableList<Object> getDeps() {
+      return deps;
+    }
+  }
+}
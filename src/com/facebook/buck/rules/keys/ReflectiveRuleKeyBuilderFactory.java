@@ -47,11 +47,18 @@ public abstract class ReflectiveRuleKeyBuilderFactory<T extends RuleKeyBuilder<U
         new CacheLoader<BuildRule, U>() {
           @Override
           public U load(BuildRule key) throws Exception {
-            return newInstance(key).build();
+            return computeRuleKey(key);
           }
         });
   }
 
+  /**
+   * Computes the key of a rule which hasn't been seen by this factory yet.
+   */
+  protected U computeRuleKey(BuildRule buildRule) {
+    return newInstance(buildRule).build();
+  }
+
   /**
    * @return sub-classes should override this to provide specialized {@link RuleKeyBuilder}s.
    */
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step.fs;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Brings a symlink tree up to date with the links it should contain, only creating, updating and
+ * removing the links which differ, rather than recreating the whole tree.  Anything else found in
+ * the tree is removed, as it would be by recreating it.
+ * <p>
+ * The links in the tree are recorded in a manifest next to it.  Without a manifest, such as on the
+ * first build, or on Windows, where links may be copies, the tree is recreated from scratch.  The
+ * manifest is deleted while the tree is being changed, so a failed sync is followed by a full one.
+ */
+public class SyncSymlinkTreeStep implements Step {
+
+  private static final Logger LOG = Logger.get(SyncSymlinkTreeStep.class);
+
+  private static final String MANIFEST_VERSION = "1";
+
+  private final ProjectFilesystem filesystem;
+  private final Path root;
+  private final ImmutableMap<Path, Path> links;
+
+  public SyncSymlinkTreeStep(
+      ProjectFilesystem filesystem,
+      Path root,
+      ImmutableMap<Path, Path> links) {
+    this.filesystem = filesystem;
+    this.root = root;
+    this.links = links;
+  }
+
+  private static Path getManifestPath(Path root) {
+    return root.resolveSibling(root.getFileName() + ".links");
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return "sync link tree @ " + root.toString();
+  }
+
+  @Override
+  public String getShortName() {
+    return "sync_link_tree";
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) {
+    Path manifestPath = getManifestPath(root);
+    ImmutableSortedMap.Builder<String, Path> desired = ImmutableSortedMap.naturalOrder();
+    for (Map.Entry<Path, Path> entry : links.entrySet()) {
+      desired.put(entry.getKey().toString(), filesystem.resolve(entry.getValue()));
+    }
+    ImmutableSortedMap<String, Path> current = desired.build();
+
+    try {
+      Optional<ImmutableMap<String, String>> previous = Optional.absent();
+      if (Platform.detect() != Platform.WINDOWS && filesystem.isDirectory(root)) {
+        previous = readManifest(manifestPath);
+      }
+      filesystem.deleteFileAtPathIfExists(manifestPath);
+
+      if (previous.isPresent()) {
+        removeStaleEntries(current);
+      } else {
+        filesystem.deleteRecursivelyIfExists(root);
+        filesystem.mkdirs(root);
+      }
+
+      int linked = 0;
+      for (Map.Entry<String, Path> entry : current.entrySet()) {
+        Path link = root.resolve(entry.getKey());
+        Path target = entry.getValue();
+        if (previous.isPresent() &&
+            target.toString().equals(previous.get().get(entry.getKey())) &&
+            isLinkTo(link, target)) {
+          continue;
+        }
+        filesystem.mkdirs(link.getParent());
+        filesystem.createSymLink(link, target, /* force */ true);
+        linked++;
+      }
+      LOG.debug("Linked %d of %d paths in %s.", linked, current.size(), root);
+
+      writeManifest(manifestPath, current);
+    } catch (IOException e) {
+      context.logError(e, "Failed to sync link tree %s", root);
+      return StepExecutionResult.ERROR;
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  /**
+   * Removes everything in the tree which isn't one of the {@code current} links or a directory
+   * containing them, including files written into it by whatever ran from it (such as the
+   * {@code .pyc} files of python modules), which would otherwise outlive the links they came from.
+   */
+  private void removeStaleEntries(ImmutableMap<String, Path> current) throws IOException {
+    final Set<Path> links = new HashSet<>();
+    final Set<Path> dirs = new HashSet<>();
+    for (String name : current.keySet()) {
+      Path link = Paths.get(name);
+      links.add(link);
+      for (Path dir = link.getParent(); dir != null; dir = dir.getParent()) {
+        dirs.add(dir);
+      }
+    }
+
+    final Path absoluteRoot = filesystem.resolve(root);
+    Files.walkFileTree(
+        absoluteRoot,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+              throws IOException {
+            Path relative = absoluteRoot.relativize(dir);
+            if (dir.equals(absoluteRoot) || dirs.contains(relative)) {
+              return FileVisitResult.CONTINUE;
+            }
+            filesystem.deleteRecursivelyIfExists(root.resolve(relative));
+            return FileVisitResult.SKIP_SUBTREE;
+          }
+
+          @Override
+          public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+              throws IOException {
+            Path relative = absoluteRoot.relativize(file);
+            if (!links.contains(relative)) {
+              filesystem.deleteFileAtPath(root.resolve(relative));
+            }
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  private boolean isLinkTo(Path link, Path target) {
+    try {
+      return filesystem.isSymLink(link) && filesystem.readSymLink(link).equals(target);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private Optional<ImmutableMap<String, String>> readManifest(Path manifestPath) {
+    Optional<String> manifest = filesystem.readFileIfItExists(manifestPath);
+    if (!manifest.isPresent()) {
+      return Optional.absent();
+    }
+    List<String> lines = Splitter.on('\n').omitEmptyStrings().splitToList(manifest.get());
+    if (lines.isEmpty() || !lines.get(0).equals(MANIFEST_VERSION)) {
+      return Optional.absent();
+    }
+    ImmutableMap.Builder<String, String> entries = ImmutableMap.builder();
+    try {
+      for (String line : lines.subList(1, lines.size())) {
+        List<String> parts = Splitter.on('\t').limit(2).splitToList(line);
+        entries.put(parts.get(0), parts.get(1));
+      }
+      return Optional.of(entries.build());
+    } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+      LOG.warn(e, "Ignoring malformed link tree manifest %s.", manifestPath);
+      return Optional.absent();
+    }
+  }
+
+  private void writeManifest(
+      Path manifestPath,
+      ImmutableSortedMap<String, Path> current) throws IOException {
+    StringBuilder manifest = new StringBuilder();
+    manifest.append(MANIFEST_VERSION).append('\n');
+    for (Map.Entry<String, Path> entry : current.entrySet()) {
+      manifest.append(entry.getKey()).append('\t').append(entry.getValue()).append('\n');
+    }
+    filesystem.writeContentsToPath(manifest.toString(), manifestPath);
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof SyncSymlinkTreeStep)) {
+      return false;
+    }
+    SyncSymlinkTreeStep that = (SyncSymlinkTreeStep) obj;
+    return Objects.equal(this.root, that.root) && Objects.equal(this.links, that.links);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(root, links);
+  }
+}
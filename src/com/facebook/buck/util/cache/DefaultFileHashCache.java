@@ -24,24 +24,30 @@ import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 
 import java.io.IOException;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 
 import javax.annotation.Nonnull;
 
 public class DefaultFileHashCache implements ProjectFileHashCache {
 
+  private static final int ARCHIVE_CONTENTS_CACHE_SIZE = 1000;
+
   private final ProjectFilesystem projectFilesystem;
   private final Optional<Path> buckOutPath;
 
@@ -51,6 +57,15 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
   @VisibleForTesting
   final LoadingCache<Path, Long> sizeCache;
 
+  /**
+   * The hashes of the members of archives, keyed by the hash of the archive, so that an archive
+   * which is rewritten with the same contents doesn't have to be read again.
+   */
+  private final Cache<HashCode, ImmutableMap<Path, HashCodeAndFileType>> archiveContentsCache =
+      CacheBuilder.newBuilder()
+          .maximumSize(ARCHIVE_CONTENTS_CACHE_SIZE)
+          .build();
+
   @VisibleForTesting
   DefaultFileHashCache(
       ProjectFilesystem projectFilesystem,
@@ -203,11 +218,18 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
     Path relativeFilePath = resolvePath(absoluteFilePath).normalize();
 
     try {
-      HashCodeAndFileType fileHashCodeAndFileType = loadingCache.get(relativeFilePath);
+      final HashCodeAndFileType fileHashCodeAndFileType = loadingCache.get(relativeFilePath);
+      ImmutableMap<Path, HashCodeAndFileType> contents = archiveContentsCache.get(
+          fileHashCodeAndFileType.getHashCode(),
+          new Callable<ImmutableMap<Path, HashCodeAndFileType>>() {
+            @Override
+            public ImmutableMap<Path, HashCodeAndFileType> call() {
+              return fileHashCodeAndFileType.getContents();
+            }
+          });
 
       Path memberPath = archiveMemberPath.getMemberPath();
-      HashCodeAndFileType memberHashCodeAndFileType =
-          fileHashCodeAndFileType.getContents().get(memberPath);
+      HashCodeAndFileType memberHashCodeAndFileType = contents.get(memberPath);
       if (memberHashCodeAndFileType == null) {
         throw new NoSuchFileException(archiveMemberPath.toString());
       }
@@ -216,6 +238,8 @@ public class DefaultFileHashCache implements ProjectFileHashCache {
     } catch (ExecutionException e) {
       Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
       throw Throwables.propagate(e.getCause());
+    } catch (UncheckedExecutionException e) {
+      throw Throwables.propagate(e.getCause());
     }
   }
 
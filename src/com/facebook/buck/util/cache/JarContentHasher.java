@@ -17,26 +17,58 @@ package com.facebook.buck.util.cache;
 
 import com.facebook.buck.io.HashingDeterministicJarWriter;
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.zip.CentralDirectoryReader;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.jar.Attributes;
+import java.util.jar.JarFile;
 import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
+import javax.annotation.Nullable;
+
+/**
+ * Hashes the members of a jar.  Members with a digest in the jar's manifest, as written by
+ * {@link HashingDeterministicJarWriter}, use that.  Otherwise, the CRC-32 and size recorded in the
+ * jar's central directory are used as a fingerprint of the member, so that nothing needs to be
+ * inflated.  Two members with the same size and CRC-32 but different contents are vanishingly
+ * rare, but in strict mode (enabled with {@code -Dbuck.strict_archive_member_hashing=true}) such
+ * members are inflated and hashed instead.
+ */
 public class JarContentHasher {
 
+  private static final boolean STRICT_BY_DEFAULT =
+      Boolean.getBoolean("buck.strict_archive_member_hashing");
+
   private final ProjectFilesystem filesystem;
   private final Path jarRelativePath;
+  private final boolean strict;
 
   public JarContentHasher(ProjectFilesystem filesystem, Path jarRelativePath) {
+    this(filesystem, jarRelativePath, STRICT_BY_DEFAULT);
+  }
+
+  @VisibleForTesting
+  JarContentHasher(ProjectFilesystem filesystem, Path jarRelativePath, boolean strict) {
     Preconditions.checkState(!jarRelativePath.isAbsolute());
     this.filesystem = filesystem;
     this.jarRelativePath = jarRelativePath;
+    this.strict = strict;
   }
 
   public Path getJarRelativePath() {
@@ -44,31 +76,77 @@ public class JarContentHasher {
   }
 
   public ImmutableMap<Path, HashCodeAndFileType> getContentHashes() throws IOException {
-    Manifest manifest = filesystem.getJarManifest(jarRelativePath);
-    if (manifest == null) {
-      throw new UnsupportedOperationException(
-          "Cache does not know how to return hash codes for archive members except " +
-              "when the archive contains a META-INF/MANIFEST.MF with " +
-              HashingDeterministicJarWriter.DIGEST_ATTRIBUTE_NAME +
-              " attributes for each file.");
-    }
+    ImmutableMap<String, CentralDirectoryReader.Entry> entries = readCentralDirectory();
 
-    ImmutableMap.Builder<Path, HashCodeAndFileType> builder = ImmutableMap.builder();
-    for (Map.Entry<String, Attributes> nameAttributesEntry : manifest.getEntries().entrySet()) {
-      Path memberPath = Paths.get(nameAttributesEntry.getKey());
-      Attributes attributes = nameAttributesEntry.getValue();
-      String hashStringValue = attributes.getValue(
-          HashingDeterministicJarWriter.DIGEST_ATTRIBUTE_NAME);
-      if (hashStringValue == null) {
+    Manifest manifest = entries.containsKey(JarFile.MANIFEST_NAME) ?
+        filesystem.getJarManifest(jarRelativePath) :
+        null;
+    Map<String, Attributes> manifestEntries =
+        manifest == null ? ImmutableMap.<String, Attributes>of() : manifest.getEntries();
+
+    Map<String, HashCode> memberHashes = new LinkedHashMap<>();
+    boolean needsInflating = false;
+    for (CentralDirectoryReader.Entry entry : entries.values()) {
+      if (entry.isDirectory()) {
         continue;
       }
+      HashCode memberHash = getDigestFromManifest(manifestEntries.get(entry.getName()));
+      if (memberHash == null && !strict) {
+        memberHash = Hashing.sha1().newHasher()
+            .putLong(entry.getCrc())
+            .putLong(entry.getSize())
+            .hash();
+      }
+      needsInflating |= memberHash == null;
+      memberHashes.put(entry.getName(), memberHash);
+    }
 
-      HashCode memberHash = HashCode.fromString(hashStringValue);
-      HashCodeAndFileType memberHashCodeAndFileType = HashCodeAndFileType.ofFile(memberHash);
-
-      builder.put(memberPath, memberHashCodeAndFileType);
+    if (needsInflating) {
+      try (ZipInputStream in = new ZipInputStream(filesystem.newFileInputStream(jarRelativePath))) {
+        for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
+          if (memberHashes.containsKey(entry.getName()) &&
+              memberHashes.get(entry.getName()) == null) {
+            memberHashes.put(
+                entry.getName(),
+                Hashing.sha1().hashBytes(ByteStreams.toByteArray(in)));
+          }
+        }
+      }
     }
 
+    ImmutableMap.Builder<Path, HashCodeAndFileType> builder = ImmutableMap.builder();
+    for (Map.Entry<String, HashCode> memberHash : memberHashes.entrySet()) {
+      if (memberHash.getValue() == null) {
+        throw new NoSuchFileException(memberHash.getKey());
+      }
+      builder.put(
+          Paths.get(memberHash.getKey()),
+          HashCodeAndFileType.ofFile(memberHash.getValue()));
+    }
     return builder.build();
   }
+
+  private ImmutableMap<String, CentralDirectoryReader.Entry> readCentralDirectory()
+      throws IOException {
+    Path jarPath = filesystem.resolve(jarRelativePath);
+    if (Files.isRegularFile(jarPath)) {
+      return CentralDirectoryReader.read(jarPath);
+    }
+    // Not backed by a real file, so there is nothing to map.
+    try (InputStream in = filesystem.newFileInputStream(jarRelativePath)) {
+      return CentralDirectoryReader.read(
+          ByteBuffer.wrap(ByteStreams.toByteArray(in)),
+          jarRelativePath.toString());
+    }
+  }
+
+  @Nullable
+  private static HashCode getDigestFromManifest(@Nullable Attributes attributes) {
+    if (attributes == null) {
+      return null;
+    }
+    String hashStringValue =
+        attributes.getValue(HashingDeterministicJarWriter.DIGEST_ATTRIBUTE_NAME);
+    return hashStringValue == null ? null : HashCode.fromString(hashStringValue);
+  }
 }
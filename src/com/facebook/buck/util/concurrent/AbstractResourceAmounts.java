@@ -0,0 +1,128 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.concurrent;
+
+import com.facebook.buck.util.immutables.BuckStyleTuple;
+import com.google.common.base.Preconditions;
+
+import org.immutables.value.Value;
+
+/**
+ * An amount of each {@link ResourceType}, either required by a piece of work or available to run
+ * work with.
+ */
+@Value.Immutable
+@BuckStyleTuple
+abstract class AbstractResourceAmounts {
+
+  public static final ResourceAmounts ZERO = ResourceAmounts.of(0, 0, 0);
+
+  private static final int UNLIMITED = Integer.MAX_VALUE;
+
+  public abstract int getCpu();
+
+  public abstract int getMemoryMegabytes();
+
+  public abstract int getDiskIOTokens();
+
+  @Value.Check
+  protected void check() {
+    for (ResourceType type : ResourceType.values()) {
+      Preconditions.checkArgument(get(type) >= 0, "Resource amounts must not be negative.");
+    }
+  }
+
+  /**
+   * @return the given number of CPU slots, with no limit on any other resource.
+   */
+  public static ResourceAmounts ofCpuLimit(int cpu) {
+    return ResourceAmounts.of(cpu, UNLIMITED, UNLIMITED);
+  }
+
+  public int get(ResourceType type) {
+    switch (type) {
+      case CPU:
+        return getCpu();
+      case MEMORY:
+        return getMemoryMegabytes();
+      case DISK_IO:
+        return getDiskIOTokens();
+    }
+    throw new IllegalArgumentException("Unknown resource type " + type);
+  }
+
+  public ResourceAmounts with(ResourceType type, int amount) {
+    int[] result = toArray();
+    result[type.ordinal()] = amount;
+    return fromArray(result);
+  }
+
+  public ResourceAmounts append(ResourceAmounts other) {
+    int[] result = toArray();
+    for (ResourceType type : ResourceType.values()) {
+      // Saturate, so that adding to an unlimited amount stays unlimited.
+      result[type.ordinal()] =
+          (int) Math.min((long) result[type.ordinal()] + other.get(type), UNLIMITED);
+    }
+    return fromArray(result);
+  }
+
+  public ResourceAmounts subtract(ResourceAmounts other) {
+    int[] result = toArray();
+    for (ResourceType type : ResourceType.values()) {
+      result[type.ordinal()] -= other.get(type);
+    }
+    return fromArray(result);
+  }
+
+  /**
+   * @return whether every amount is zero.
+   */
+  public boolean isZero() {
+    return equals(ZERO);
+  }
+
+  private int[] toArray() {
+    int[] amounts = new int[ResourceType.values().length];
+    for (ResourceType type : ResourceType.values()) {
+      amounts[type.ordinal()] = get(type);
+    }
+    return amounts;
+  }
+
+  private static ResourceAmounts fromArray(int[] amounts) {
+    return ResourceAmounts.of(
+        amounts[ResourceType.CPU.ordinal()],
+        amounts[ResourceType.MEMORY.ordinal()],
+        amounts[ResourceType.DISK_IO.ordinal()]);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("{");
+    for (ResourceType type : ResourceType.values()) {
+      if (type.ordinal() > 0) {
+        builder.append(", ");
+      }
+      builder.append(type.getConfigName()).append('=');
+      int amount = get(type);
+      builder.append(amount == UNLIMITED ? "unlimited" : String.valueOf(amount));
+    }
+    return builder.append('}').toString();
+  }
+
+}
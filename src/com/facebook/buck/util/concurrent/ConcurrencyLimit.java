@@ -23,9 +23,15 @@ public class ConcurrencyLimit {
 
   public final int threadLimit;
   public final double loadLimit;
+  public final ResourceAmounts resourceLimits;
 
   public ConcurrencyLimit(int threadLimit, double loadLimit) {
+    this(threadLimit, loadLimit, ResourceAmounts.ofCpuLimit(threadLimit));
+  }
+
+  public ConcurrencyLimit(int threadLimit, double loadLimit, ResourceAmounts resourceLimits) {
     this.threadLimit = threadLimit;
     this.loadLimit = loadLimit;
+    this.resourceLimits = resourceLimits;
   }
 }
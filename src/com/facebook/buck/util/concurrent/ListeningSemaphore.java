@@ -16,32 +16,43 @@
 
 package com.facebook.buck.util.concurrent;
 
-import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 
-import java.util.AbstractMap;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.ListIterator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A semaphore using {@link ListenableFuture}s for acquisition rather than blocking.
+ * <p>
+ * Permits are measured in several {@link ResourceType}s at once, and an acquisition only goes
+ * ahead once there is enough of every resource it asks for.  The integer overloads only deal with
+ * {@link ResourceType#CPU}.
+ * <p>
+ * Blocked acquisitions are granted in order of decreasing priority, and in the order they were
+ * made for equal priorities.
  */
 public class ListeningSemaphore {
 
-  private final List<Map.Entry<Integer, SettableFuture<Void>>> pending = new LinkedList<>();
-  private int size = 0;
+  public static final long DEFAULT_PRIORITY = 0;
 
-  private final int maxSize;
+  private final LinkedList<PendingAcquisition> pending = new LinkedList<>();
+  private ResourceAmounts size = ResourceAmounts.ZERO;
+  private final long[] queueTimeNanos = new long[ResourceType.values().length];
+
+  private final ResourceAmounts maxSize;
   private final Cap cap;
   private final Fairness fairness;
 
   public ListeningSemaphore(
-      int maxSize,
+      ResourceAmounts maxSize,
       Cap cap,
       Fairness fairness) {
     this.maxSize = maxSize;
@@ -49,57 +60,94 @@ public class ListeningSemaphore {
     this.fairness = fairness;
   }
 
+  public ListeningSemaphore(
+      int maxSize,
+      Cap cap,
+      Fairness fairness) {
+    this(ResourceAmounts.ofCpuLimit(maxSize), cap, fairness);
+  }
+
   public ListeningSemaphore(int maxSize) {
     this(maxSize, Cap.HARD, Fairness.FAIR);
   }
 
-  private synchronized boolean canFit(int permits) {
+  /**
+   * @return the resources for which {@code amounts} doesn't currently fit, which is empty if the
+   *     acquisition can go ahead.
+   */
+  private synchronized Set<ResourceType> getShortResources(ResourceAmounts amounts) {
+    Set<ResourceType> shortResources = EnumSet.noneOf(ResourceType.class);
+    for (ResourceType type : ResourceType.values()) {
+      long used = size.get(type);
+
+      // If we have enough space, then always accept.
+      if (used + amounts.get(type) <= maxSize.get(type)) {
+        continue;
+      }
 
-    // If we have enough space, then always accept.
-    if (size + permits <= maxSize) {
-      return true;
-    }
+      // If soft cap is set, and nothing of this resource is in use, then accept even though this
+      // pushes us over the max size.
+      if (cap == Cap.SOFT && used == 0) {
+        continue;
+      }
 
-    // If soft cap is set, and size is 0, then accept even though this pushes us over the max size.
-    if (cap == Cap.SOFT && size == 0) {
-      return true;
+      shortResources.add(type);
     }
+    return shortResources;
+  }
+
+  public ListenableFuture<Void> acquire(int permits) {
+    return acquire(permits, DEFAULT_PRIORITY);
+  }
 
-    return false;
+  public ListenableFuture<Void> acquire(int permits, long priority) {
+    return acquire(ResourceAmounts.of(permits, 0, 0), priority);
   }
 
-  public synchronized ListenableFuture<Void> acquire(int permits) {
+  public synchronized ListenableFuture<Void> acquire(ResourceAmounts amounts, long priority) {
 
     // If the semaphore isn't full, acquire it now.  Since an immediate future cannot be canceled,
     // there's no extra handling we have to do here.
-    if (canFit(permits)) {
-      size += permits;
+    Set<ResourceType> shortResources = getShortResources(amounts);
+    if (shortResources.isEmpty()) {
+      size = size.append(amounts);
       return Futures.immediateFuture(null);
     }
 
-    // Otherwise, queue it up for later.
+    // Otherwise, queue it up for later, behind everything of the same or a higher priority.  We
+    // search from the back, as most acquisitions use the default priority.
     SettableFuture<Void> future = SettableFuture.create();
-    pending.add(new AbstractMap.SimpleEntry<>(permits, future));
+    ListIterator<PendingAcquisition> itr = pending.listIterator(pending.size());
+    while (itr.hasPrevious()) {
+      if (itr.previous().priority >= priority) {
+        itr.next();
+        break;
+      }
+    }
+    itr.add(new PendingAcquisition(amounts, future, priority, shortResources, System.nanoTime()));
     return future;
   }
 
-  public synchronized ImmutableList<Map.Entry<Integer, SettableFuture<Void>>> releaseInternal(
-      int permits) {
-    ImmutableList.Builder<Map.Entry<Integer, SettableFuture<Void>>> scheduled =
-        ImmutableList.builder();
+  private synchronized ImmutableList<PendingAcquisition> releaseInternal(ResourceAmounts amounts) {
+    ImmutableList.Builder<PendingAcquisition> scheduled = ImmutableList.builder();
 
     // Re-add the permits to the size.
-    size -= permits;
-    Preconditions.checkState(size >= 0);
+    size = size.subtract(amounts);
 
     // Accept any pending requests that can fit.
-    Iterator<Map.Entry<Integer, SettableFuture<Void>>> itr = pending.iterator();
-    while (size < maxSize && itr.hasNext()) {
-      Map.Entry<Integer, SettableFuture<Void>> entry = itr.next();
-      if (canFit(entry.getKey())) {
+    long now = System.nanoTime();
+    Iterator<PendingAcquisition> itr = pending.iterator();
+    while (itr.hasNext()) {
+      PendingAcquisition entry = itr.next();
+      if (getShortResources(entry.amounts).isEmpty()) {
         itr.remove();
-        size += entry.getKey();
+        size = size.append(entry.amounts);
         scheduled.add(entry);
+
+        // Charge the time spent waiting to the resources that held this acquisition up.
+        for (ResourceType type : entry.shortResources) {
+          queueTimeNanos[type.ordinal()] += now - entry.queuedNanos;
+        }
       } else if (fairness == Fairness.FAIR) {
         break;
       }
@@ -109,35 +157,73 @@ public class ListeningSemaphore {
   }
 
   public void release(int permits) {
+    release(ResourceAmounts.of(permits, 0, 0));
+  }
+
+  public void release(ResourceAmounts amounts) {
 
     // Release the given permits and get back the list of new jobs that can be scheduled.
-    ImmutableList<Map.Entry<Integer, SettableFuture<Void>>> ready = releaseInternal(permits);
+    ImmutableList<PendingAcquisition> ready = releaseInternal(amounts);
 
     // Walk through the list of jobs ready to schedule and trigger them, keeping track of any ones
     // that were cancelled.
-    int failed = 0;
-    for (Map.Entry<Integer, SettableFuture<Void>> entry : ready) {
+    ResourceAmounts failed = ResourceAmounts.ZERO;
+    for (PendingAcquisition entry : ready) {
       // The future may be have been canceled, so keep track of how many permits correspond to the
       // failed jobs, as we'll need to re-release them at the end.
-      if (!entry.getValue().set(null)) {
-        failed += entry.getKey();
+      if (!entry.future.set(null)) {
+        failed = failed.append(entry.amounts);
       }
     }
 
     // If we had any failed permits kicking off other jobs, then re-release them.
-    if (failed > 0) {
+    if (!failed.isZero()) {
       release(failed);
     }
   }
 
   public synchronized int availablePermits() {
-    return maxSize - size;
+    return maxSize.getCpu() - size.getCpu();
   }
 
   public synchronized int getQueueLength() {
     return pending.size();
   }
 
+  /**
+   * @return for each resource, the total time that granted acquisitions spent queued because
+   *     there wasn't enough of it.  An acquisition short of several resources counts towards each.
+   */
+  public synchronized ImmutableMap<ResourceType, Long> getQueueTimeMillis() {
+    ImmutableMap.Builder<ResourceType, Long> queueTimes = ImmutableMap.builder();
+    for (ResourceType type : ResourceType.values()) {
+      queueTimes.put(type, TimeUnit.NANOSECONDS.toMillis(queueTimeNanos[type.ordinal()]));
+    }
+    return queueTimes.build();
+  }
+
+  private static class PendingAcquisition {
+
+    private final ResourceAmounts amounts;
+    private final SettableFuture<Void> future;
+    private final long priority;
+    private final Set<ResourceType> shortResources;
+    private final long queuedNanos;
+
+    public PendingAcquisition(
+        ResourceAmounts amounts,
+        SettableFuture<Void> future,
+        long priority,
+        Set<ResourceType> shortResources,
+        long queuedNanos) {
+      this.amounts = amounts;
+      this.future = future;
+      this.priority = priority;
+      this.shortResources = shortResources;
+      this.queuedNanos = queuedNanos;
+    }
+  }
+
   /**
    * How to handle permit counting passing the max permit limit.
    */
@@ -145,7 +231,8 @@ public class ListeningSemaphore {
 
     /**
      * Allow crossing the max permit level only if the current size of 0.  This allows progress
-     * even when acquisitions use a permit size greater than the max.
+     * even when acquisitions use a permit size greater than the max.  Each resource is capped
+     * separately.
      */
     SOFT,
 
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.concurrent;
+
+/**
+ * The kinds of resource that a {@link ListeningSemaphore} hands out.
+ */
+public enum ResourceType {
+
+  /**
+   * Slots on the build's thread pool, which the semaphore's integer permits have always modeled.
+   */
+  CPU("cpu"),
+
+  /**
+   * Megabytes of memory the work is expected to use at its peak, e.g. for ProGuard or a linker.
+   */
+  MEMORY("memory_mb"),
+
+  /**
+   * Tokens limiting how much disk-bound work, such as zipping or copying, runs at once.
+   */
+  DISK_IO("disk_io"),
+
+  ;
+
+  private final String configName;
+
+  ResourceType(String configName) {
+    this.configName = configName;
+  }
+
+  /**
+   * @return the name used for this resource in configuration and in counter names.
+   */
+  public String getConfigName() {
+    return configName;
+  }
+
+}
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.util.concurrent;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.AbstractListeningExecutorService;
 import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.Futures;
@@ -31,7 +32,8 @@ import javax.annotation.Nullable;
 
 /**
  * A {@link ListeningExecutorService} which gates execution using a {@link ListeningSemaphore} and
- * allows custom weights to be assigned to submitted tasks.
+ * allows custom weights, or amounts of each {@link ResourceType}, to be assigned to submitted
+ * tasks.
  *
  * NOTE: If futures for submitted jobs are cancelled while they are running, it's possible that the
  * semaphore will be released for that cancelled job before it is finished, meaning more jobs may be
@@ -40,24 +42,32 @@ import javax.annotation.Nullable;
 public class WeightedListeningExecutorService extends AbstractListeningExecutorService {
 
   private final ListeningSemaphore semaphore;
-  private final int defaultWeight;
+  private final ResourceAmounts defaultAmounts;
   private final ListeningExecutorService delegate;
 
   public WeightedListeningExecutorService(
       ListeningSemaphore semaphore,
       int defaultWeight,
       ListeningExecutorService delegate) {
+    this(semaphore, ResourceAmounts.of(defaultWeight, 0, 0), delegate);
+  }
+
+  public WeightedListeningExecutorService(
+      ListeningSemaphore semaphore,
+      ResourceAmounts defaultAmounts,
+      ListeningExecutorService delegate) {
     this.semaphore = semaphore;
-    this.defaultWeight = defaultWeight;
+    this.defaultAmounts = defaultAmounts;
     this.delegate = delegate;
   }
 
   private <T> ListenableFuture<T> withSemaphore(
-      final int weight,
+      final ResourceAmounts amounts,
+      long priority,
       final Callable<T> callable) {
     ListenableFuture<T> future =
         Futures.transformAsync(
-            semaphore.acquire(weight),
+            semaphore.acquire(amounts, priority),
             new AsyncFunction<Void, T>() {
               @Override
               public ListenableFuture<T> apply(@Nullable Void input) {
@@ -73,7 +83,7 @@ public class WeightedListeningExecutorService extends AbstractListeningExecutorS
         new Runnable() {
           @Override
           public void run() {
-            semaphore.release(weight);
+            semaphore.release(amounts);
           }
         },
         com.google.common.util.concurrent.MoreExecutors.directExecutor());
@@ -87,15 +97,23 @@ public class WeightedListeningExecutorService extends AbstractListeningExecutorS
   @Nonnull
   @Override
   public ListenableFuture<?> submit(Runnable task) {
-    return submit(task, defaultWeight);
+    return submit(task, null, defaultAmounts);
   }
 
   public <T> ListenableFuture<T> submit(
       final Runnable task,
       @Nullable final T result,
       int weight) {
+    return submit(task, result, ResourceAmounts.of(weight, 0, 0));
+  }
+
+  private <T> ListenableFuture<T> submit(
+      final Runnable task,
+      @Nullable final T result,
+      ResourceAmounts amounts) {
     return withSemaphore(
-        weight,
+        amounts,
+        ListeningSemaphore.DEFAULT_PRIORITY,
         new Callable<T>() {
           @Override
           public T call() throws Exception {
@@ -108,17 +126,42 @@ public class WeightedListeningExecutorService extends AbstractListeningExecutorS
   @Nonnull
   @Override
   public <T> ListenableFuture<T> submit(Runnable task, @Nullable T result) {
-    return submit(task, result, defaultWeight);
+    return submit(task, result, defaultAmounts);
   }
 
   public <T> ListenableFuture<T> submit(Callable<T> task, int weight) {
-    return withSemaphore(weight, task);
+    return submit(task, weight, ListeningSemaphore.DEFAULT_PRIORITY);
+  }
+
+  /**
+   * Submits a task which, if it has to wait for permits, runs ahead of waiting tasks with a lower
+   * priority.
+   */
+  public <T> ListenableFuture<T> submit(Callable<T> task, int weight, long priority) {
+    return submit(task, ResourceAmounts.of(weight, 0, 0), priority);
+  }
+
+  /**
+   * Submits a task which only runs once all of the given resources are available.
+   */
+  public <T> ListenableFuture<T> submit(
+      Callable<T> task,
+      ResourceAmounts amounts,
+      long priority) {
+    return withSemaphore(amounts, priority, task);
   }
 
   @Nonnull
   @Override
   public <T> ListenableFuture<T> submit(Callable<T> task) {
-    return submit(task, defaultWeight);
+    return submit(task, defaultAmounts, ListeningSemaphore.DEFAULT_PRIORITY);
+  }
+
+  /**
+   * @see ListeningSemaphore#getQueueTimeMillis()
+   */
+  public ImmutableMap<ResourceType, Long> getQueueTimeMillis() {
+    return semaphore.getQueueTimeMillis();
   }
 
   @Override
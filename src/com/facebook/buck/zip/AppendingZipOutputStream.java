@@ -44,6 +44,7 @@ import javax.annotation.Nullable;
 class AppendingZipOutputStream extends CustomZipOutputStream {
 
   private final boolean throwExceptionsOnDuplicate;
+  private final boolean deterministic;
   private final Clock clock;
   private long currentOffset = 0;
   private List<EntryAccounting> entries = Lists.newLinkedList();
@@ -54,9 +55,17 @@ class AppendingZipOutputStream extends CustomZipOutputStream {
   public AppendingZipOutputStream(Clock clock,
         OutputStream stream,
         boolean throwExceptionsOnDuplicate) {
+    this(clock, stream, throwExceptionsOnDuplicate, /* deterministic */ false);
+  }
+
+  public AppendingZipOutputStream(Clock clock,
+        OutputStream stream,
+        boolean throwExceptionsOnDuplicate,
+        boolean deterministic) {
     super(stream);
     this.clock = clock;
     this.throwExceptionsOnDuplicate = throwExceptionsOnDuplicate;
+    this.deterministic = deterministic;
   }
 
   @Override
@@ -72,7 +81,7 @@ class AppendingZipOutputStream extends CustomZipOutputStream {
       throw new ZipException("duplicate entry: " + entry.getName());
     }
 
-    currentEntry = new EntryAccounting(clock, entry, currentOffset);
+    currentEntry = new EntryAccounting(clock, entry, currentOffset, deterministic);
     entries.add(currentEntry);
 
     currentOffset += currentEntry.writeLocalFileHeader(delegate);
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of a zip file, without opening it as a {@link java.util.zip.ZipFile}
+ * or inflating any of its entries.
+ * <p>
+ * ZIP64 archives aren't supported, and cause a {@link ZipException} to be thrown.
+ */
+public class CentralDirectoryReader {
+
+  // The end of central directory record may be followed by a comment of up to 64KB.
+  private static final int MAX_EOCD_SEARCH = ZipEntry.ENDHDR + 0xffff;
+  private static final long ZIP64_MAGIC = 0xffffffffL;
+
+  private CentralDirectoryReader() {
+    // utility class.
+  }
+
+  /**
+   * @return the entries of the zip file, keyed by name, in the order they appear in its central
+   *     directory.  Should a name appear more than once, the last entry with that name is kept, as
+   *     {@link java.util.zip.ZipFile} does.
+   */
+  public static ImmutableMap<String, Entry> read(Path zip) throws IOException {
+    try (FileChannel channel = FileChannel.open(zip, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new ZipException("zip file is too large to map: " + zip);
+      }
+      // Only the pages holding the central directory are actually read.
+      return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), zip.toString());
+    }
+  }
+
+  /**
+   * As {@link #read(Path)}, but for a zip file which is already in memory.
+   *
+   * @param zip the entire contents of the zip file.
+   * @param description used in error messages.
+   */
+  public static ImmutableMap<String, Entry> read(ByteBuffer zip, String description)
+      throws IOException {
+    ByteBuffer buffer = zip.duplicate();
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    int fileSize = buffer.limit();
+    if (fileSize < ZipEntry.ENDHDR) {
+      throw new ZipException("zip file is too small to be valid: " + description);
+    }
+
+    // Search backwards for the end of central directory signature.
+    int eocd = fileSize - ZipEntry.ENDHDR;
+    int searchLimit = Math.max(0, fileSize - MAX_EOCD_SEARCH);
+    while (eocd >= searchLimit && buffer.getInt(eocd) != ZipEntry.ENDSIG) {
+      eocd--;
+    }
+    if (eocd < searchLimit) {
+      throw new ZipException("unable to find end of central directory: " + description);
+    }
+
+    int entryCount = buffer.getShort(eocd + ZipEntry.ENDTOT) & 0xffff;
+    long cdSize = buffer.getInt(eocd + ZipEntry.ENDSIZ) & 0xffffffffL;
+    long cdOffset = buffer.getInt(eocd + ZipEntry.ENDOFF) & 0xffffffffL;
+    if (entryCount == 0xffff || cdSize == ZIP64_MAGIC || cdOffset == ZIP64_MAGIC) {
+      throw new ZipException("ZIP64 archives are not supported: " + description);
+    }
+    if (cdOffset + cdSize > eocd) {
+      throw new ZipException("central directory is out of range: " + description);
+    }
+
+    buffer.position((int) cdOffset);
+    buffer.limit((int) (cdOffset + cdSize));
+    ByteBuffer cd = buffer.slice();
+    cd.order(ByteOrder.LITTLE_ENDIAN);
+
+    Map<String, Entry> entries = new LinkedHashMap<>();
+    int position = 0;
+    for (int i = 0; i < entryCount; i++) {
+      if (position + ZipEntry.CENHDR > cd.limit() ||
+          cd.getInt(position) != ZipEntry.CENSIG) {
+        throw new ZipException("expected central directory header signature: " + description);
+      }
+      int nameLength = cd.getShort(position + ZipEntry.CENNAM) & 0xffff;
+      int extraLength = cd.getShort(position + ZipEntry.CENEXT) & 0xffff;
+      int commentLength = cd.getShort(position + ZipEntry.CENCOM) & 0xffff;
+
+      byte[] nameBytes = new byte[nameLength];
+      cd.position(position + ZipEntry.CENHDR);
+      cd.get(nameBytes);
+      String name = new String(nameBytes, Charsets.UTF_8);
+
+      long compressedSize = cd.getInt(position + ZipEntry.CENSIZ) & 0xffffffffL;
+      long size = cd.getInt(position + ZipEntry.CENLEN) & 0xffffffffL;
+      long localHeaderOffset = cd.getInt(position + ZipEntry.CENOFF) & 0xffffffffL;
+      if (compressedSize == ZIP64_MAGIC ||
+          size == ZIP64_MAGIC ||
+          localHeaderOffset == ZIP64_MAGIC) {
+        throw new ZipException("ZIP64 archives are not supported: " + description);
+      }
+      entries.remove(name);
+      entries.put(
+          name,
+          new Entry(
+              name,
+              cd.getShort(position + ZipEntry.CENHOW) & 0xffff,
+              cd.getInt(position + ZipEntry.CENCRC) & 0xffffffffL,
+              compressedSize,
+              size,
+              localHeaderOffset));
+
+      position += ZipEntry.CENHDR + nameLength + extraLength + commentLength;
+    }
+    return ImmutableMap.copyOf(entries);
+  }
+
+  /**
+   * An entry in the central directory of a zip file.
+   */
+  public static class Entry {
+
+    private final String name;
+    private final int method;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    private final long localHeaderOffset;
+
+    public Entry(
+        String name,
+        int method,
+        long crc,
+        long compressedSize,
+        long size,
+        long localHeaderOffset) {
+      this.name = name;
+      this.method = method;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public boolean isDirectory() {
+      return name.endsWith("/");
+    }
+
+    /**
+     * @return the compression method, such as {@link ZipEntry#DEFLATED}.
+     */
+    public int getMethod() {
+      return method;
+    }
+
+    /**
+     * @return the CRC-32 of the uncompressed contents of the entry.
+     */
+    public long getCrc() {
+      return crc;
+    }
+
+    public long getCompressedSize() {
+      return compressedSize;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    /**
+     * @return the offset of the entry's local file header from the start of the file, including
+     *     anything prepended to the archive, as zip tools appending to an existing file write it.
+     */
+    public long getLocalHeaderOffset() {
+      return localHeaderOffset;
+    }
+  }
+}
@@ -46,13 +46,14 @@ class EntryAccounting {
       }
   };
 
-  private static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
-  private static final int UTF8_NAMES_FLAG = 1 << 11;
+  static final int DATA_DESCRIPTOR_FLAG = 1 << 3;
+  static final int UTF8_NAMES_FLAG = 1 << 11;
   private static final int ARBITRARY_SIZE = 1024;
   private static final byte[] emptyBytes = new byte[]{};
 
   private final ZipEntry entry;
   private final Method method;
+  private final boolean useFakeTime;
   private Hasher crc = Hashing.crc32().newHasher();
   private long offset;
   private long length = 0;
@@ -81,12 +82,17 @@ class EntryAccounting {
   private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
   private final byte[] buffer = new byte[ARBITRARY_SIZE];
 
-  public EntryAccounting(Clock clock, ZipEntry entry, long currentOffset) {
+  /**
+   * @param useFakeTime write {@link ZipConstants#DOS_FAKE_TIME} as the time of the entry, whatever
+   *     time it was given, so that the archive needs no scrubbing to be deterministic.
+   */
+  public EntryAccounting(Clock clock, ZipEntry entry, long currentOffset, boolean useFakeTime) {
     this.entry = entry;
     this.method = Method.detect(entry.getMethod());
     this.offset = currentOffset;
+    this.useFakeTime = useFakeTime;
 
-    if (entry.getTime() == -1) {
+    if (!useFakeTime && entry.getTime() == -1) {
       entry.setTime(clock.currentTimeMillis());
     }
 
@@ -100,6 +106,10 @@ class EntryAccounting {
    * @return The time of the entry in DOS format.
    */
   public long getTime() {
+    if (useFakeTime) {
+      return ZipConstants.DOS_FAKE_TIME;
+    }
+
     // Calendar objects aren't thread-safe, but they're quite expensive to create, so we'll re-use
     // them per thread.
     Calendar instance = CALENDAR.get();
@@ -301,6 +311,42 @@ class EntryAccounting {
     return entry.getCompressedSize() + dataDescriptor.length;
   }
 
+  /**
+   * @return whether deflating the entry would give the same bytes as a deflated entry written
+   *     with the fake time and the default compression level, as {@link PreviousZipEntries} holds.
+   */
+  public boolean canReuseDeflatedBytes() {
+    return method == Method.DEFLATE &&
+        useFakeTime &&
+        (!(entry instanceof CustomZipEntry) ||
+            ((CustomZipEntry) entry).getCompressionLevel() == Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Finish the entry with bytes deflated earlier, rather than deflating its contents again.  Must
+   * be called instead of both {@link #write} and {@link #finish}.
+   *
+   * @return the total number of compressed bytes written, as {@link #finish} does.
+   */
+  public long finishWithDeflatedBytes(
+      OutputStream out,
+      byte[] deflated,
+      long size,
+      long crc) throws IOException {
+    Preconditions.checkState(method == Method.DEFLATE);
+    deflater.end();
+
+    entry.setSize(size);
+    entry.setCompressedSize(deflated.length);
+    entry.setCrc(crc);
+    out.write(deflated);
+
+    byte[] dataDescriptor = getDataDescriptor();
+    out.write(dataDescriptor);
+
+    return deflated.length + dataDescriptor.length;
+  }
+
   private boolean requiresDataDescriptor() {
     return method == Method.DEFLATE;
   }
@@ -50,13 +50,19 @@ public class OverwritingZipOutputStream extends CustomZipOutputStream {
   private final Map<File, EntryAccounting> entries = Maps.newLinkedHashMap();
   private final File scratchDir;
   private final Clock clock;
+  private final boolean deterministic;
   @Nullable private EntryAccounting currentEntry;
   /** Place-holder for bytes. */
   @Nullable private OutputStream currentOutput;
 
   public OverwritingZipOutputStream(Clock clock, OutputStream out) {
+    this(clock, out, /* deterministic */ false);
+  }
+
+  public OverwritingZipOutputStream(Clock clock, OutputStream out, boolean deterministic) {
     super(out);
     this.clock = clock;
+    this.deterministic = deterministic;
 
     try {
       scratchDir = Files.createTempDirectory("overwritingzip").toFile();
@@ -72,7 +78,11 @@ public class OverwritingZipOutputStream extends CustomZipOutputStream {
   @Override
   protected void actuallyPutNextEntry(ZipEntry entry) throws IOException {
     // We calculate the actual offset when closing the stream, so 0 is fine.
-    currentEntry = new EntryAccounting(clock, entry, /* currentOffset */ 0);
+    currentEntry = new EntryAccounting(
+        clock,
+        entry,
+        /* currentOffset */ 0,
+        deterministic);
 
     long md5 = Hashing.md5().hashUnencodedChars(entry.getName()).asLong();
     String name = String.valueOf(md5);
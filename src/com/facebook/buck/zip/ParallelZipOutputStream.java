@@ -0,0 +1,229 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.facebook.buck.timing.Clock;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link CustomZipOutputStream} which compresses entries concurrently.
+ * <p>
+ * The bytes of each entry are held in memory until the entry is closed, and then deflated on the
+ * given executor.  Entries are written to the underlying stream in the order they were added as
+ * soon as they, and every entry before them, have been compressed, so the archive is identical
+ * whatever order the compression finishes in.  At most {@code parallelism} entries are compressed
+ * at once; adding further entries blocks until the oldest one has been written.
+ * <p>
+ * Entries whose contents are found among the given {@link PreviousZipEntries} are copied from the
+ * previous archive rather than deflated again.
+ */
+class ParallelZipOutputStream extends CustomZipOutputStream {
+
+  private final Clock clock;
+  private final boolean throwExceptionsOnDuplicate;
+  private final boolean deterministic;
+  private final ListeningExecutorService executor;
+  private final int parallelism;
+  private final PreviousZipEntries previousEntries;
+  private final Deque<ListenableFuture<CompressedEntry>> pending = new ArrayDeque<>();
+  private final List<EntryAccounting> entries = Lists.newArrayList();
+  private final Set<String> seenNames = Sets.newHashSet();
+  private long currentOffset;
+  @Nullable private EntryAccounting currentEntry = null;
+  @Nullable private ByteArrayOutputStream currentBytes = null;
+
+  public ParallelZipOutputStream(
+      Clock clock,
+      OutputStream stream,
+      boolean throwExceptionsOnDuplicate,
+      boolean deterministic,
+      ListeningExecutorService executor,
+      int parallelism) {
+    this(
+        clock,
+        stream,
+        throwExceptionsOnDuplicate,
+        deterministic,
+        executor,
+        parallelism,
+        PreviousZipEntries.empty(),
+        /* initialOffset */ 0);
+  }
+
+  /**
+   * @param initialOffset the number of bytes already written to {@code stream}, such as the
+   *     shebang line of an executable archive, which the offsets of the entries count.
+   */
+  public ParallelZipOutputStream(
+      Clock clock,
+      OutputStream stream,
+      boolean throwExceptionsOnDuplicate,
+      boolean deterministic,
+      ListeningExecutorService executor,
+      int parallelism,
+      PreviousZipEntries previousEntries,
+      long initialOffset) {
+    super(stream);
+    Preconditions.checkArgument(parallelism > 0, "parallelism must be positive");
+    this.clock = clock;
+    this.throwExceptionsOnDuplicate = throwExceptionsOnDuplicate;
+    this.deterministic = deterministic;
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.previousEntries = previousEntries;
+    this.currentOffset = initialOffset;
+  }
+
+  @Override
+  protected void actuallyPutNextEntry(ZipEntry entry) throws IOException {
+    if (throwExceptionsOnDuplicate && !seenNames.add(entry.getName())) {
+      // Same exception as ZipOutputStream.
+      throw new ZipException("duplicate entry: " + entry.getName());
+    }
+
+    // The offset is only known once every entry before this one has been compressed.
+    currentEntry = new EntryAccounting(clock, entry, /* currentOffset */ 0, deterministic);
+    currentBytes = new ByteArrayOutputStream();
+  }
+
+  @Override
+  protected void actuallyWrite(byte[] b, int off, int len) throws IOException {
+    Preconditions.checkNotNull(currentBytes);
+    currentBytes.write(b, off, len);
+  }
+
+  @Override
+  protected void actuallyCloseEntry() throws IOException {
+    if (currentEntry == null || currentBytes == null) {
+      return; // no-op
+    }
+
+    while (pending.size() >= parallelism) {
+      writeEntry(pending.removeFirst());
+    }
+    pending.addLast(
+        executor.submit(
+            new CompressEntry(currentEntry, currentBytes.toByteArray(), previousEntries)));
+
+    currentEntry = null;
+    currentBytes = null;
+  }
+
+  @Override
+  protected void actuallyClose() throws IOException {
+    try {
+      closeEntry();
+      while (!pending.isEmpty()) {
+        writeEntry(pending.removeFirst());
+      }
+
+      new CentralDirectory().writeCentralDirectory(delegate, currentOffset, entries);
+    } finally {
+      for (ListenableFuture<CompressedEntry> future : pending) {
+        future.cancel(/* mayInterruptIfRunning */ true);
+      }
+      pending.clear();
+      delegate.close();
+    }
+  }
+
+  private void writeEntry(ListenableFuture<CompressedEntry> future) throws IOException {
+    CompressedEntry compressed;
+    try {
+      compressed = future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing zip entries");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+      throw Throwables.propagate(e.getCause());
+    }
+
+    EntryAccounting entry = compressed.entry;
+    entry.setOffset(currentOffset);
+    entries.add(entry);
+    currentOffset += entry.writeLocalFileHeader(delegate);
+    delegate.write(compressed.bytes);
+    currentOffset += compressed.bytes.length;
+  }
+
+  private static class CompressEntry implements Callable<CompressedEntry> {
+
+    private final EntryAccounting entry;
+    private final byte[] uncompressed;
+    private final PreviousZipEntries previousEntries;
+
+    public CompressEntry(
+        EntryAccounting entry,
+        byte[] uncompressed,
+        PreviousZipEntries previousEntries) {
+      this.entry = entry;
+      this.uncompressed = uncompressed;
+      this.previousEntries = previousEntries;
+    }
+
+    @Override
+    public CompressedEntry call() throws IOException {
+      // The compressed bytes and the data descriptor, which together follow the local header.
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      if (entry.canReuseDeflatedBytes()) {
+        long crc = Hashing.crc32().hashBytes(uncompressed).padToLong();
+        Optional<byte[]> deflated = previousEntries.getDeflatedBytes(uncompressed, crc);
+        if (deflated.isPresent()) {
+          entry.finishWithDeflatedBytes(out, deflated.get(), uncompressed.length, crc);
+          return new CompressedEntry(entry, out.toByteArray());
+        }
+      }
+      entry.write(out, uncompressed, 0, uncompressed.length);
+      entry.finish(out);
+      return new CompressedEntry(entry, out.toByteArray());
+    }
+  }
+
+  private static class CompressedEntry {
+
+    private final EntryAccounting entry;
+    private final byte[] bytes;
+
+    public CompressedEntry(EntryAccounting entry, byte[] bytes) {
+      this.entry = entry;
+      this.bytes = bytes;
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * The deflated entries of a previously written archive, which a new archive can copy instead of
+ * deflating the same contents again.
+ * <p>
+ * Entries are looked up by the CRC-32 and size of their contents, whatever their names, and are
+ * only reused once inflating them has given exactly the contents being written.  Inflating is
+ * several times cheaper than deflating.  Only entries which were deflated at the default level
+ * and written with the fake time are offered, so an archive reusing them is identical to one
+ * deflating every entry itself.
+ */
+public class PreviousZipEntries {
+
+  private static final int DEFLATED_ENTRY_FLAGS =
+      EntryAccounting.UTF8_NAMES_FLAG | EntryAccounting.DATA_DESCRIPTOR_FLAG;
+
+  private static final PreviousZipEntries EMPTY =
+      new PreviousZipEntries(
+          ByteBuffer.allocate(0),
+          ImmutableListMultimap.<Long, CentralDirectoryReader.Entry>of());
+
+  private final ByteBuffer zip;
+  private final ImmutableListMultimap<Long, CentralDirectoryReader.Entry> entriesByCrc;
+
+  private PreviousZipEntries(
+      ByteBuffer zip,
+      ImmutableListMultimap<Long, CentralDirectoryReader.Entry> entriesByCrc) {
+    this.zip = zip;
+    this.entriesByCrc = entriesByCrc;
+  }
+
+  public static PreviousZipEntries empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Indexes the reusable entries of {@code zip}, which may be preceded by a preamble such as the
+   * shebang line of an executable archive.  The file is mapped rather than read, so only the
+   * entries which are reused are read from disk.
+   */
+  public static PreviousZipEntries read(Path zip) throws IOException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(zip, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new ZipException("zip file is too large to map: " + zip);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+    ImmutableMap<String, CentralDirectoryReader.Entry> entries =
+        CentralDirectoryReader.read(buffer, zip.toString());
+    ImmutableListMultimap.Builder<Long, CentralDirectoryReader.Entry> entriesByCrc =
+        ImmutableListMultimap.builder();
+    for (CentralDirectoryReader.Entry entry : entries.values()) {
+      if (entry.getMethod() == ZipEntry.DEFLATED &&
+          entry.getLocalHeaderOffset() + ZipEntry.LOCHDR <= buffer.limit()) {
+        int offset = (int) entry.getLocalHeaderOffset();
+        if (buffer.getInt(offset) == ZipEntry.LOCSIG &&
+            (buffer.getShort(offset + ZipEntry.LOCFLG) & 0xffff) == DEFLATED_ENTRY_FLAGS &&
+            buffer.getInt(offset + ZipEntry.LOCTIM) == ZipConstants.DOS_FAKE_TIME) {
+          entriesByCrc.put(entry.getCrc(), entry);
+        }
+      }
+    }
+    return new PreviousZipEntries(buffer, entriesByCrc.build());
+  }
+
+  /**
+   * @param contents the uncompressed contents of an entry about to be written.
+   * @param crc the CRC-32 of {@code contents}.
+   * @return the deflated bytes of a previous entry with the same contents, if there is one.
+   */
+  Optional<byte[]> getDeflatedBytes(byte[] contents, long crc) {
+    for (CentralDirectoryReader.Entry entry : entriesByCrc.get(crc)) {
+      if (entry.getSize() != contents.length) {
+        continue;
+      }
+      Optional<byte[]> deflated = readDeflatedBytes(entry);
+      if (deflated.isPresent() && inflatesTo(deflated.get(), contents)) {
+        return deflated;
+      }
+    }
+    return Optional.absent();
+  }
+
+  private Optional<byte[]> readDeflatedBytes(CentralDirectoryReader.Entry entry) {
+    // Each caller gets its own view, since entries are looked up from many threads at once.
+    ByteBuffer buffer = zip.duplicate();
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    int offset = (int) entry.getLocalHeaderOffset();
+    long start = (long) offset +
+        ZipEntry.LOCHDR +
+        (buffer.getShort(offset + ZipEntry.LOCNAM) & 0xffff) +
+        (buffer.getShort(offset + ZipEntry.LOCEXT) & 0xffff);
+    if (start + entry.getCompressedSize() > buffer.limit()) {
+      return Optional.absent();
+    }
+    byte[] deflated = new byte[(int) entry.getCompressedSize()];
+    buffer.position((int) start);
+    buffer.get(deflated);
+    return Optional.of(deflated);
+  }
+
+  private static boolean inflatesTo(byte[] deflated, byte[] contents) {
+    Inflater inflater = new Inflater(/* nowrap */ true);
+    try {
+      // Inflating without the zlib wrapper needs a dummy byte after the deflated ones.
+      inflater.setInput(Arrays.copyOf(deflated, deflated.length + 1));
+      // One extra byte, so that longer contents are noticed.
+      byte[] inflated = new byte[contents.length + 1];
+      int length = 0;
+      while (!inflater.finished() && length < inflated.length) {
+        int read = inflater.inflate(inflated, length, inflated.length - length);
+        if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          return false;
+        }
+        length += read;
+      }
+      return inflater.finished() &&
+          length == contents.length &&
+          Arrays.equals(Arrays.copyOf(inflated, length), contents);
+    } catch (DataFormatException e) {
+      return false;
+    } finally {
+      inflater.end();
+    }
+  }
+}
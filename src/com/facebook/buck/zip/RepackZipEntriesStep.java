@@ -25,6 +25,7 @@ import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
 
 import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -95,7 +96,11 @@ public class RepackZipEntriesStep implements Step {
     try (
         ZipInputStream in =
             new ZipInputStream(new BufferedInputStream(Files.newInputStream(inputFile)));
-        CustomZipOutputStream out = ZipOutputStreams.newOutputStream(outputFile)) {
+        CustomZipOutputStream out = ZipOutputStreams.newParallelOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(outputFile)),
+            ZipOutputStreams.HandleDuplicates.THROW_EXCEPTION,
+            context.getExecutorService(ExecutionContext.ExecutorPool.CPU),
+            context.getConcurrencyLimit().threadLimit)) {
       for (ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()) {
         CustomZipEntry customEntry = new CustomZipEntry(entry);
         if (entries.contains(customEntry.getName())) {
@@ -19,6 +19,7 @@ package com.facebook.buck.zip;
 import com.facebook.buck.timing.Clock;
 import com.facebook.buck.timing.DefaultClock;
 import com.facebook.buck.util.HumanReadableException;
+import com.google.common.util.concurrent.ListeningExecutorService;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
@@ -82,15 +83,109 @@ public class ZipOutputStreams {
       OutputStream out,
       HandleDuplicates mode,
       Clock clock) {
+    return newOutputStream(out, mode, clock, /* deterministic */ false);
+  }
+
+  /**
+   * Create a new {@link CustomZipOutputStream} which writes every entry with the same fixed time,
+   * whatever time the entry was given.  Archives written this way are already deterministic, so
+   * they don't need a {@link ZipScrubberStep} pass afterwards.
+   *
+   * @param zipFile The file to write to.
+   * @param mode How to handle duplicate entries.
+   */
+  public static CustomZipOutputStream newDeterministicOutputStream(
+      Path zipFile,
+      HandleDuplicates mode) throws IOException {
+    return newOutputStream(
+        new BufferedOutputStream(Files.newOutputStream(zipFile)),
+        mode,
+        new DefaultClock(),
+        /* deterministic */ true);
+  }
+
+  /**
+   * Create a new {@link CustomZipOutputStream} which compresses up to {@code parallelism} entries
+   * at once on the given {@code executor}.  The archive written is the same whatever order the
+   * entries finish compressing in, but the bytes of every entry being compressed are held in
+   * memory.  Overwriting duplicate entries needs every entry to be seen before any of them can be
+   * written, so {@link HandleDuplicates#OVERWRITE_EXISTING} compresses entries one at a time.
+   *
+   * @param out The output stream to write to.
+   * @param mode How to handle duplicate entries.
+   * @param executor Where entries are compressed.
+   * @param parallelism The most entries to compress at once.
+   */
+  public static CustomZipOutputStream newParallelOutputStream(
+      OutputStream out,
+      HandleDuplicates mode,
+      ListeningExecutorService executor,
+      int parallelism) {
+    switch (mode) {
+      case APPEND_TO_ZIP:
+      case THROW_EXCEPTION:
+        return new ParallelZipOutputStream(
+            new DefaultClock(),
+            out,
+            mode == HandleDuplicates.THROW_EXCEPTION,
+            /* deterministic */ false,
+            executor,
+            parallelism);
+      case OVERWRITE_EXISTING:
+        return new OverwritingZipOutputStream(new DefaultClock(), out);
+      default:
+        throw new HumanReadableException(
+            "Unable to determine which zip output mode to use: %s", mode);
+    }
+  }
+
+  /**
+   * Create a new deterministic {@link CustomZipOutputStream} which compresses entries in parallel,
+   * as {@link #newParallelOutputStream} does, but copies the deflated bytes of any entry whose
+   * contents are among {@code previousEntries} instead of deflating them again.  Writing an
+   * archive which mostly has the same contents as the previous version of it is then mostly
+   * copying.
+   *
+   * @param out The output stream to write to.
+   * @param preamble Bytes to write before the archive, such as the shebang line of an executable
+   *     archive.  The offsets in the archive count them, as zip tools appending to a file do.
+   * @param previousEntries The entries which may be copied.
+   * @param executor Where entries are compressed.
+   * @param parallelism The most entries to compress at once.
+   */
+  public static CustomZipOutputStream newIncrementalOutputStream(
+      OutputStream out,
+      byte[] preamble,
+      PreviousZipEntries previousEntries,
+      ListeningExecutorService executor,
+      int parallelism) throws IOException {
+    out.write(preamble);
+    return new ParallelZipOutputStream(
+        new DefaultClock(),
+        out,
+        /* throwExceptionsOnDuplicate */ true,
+        /* deterministic */ true,
+        executor,
+        parallelism,
+        previousEntries,
+        preamble.length);
+  }
+
+  private static CustomZipOutputStream newOutputStream(
+      OutputStream out,
+      HandleDuplicates mode,
+      Clock clock,
+      boolean deterministic) {
     switch (mode) {
       case APPEND_TO_ZIP:
       case THROW_EXCEPTION:
         return new AppendingZipOutputStream(
             clock,
             out,
-            mode == HandleDuplicates.THROW_EXCEPTION);
+            mode == HandleDuplicates.THROW_EXCEPTION,
+            deterministic);
       case OVERWRITE_EXISTING:
-        return new OverwritingZipOutputStream(clock, out);
+        return new OverwritingZipOutputStream(clock, out, deterministic);
       default:
         throw new HumanReadableException(
             "Unable to determine which zip output mode to use: %s", mode);
@@ -61,13 +61,18 @@ public class ZipScrubberStep implements Step {
     Path zipPath = filesystem.resolve(zip);
     try (FileChannel channel =
              FileChannel.open(zipPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // A single mapping can't be larger than 2GB, and the offsets in the central directory
+      // can't address more than 4GB without the ZIP64 extensions, which we don't support here.
+      check(channel.size() <= Integer.MAX_VALUE, "zip file is too large to scrub");
+      check(channel.size() >= ZipEntry.ENDHDR, "zip file is too small to be valid");
       MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
       map.order(ByteOrder.LITTLE_ENDIAN);
 
       // Search backwards from the end of the ZIP file, searching for the EOCD signature, which
       // designates the start of the EOCD.
-      map.position((int) channel.size() - ZipEntry.ENDCOM);
+      map.position((int) channel.size() - ZipEntry.ENDHDR);
       while (map.getInt() != ZipEntry.ENDSIG) {
+        check(map.position() > Integer.SIZE / Byte.SIZE, "unable to find end of central directory");
 
         // If we didn't find the magic header, back out the 4 bytes we just consumed for the `int`
         // and an additional byte to continue the search going backwards.
@@ -79,13 +84,15 @@ public class ZipScrubberStep implements Step {
       map.getShort();  // Number of this disk.
       map.getShort();  // Disk where central directory starts.
       map.getShort();  // Number of central directory records on this disk.
-      int cdEntries = map.getShort();  // Total number of central directory records;
+      // Total number of central directory records;
+      int cdEntries = map.getShort() & 0xffff;
       map.getInt();  // Size of central directory (bytes).
-      int cdOffset = map.getInt();  // Offset of start of central directory.
+      long cdOffset = map.getInt() & 0xffffffffL;  // Offset of start of central directory.
+      check(cdOffset < channel.size(), "central directory offset is out of range");
 
       // Position ourselves at the beginning of the central directory headers.  We'll iterate over
       // these, sanitizing their mtimes (and the mtimes of their corresponding local headers).
-      map.position(cdOffset);
+      map.position((int) cdOffset);
       for (int idx = 0; idx < cdEntries; idx++) {
 
         // Wrap the central directory header and zero out it's timestamp.
@@ -95,15 +102,18 @@ public class ZipScrubberStep implements Step {
         entry.putInt(ZipEntry.CENTIM, ZipConstants.DOS_FAKE_TIME);
 
         // Find the local file header and zero it's timestamp out.
-        int locOff = entry.getInt(ZipEntry.CENOFF);
-        check(map.getInt(locOff) == ZipEntry.LOCSIG, "expected local header signature");
-        map.putInt(locOff + ZipEntry.LOCTIM, ZipConstants.DOS_FAKE_TIME);
-
-        // Advance to the next entry.
-        map.position(map.position() + 46);
-        map.position(map.position() + entry.getShort(ZipEntry.CENNAM));
-        map.position(map.position() + entry.getShort(ZipEntry.CENEXT));
-        map.position(map.position() + entry.getShort(ZipEntry.CENCOM));
+        long locOff = entry.getInt(ZipEntry.CENOFF) & 0xffffffffL;
+        check(locOff < cdOffset, "local header offset is out of range");
+        check(map.getInt((int) locOff) == ZipEntry.LOCSIG, "expected local header signature");
+        map.putInt((int) locOff + ZipEntry.LOCTIM, ZipConstants.DOS_FAKE_TIME);
+
+        // Advance to the next entry.  The variable length fields are unsigned shorts.
+        map.position(
+            map.position() +
+                ZipEntry.CENHDR +
+                (entry.getShort(ZipEntry.CENNAM) & 0xffff) +
+                (entry.getShort(ZipEntry.CENEXT) & 0xffff) +
+                (entry.getShort(ZipEntry.CENCOM) & 0xffff));
       }
 
     } catch (IOException e) {
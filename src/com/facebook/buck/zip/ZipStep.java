@@ -182,7 +182,11 @@ public class ZipStep implements Step {
       BufferedOutputStream baseOut =
           new BufferedOutputStream(filesystem.newFileOutputStream(pathToZipFile));
       CustomZipOutputStream out =
-          ZipOutputStreams.newOutputStream(baseOut, THROW_EXCEPTION)) {
+          ZipOutputStreams.newParallelOutputStream(
+              baseOut,
+              THROW_EXCEPTION,
+              context.getExecutorService(ExecutionContext.ExecutorPool.CPU),
+              context.getConcurrencyLimit().threadLimit)) {
 
       filesystem.walkRelativeFileTree(baseDir, pathFileVisitor);
 
@@ -102,8 +102,10 @@ import org.junit.rules.ExpectedException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -1541,6 +1543,39 @@ public class WorkspaceAndProjectGeneratorTest {
     };
   }
 
+  @Test
+  public void sourcePathResolversAreNotKeptPastTheCap() {
+    final TargetGraph targetGraph = TargetGraphFactory.newInstance(
+        AppleLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//foo:a")).build(),
+        AppleLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//foo:b")).build(),
+        AppleLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//foo:c")).build());
+    final Function<TargetNode<?>, SourcePathResolver> loader =
+        getSourcePathResolverForNodeFunction(targetGraph);
+    final List<TargetNode<?>> loaded = new ArrayList<>();
+    Function<TargetNode<?>, SourcePathResolver> resolvers =
+        WorkspaceAndProjectGenerator.memoizeSourcePathResolvers(
+            new Function<TargetNode<?>, SourcePathResolver>() {
+              @Override
+              public SourcePathResolver apply(TargetNode<?> input) {
+                loaded.add(input);
+                return loader.apply(input);
+              }
+            },
+            /* maximumSize */ 2);
+    TargetNode<?> a = targetGraph.get(BuildTargetFactory.newInstance("//foo:a"));
+    TargetNode<?> b = targetGraph.get(BuildTargetFactory.newInstance("//foo:b"));
+    TargetNode<?> c = targetGraph.get(BuildTargetFactory.newInstance("//foo:c"));
+
+    SourcePathResolver resolverForA = resolvers.apply(a);
+    assertThat(resolvers.apply(a), Matchers.sameInstance(resolverForA));
+    resolvers.apply(b);
+    resolvers.apply(c);
+    assertThat(loaded, Matchers.<TargetNode<?>>contains(a, b, c));
+
+    assertThat(resolvers.apply(a), not(Matchers.sameInstance(resolverForA)));
+    assertThat(loaded, Matchers.<TargetNode<?>>contains(a, b, c, a));
+  }
+
   private Matcher<XCScheme.TestableReference> testableWithName(String name) {
     return new FeatureMatcher<XCScheme.TestableReference, String>(
         equalTo(name), "TestableReference named", "name") {
@@ -205,6 +205,17 @@ public class WorkspaceGeneratorTest {
     }
   }
 
+  @Test
+  public void workspaceSettingsAreNotRewritten() throws IOException {
+    clock.setCurrentTimeMillis(49152);
+    Path workspacePath = generator.writeWorkspace();
+    Path settingsPath = workspacePath.resolve("xcshareddata/WorkspaceSettings.xcsettings");
+
+    clock.setCurrentTimeMillis(64738);
+    new WorkspaceGenerator(projectFilesystem, "ws", Paths.get(".")).writeWorkspace();
+    assertThat(projectFilesystem.getLastModifiedTime(settingsPath), equalTo(49152L));
+  }
+
   @Test
   public void workspaceDisablesSchemeAutoCreation() throws Exception {
     Path workspacePath = generator.writeWorkspace();
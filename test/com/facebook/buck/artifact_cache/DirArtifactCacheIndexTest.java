@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.artifact_cache;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+public class DirArtifactCacheIndexTest {
+  @Rule
+  public TemporaryPaths tmpDir = new TemporaryPaths();
+
+  @Test
+  public void evictionSeesEntriesRecordedByOtherProcesses() throws IOException {
+    Path cacheDir = tmpDir.getRoot().toRealPath();
+    Path a = createEntry(cacheDir.resolve("aa/aa/a"));
+    Path b = createEntry(cacheDir.resolve("bb/bb/b"));
+    Path c = createEntry(cacheDir.resolve("cc/cc/c"));
+
+    // Two indexes over the same directory stand in for two buck processes.
+    DirArtifactCacheIndex first = newIndex(cacheDir);
+    DirArtifactCacheIndex second = newIndex(cacheDir);
+
+    first.recordStore(a, 10);
+    first.recordStore(b, 10);
+    first.flush();
+    second.recordStore(c, 10);
+    second.recordAccess(a);
+    second.flush();
+
+    assertEquals(ImmutableList.of(b), first.evict(20));
+    assertFalse(Files.exists(b));
+    assertFalse(Files.exists(b.resolveSibling("b.metadata")));
+    assertTrue(Files.exists(a));
+    assertTrue(Files.exists(c));
+
+    second.flush();
+    assertEquals(20, second.getTotalSizeBytes());
+    assertEquals(ImmutableList.of("cc/cc/c", "aa/aa/a"), second.getEntriesInEvictionOrder());
+  }
+
+  @Test
+  public void missingJournalIsRebuiltFromTheCacheDirectory() throws IOException {
+    Path cacheDir = tmpDir.getRoot().toRealPath();
+    Path a = createEntry(cacheDir.resolve("aa/aa/a"));
+    Path b = createEntry(cacheDir.resolve("bb/bb/b"));
+    Files.setAttribute(a, "lastAccessTime", FileTime.fromMillis(2000));
+    Files.setAttribute(
+        a.resolveSibling("a.metadata"),
+        "lastAccessTime",
+        FileTime.fromMillis(2000));
+    Files.setAttribute(b, "lastAccessTime", FileTime.fromMillis(1000));
+    Files.setAttribute(
+        b.resolveSibling("b.metadata"),
+        "lastAccessTime",
+        FileTime.fromMillis(1000));
+
+    DirArtifactCacheIndex index = newIndex(cacheDir);
+    index.flush();
+
+    // Each entry is one byte of artifact and one byte of metadata.
+    assertEquals(4, index.getTotalSizeBytes());
+    assertEquals(ImmutableList.of("bb/bb/b", "aa/aa/a"), index.getEntriesInEvictionOrder());
+  }
+
+  private static DirArtifactCacheIndex newIndex(Path cacheDir) {
+    return new DirArtifactCacheIndex(
+        cacheDir,
+        cacheDir.resolve("index"),
+        ImmutableSet.of(cacheDir.resolve("index")));
+  }
+
+  private static Path createEntry(Path artifact) throws IOException {
+    Files.createDirectories(artifact.getParent());
+    Files.write(artifact, "x".getBytes(UTF_8));
+    Files.write(artifact.resolveSibling(artifact.getFileName() + ".metadata"), "x".getBytes(UTF_8));
+    return artifact;
+  }
+}
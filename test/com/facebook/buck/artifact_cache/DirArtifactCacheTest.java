@@ -48,6 +48,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.hamcrest.Matchers;
 import org.junit.After;
@@ -552,7 +553,9 @@ public class DirArtifactCacheTest {
         new ProjectFilesystem(cacheDir),
         cacheDir,
         /* doStore */ true,
-        /* maxCacheSizeBytes */ Optional.of(9L));
+        /* maxCacheSizeBytes */ Optional.of(9L),
+        // Evict as part of each store, rather than in the background.
+        MoreExecutors.newDirectExecutorService());
 
     Files.write(fileX, "x".getBytes(UTF_8));
     Files.write(fileY, "y".getBytes(UTF_8));
@@ -660,7 +663,8 @@ public class DirArtifactCacheTest {
 
   @Test
   public void testCacheStoreAndFetchMetadata() throws IOException {
-    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    // The cache's index is kept on disk, under the filesystem's root.
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem(tmpDir.getRoot());
     DirArtifactCache cache =
         new DirArtifactCache(
             "dir",
@@ -700,7 +704,7 @@ public class DirArtifactCacheTest {
   public void testFolderLevelsForRuleKeys() throws IOException {
     DirArtifactCache cache = new DirArtifactCache(
         "dir",
-        new FakeProjectFilesystem(),
+        new FakeProjectFilesystem(tmpDir.getRoot()),
         Paths.get("cache"),
         /* doStore */ false,
         /* maxCacheSizeBytes */ Optional.<Long>absent());
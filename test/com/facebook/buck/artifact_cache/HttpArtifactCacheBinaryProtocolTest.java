@@ -23,6 +23,7 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import com.google.common.io.BaseEncoding;
 import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
@@ -38,6 +39,8 @@ import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
 
 public class HttpArtifactCacheBinaryProtocolTest {
 
@@ -252,4 +255,79 @@ public class HttpArtifactCacheBinaryProtocolTest {
     byte[] expectedBytes = BaseEncoding.base64().decode(base64EncodedData);
     assertThat(byteArrayOutputStream.toByteArray(), Matchers.equalTo(expectedBytes));
   }
+
+  @Test
+  public void testFetchResponseHeaderFromPayloadHashCode() throws IOException {
+    final RuleKey ruleKey = new RuleKey("00000000010000000000008000000000");
+    byte[] payload = new byte[100000];
+    new Random(0).nextBytes(payload);
+    ImmutableMap<String, String> metadata = ImmutableMap.of("key", "value");
+
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    new HttpArtifactCacheBinaryProtocol.FetchResponse(
+        ImmutableSet.of(ruleKey),
+        metadata,
+        ByteSource.wrap(payload)).write(expected);
+
+    ByteArrayOutputStream actual = new ByteArrayOutputStream();
+    actual.write(
+        HttpArtifactCacheBinaryProtocol.createFetchResponseHeader(
+            ImmutableSet.of(ruleKey),
+            metadata,
+            HttpArtifactCacheBinaryProtocol.hashPayload(ByteBuffer.wrap(payload)),
+            payload.length));
+    actual.write(payload);
+    assertThat(actual.toByteArray(), Matchers.equalTo(expected.toByteArray()));
+  }
+
+  @Test
+  public void testCrc32Combine() {
+    byte[] data = new byte[5000];
+    new Random(0).nextBytes(data);
+    for (int split : new int[] {0, 1, 7, 2500, 4999, 5000}) {
+      HashCode first = Hashing.crc32().hashBytes(data, 0, split);
+      HashCode second = Hashing.crc32().hashBytes(data, split, data.length - split);
+      long combined = HttpArtifactCacheBinaryProtocol.crc32Combine(
+          first.asInt() & 0xffffffffL,
+          second.asInt() & 0xffffffffL,
+          data.length - split);
+      assertThat((int) combined, Matchers.is(Hashing.crc32().hashBytes(data).asInt()));
+    }
+  }
+
+  @Test
+  public void testReadMultiFetchResponse() throws IOException {
+    final RuleKey ruleKey = new RuleKey("00000000010000000000008000000000");
+    byte[] payload = "data".getBytes(Charsets.UTF_8);
+    ImmutableMap<String, String> metadata = ImmutableMap.of("key", "value");
+
+    ByteArrayOutputStream response = new ByteArrayOutputStream();
+    response.write(HttpArtifactCacheBinaryProtocol.createMultiFetchMissEntry());
+    response.write(
+        HttpArtifactCacheBinaryProtocol.createMultiFetchResponseEntryHeader(
+            ImmutableSet.of(ruleKey),
+            metadata,
+            HttpArtifactCacheBinaryProtocol.hashPayload(ByteBuffer.wrap(payload)),
+            payload.length));
+    response.write(payload);
+    response.write(HttpArtifactCacheBinaryProtocol.createMultiFetchMissEntry());
+
+    DataInputStream input =
+        new DataInputStream(new ByteArrayInputStream(response.toByteArray()));
+    ByteArrayOutputStream payloadSink = new ByteArrayOutputStream();
+    assertThat(
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntry(input, payloadSink)
+            .isPresent(),
+        Matchers.is(false));
+    FetchResponseReadResult result =
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntry(input, payloadSink).get();
+    assertThat(result.getRuleKeys(), Matchers.contains(ruleKey));
+    assertThat(result.getMetadata(), Matchers.equalTo(metadata));
+    assertThat(result.getActualHashCode(), Matchers.equalTo(result.getExpectedHashCode()));
+    assertThat(payloadSink.toByteArray(), Matchers.equalTo(payload));
+    assertThat(
+        HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntry(input, payloadSink)
+            .isPresent(),
+        Matchers.is(false));
+  }
 }
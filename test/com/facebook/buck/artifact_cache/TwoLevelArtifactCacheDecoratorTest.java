@@ -17,8 +17,10 @@
 package com.facebook.buck.artifact_cache;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import com.facebook.buck.event.BuckEventBusFactory;
 import com.facebook.buck.io.BorrowablePath;
@@ -26,8 +28,14 @@ import com.facebook.buck.io.LazyPath;
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Charsets;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 import org.hamcrest.Matchers;
 import org.junit.Rule;
@@ -35,6 +43,10 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class TwoLevelArtifactCacheDecoratorTest {
 
@@ -198,4 +210,136 @@ public class TwoLevelArtifactCacheDecoratorTest {
           Matchers.equalTo(CacheResultType.HIT));
     }
   }
+
+  @Test
+  public void testContentsAreFetchedFromLocalContentCache() throws Exception {
+    LazyPath artifact = LazyPath.ofInstance(tmp.newFile());
+    Files.write(artifact.get(), "contents".getBytes(Charsets.UTF_8));
+    InMemoryArtifactCache remoteCache = new InMemoryArtifactCache();
+    InMemoryArtifactCache localContentCache = new InMemoryArtifactCache();
+    try (TwoLevelArtifactCacheDecorator twoLevelCache = new TwoLevelArtifactCacheDecorator(
+             remoteCache,
+             new ProjectFilesystem(tmp.getRoot()),
+             BuckEventBusFactory.newInstance(),
+             /* performTwoLevelStores */ true,
+             /* minimumTwoLevelStoredArtifactSize */ 0L,
+             /* maximumTwoLevelStoredArtifactSize */ Optional.<Long>absent(),
+             Optional.<ArtifactCache>of(localContentCache))) {
+      twoLevelCache.store(
+          ArtifactInfo.builder().addRuleKeys(dummyRuleKey).build(),
+          BorrowablePath.notBorrowablePath(artifact.get()));
+    }
+    assertThat(localContentCache.getArtifactCount(), Matchers.equalTo(1));
+
+    // A cache which only has the rule key entry, pointing at the contents.
+    LazyPath fetched = LazyPath.ofInstance(tmp.newFile());
+    CacheResult ruleKeyEntry = remoteCache.fetch(dummyRuleKey, fetched);
+    InMemoryArtifactCache remoteCacheWithoutContents = new InMemoryArtifactCache();
+    remoteCacheWithoutContents.store(
+        ArtifactInfo.builder()
+            .addRuleKeys(dummyRuleKey)
+            .setMetadata(ruleKeyEntry.getMetadata())
+            .build(),
+        new byte[0]);
+
+    try (TwoLevelArtifactCacheDecorator twoLevelCache = new TwoLevelArtifactCacheDecorator(
+             remoteCacheWithoutContents,
+             new ProjectFilesystem(tmp.getRoot()),
+             BuckEventBusFactory.newInstance(),
+             /* performTwoLevelStores */ true,
+             /* minimumTwoLevelStoredArtifactSize */ 0L,
+             /* maximumTwoLevelStoredArtifactSize */ Optional.<Long>absent(),
+             Optional.<ArtifactCache>of(localContentCache))) {
+      assertThat(
+          twoLevelCache.fetch(dummyRuleKey, fetched).getType(),
+          Matchers.equalTo(CacheResultType.HIT));
+      assertThat(
+          new String(Files.readAllBytes(fetched.get()), Charsets.UTF_8),
+          Matchers.equalTo("contents"));
+    }
+  }
+
+  @Test
+  public void testSameContentsAreStoredOnce() throws Exception {
+    final AtomicInteger stores = new AtomicInteger();
+    InMemoryArtifactCache remoteCache = new InMemoryArtifactCache() {
+      @Override
+      public ListenableFuture<Void> store(ArtifactInfo info, BorrowablePath output) {
+        stores.incrementAndGet();
+        return super.store(info, output);
+      }
+    };
+    try (TwoLevelArtifactCacheDecorator twoLevelCache = new TwoLevelArtifactCacheDecorator(
+             remoteCache,
+             new ProjectFilesystem(tmp.getRoot()),
+             BuckEventBusFactory.newInstance(),
+             /* performTwoLevelStores */ true,
+             /* minimumTwoLevelStoredArtifactSize */ 0L,
+             /* maximumTwoLevelStoredArtifactSize */ Optional.<Long>absent())) {
+      LazyPath artifact = LazyPath.ofInstance(tmp.newFile());
+      twoLevelCache.store(
+          ArtifactInfo.builder().addRuleKeys(dummyRuleKey).build(),
+          BorrowablePath.notBorrowablePath(artifact.get()));
+      twoLevelCache.store(
+          ArtifactInfo.builder().addRuleKeys(dummyRuleKey2).build(),
+          BorrowablePath.notBorrowablePath(artifact.get()));
+
+      // One store for each rule key, and one for the contents they share.
+      assertThat(stores.get(), Matchers.equalTo(3));
+      assertThat(
+          twoLevelCache.fetch(dummyRuleKey2, artifact).getType(),
+          Matchers.equalTo(CacheResultType.HIT));
+    }
+  }
+
+  @Test
+  public void storesOfTheSameContentsFailWhenTheirUploadDoes() throws Exception {
+    final ImmutableSet<RuleKey> ruleKeys = ImmutableSet.of(dummyRuleKey, dummyRuleKey2);
+    final List<SettableFuture<Void>> contentStores = new ArrayList<>();
+    InMemoryArtifactCache remoteCache = new InMemoryArtifactCache() {
+      @Override
+      public ListenableFuture<Void> store(ArtifactInfo info, BorrowablePath output) {
+        if (!Sets.intersection(info.getRuleKeys(), ruleKeys).isEmpty()) {
+          return super.store(info, output);
+        }
+        SettableFuture<Void> contentStore = SettableFuture.create();
+        contentStores.add(contentStore);
+        return contentStore;
+      }
+    };
+    try (TwoLevelArtifactCacheDecorator twoLevelCache = new TwoLevelArtifactCacheDecorator(
+             remoteCache,
+             new ProjectFilesystem(tmp.getRoot()),
+             BuckEventBusFactory.newInstance(),
+             /* performTwoLevelStores */ true,
+             /* minimumTwoLevelStoredArtifactSize */ 0L,
+             /* maximumTwoLevelStoredArtifactSize */ Optional.<Long>absent())) {
+      LazyPath artifact = LazyPath.ofInstance(tmp.newFile());
+      ListenableFuture<Void> first = twoLevelCache.store(
+          ArtifactInfo.builder().addRuleKeys(dummyRuleKey).build(),
+          BorrowablePath.notBorrowablePath(artifact.get()));
+      ListenableFuture<Void> second = twoLevelCache.store(
+          ArtifactInfo.builder().addRuleKeys(dummyRuleKey2).build(),
+          BorrowablePath.notBorrowablePath(artifact.get()));
+      assertThat(contentStores, Matchers.hasSize(1));
+      assertFalse(second.isDone());
+
+      contentStores.get(0).setException(new IOException("upload failed"));
+
+      for (ListenableFuture<Void> store : ImmutableList.of(first, second)) {
+        try {
+          store.get();
+          fail("Stores sharing a failed upload should fail.");
+        } catch (ExecutionException e) {
+          assertThat(e.getCause(), Matchers.instanceOf(IOException.class));
+        }
+      }
+
+      // The next store of the same contents uploads them again.
+      twoLevelCache.store(
+          ArtifactInfo.builder().addRuleKeys(dummyRuleKey).build(),
+          BorrowablePath.notBorrowablePath(artifact.get()));
+      assertThat(contentStores, Matchers.hasSize(2));
+    }
+  }
 }
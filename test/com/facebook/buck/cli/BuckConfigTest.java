@@ -33,6 +33,8 @@ import com.facebook.buck.testutil.integration.ProjectWorkspace;
 import com.facebook.buck.testutil.integration.ProjectWorkspace.ProcessResult;
 import com.facebook.buck.testutil.integration.TestDataHelper;
 import com.facebook.buck.util.HumanReadableException;
+import com.facebook.buck.util.concurrent.ResourceAmounts;
+import com.facebook.buck.util.concurrent.ResourceType;
 import com.facebook.buck.util.environment.Architecture;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.base.Functions;
@@ -593,4 +595,28 @@ public class BuckConfigTest {
         .build();
     assertFalse(buckConfig.hasUserDefinedValue("cache", "mode"));
   }
+
+  @Test
+  public void resourceLimitsAndPerRuleResources() {
+    BuckConfig buckConfig = FakeBuckConfig.builder()
+        .setSections(
+            ImmutableMap.of(
+                "build", ImmutableMap.of("threads", "6"),
+                "resources", ImmutableMap.of("memory_mb", "8192"),
+                "resources_per_rule",
+                ImmutableMap.of("android_binary", "cpu=2, memory_mb=3000, disk_io=1")))
+        .build();
+    assertThat(
+        buckConfig.getResourceLimits(),
+        Matchers.equalTo(ResourceAmounts.ofCpuLimit(6).with(ResourceType.MEMORY, 8192)));
+    assertThat(
+        buckConfig.getResourceAmountsByRuleType(),
+        Matchers.equalTo(
+            ImmutableMap.of(
+                "android_binary",
+                ImmutableMap.of(
+                    ResourceType.CPU, 2,
+                    ResourceType.MEMORY, 3000,
+                    ResourceType.DISK_IO, 1))));
+  }
 }
@@ -114,7 +114,8 @@ public class CommandRunnerParamsForTesting {
             ExecutionContext.ExecutorPool.PROJECT,
             MoreExecutors.newDirectExecutorService()),
         BUILD_ENVIRONMENT_DESCRIPTION,
-        new ActionGraphCache(new BroadcastEventListener()));
+        new ActionGraphCache(new BroadcastEventListener()),
+        new QueryResultCache());
   }
 
   public static Builder builder() {
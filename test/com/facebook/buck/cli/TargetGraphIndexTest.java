@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.jvm.java.JavaLibraryBuilder;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.query.QueryBuildTarget;
+import com.facebook.buck.query.QueryTarget;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.testutil.TargetGraphFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+
+public class TargetGraphIndexTest {
+
+  private static final BuildTarget A = BuildTargetFactory.newInstance("//:a");
+  private static final BuildTarget B = BuildTargetFactory.newInstance("//:b");
+  private static final BuildTarget C = BuildTargetFactory.newInstance("//:c");
+  private static final BuildTarget D = BuildTargetFactory.newInstance("//:d");
+  private static final BuildTarget E = BuildTargetFactory.newInstance("//:e");
+
+  private TargetGraphIndex index;
+
+  @Before
+  public void setUp() {
+    // a -> c -> d, a -> b -> d, e -> c
+    ImmutableSet<TargetNode<?>> nodes = ImmutableSet.<TargetNode<?>>of(
+        JavaLibraryBuilder.createBuilder(A).addDep(C).addDep(B).build(),
+        JavaLibraryBuilder.createBuilder(B).addDep(D).build(),
+        JavaLibraryBuilder.createBuilder(C).addDep(D).build(),
+        JavaLibraryBuilder.createBuilder(D).build(),
+        JavaLibraryBuilder.createBuilder(E).addDep(C).build());
+    index = TargetGraphIndex.of(TargetGraphFactory.newInstance(nodes));
+  }
+
+  @Test
+  public void transitiveDepsAreOrderedLevelByLevel() {
+    assertEquals(
+        targets(A, B, C, D),
+        ImmutableList.copyOf(
+            index.breadthFirst(ids(A), Integer.MAX_VALUE, /* reverse */ false, null)));
+    assertEquals(
+        targets(E, C),
+        ImmutableList.copyOf(index.breadthFirst(ids(E), 1, /* reverse */ false, null)));
+  }
+
+  @Test
+  public void reverseDepsAreRestrictedToTheUniverse() {
+    Set<QueryTarget> rdeps = index.breadthFirst(
+        ids(D),
+        Integer.MAX_VALUE,
+        /* reverse */ true,
+        index.getTransitiveClosure(ids(A)));
+    assertEquals(targets(D, B, C, A), ImmutableList.copyOf(rdeps));
+    assertTrue(rdeps.contains(QueryBuildTarget.of(A)));
+    assertFalse(rdeps.contains(QueryBuildTarget.of(E)));
+  }
+
+  @Test
+  public void allPathsOnlyIncludesNodesBetweenTheEnds() {
+    assertEquals(
+        targets(C, D, E),
+        ImmutableList.copyOf(index.toSet(index.getAllPaths(ids(E), ids(D)))));
+    assertEquals(
+        targets(A, B, C, D),
+        ImmutableList.copyOf(index.toSet(index.getAllPaths(ids(A), ids(D)))));
+  }
+
+  private int[] ids(BuildTarget... buildTargets) {
+    return index.getIds(targets(buildTargets));
+  }
+
+  private static ImmutableList<QueryTarget> targets(BuildTarget... buildTargets) {
+    ImmutableList.Builder<QueryTarget> builder = ImmutableList.builder();
+    for (BuildTarget buildTarget : buildTargets) {
+      builder.add(QueryBuildTarget.of(buildTarget));
+    }
+    return builder.build();
+  }
+}
@@ -175,6 +175,58 @@ public class TargetsCommandIntegrationTest {
         Matchers.matchesPattern("//:another-test [a-f0-9]{40}\n//:test [a-f0-9]{40}"));
   }
 
+  @Test
+  public void testStreamingOutputAndRuleKey() throws IOException {
+    ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
+        this, "output_path", tmp);
+    workspace.setUp();
+
+    ProcessResult result = workspace.runBuckCommand(
+        "targets",
+        "--streaming",
+        "--show-rulekey",
+        "--show-output",
+        "//:test",
+        "//:another-test");
+    result.assertSuccess();
+    assertThat(
+        result.getStdout().trim(),
+        Matchers.matchesPattern(
+            "//:another-test [a-f0-9]{40} " +
+                Pattern.quote(
+                    MorePaths.pathWithPlatformSeparators(
+                        "buck-out/gen/another-test/test-output")) +
+                "\n//:test [a-f0-9]{40} " +
+                Pattern.quote(
+                    MorePaths.pathWithPlatformSeparators("buck-out/gen/test/test-output"))));
+  }
+
+  @Test
+  public void testStreamingJsonPrintsAnObjectPerLine() throws IOException {
+    ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
+        this, "output_path", tmp);
+    workspace.setUp();
+
+    ProcessResult result = workspace.runBuckCommand(
+        "targets",
+        "--streaming",
+        "--json",
+        "--show-output",
+        "//:test",
+        "//:another-test");
+    result.assertSuccess();
+    List<String> lines = Splitter.on('\n').omitEmptyStrings().splitToList(result.getStdout());
+    assertEquals(2, lines.size());
+    ObjectMapper objectMapper = ObjectMappers.newDefaultInstance();
+    JsonNode first = objectMapper.readTree(lines.get(0));
+    assertEquals("//:another-test", first.get("fully_qualified_name").asText());
+    assertEquals(
+        MorePaths.pathWithPlatformSeparators("buck-out/gen/another-test/test-output"),
+        first.get("buck.outputPath").asText());
+    JsonNode second = objectMapper.readTree(lines.get(1));
+    assertEquals("//:test", second.get("fully_qualified_name").asText());
+  }
+
   @Test
   public void testCellPath() throws IOException {
     ProjectWorkspace workspace = TestDataHelper.createProjectWorkspaceForScenario(
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.counters;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramCounterTest {
+
+  private static final String CATEGORY = "Counter_Category";
+  private static final String NAME = "Counter_Name";
+
+  @Test
+  public void testAddSample() {
+    HistogramCounter counter = createCounter();
+    counter.addSample(63);
+    counter.addSample(42);
+    counter.addSample(21);
+    Assert.assertEquals(42, counter.getAverage());
+    Assert.assertEquals(21, counter.getMin());
+    Assert.assertEquals(63, counter.getMax());
+    Assert.assertEquals(3, counter.getCount());
+  }
+
+  @Test
+  public void testPercentilesAreWithinBucketPrecision() {
+    HistogramCounter counter = createCounter();
+    for (int i = 1; i <= 1000; i++) {
+      counter.addSample(i);
+    }
+    assertWithinPrecision(500, counter.getPercentile(50));
+    assertWithinPrecision(900, counter.getPercentile(90));
+    assertWithinPrecision(990, counter.getPercentile(99));
+    Assert.assertEquals(1000, counter.getPercentile(100));
+  }
+
+  @Test
+  public void testBucketsCoverAllValues() {
+    long[] values = {0, 1, 7, 8, 9, 15, 16, 1000, 123456789L, Long.MAX_VALUE};
+    for (long value : values) {
+      int index = HistogramCounter.bucketIndex(value);
+      Assert.assertTrue(value <= HistogramCounter.bucketUpperBound(index));
+      if (index > 0) {
+        Assert.assertTrue(value > HistogramCounter.bucketUpperBound(index - 1));
+      }
+    }
+  }
+
+  @Test
+  public void testSnapshot() {
+    HistogramCounter counter = createCounter();
+    counter.addSample(42);
+    Optional<CounterSnapshot> snapshot = counter.flush();
+    Assert.assertTrue(snapshot.isPresent());
+    ImmutableMap<String, Long> values = snapshot.get().getValues();
+    Assert.assertEquals(7, values.size());
+    Assert.assertEquals(Long.valueOf(1), values.get(NAME + "_count"));
+    Assert.assertEquals(Long.valueOf(42), values.get(NAME + "_avg"));
+    Assert.assertEquals(Long.valueOf(42), values.get(NAME + "_p99"));
+  }
+
+  @Test
+  public void testReset() {
+    HistogramCounter counter = createCounter();
+    counter.addSample(84);
+    Assert.assertEquals(1, counter.getCount());
+    counter.flush();
+    Assert.assertEquals(0, counter.getCount());
+    Assert.assertFalse(counter.flush().isPresent());
+
+    counter.addSample(21);
+    Optional<CounterSnapshot> snapshot = counter.flush();
+    Assert.assertTrue(snapshot.isPresent());
+    Assert.assertEquals(Long.valueOf(21), snapshot.get().getValues().get(NAME + "_min"));
+    Assert.assertEquals(Long.valueOf(21), snapshot.get().getValues().get(NAME + "_max"));
+  }
+
+  private static void assertWithinPrecision(long expected, long actual) {
+    Assert.assertTrue(
+        String.format("Expected ~%d but got %d", expected, actual),
+        actual >= expected && actual <= expected + expected / 8);
+  }
+
+  private static HistogramCounter createCounter() {
+    return new HistogramCounter(CATEGORY, NAME, ImmutableMap.<String, String>of());
+  }
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.httpserver;
+
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.artifact_cache.ArtifactCache;
+import com.facebook.buck.artifact_cache.ArtifactCacheBuckConfig;
+import com.facebook.buck.artifact_cache.ArtifactCaches;
+import com.facebook.buck.artifact_cache.ArtifactInfo;
+import com.facebook.buck.cli.BuckConfig;
+import com.facebook.buck.cli.BuckConfigTestUtils;
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.io.BorrowablePath;
+import com.facebook.buck.io.LazyPath;
+import com.facebook.buck.io.MoreFiles;
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.util.ObjectMappers;
+import com.facebook.buck.util.environment.Architecture;
+import com.facebook.buck.util.environment.Platform;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Param;
+import com.google.caliper.api.Macrobenchmark;
+import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Load test for the cache served by the {@link WebServer}: concurrent clients fetch and store
+ * artifacts through the same HTTP cache client that builds use.
+ */
+public class ServedCacheBenchmark {
+
+  private static final int ARTIFACT_COUNT = 64;
+  private static final ImmutableMap<String, String> METADATA = ImmutableMap.of("key", "value");
+
+  @Param({"16", "1024"})
+  private int artifactSizeKb = 16;
+
+  @Param({"1", "16"})
+  private int clientCount = 4;
+
+  private Path root;
+  private ProjectFilesystem filesystem;
+  private WebServer webServer;
+  private ArtifactCache client;
+  private ListeningExecutorService clientThreads;
+  private List<RuleKey> storedRuleKeys;
+  private final AtomicInteger nextRuleKey = new AtomicInteger();
+
+  @Before
+  public void setUpTest() throws Exception {
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    root = Files.createTempDirectory("served-cache-benchmark").toRealPath();
+    filesystem = new ProjectFilesystem(root);
+
+    webServer = new WebServer(
+        /* port */ 0,
+        filesystem,
+        "/static/",
+        ObjectMappers.newDefaultInstance());
+    webServer.updateAndStartIfNeeded(
+        ArtifactCaches.newServedCache(
+            createConfig(
+                "[cache]",
+                "dir = served-cache",
+                "serve_local_cache = true",
+                "served_local_cache_mode = readwrite"),
+            filesystem));
+    client = ArtifactCaches.newInstance(
+        createConfig(
+            "[cache]",
+            "mode = http",
+            String.format("http_url = http://127.0.0.1:%d/", webServer.getPort().get())),
+        BuckEventBusFactory.newInstance(),
+        filesystem,
+        Optional.<String>absent(),
+        MoreExecutors.newDirectExecutorService());
+    clientThreads = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(clientCount));
+
+    storedRuleKeys = Lists.newArrayList();
+    for (int i = 0; i < ARTIFACT_COUNT; i++) {
+      storedRuleKeys.add(store());
+    }
+  }
+
+  @After
+  @AfterExperiment
+  public void cleanup() throws Exception {
+    clientThreads.shutdown();
+    client.close();
+    webServer.stop();
+    MoreFiles.deleteRecursively(root);
+  }
+
+  @Test
+  public void fetchAndStoreCorrectness() throws Exception {
+    fetchArtifacts();
+    storeArtifacts();
+  }
+
+  @Macrobenchmark
+  public void fetchArtifacts() throws Exception {
+    List<ListenableFuture<Void>> fetches = Lists.newArrayList();
+    for (final RuleKey ruleKey : storedRuleKeys) {
+      fetches.add(
+          clientThreads.submit(
+              new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                  Path output = filesystem.createTempFile("fetched", ".tmp");
+                  try {
+                    assertTrue(
+                        client.fetch(ruleKey, LazyPath.ofInstance(output))
+                            .getType()
+                            .isSuccess());
+                  } finally {
+                    filesystem.deleteFileAtPathIfExists(output);
+                  }
+                  return null;
+                }
+              }));
+    }
+    Futures.allAsList(fetches).get();
+  }
+
+  @Macrobenchmark
+  public void storeArtifacts() throws Exception {
+    List<ListenableFuture<RuleKey>> stores = Lists.newArrayList();
+    for (int i = 0; i < ARTIFACT_COUNT; i++) {
+      stores.add(
+          clientThreads.submit(
+              new Callable<RuleKey>() {
+                @Override
+                public RuleKey call() throws Exception {
+                  return store();
+                }
+              }));
+    }
+    LazyPath output = LazyPath.ofInstance(root.resolve("fetched"));
+    for (RuleKey ruleKey : Futures.allAsList(stores).get()) {
+      assertTrue(client.fetch(ruleKey, output).getType().isSuccess());
+    }
+  }
+
+  private RuleKey store() throws Exception {
+    int index = nextRuleKey.getAndIncrement();
+    RuleKey ruleKey = new RuleKey(String.format("%040x", index));
+    byte[] data = new byte[artifactSizeKb * 1024];
+    new Random(index).nextBytes(data);
+    Path artifact = filesystem.createTempFile("artifact", ".tmp");
+    Files.write(filesystem.resolve(artifact), data);
+    try {
+      client.store(
+          ArtifactInfo.builder().addRuleKeys(ruleKey).setMetadata(METADATA).build(),
+          BorrowablePath.notBorrowablePath(artifact)).get();
+    } finally {
+      filesystem.deleteFileAtPathIfExists(artifact);
+    }
+    return ruleKey;
+  }
+
+  private ArtifactCacheBuckConfig createConfig(String... lines) throws IOException {
+    BuckConfig config = BuckConfigTestUtils.createFromReader(
+        new StringReader(Joiner.on('\n').join(lines)),
+        filesystem,
+        Architecture.detect(),
+        Platform.detect(),
+        ImmutableMap.<String, String>of());
+    return new ArtifactCacheBuckConfig(config);
+  }
+}
@@ -27,6 +27,9 @@ import com.facebook.buck.artifact_cache.ArtifactInfo;
 import com.facebook.buck.artifact_cache.CacheResult;
 import com.facebook.buck.artifact_cache.CacheResultType;
 import com.facebook.buck.artifact_cache.DirArtifactCacheTestUtil;
+import com.facebook.buck.artifact_cache.FetchResponseReadResult;
+import com.facebook.buck.artifact_cache.HttpArtifactCache;
+import com.facebook.buck.artifact_cache.HttpArtifactCacheBinaryProtocol;
 import com.facebook.buck.artifact_cache.TestArtifactCaches;
 import com.facebook.buck.cli.BuckConfig;
 import com.facebook.buck.cli.BuckConfigTestUtils;
@@ -44,6 +47,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
@@ -55,6 +59,8 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
@@ -63,6 +69,11 @@ import java.io.StringReader;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
 public class ServedCacheIntegrationTest {
   @Rule
   public TemporaryPaths tmpDir = new TemporaryPaths();
@@ -159,6 +170,56 @@ public class ServedCacheIntegrationTest {
         Matchers.equalTo(A_FILE_DATA));
   }
 
+  @Test
+  public void testBatchedRequestsToServedDircache() throws Exception {
+    webServer = new WebServer(
+        /* port */ 0,
+        projectFilesystem,
+        "/static/",
+        MAPPER);
+    webServer.updateAndStartIfNeeded(
+        Optional.of(
+            TestArtifactCaches.createDirCacheForTest(
+                projectFilesystem.getRootPath(),
+                Paths.get("test-cache"))));
+
+    RuleKey missingRuleKey = new RuleKey("baadbeef");
+    byte[] requestBody = HttpArtifactCacheBinaryProtocol.createKeysHeader(
+        ImmutableSet.of(missingRuleKey, A_FILE_RULE_KEY));
+    OkHttpClient client = new OkHttpClient();
+    String url = String.format("http://127.0.0.1:%d/artifacts/", webServer.getPort().get());
+
+    Response response = client.newCall(
+        new Request.Builder()
+            .url(url + "contains")
+            .post(RequestBody.create(HttpArtifactCache.OCTET_STREAM_CONTENT_TYPE, requestBody))
+            .build())
+        .execute();
+    try (DataInputStream input = new DataInputStream(response.body().byteStream())) {
+      assertThat(
+          HttpArtifactCacheBinaryProtocol.readRuleKeys(input),
+          Matchers.contains(A_FILE_RULE_KEY));
+    }
+
+    response = client.newCall(
+        new Request.Builder()
+            .url(url + "multi_fetch")
+            .post(RequestBody.create(HttpArtifactCache.OCTET_STREAM_CONTENT_TYPE, requestBody))
+            .build())
+        .execute();
+    try (DataInputStream input = new DataInputStream(response.body().byteStream())) {
+      ByteArrayOutputStream payload = new ByteArrayOutputStream();
+      assertFalse(
+          HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntry(input, payload)
+              .isPresent());
+      FetchResponseReadResult result =
+          HttpArtifactCacheBinaryProtocol.readMultiFetchResponseEntry(input, payload).get();
+      assertThat(result.getMetadata(), Matchers.equalTo(A_FILE_METADATA));
+      assertThat(result.getActualHashCode(), Matchers.equalTo(result.getExpectedHashCode()));
+      assertThat(payload.toString("UTF-8"), Matchers.equalTo(A_FILE_DATA));
+    }
+  }
+
   private static class ThrowAfterXBytesStream extends FilterInputStream {
     private final long bytesToThrowAfter;
     private long bytesRead = 0L;
@@ -435,6 +435,44 @@ public class DefaultJavaLibraryTest {
         javacStep.getClasspathEntries());
   }
 
+  @Test
+  public void depsWithSourceAbisAreCompiledAgainstTheirAbiJars() throws Exception {
+    BuildRuleResolver ruleResolver = new BuildRuleResolver(
+        TargetGraph.EMPTY,
+        new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathResolver pathResolver = new SourcePathResolver(ruleResolver);
+    JavacOptions sourceAbiOptions =
+        DEFAULT_JAVAC_OPTIONS.withAbiGenerationMode(JavacOptions.AbiGenerationMode.SOURCE);
+
+    BuildRule libraryOne = JavaLibraryBuilder
+        .createBuilder(BuildTargetFactory.newInstance("//:libone"), sourceAbiOptions)
+        .addSrc(Paths.get("java/src/com/libone/Bar.java"))
+        .build(ruleResolver);
+    BuildRule libraryOneAbi = ruleResolver.getRule(
+        libraryOne.getBuildTarget().withAppendedFlavors(CalculateAbi.FLAVOR));
+    DefaultJavaLibrary libraryTwo = (DefaultJavaLibrary) JavaLibraryBuilder
+        .createBuilder(BuildTargetFactory.newInstance("//:libtwo"), sourceAbiOptions)
+        .addSrc(Paths.get("java/src/com/libtwo/Foo.java"))
+        .addDep(libraryOne.getBuildTarget())
+        .build(ruleResolver);
+
+    assertThat(libraryOneAbi, Matchers.instanceOf(CalculateSourceAbi.class));
+    assertThat(libraryTwo.getDeps(), Matchers.hasItem(libraryOneAbi));
+    assertThat(libraryTwo.getDeps(), Matchers.not(Matchers.hasItem(libraryOne)));
+    assertEquals(ImmutableSortedSet.of(libraryOne), libraryTwo.getRuntimeDeps());
+    assertEquals(
+        ImmutableSet.of(libraryOne),
+        libraryTwo.getDepsForTransitiveClasspathEntries());
+
+    List<Step> steps =
+        libraryTwo.getBuildSteps(FakeBuildContext.NOOP_CONTEXT, new FakeBuildableContext());
+    JavacStep javacStep = FluentIterable.from(steps).filter(JavacStep.class).first().get();
+    assertEquals(
+        ImmutableSet.of(pathResolver.getAbsolutePath(new BuildTargetSourcePath(
+            libraryOneAbi.getBuildTarget()))),
+        javacStep.getClasspathEntries());
+  }
+
   /**
    * Verify adding an annotation processor java binary with options.
    */
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Lists;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+public class StubGeneratingProcessorTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void stubsMatchTheCompiledClasses() throws IOException {
+    String source = Joiner.on('\n').join(
+        "package com.example.buck;",
+        "import java.util.List;",
+        "public class A<T extends Comparable<T>> implements Comparable<A<T>> {",
+        "  public static final int CONSTANT = 42;",
+        "  protected List<? extends T> values;",
+        "  private String hidden;",
+        "  public A(List<? extends T> values) { this.values = values; }",
+        "  public <E extends Exception> T first() throws E { return values.get(0); }",
+        "  public int compareTo(A<T> other) { return 0; }",
+        "  private void secret() {}",
+        "  public class Inner { public Inner(int i) {} }",
+        "  @Deprecated public static class Nested {}",
+        "}");
+    File sourceFile = writeSource("A.java", source);
+    File classes = temp.newFolder();
+    assertTrue(compile(sourceFile, Lists.newArrayList("-d", classes.getPath()), null));
+
+    StubGeneratingProcessor processor = new StubGeneratingProcessor();
+    assertTrue(compile(sourceFile, Lists.newArrayList("-proc:only"), processor));
+    ImmutableSortedMap<String, byte[]> stubs = processor.getStubs();
+
+    assertEquals(
+        ImmutableList.of(
+            "com/example/buck/A$Inner.class",
+            "com/example/buck/A$Nested.class",
+            "com/example/buck/A.class"),
+        stubs.keySet().asList());
+    for (Map.Entry<String, byte[]> stub : stubs.entrySet()) {
+      ClassNode expected = readClass(Files.readAllBytes(classes.toPath().resolve(stub.getKey())));
+      ClassNode seen = readClass(stub.getValue());
+      assertEquals(expected.name, seen.name);
+      assertEquals(expected.access, seen.access);
+      assertEquals(expected.signature, seen.signature);
+      assertEquals(expected.superName, seen.superName);
+      assertEquals(expected.interfaces, seen.interfaces);
+      assertEquals(describeFields(expected.fields), describeFields(seen.fields));
+      assertEquals(describeMethods(expected.methods), describeMethods(seen.methods));
+    }
+  }
+
+  @Test
+  public void reorderingMembersDoesNotChangeTheStubs() throws IOException {
+    File first = writeSource(
+        "A.java",
+        "package com.example.buck; public class A { public void a() {} public void b() {} }");
+    StubGeneratingProcessor firstProcessor = new StubGeneratingProcessor();
+    assertTrue(compile(first, Lists.newArrayList("-proc:only"), firstProcessor));
+
+    File second = writeSource(
+        "A.java",
+        "package com.example.buck; public class A { public void b() {} public void a() {} }");
+    StubGeneratingProcessor secondProcessor = new StubGeneratingProcessor();
+    assertTrue(compile(second, Lists.newArrayList("-proc:only"), secondProcessor));
+
+    assertTrue(
+        Arrays.equals(
+            firstProcessor.getStubs().get("com/example/buck/A.class"),
+            secondProcessor.getStubs().get("com/example/buck/A.class")));
+  }
+
+  @Test
+  public void privateMembersAreLeftOut() throws IOException {
+    File source = writeSource(
+        "A.java",
+        "package com.example.buck; public class A { private int x; private void y() {} }");
+    StubGeneratingProcessor processor = new StubGeneratingProcessor();
+    assertTrue(compile(source, Lists.newArrayList("-proc:only"), processor));
+
+    ClassNode stub = readClass(processor.getStubs().get("com/example/buck/A.class"));
+    assertTrue(stub.fields.isEmpty());
+    assertEquals(1, stub.methods.size());
+    assertEquals("<init>", ((MethodNode) stub.methods.get(0)).name);
+    assertNull(stub.signature);
+  }
+
+  private File writeSource(String fileName, String source) throws IOException {
+    File file = new File(temp.newFolder(), fileName);
+    Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+
+  private boolean compile(
+      File source,
+      List<String> args,
+      @Nullable StubGeneratingProcessor processor) throws IOException {
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    List<String> options = Lists.newArrayList("-source", "7", "-target", "7");
+    options.addAll(args);
+    try (StandardJavaFileManager fileManager =
+             compiler.getStandardFileManager(null, null, null)) {
+      JavaCompiler.CompilationTask task = compiler.getTask(
+          null,
+          fileManager,
+          null,
+          options,
+          null,
+          fileManager.getJavaFileObjects(source));
+      if (processor != null) {
+        task.setProcessors(ImmutableList.of(processor));
+      }
+      return task.call();
+    }
+  }
+
+  private static ClassNode readClass(byte[] bytes) {
+    ClassNode node = new ClassNode();
+    new ClassReader(bytes).accept(
+        node,
+        ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+    return node;
+  }
+
+  private static List<String> describeFields(List<?> fields) {
+    List<String> descriptions = Lists.newArrayList();
+    for (Object o : fields) {
+      FieldNode field = (FieldNode) o;
+      if ((field.access & (Opcodes.ACC_PRIVATE | Opcodes.ACC_SYNTHETIC)) == 0) {
+        descriptions.add(
+            Joiner.on(' ').useForNull("-").join(
+                field.access, field.name, field.desc, field.signature, field.value));
+      }
+    }
+    Collections.sort(descriptions);
+    return descriptions;
+  }
+
+  private static List<String> describeMethods(List<?> methods) {
+    List<String> descriptions = Lists.newArrayList();
+    for (Object o : methods) {
+      MethodNode method = (MethodNode) o;
+      int hidden = Opcodes.ACC_PRIVATE | Opcodes.ACC_SYNTHETIC | Opcodes.ACC_BRIDGE;
+      if ((method.access & hidden) == 0) {
+        descriptions.add(
+            Joiner.on(' ').useForNull("-").join(
+                method.access, method.name, method.desc, method.signature, method.exceptions));
+      }
+    }
+    Collections.sort(descriptions);
+    return descriptions;
+  }
+}
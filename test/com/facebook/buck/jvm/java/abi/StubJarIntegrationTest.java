@@ -21,9 +21,12 @@ import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.io.ProjectFilesystem;
 import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.junit.Before;
 import org.junit.Rule;
@@ -35,6 +38,9 @@ import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Enumeration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -130,4 +136,48 @@ public class StubJarIntegrationTest {
       }
     }
   }
+
+  @Test
+  public void stubbingInParallelWritesTheSameJarAndReturnsItsHash() throws IOException {
+    Path serial = Paths.get("junit-serial.jar");
+    Path parallel = Paths.get("junit-parallel.jar");
+    // Enough classes to be split between several threads.
+    Path regularJar = testDataDir.resolve("junit.jar");
+
+    final AtomicInteger helperThreads = new AtomicInteger();
+    ListeningExecutorService singleThreadExecutor =
+        MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+    ListeningExecutorService multiThreadExecutor = MoreExecutors.listeningDecorator(
+        Executors.newFixedThreadPool(
+            4,
+            new ThreadFactory() {
+              @Override
+              public Thread newThread(Runnable runnable) {
+                helperThreads.incrementAndGet();
+                return new Thread(runnable);
+              }
+            }));
+    try {
+      // Otherwise the second jar would be written from the stubs cached by the first.
+      StubJar.invalidateStubCache();
+      new StubJar(regularJar).writeTo(
+          filesystem,
+          serial,
+          singleThreadExecutor,
+          /* maxThreads */ 1);
+      StubJar.invalidateStubCache();
+      HashCode hash = new StubJar(regularJar).writeTo(
+          filesystem,
+          parallel,
+          multiThreadExecutor,
+          /* maxThreads */ 4);
+
+      assertTrue(helperThreads.get() > 0);
+      assertEquals(filesystem.computeSha1(serial).asHashCode(), hash);
+      assertEquals(filesystem.computeSha1(parallel).asHashCode(), hash);
+    } finally {
+      singleThreadExecutor.shutdown();
+      multiThreadExecutor.shutdown();
+    }
+  }
 }
@@ -59,6 +59,7 @@ import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 public class JavaLibrarySymbolsFinderTest {
   @Rule
@@ -101,6 +102,33 @@ public class JavaLibrarySymbolsFinderTest {
         ImmutableSet.copyOf(symbols.required));
   }
 
+  @Test
+  public void extractSymbolsSeesChangesToSrcs() throws IOException {
+    TestDataHelper.createProjectWorkspaceForScenario(
+        this,
+        "java_library_symbols_finder",
+        tmp)
+        .setUp();
+    ProjectFilesystem projectFilesystem = new ProjectFilesystem(tmp.getRoot());
+    Path example1 = Paths.get("Example1.java");
+    JavaLibrarySymbolsFinder finder = new JavaLibrarySymbolsFinder(
+        ImmutableSortedSet.<SourcePath>of(new PathSourcePath(projectFilesystem, example1)),
+        javaFileParser,
+        /* shouldRecordRequiredSymbols */ true);
+    assertEquals(
+        ImmutableSet.of("com.example.Example1"),
+        ImmutableSet.copyOf(finder.extractSymbols().provided));
+
+    projectFilesystem.writeContentsToPath(
+        "package com.example;\nimport com.example.other.Baz;\npublic class Renamed {}\n",
+        example1);
+    Symbols symbols = finder.extractSymbols();
+    assertEquals(ImmutableSet.of("com.example.Renamed"), ImmutableSet.copyOf(symbols.provided));
+    assertEquals(
+        ImmutableSet.of("com.example.other.Baz"),
+        ImmutableSet.copyOf(symbols.required));
+  }
+
   @Test
   public void onlyNonGeneratedSrcsShouldAffectRuleKey() throws IOException {
     TestDataHelper.createProjectWorkspaceForScenario(
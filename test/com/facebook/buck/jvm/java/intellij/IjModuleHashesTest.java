@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.intellij;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.jvm.java.JavaLibraryBuilder;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+public class IjModuleHashesTest {
+
+  private static final HashCode FIRST = Hashing.sha1().hashInt(1);
+  private static final HashCode SECOND = Hashing.sha1().hashInt(2);
+
+  private FakeProjectFilesystem filesystem;
+  private TargetNode<?> guava;
+  private TargetNode<?> base;
+  private IjModuleGraph moduleGraph;
+  private IjModule guavaModule;
+  private IjModule baseModule;
+
+  @Before
+  public void setUp() {
+    filesystem = new FakeProjectFilesystem();
+    guava = JavaLibraryBuilder
+        .createBuilder(BuildTargetFactory.newInstance("//third_party/guava:guava"))
+        .addSrc(Paths.get("third_party/guava/src/Collections.java"))
+        .build();
+    base = JavaLibraryBuilder
+        .createBuilder(BuildTargetFactory.newInstance("//java/com/example/base:base"))
+        .addDep(guava.getBuildTarget())
+        .addSrc(Paths.get("java/com/example/base/Base.java"))
+        .build();
+    moduleGraph = IjModuleGraphTest.createModuleGraph(ImmutableSet.of(guava, base));
+    guavaModule = IjModuleGraphTest.getModuleForTarget(moduleGraph, guava);
+    baseModule = IjModuleGraphTest.getModuleForTarget(moduleGraph, base);
+  }
+
+  @Test
+  public void modulesAreOutOfDateUntilSaved() throws IOException {
+    IjModuleHashes hashes = load(FIRST, FIRST);
+    writeModuleFiles();
+    assertFalse(hashes.isUpToDate(guavaModule));
+    hashes.save();
+
+    hashes = load(FIRST, FIRST);
+    assertTrue(hashes.isUpToDate(guavaModule));
+    assertTrue(hashes.isUpToDate(baseModule));
+  }
+
+  @Test
+  public void onlyModulesWithChangedTargetsAreOutOfDate() throws IOException {
+    writeModuleFiles();
+    load(FIRST, FIRST).save();
+
+    IjModuleHashes hashes = load(FIRST, SECOND);
+    assertTrue(hashes.isUpToDate(guavaModule));
+    assertFalse(hashes.isUpToDate(baseModule));
+  }
+
+  @Test
+  public void missingModuleFilesAreOutOfDate() throws IOException {
+    writeModuleFiles();
+    load(FIRST, FIRST).save();
+    filesystem.deleteFileAtPath(baseModule.getModuleImlFilePath());
+
+    IjModuleHashes hashes = load(FIRST, FIRST);
+    assertTrue(hashes.isUpToDate(guavaModule));
+    assertFalse(hashes.isUpToDate(baseModule));
+  }
+
+  @Test
+  public void invalidatingForgetsAllModules() throws IOException {
+    writeModuleFiles();
+    load(FIRST, FIRST).save();
+    IjModuleHashes.invalidate(filesystem);
+
+    assertFalse(load(FIRST, FIRST).isUpToDate(guavaModule));
+  }
+
+  private IjModuleHashes load(HashCode guavaHash, HashCode baseHash) throws IOException {
+    return IjModuleHashes.load(
+        filesystem,
+        moduleGraph,
+        moduleGraph.getModuleNodes(),
+        ImmutableMap.<BuildTarget, HashCode>of(
+            guava.getBuildTarget(), guavaHash,
+            base.getBuildTarget(), baseHash),
+        /* excludeArtifacts */ false);
+  }
+
+  private void writeModuleFiles() throws IOException {
+    for (IjModule module : moduleGraph.getModuleNodes()) {
+      filesystem.createParentDirs(module.getModuleImlFilePath());
+      filesystem.writeContentsToPath("", module.getModuleImlFilePath());
+    }
+  }
+}
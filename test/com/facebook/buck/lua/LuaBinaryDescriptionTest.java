@@ -19,9 +19,11 @@ package com.facebook.buck.lua;
 import static org.junit.Assert.assertThat;
 
 import com.facebook.buck.cli.FakeBuckConfig;
+import com.facebook.buck.cxx.AbstractCxxLibrary;
 import com.facebook.buck.cxx.CxxBuckConfig;
 import com.facebook.buck.cxx.CxxLibraryBuilder;
 import com.facebook.buck.cxx.CxxPlatformUtils;
+import com.facebook.buck.cxx.CxxPreprocessAndCompile;
 import com.facebook.buck.cxx.CxxTestBuilder;
 import com.facebook.buck.cxx.NativeLinkStrategy;
 import com.facebook.buck.model.BuildTarget;
@@ -37,6 +39,7 @@ import com.facebook.buck.python.PythonPlatform;
 import com.facebook.buck.python.PythonVersion;
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
 import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.CommandTool;
 import com.facebook.buck.rules.FakeSourcePath;
@@ -51,10 +54,13 @@ import com.facebook.buck.testutil.TargetGraphFactory;
 import com.facebook.buck.util.HumanReadableException;
 import com.google.common.base.Functions;
 import com.google.common.base.Optional;
+import com.google.common.base.Predicates;
 import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
 
 import org.hamcrest.Matchers;
 import org.junit.Rule;
@@ -442,4 +448,83 @@ public class LuaBinaryDescriptionTest {
         Matchers.containsInAnyOrder("libomnibus.so", "libcxx.so"));
   }
 
+  @Test
+  public void nativeStarterObjectIsSharedBetweenBinaries() throws Exception {
+    CxxLibraryBuilder cxxBuilder =
+        new CxxLibraryBuilder(BuildTargetFactory.newInstance("//:cxx"))
+            .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(new FakeSourcePath("cxx.c"))));
+    LuaBinaryBuilder firstBuilder =
+        new LuaBinaryBuilder(BuildTargetFactory.newInstance("//:first"))
+            .setMainModule("first")
+            .setDeps(ImmutableSortedSet.of(cxxBuilder.getTarget()));
+    LuaBinaryBuilder secondBuilder =
+        new LuaBinaryBuilder(BuildTargetFactory.newInstance("//:second"))
+            .setMainModule("second")
+            .setDeps(ImmutableSortedSet.of(cxxBuilder.getTarget()));
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(
+            TargetGraphFactory.newInstance(
+                cxxBuilder.build(),
+                firstBuilder.build(),
+                secondBuilder.build()),
+            new DefaultTargetNodeToBuildRuleTransformer());
+    cxxBuilder.build(resolver);
+    firstBuilder.build(resolver);
+    secondBuilder.build(resolver);
+
+    ImmutableSet<BuildRule> firstObjects =
+        getStarterObjectRules(resolver, firstBuilder.getTarget());
+    ImmutableSet<BuildRule> secondObjects =
+        getStarterObjectRules(resolver, secondBuilder.getTarget());
+    // Each binary compiles its own configuration, but they share the rest of the starter.
+    assertThat(firstObjects, Matchers.hasSize(2));
+    assertThat(secondObjects, Matchers.hasSize(2));
+    assertThat(Sets.intersection(firstObjects, secondObjects), Matchers.hasSize(1));
+  }
+
+  @Test
+  public void builtinNativeStarterIsNotSharedWithLibraryStarter() throws Exception {
+    CxxLibraryBuilder cxxBuilder =
+        new CxxLibraryBuilder(BuildTargetFactory.newInstance("//:cxx"))
+            .setSrcs(ImmutableSortedSet.of(SourceWithFlags.of(new FakeSourcePath("cxx.c"))));
+    LuaBinaryBuilder libraryStarterBuilder =
+        new LuaBinaryBuilder(BuildTargetFactory.newInstance("//:library_starter"))
+            .setMainModule("main")
+            .setDeps(ImmutableSortedSet.of(cxxBuilder.getTarget()))
+            .setNativeStarterLibrary(cxxBuilder.getTarget());
+    BuildRuleResolver resolver =
+        new BuildRuleResolver(
+            TargetGraphFactory.newInstance(cxxBuilder.build(), libraryStarterBuilder.build()),
+            new DefaultTargetNodeToBuildRuleTransformer());
+    AbstractCxxLibrary cxxLibrary = (AbstractCxxLibrary) cxxBuilder.build(resolver);
+    libraryStarterBuilder.build(resolver);
+
+    // Uses the same library as the Lua library, so the starter is built in.
+    LuaBinaryBuilder builtinStarterBuilder =
+        new LuaBinaryBuilder(
+            BuildTargetFactory.newInstance("//:builtin_starter"),
+            FakeLuaConfig.DEFAULT.withLuaCxxLibrary(cxxLibrary))
+            .setMainModule("main")
+            .setDeps(ImmutableSortedSet.of(cxxBuilder.getTarget()));
+    builtinStarterBuilder.build(resolver);
+
+    ImmutableSet<BuildRule> libraryStarterObjects =
+        getStarterObjectRules(resolver, libraryStarterBuilder.getTarget());
+    ImmutableSet<BuildRule> builtinStarterObjects =
+        getStarterObjectRules(resolver, builtinStarterBuilder.getTarget());
+    assertThat(libraryStarterObjects, Matchers.hasSize(2));
+    assertThat(builtinStarterObjects, Matchers.hasSize(2));
+    assertThat(Sets.intersection(libraryStarterObjects, builtinStarterObjects), Matchers.empty());
+  }
+
+  private static ImmutableSet<BuildRule> getStarterObjectRules(
+      BuildRuleResolver resolver,
+      BuildTarget binaryTarget) {
+    BuildRule starter =
+        resolver.getRule(binaryTarget.withAppendedFlavors(ImmutableFlavor.of("binary")));
+    return FluentIterable.from(starter.getDeps())
+        .filter(Predicates.instanceOf(CxxPreprocessAndCompile.class))
+        .toSet();
+  }
+
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class BuildTargetInternerTest {
+
+  @Test
+  public void equalTargetsAreInternedToTheSameInstance() {
+    BuildTarget first = BuildTarget.builder(Paths.get("/opt/src/buck"), "//foo", "bar")
+        .addFlavors(ImmutableFlavor.of("baz"))
+        .build();
+    BuildTarget second = BuildTarget.builder(Paths.get("/opt/src/buck"), "//foo", "bar")
+        .addFlavors(ImmutableFlavor.of("baz"))
+        .build();
+    assertNotSame(first, second);
+
+    BuildTarget internedFirst = BuildTargetInterner.intern(first);
+    BuildTarget internedSecond = BuildTargetInterner.intern(second);
+    assertEquals(first, internedFirst);
+    assertSame(internedFirst, internedSecond);
+  }
+
+  @Test
+  public void componentsOfInternedTargetsAreCanonical() {
+    Path cellPath = BuildTargetInterner.internCellPath(Paths.get("/opt/src/other"));
+    Flavor flavor = BuildTargetInterner.intern(ImmutableFlavor.of("qux"));
+
+    BuildTarget target = BuildTargetInterner.intern(
+        BuildTarget.builder(Paths.get("/opt/src/other"), "//foo", "bar")
+            .addFlavors(ImmutableFlavor.of("qux"))
+            .build());
+
+    assertSame(cellPath, target.getCellPath());
+    assertSame(flavor, target.getFlavors().first());
+    assertSame(
+        BuildTargetInterner.intern(target.getUnflavoredBuildTarget()),
+        target.getUnflavoredBuildTarget());
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class BuildFileVersionsTest {
+
+  private static final Path FOO = Paths.get("/project/foo/BUCK");
+  private static final Path BAR = Paths.get("/project/bar/BUCK");
+
+  @Test
+  public void unrelatedBuildFilesDoNotAffectResults() {
+    BuildFileVersions versions = new BuildFileVersions();
+    long version = versions.getCurrentVersion();
+
+    versions.invalidate(BAR);
+
+    assertTrue(versions.isUnchangedSince(version, ImmutableSet.of(FOO)));
+    assertFalse(versions.isUnchangedSince(version, ImmutableSet.of(FOO, BAR)));
+    assertFalse(versions.isUnchangedSince(version));
+  }
+
+  @Test
+  public void invalidationsBeforeTheVersionDoNotAffectResults() {
+    BuildFileVersions versions = new BuildFileVersions();
+    versions.invalidate(FOO);
+    long version = versions.getCurrentVersion();
+
+    assertTrue(versions.isUnchangedSince(version, ImmutableSet.of(FOO)));
+    assertTrue(versions.isUnchangedSince(version));
+  }
+
+  @Test
+  public void invalidatingAllAffectsEveryResult() {
+    BuildFileVersions versions = new BuildFileVersions();
+    long version = versions.getCurrentVersion();
+
+    versions.invalidateAll();
+
+    assertFalse(versions.isUnchangedSince(version, ImmutableSet.<Path>of()));
+    assertFalse(versions.isUnchangedSince(version));
+  }
+}
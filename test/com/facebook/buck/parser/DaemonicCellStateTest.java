@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.parser;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.jvm.java.JavaLibraryBuilder;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.Cell;
+import com.facebook.buck.rules.TargetNode;
+import com.facebook.buck.rules.TestCellBuilder;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.hash.HashCode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Paths;
+
+public class DaemonicCellStateTest {
+
+  private static final HashCode RAW_HASH = HashCode.fromString("123456");
+  private static final HashCode OTHER_RAW_HASH = HashCode.fromString("654321");
+
+  private Cell cell;
+  private DaemonicCellState state;
+  private TargetNode<?> node;
+
+  @Before
+  public void setUp() throws Exception {
+    cell = new TestCellBuilder().setFilesystem(new FakeProjectFilesystem()).build();
+    state = new DaemonicCellState(cell, /* parsingThreads */ 1, new BuildFileVersions());
+    node =
+        JavaLibraryBuilder.createBuilder(BuildTargetFactory.newInstance("//foo:lib"))
+            .addSrc(Paths.get("foo/Foo.java"))
+            .build();
+  }
+
+  @Test
+  public void rawHashesAreCachedUntilAnInputChanges() {
+    assertEquals(RAW_HASH, state.getNodeRawHash(node, Suppliers.ofInstance(RAW_HASH)));
+    assertEquals(RAW_HASH, state.getNodeRawHash(node, Suppliers.ofInstance(OTHER_RAW_HASH)));
+
+    state.invalidatePath(cell.getRoot().resolve("foo/Foo.java"));
+
+    assertEquals(
+        OTHER_RAW_HASH,
+        state.getNodeRawHash(node, Suppliers.ofInstance(OTHER_RAW_HASH)));
+  }
+
+  @Test
+  public void rawHashesInvalidatedWhileBeingComputedAreNotCached() {
+    HashCode staleRawHash = state.getNodeRawHash(
+        node,
+        new Supplier<HashCode>() {
+          @Override
+          public HashCode get() {
+            state.invalidatePath(cell.getRoot().resolve("foo/Foo.java"));
+            return RAW_HASH;
+          }
+        });
+    assertEquals(RAW_HASH, staleRawHash);
+
+    assertEquals(
+        OTHER_RAW_HASH,
+        state.getNodeRawHash(node, Suppliers.ofInstance(OTHER_RAW_HASH)));
+  }
+}
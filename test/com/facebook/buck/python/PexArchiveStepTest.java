@@ -0,0 +1,102 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.python;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.ByteStreams;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class PexArchiveStepTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private Path layout;
+  private Path shebangFile;
+  private Path pex;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    layout = Paths.get("layout");
+    filesystem.mkdirs(layout.resolve("foo"));
+    filesystem.writeContentsToPath("print('main')\n", layout.resolve("__main__.py"));
+    filesystem.writeContentsToPath("print('foo')\n", layout.resolve("foo/foo.py"));
+    shebangFile = Paths.get("shebang");
+    filesystem.writeContentsToPath("#!/usr/bin/env python2.7\n", shebangFile);
+    pex = Paths.get("bin.pex");
+  }
+
+  @Test
+  public void writesAnExecutablePex() throws Exception {
+    archive();
+
+    assertTrue(filesystem.isExecutable(pex));
+    byte[] shebang = "#!/usr/bin/env python2.7\n".getBytes(UTF_8);
+    assertArrayEquals(
+        shebang,
+        Arrays.copyOf(Files.readAllBytes(filesystem.resolve(pex)), shebang.length));
+    try (ZipFile zip = new ZipFile(filesystem.resolve(pex).toFile())) {
+      List<String> names = new ArrayList<>();
+      for (ZipEntry entry : Collections.list(zip.entries())) {
+        names.add(entry.getName());
+      }
+      assertEquals(ImmutableList.of("__main__.py", "foo/foo.py"), names);
+      try (InputStream in = zip.getInputStream(zip.getEntry("foo/foo.py"))) {
+        assertEquals("print('foo')\n", new String(ByteStreams.toByteArray(in), UTF_8));
+      }
+    }
+  }
+
+  @Test
+  public void rebuildingOverThePreviousPexGivesTheSamePex() throws Exception {
+    archive();
+    byte[] previous = Files.readAllBytes(filesystem.resolve(pex));
+    archive();
+
+    assertArrayEquals(previous, Files.readAllBytes(filesystem.resolve(pex)));
+  }
+
+  private void archive() throws Exception {
+    PexArchiveStep step = new PexArchiveStep(filesystem, layout, shebangFile, pex);
+    assertEquals(0, step.execute(TestExecutionContext.newInstance()).getExitCode());
+  }
+}
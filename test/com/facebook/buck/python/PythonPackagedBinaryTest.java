@@ -90,6 +90,7 @@ public class PythonPackagedBinaryTest {
             Optional.<Boolean>absent()),
         ImmutableSortedSet.<String>of(),
         ImmutableSortedSet.<BuildRule>of(),
+        PythonBuckConfig.PexArchiver.PYTHON,
         /* cache */ true);
 
     // Calculate and return the rule key.
@@ -60,6 +60,27 @@ public class FakeQueryEnvironment implements QueryEnvironment {
     throw new QueryException("Method not implemented in FakeQueryEnvironment");
   }
 
+  @Override
+  public Set<QueryTarget> getTransitiveFwdDeps(Set<QueryTarget> targets, int maxDepth)
+      throws QueryException, InterruptedException {
+    throw new QueryException("Method not implemented in FakeQueryEnvironment");
+  }
+
+  @Override
+  public Set<QueryTarget> getTransitiveReverseDeps(
+      Set<QueryTarget> universe,
+      Set<QueryTarget> targets,
+      int maxDepth)
+      throws QueryException, InterruptedException {
+    throw new QueryException("Method not implemented in FakeQueryEnvironment");
+  }
+
+  @Override
+  public Set<QueryTarget> getAllPaths(Set<QueryTarget> from, Set<QueryTarget> to)
+      throws QueryException, InterruptedException {
+    throw new QueryException("Method not implemented in FakeQueryEnvironment");
+  }
+
   @Override
   public void buildTransitiveClosure(
       Set<QueryTarget> targetNodes,
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.util.ObjectMappers;
+import com.facebook.buck.util.concurrent.ListeningSemaphore;
+import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Param;
+import com.google.caliper.api.Macrobenchmark;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a build trace through the build engine's executor to compare scheduling policies.
+ * <p>
+ * A trace maps each rule to how long it took to build and what it depends on:
+ * <pre>
+ * {"//app:proguard": {"type": "android_binary", "durationMillis": 4000, "deps": ["//lib:a"]}, ...}
+ * </pre>
+ * and can be passed in with the {@code tracePath} parameter.  Otherwise, a synthetic trace shaped
+ * like an Android build (many libraries and tests, plus a long ProGuard, dex and packaging chain)
+ * is replayed.  Each rule sleeps for its recorded duration, scaled down by
+ * {@link #MICROS_PER_TRACE_MILLI}, so the measured time is the makespan of the build.
+ */
+public class BuildSchedulingBenchmark {
+
+  private static final long MICROS_PER_TRACE_MILLI = 10;
+
+  @Param({"RANDOM", "CRITICAL_PATH"})
+  private CachingBuildEngine.Scheduling scheduling = CachingBuildEngine.Scheduling.CRITICAL_PATH;
+
+  @Param({"4", "12"})
+  private int threadCount = 4;
+
+  @Param({""})
+  private String tracePath = "";
+
+  private Map<String, TraceEntry> trace;
+  private List<BuildRule> rules;
+  private CriticalPathEstimator estimator;
+  private ExecutorService threadPool;
+  private WeightedListeningExecutorService executor;
+
+  @Before
+  public void setUpTest() throws Exception {
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    trace = tracePath.isEmpty() ? createSyntheticTrace() : readTrace(tracePath);
+
+    SourcePathResolver pathResolver = new SourcePathResolver(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()));
+    Map<String, BuildRule> rulesByTarget = Maps.newHashMap();
+    for (String target : trace.keySet()) {
+      createRule(target, pathResolver, rulesByTarget);
+    }
+    rules = ImmutableList.copyOf(rulesByTarget.values());
+    estimator = new CriticalPathEstimator(
+        rules,
+        new Function<BuildRule, Long>() {
+          @Override
+          public Long apply(BuildRule input) {
+            return trace.get(input.getFullyQualifiedName()).durationMillis;
+          }
+        });
+
+    threadPool = Executors.newFixedThreadPool(threadCount);
+    executor = new WeightedListeningExecutorService(
+        new ListeningSemaphore(threadCount),
+        /* defaultWeight */ 1,
+        MoreExecutors.listeningDecorator(threadPool));
+  }
+
+  @After
+  @AfterExperiment
+  public void cleanup() {
+    threadPool.shutdown();
+  }
+
+  @Test
+  public void replayBuildCorrectness() throws Exception {
+    replayBuild();
+  }
+
+  @Macrobenchmark
+  public void replayBuild() throws Exception {
+    Map<BuildRule, ListenableFuture<?>> results = Maps.newHashMap();
+    List<ListenableFuture<?>> allResults = Lists.newArrayList();
+    for (BuildRule rule : orderForScheduling(rules)) {
+      allResults.add(dispatch(rule, results));
+    }
+    Futures.allAsList(allResults).get();
+  }
+
+  // Mirrors CachingBuildEngine: dispatch deps first, then run the rule once they are done.
+  private ListenableFuture<?> dispatch(
+      final BuildRule rule,
+      Map<BuildRule, ListenableFuture<?>> results) {
+    ListenableFuture<?> result = results.get(rule);
+    if (result != null) {
+      return result;
+    }
+    List<ListenableFuture<?>> deps = Lists.newArrayList();
+    for (BuildRule dep : orderForScheduling(rule.getDeps())) {
+      deps.add(dispatch(dep, results));
+    }
+    final long priority = scheduling == CachingBuildEngine.Scheduling.CRITICAL_PATH ?
+        estimator.getRemainingCriticalPath(rule) :
+        ListeningSemaphore.DEFAULT_PRIORITY;
+    final long sleepMicros =
+        trace.get(rule.getFullyQualifiedName()).durationMillis * MICROS_PER_TRACE_MILLI;
+    result = Futures.transformAsync(
+        Futures.allAsList(deps),
+        new AsyncFunction<List<Object>, Object>() {
+          @Override
+          public ListenableFuture<Object> apply(List<Object> input) {
+            return executor.submit(
+                new Callable<Object>() {
+                  @Override
+                  public Object call() throws InterruptedException {
+                    TimeUnit.MICROSECONDS.sleep(sleepMicros);
+                    return rule;
+                  }
+                },
+                /* weight */ 1,
+                priority);
+          }
+        },
+        MoreExecutors.directExecutor());
+    results.put(rule, result);
+    return result;
+  }
+
+  private List<BuildRule> orderForScheduling(Iterable<BuildRule> rules) {
+    List<BuildRule> ordered = Lists.newArrayList(rules);
+    if (scheduling == CachingBuildEngine.Scheduling.CRITICAL_PATH) {
+      Collections.sort(
+          ordered,
+          new Comparator<BuildRule>() {
+            @Override
+            public int compare(BuildRule a, BuildRule b) {
+              return Long.compare(
+                  estimator.getRemainingCriticalPath(b),
+                  estimator.getRemainingCriticalPath(a));
+            }
+          });
+    } else {
+      Collections.shuffle(ordered);
+    }
+    return ordered;
+  }
+
+  private BuildRule createRule(
+      String target,
+      SourcePathResolver pathResolver,
+      Map<String, BuildRule> rulesByTarget) {
+    BuildRule rule = rulesByTarget.get(target);
+    if (rule != null) {
+      return rule;
+    }
+    ImmutableSortedSet.Builder<BuildRule> deps = ImmutableSortedSet.naturalOrder();
+    for (String dep : trace.get(target).deps) {
+      deps.add(createRule(dep, pathResolver, rulesByTarget));
+    }
+    final String type = trace.get(target).type;
+    rule = new FakeBuildRule(BuildTargetFactory.newInstance(target), pathResolver, deps.build()) {
+      @Override
+      public String getType() {
+        return type;
+      }
+    };
+    rulesByTarget.put(target, rule);
+    return rule;
+  }
+
+  private static Map<String, TraceEntry> readTrace(String path) throws IOException {
+    return ObjectMappers.newDefaultInstance().readValue(
+        new File(path),
+        new TypeReference<Map<String, TraceEntry>>() {});
+  }
+
+  private static Map<String, TraceEntry> createSyntheticTrace() {
+    Random random = new Random(0);
+    Map<String, TraceEntry> trace = Maps.newHashMap();
+    List<String> libraries = Lists.newArrayList();
+    for (int i = 0; i < 200; i++) {
+      String target = "//lib:lib" + i;
+      List<String> deps = Lists.newArrayList();
+      for (int j = 0; j < 3 && !libraries.isEmpty(); j++) {
+        deps.add(libraries.get(random.nextInt(libraries.size())));
+      }
+      trace.put(target, new TraceEntry("java_library", 50 + random.nextInt(250), deps));
+      libraries.add(target);
+    }
+    for (int i = 0; i < 200; i++) {
+      trace.put(
+          "//test:test" + i,
+          new TraceEntry(
+              "java_test",
+              200 + random.nextInt(600),
+              ImmutableList.of(libraries.get(random.nextInt(libraries.size())))));
+    }
+    trace.put("//app:proguard", new TraceEntry("android_binary", 4000, libraries));
+    trace.put(
+        "//app:dex",
+        new TraceEntry("android_binary", 3000, ImmutableList.of("//app:proguard")));
+    trace.put("//app:apk", new TraceEntry("android_binary", 1000, ImmutableList.of("//app:dex")));
+    return trace;
+  }
+
+  private static class TraceEntry {
+    public String type = "unknown";
+    public long durationMillis;
+    public List<String> deps = ImmutableList.of();
+
+    @SuppressWarnings("unused")
+    public TraceEntry() {
+      // For Jackson.
+    }
+
+    public TraceEntry(String type, long durationMillis, List<String> deps) {
+      this.type = type;
+      this.durationMillis = durationMillis;
+      this.deps = deps;
+    }
+  }
+}
@@ -17,13 +17,16 @@
 package com.facebook.buck.rules;
 
 import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.rules.keys.DefaultRuleKeyCache;
 import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.cache.NullFileHashCache;
 import com.facebook.buck.util.concurrent.ListeningSemaphore;
+import com.facebook.buck.util.concurrent.ResourceType;
 import com.facebook.buck.util.concurrent.WeightedListeningExecutorService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 
@@ -43,6 +46,9 @@ public class CachingBuildEngineFactory {
   private CachingBuildEngineDelegate cachingBuildEngineDelegate;
   private WeightedListeningExecutorService executorService;
   private BuildRuleResolver buildRuleResolver;
+  private Optional<RuleDurationHistory> ruleDurationHistory = Optional.absent();
+  private ImmutableMap<String, ImmutableMap<ResourceType, Integer>> resourceAmountsByRuleType =
+      ImmutableMap.of();
 
   public CachingBuildEngineFactory(BuildRuleResolver buildRuleResolver) {
     this.cachingBuildEngineDelegate =
@@ -109,6 +115,18 @@ public class CachingBuildEngineFactory {
     return this;
   }
 
+  public CachingBuildEngineFactory setRuleDurationHistory(
+      RuleDurationHistory ruleDurationHistory) {
+    this.ruleDurationHistory = Optional.of(ruleDurationHistory);
+    return this;
+  }
+
+  public CachingBuildEngineFactory setResourceAmountsByRuleType(
+      ImmutableMap<String, ImmutableMap<ResourceType, Integer>> resourceAmountsByRuleType) {
+    this.resourceAmountsByRuleType = resourceAmountsByRuleType;
+    return this;
+  }
+
   public CachingBuildEngine build() {
     if (ruleKeyFactoriesFunction.isPresent()) {
       return new CachingBuildEngine(
@@ -119,7 +137,9 @@ public class CachingBuildEngineFactory {
           maxDepFileCacheEntries,
           artifactCacheSizeLimit,
           new SourcePathResolver(buildRuleResolver),
-          ruleKeyFactoriesFunction.get());
+          ruleKeyFactoriesFunction.get(),
+          ruleDurationHistory,
+          resourceAmountsByRuleType);
     }
 
     return new CachingBuildEngine(
@@ -132,7 +152,10 @@ public class CachingBuildEngineFactory {
         inputFileSizeLimit,
         objectMapper,
         buildRuleResolver,
-        0);
+        0,
+        Optional.<DefaultRuleKeyCache>absent(),
+        ruleDurationHistory,
+        resourceAmountsByRuleType);
   }
 
   private static WeightedListeningExecutorService toWeighted(ListeningExecutorService service) {
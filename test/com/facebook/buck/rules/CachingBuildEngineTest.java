@@ -35,6 +35,7 @@ import com.facebook.buck.artifact_cache.CacheResultType;
 import com.facebook.buck.artifact_cache.InMemoryArtifactCache;
 import com.facebook.buck.artifact_cache.NoopArtifactCache;
 import com.facebook.buck.cli.CommandEvent;
+import com.facebook.buck.counters.HistogramCounter;
 import com.facebook.buck.event.BuckEvent;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.BuckEventBusFactory;
@@ -843,6 +844,35 @@ public class CachingBuildEngineTest {
       assertThat(result.getCacheResult().getType(), equalTo(CacheResultType.ERROR));
     }
 
+    @Test
+    public void testPhasesOfLocalBuildAreRecordedInPerfStats() throws Exception {
+      BuildContext buildContext =
+          FakeBuildContext.newBuilder()
+              .setArtifactCache(cache)
+              .setJavaPackageFinder(new FakeJavaPackageFinder())
+              .setActionGraph(new ActionGraph(ImmutableList.<BuildRule>of()))
+              .build();
+
+      BuildRule rule =
+          new EmptyBuildRule(
+              new FakeBuildRuleParamsBuilder("//:rule")
+                  .setProjectFilesystem(filesystem)
+                  .build(),
+              pathResolver);
+      CachingBuildEngine cachingBuildEngine = cachingBuildEngineFactory().build();
+
+      BuildResult result = cachingBuildEngine.build(buildContext, rule).get();
+      assertThat(result.getSuccess(), equalTo(BuildRuleSuccessType.BUILT_LOCALLY));
+
+      ImmutableMap<BuildEnginePerfStats.Phase, HistogramCounter> totals =
+          cachingBuildEngine.getPerfStats().getTotals();
+      assertEquals(1, totals.get(BuildEnginePerfStats.Phase.CACHE_FETCH).getCount());
+      assertEquals(1, totals.get(BuildEnginePerfStats.Phase.DEP_WAIT).getCount());
+      assertEquals(1, totals.get(BuildEnginePerfStats.Phase.CACHE_CHECK).getCount());
+      assertEquals(1, totals.get(BuildEnginePerfStats.Phase.STEPS).getCount());
+      assertEquals(0, totals.get(BuildEnginePerfStats.Phase.UNZIP).getCount());
+    }
+
     @Test
     public void testDelegateCalledBeforeRuleCreation() throws Exception {
       // Use the artifact cache when running a simple rule that will build locally.
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+public class CriticalPathEstimatorTest {
+
+  @Test
+  public void remainingCriticalPathIncludesLongestChainOfDependents() {
+    SourcePathResolver pathResolver = new SourcePathResolver(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()));
+
+    // lib is used by a short test and by a long proguard -> dex -> apk chain.
+    BuildRule lib = new FakeBuildRule("//:lib", pathResolver);
+    BuildRule test = new FakeBuildRule("//:test", pathResolver, lib);
+    BuildRule proguard = new FakeBuildRule("//:proguard", pathResolver, lib);
+    BuildRule dex = new FakeBuildRule("//:dex", pathResolver, proguard);
+    BuildRule apk = new FakeBuildRule("//:apk", pathResolver, dex, lib);
+    final ImmutableMap<String, Long> durations = ImmutableMap.<String, Long>builder()
+        .put("//:lib", 5L)
+        .put("//:test", 20L)
+        .put("//:proguard", 10L)
+        .put("//:dex", 7L)
+        .put("//:apk", 3L)
+        .build();
+
+    CriticalPathEstimator estimator = new CriticalPathEstimator(
+        ImmutableList.of(test, apk),
+        new Function<BuildRule, Long>() {
+          @Override
+          public Long apply(BuildRule input) {
+            return durations.get(input.getFullyQualifiedName());
+          }
+        });
+
+    assertEquals(3L, estimator.getRemainingCriticalPath(apk));
+    assertEquals(10L, estimator.getRemainingCriticalPath(dex));
+    assertEquals(20L, estimator.getRemainingCriticalPath(proguard));
+    assertEquals(20L, estimator.getRemainingCriticalPath(test));
+    assertEquals(25L, estimator.getRemainingCriticalPath(lib));
+  }
+}
@@ -33,6 +33,7 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -316,4 +317,103 @@ public class ManifestTest {
         Matchers.equalTo(2));
   }
 
+  @Test
+  public void evictOldestEntries() throws IOException {
+    Manifest manifest =
+        Manifest.fromMap(
+            ImmutableMap.of(
+                new RuleKey("aa"),
+                ImmutableMap.of("foo.h", HashCode.fromInt(1)),
+                new RuleKey("bb"),
+                ImmutableMap.of("foo.h", HashCode.fromInt(2)),
+                new RuleKey("cc"),
+                ImmutableMap.of("bar.h", HashCode.fromInt(3))));
+    manifest.evictOldestEntries(2);
+
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    manifest.serialize(byteArrayOutputStream);
+    assertThat(
+        new Manifest(new ByteArrayInputStream(byteArrayOutputStream.toByteArray())).toMap(),
+        Matchers.equalTo(
+            ImmutableMap.of(
+                new RuleKey("bb"),
+                ImmutableMap.of("foo.h", HashCode.fromInt(2)),
+                new RuleKey("cc"),
+                ImmutableMap.of("bar.h", HashCode.fromInt(3)))));
+  }
+
+  @Test
+  public void addingAnEntryWithTheSameInputsReplacesTheOldOne() throws IOException {
+    SourcePath input = new FakeSourcePath("input.h");
+    FileHashCache fileHashCache =
+        new FakeFileHashCache(
+            ImmutableMap.of(RESOLVER.getAbsolutePath(input), HashCode.fromInt(1)));
+    Manifest manifest = new Manifest();
+    manifest.addEntry(
+        fileHashCache,
+        new RuleKey("aa"),
+        RESOLVER,
+        ImmutableSet.of(input),
+        ImmutableSet.of(input));
+    manifest.addEntry(
+        fileHashCache,
+        new RuleKey("bb"),
+        RESOLVER,
+        ImmutableSet.of(input),
+        ImmutableSet.of(input));
+    assertThat(manifest.size(), Matchers.equalTo(1));
+    assertThat(
+        manifest.lookup(fileHashCache, RESOLVER, ImmutableSet.of(input)),
+        Matchers.equalTo(Optional.of(new RuleKey("bb"))));
+  }
+
+  @Test
+  public void lookupPrefersTheMostRecentEntryAcrossGroups() throws IOException {
+    SourcePath foo = new FakeSourcePath("foo.h");
+    SourcePath bar = new FakeSourcePath("bar.h");
+    FileHashCache fileHashCache =
+        new FakeFileHashCache(
+            ImmutableMap.of(
+                RESOLVER.getAbsolutePath(foo),
+                HashCode.fromInt(1),
+                RESOLVER.getAbsolutePath(bar),
+                HashCode.fromInt(2)));
+    Manifest manifest =
+        Manifest.fromMap(
+            ImmutableMap.of(
+                new RuleKey("aa"),
+                ImmutableMap.of(RESOLVER.getRelativePath(foo).toString(), HashCode.fromInt(1)),
+                new RuleKey("bb"),
+                ImmutableMap.of(
+                    RESOLVER.getRelativePath(foo).toString(),
+                    HashCode.fromInt(1),
+                    RESOLVER.getRelativePath(bar).toString(),
+                    HashCode.fromInt(2))));
+    assertThat(
+        manifest.lookup(fileHashCache, RESOLVER, ImmutableSet.of(foo, bar)),
+        Matchers.equalTo(Optional.of(new RuleKey("bb"))));
+  }
+
+  @Test
+  public void readsLegacyManifests() throws IOException {
+    ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    DataOutputStream output = new DataOutputStream(byteArrayOutputStream);
+    output.writeInt(0);
+    output.writeInt(1);
+    output.writeUTF("foo/bar.h");
+    output.writeInt(1);
+    output.writeInt(0);
+    output.writeUTF(HashCode.fromInt(20).toString());
+    output.writeInt(1);
+    output.writeInt(1);
+    output.writeInt(0);
+    output.writeUTF("aa");
+    assertThat(
+        new Manifest(new ByteArrayInputStream(byteArrayOutputStream.toByteArray())).toMap(),
+        Matchers.equalTo(
+            ImmutableMap.of(
+                new RuleKey("aa"),
+                ImmutableMap.of("foo/bar.h", HashCode.fromInt(20)))));
+  }
+
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Test;
+
+public class RuleDurationHistoryTest {
+
+  @Test
+  public void estimatesFallBackToTypeAndThenOverallAverages() {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    ObjectMapper objectMapper = ObjectMappers.newDefaultInstance();
+    SourcePathResolver pathResolver = new SourcePathResolver(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()));
+
+    BuildRule a = createRule("//:a", "java_library", pathResolver);
+    BuildRule b = createRule("//:b", "java_library", pathResolver);
+    BuildRule c = createRule("//:c", "genrule", pathResolver);
+    BuildRule d = createRule("//:d", "java_library", pathResolver);
+    BuildRule e = createRule("//:e", "cxx_library", pathResolver);
+
+    RuleDurationHistory history = RuleDurationHistory.load(filesystem, objectMapper);
+    history.record(a, 10);
+    history.record(b, 20);
+    history.record(c, 90);
+    history.save(filesystem, objectMapper);
+
+    history = RuleDurationHistory.load(filesystem, objectMapper);
+    assertEquals(10, history.estimateDurationMillis(a));
+    assertEquals(15, history.estimateDurationMillis(d));
+    assertEquals(40, history.estimateDurationMillis(e));
+  }
+
+  private static BuildRule createRule(
+      String target,
+      final String type,
+      SourcePathResolver pathResolver) {
+    return new FakeBuildRule(BuildTargetFactory.newInstance(target), pathResolver) {
+      @Override
+      public String getType() {
+        return type;
+      }
+    };
+  }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.util.concurrent.ResourceType;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Test;
+
+public class RuleScheduleInfoTest {
+
+  @Test
+  public void onlyTheGivenResourceAmountsAreReplaced() {
+    RuleScheduleInfo declared =
+        RuleScheduleInfo.builder()
+            .setJobsMultiplier(4)
+            .setMemoryMegabytes(1024)
+            .build();
+
+    assertEquals(
+        RuleScheduleInfo.builder()
+            .setJobsMultiplier(4)
+            .setMemoryMegabytes(2048)
+            .setDiskIOTokens(1)
+            .build(),
+        declared.withResourceAmounts(
+            ImmutableMap.of(ResourceType.MEMORY, 2048, ResourceType.DISK_IO, 1)));
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.event.BuckEventBus;
+import com.facebook.buck.event.BuckEventBusFactory;
+import com.facebook.buck.hashing.FileHashLoader;
+import com.facebook.buck.io.ArchiveMemberPath;
+import com.facebook.buck.jvm.java.JavaLibraryBuilder;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.TargetGraphFactory;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Param;
+import com.google.caliper.api.Macrobenchmark;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares hashing a synthetic target graph from scratch, as {@code buck targets
+ * --show-target-hash} does, with hashing it incrementally after a single file has changed, as
+ * {@code --incremental-target-hash} does.
+ * <p>
+ * Each target has a few sources and depends on a few targets created before it.  Reading a source
+ * is simulated by hashing {@link #SOURCE_SIZE} bytes.
+ */
+public class TargetGraphHashingBenchmark {
+
+  private static final int SOURCE_SIZE = 4096;
+  private static final int SOURCES_PER_TARGET = 3;
+  private static final int MAX_DEPS_PER_TARGET = 4;
+  private static final int TARGETS_PER_PACKAGE = 10;
+
+  @Param({"20000", "200000"})
+  private int targetCount = 2000;
+
+  @Param({"4", "12"})
+  private int threadCount = 4;
+
+  private BuckEventBus eventBus;
+  private FakeProjectFilesystem filesystem;
+  private TargetGraph targetGraph;
+  private List<TargetNode<?>> nodes;
+  private FileHashLoader fileHashLoader;
+  private ImmutableSet<Path> changedPaths;
+
+  @Before
+  public void setUpTest() throws Exception {
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    eventBus = BuckEventBusFactory.newInstance();
+    filesystem = new FakeProjectFilesystem();
+    Random random = new Random(0);
+    nodes = Lists.newArrayListWithCapacity(targetCount);
+    for (int i = 0; i < targetCount; i++) {
+      String basePath = "pkg" + (i / TARGETS_PER_PACKAGE);
+      JavaLibraryBuilder builder = JavaLibraryBuilder.createBuilder(
+          BuildTargetFactory.newInstance(String.format("//%s:lib%d", basePath, i)),
+          filesystem);
+      for (int j = 0; j < SOURCES_PER_TARGET; j++) {
+        builder.addSrc(Paths.get(basePath, String.format("Lib%dSource%d.java", i, j)));
+      }
+      for (int j = random.nextInt(MAX_DEPS_PER_TARGET + 1); i > 0 && j > 0; j--) {
+        builder.addDep(nodes.get(random.nextInt(i)).getBuildTarget());
+      }
+      nodes.add(builder.build());
+    }
+    targetGraph = TargetGraphFactory.newInstance(ImmutableSet.copyOf(nodes));
+    fileHashLoader = new SimulatedFileHashLoader();
+
+    // Change a source of a target in the middle of the graph, and record the raw hashes of the
+    // graph before the change.
+    changedPaths = ImmutableSet.of(
+        filesystem.resolve(nodes.get(targetCount / 2).getInputs().iterator().next()));
+    TargetNodeRawHashManifest manifest = TargetNodeRawHashManifest.load(
+        filesystem,
+        ImmutableSet.<Path>of(),
+        Optional.<TargetNodeRawHashCache>absent());
+    newTargetGraphHashing().setRawHashCache(manifest).hashTargetGraph();
+    manifest.save();
+  }
+
+  @Test
+  public void hashIncrementallyCorrectness() throws Exception {
+    assertEquals(hashFromScratch(), hashIncrementally());
+  }
+
+  @Macrobenchmark
+  public ImmutableMap<BuildTarget, HashCode> hashFromScratch() throws Exception {
+    return newTargetGraphHashing().hashTargetGraph();
+  }
+
+  @Macrobenchmark
+  public ImmutableMap<BuildTarget, HashCode> hashIncrementally() throws Exception {
+    return newTargetGraphHashing()
+        .setRawHashCache(
+            TargetNodeRawHashManifest.load(
+                filesystem,
+                changedPaths,
+                Optional.<TargetNodeRawHashCache>absent()))
+        .hashTargetGraph();
+  }
+
+  private TargetGraphHashing newTargetGraphHashing() {
+    return new TargetGraphHashing(eventBus, targetGraph, fileHashLoader, nodes)
+        .setNumThreads(threadCount);
+  }
+
+  private static class SimulatedFileHashLoader implements FileHashLoader {
+
+    @Override
+    public HashCode get(Path path) throws IOException {
+      byte[] contents = new byte[SOURCE_SIZE];
+      new Random(path.hashCode()).nextBytes(contents);
+      return Hashing.sha1().hashBytes(contents);
+    }
+
+    @Override
+    public long getSize(Path path) throws IOException {
+      return SOURCE_SIZE;
+    }
+
+    @Override
+    public HashCode get(ArchiveMemberPath archiveMemberPath) throws IOException {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -35,6 +35,7 @@ import com.facebook.buck.testutil.TargetGraphFactory;
 import com.facebook.buck.timing.IncrementingFakeClock;
 import com.facebook.buck.util.cache.FileHashCache;
 import com.facebook.buck.util.cache.NullFileHashCache;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -45,6 +46,7 @@ import org.junit.Test;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.Map;
 
 public class TargetGraphHashingTest {
@@ -239,6 +241,71 @@ public class TargetGraphHashingTest {
         not(equalTo(resultB.get(depTarget))));
   }
 
+  @Test
+  public void rawHashesAreReusedFromCache()
+      throws IOException, InterruptedException, AcyclicDepthFirstPostOrderTraversal.CycleException {
+    FakeProjectFilesystem projectFilesystem = new FakeProjectFilesystem();
+    BuckEventBus eventBus = new BuckEventBus(new IncrementingFakeClock(), new BuildId());
+
+    TargetNode<?> node = createJavaLibraryTargetNodeWithSrcs(
+        BuildTargetFactory.newInstance("//foo:lib"),
+        HashCode.fromLong(64738),
+        ImmutableSet.of(Paths.get("foo/FooLib.java")));
+    TargetGraph targetGraph = TargetGraphFactory.newInstance(node);
+
+    FileHashCache baseCache = new FakeFileHashCache(
+        ImmutableMap.of(
+            projectFilesystem.resolve("foo/FooLib.java"), HashCode.fromString("abcdef")));
+
+    FileHashCache modifiedCache = new FakeFileHashCache(
+        ImmutableMap.of(
+            projectFilesystem.resolve("foo/FooLib.java"), HashCode.fromString("abc1ef")));
+
+    final Map<TargetNode<?>, HashCode> rawHashes = new HashMap<>();
+    TargetNodeRawHashCache rawHashCache = new TargetNodeRawHashCache() {
+      @Override
+      public HashCode get(TargetNode<?> node, Supplier<HashCode> loader) {
+        if (!rawHashes.containsKey(node)) {
+          rawHashes.put(node, loader.get());
+        }
+        return rawHashes.get(node);
+      }
+    };
+
+    Map<BuildTarget, HashCode> baseResult = new TargetGraphHashing(
+        eventBus,
+        targetGraph,
+        baseCache,
+        ImmutableList.<TargetNode<?>>of(node))
+        .setRawHashCache(rawHashCache)
+        .hashTargetGraph();
+    assertThat(rawHashes, aMapWithSize(1));
+
+    // The file hashes are not consulted again, so the stale raw hash is reused.
+    Map<BuildTarget, HashCode> cachedResult = new TargetGraphHashing(
+        eventBus,
+        targetGraph,
+        modifiedCache,
+        ImmutableList.<TargetNode<?>>of(node))
+        .setRawHashCache(rawHashCache)
+        .hashTargetGraph();
+    assertThat(
+        cachedResult.get(node.getBuildTarget()),
+        equalTo(baseResult.get(node.getBuildTarget())));
+
+    rawHashes.clear();
+    Map<BuildTarget, HashCode> modifiedResult = new TargetGraphHashing(
+        eventBus,
+        targetGraph,
+        modifiedCache,
+        ImmutableList.<TargetNode<?>>of(node))
+        .setRawHashCache(rawHashCache)
+        .hashTargetGraph();
+    assertThat(
+        modifiedResult.get(node.getBuildTarget()),
+        not(equalTo(baseResult.get(node.getBuildTarget()))));
+  }
+
   private static TargetNode<?> createJavaLibraryTargetNodeWithSrcs(
       BuildTarget buildTarget,
       HashCode hashCode,
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules;
+
+import static org.junit.Assert.assertEquals;
+
+import com.facebook.buck.jvm.java.JavaLibraryBuilder;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.base.Optional;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.HashCode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class TargetNodeRawHashManifestTest {
+
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//foo:lib");
+  private static final HashCode RAW_INPUTS = HashCode.fromString("abcdef");
+  private static final HashCode RAW_HASH = HashCode.fromString("123456");
+  private static final HashCode COMPUTED_RAW_HASH = HashCode.fromString("654321");
+
+  private FakeProjectFilesystem filesystem;
+  private TargetNode<?> node;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = new FakeProjectFilesystem();
+    node = createNode(RAW_INPUTS);
+    TargetNodeRawHashManifest manifest = load();
+    manifest.get(node, Suppliers.ofInstance(RAW_HASH));
+    manifest.save();
+  }
+
+  @Test
+  public void rawHashesAreReusedWhenNothingChanged() {
+    assertEquals(RAW_HASH, getRawHash(load(), node));
+  }
+
+  @Test
+  public void rawHashesOfNodesReferencingChangedFilesAreNotReused() {
+    assertEquals(COMPUTED_RAW_HASH, getRawHash(load("foo/Foo.java"), node));
+    assertEquals(COMPUTED_RAW_HASH, getRawHash(load("foo"), node));
+    assertEquals(RAW_HASH, getRawHash(load("foo/Bar.java"), node));
+  }
+
+  @Test
+  public void rawHashesOfReparsedNodesAreNotReused() {
+    assertEquals(
+        COMPUTED_RAW_HASH,
+        getRawHash(load(), createNode(HashCode.fromString("fedcba"))));
+  }
+
+  @Test
+  public void rawHashesOfNodesNotHashedAreForgotten() throws IOException {
+    load("foo/Bar.java").save();
+    assertEquals(COMPUTED_RAW_HASH, getRawHash(load(), node));
+  }
+
+  @Test
+  public void newManifestsDontReuseSavedRawHashes() throws IOException {
+    TargetNodeRawHashManifest manifest =
+        TargetNodeRawHashManifest.create(filesystem, Optional.<TargetNodeRawHashCache>absent());
+    assertEquals(COMPUTED_RAW_HASH, getRawHash(manifest, node));
+    manifest.save();
+    // The hashes computed from scratch are saved for the next run.
+    assertEquals(
+        COMPUTED_RAW_HASH,
+        load().get(node, Suppliers.ofInstance(HashCode.fromString("abcabc"))));
+  }
+
+  private TargetNodeRawHashManifest load(String... changedPaths) {
+    ImmutableSet.Builder<Path> absoluteChangedPaths = ImmutableSet.builder();
+    for (String changedPath : changedPaths) {
+      absoluteChangedPaths.add(filesystem.resolve(changedPath));
+    }
+    return TargetNodeRawHashManifest.load(
+        filesystem,
+        absoluteChangedPaths.build(),
+        Optional.<TargetNodeRawHashCache>absent());
+  }
+
+  private static HashCode getRawHash(TargetNodeRawHashManifest manifest, TargetNode<?> node) {
+    return manifest.get(node, Suppliers.ofInstance(COMPUTED_RAW_HASH));
+  }
+
+  private static TargetNode<?> createNode(HashCode rawInputsHashCode) {
+    return JavaLibraryBuilder.createBuilder(TARGET, rawInputsHashCode)
+        .addSrc(Paths.get("foo/Foo.java"))
+        .build();
+  }
+}
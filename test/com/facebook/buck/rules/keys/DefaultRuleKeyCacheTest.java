@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.rules.keys;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.AddToRuleKey;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.FakeBuildRule;
+import com.facebook.buck.rules.PathSourcePath;
+import com.facebook.buck.rules.RuleKey;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.testutil.FakeFileHashCache;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.WatchEventsForTests;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.util.HashMap;
+
+public class DefaultRuleKeyCacheTest {
+
+  private ProjectFilesystem filesystem;
+  private SourcePathResolver pathResolver;
+  private FakeFileHashCache hashCache;
+  private DefaultRuleKeyCache ruleKeyCache;
+
+  @Before
+  public void setUp() {
+    filesystem = new FakeProjectFilesystem();
+    pathResolver = new SourcePathResolver(
+        new BuildRuleResolver(TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()));
+    hashCache = new FakeFileHashCache(
+        new HashMap<>(
+            ImmutableMap.of(
+                filesystem.resolve("a/A.java"), HashCode.fromInt(1),
+                filesystem.resolve("b/B.java"), HashCode.fromInt(2),
+                filesystem.resolve("c/C.java"), HashCode.fromInt(3),
+                Paths.get("/usr/bin/tool").toAbsolutePath(), HashCode.fromInt(4))));
+    ruleKeyCache = new DefaultRuleKeyCache(filesystem);
+  }
+
+  @Test
+  public void changedInputsInvalidateTheirDependents() {
+    BuildRule a = new RuleWithSource("//a:a", Paths.get("a/A.java"));
+    BuildRule b = new RuleWithSource("//b:b", Paths.get("b/B.java"), a);
+    BuildRule c = new RuleWithSource("//c:c", Paths.get("c/C.java"));
+
+    RuleKey bKey = newFactory().build(b);
+    RuleKey cKey = newFactory().build(c);
+    assertTrue(ruleKeyCache.isCached(a));
+    assertTrue(ruleKeyCache.isCached(b));
+    assertTrue(ruleKeyCache.isCached(c));
+
+    // Nothing changed, so a new build gets its keys straight from the cache.
+    hashCache.set(filesystem.resolve("b/B.java"), HashCode.fromInt(5));
+    assertEquals(bKey, newFactory().build(b));
+
+    ruleKeyCache.invalidateBasedOn(
+        WatchEventsForTests.createPathEvent(
+            Paths.get("a/A.java"),
+            StandardWatchEventKinds.ENTRY_MODIFY));
+    assertFalse(ruleKeyCache.isCached(a));
+    assertFalse(ruleKeyCache.isCached(b));
+    assertTrue(ruleKeyCache.isCached(c));
+
+    assertNotEquals(bKey, newFactory().build(b));
+    assertEquals(cKey, newFactory().build(c));
+  }
+
+  @Test
+  public void keysReadingUnwatchedFilesAreNotCached() {
+    Path toolPath = Paths.get("/usr/bin/tool").toAbsolutePath();
+    BuildRule tool = new RuleWithSource("//tool:tool", toolPath);
+    BuildRule a = new RuleWithSource("//a:a", Paths.get("a/A.java"), tool);
+
+    newFactory().build(a);
+    assertFalse(ruleKeyCache.isCached(tool));
+    assertFalse(ruleKeyCache.isCached(a));
+  }
+
+  @Test
+  public void overflowInvalidatesEverything() {
+    BuildRule a = new RuleWithSource("//a:a", Paths.get("a/A.java"));
+
+    newFactory().build(a);
+    assertTrue(ruleKeyCache.isCached(a));
+
+    ruleKeyCache.invalidateBasedOn(WatchEventsForTests.createOverflowEvent());
+    assertFalse(ruleKeyCache.isCached(a));
+  }
+
+  private DefaultRuleKeyBuilderFactory newFactory() {
+    return new DefaultRuleKeyBuilderFactory(
+        0,
+        hashCache,
+        pathResolver,
+        Optional.of(ruleKeyCache));
+  }
+
+  private class RuleWithSource extends FakeBuildRule {
+
+    @AddToRuleKey
+    private final SourcePath source;
+
+    public RuleWithSource(String target, Path source, BuildRule... deps) {
+      super(BuildTargetFactory.newInstance(target), filesystem, pathResolver, deps);
+      this.source = new PathSourcePath(filesystem, source);
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.step.fs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.io.ProjectFilesystem;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class SyncSymlinkTreeStepTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private Path root;
+
+  @Before
+  public void setUp() throws IOException {
+    filesystem = new ProjectFilesystem(tmp.getRoot());
+    root = Paths.get("link-tree");
+    for (String source : new String[] {"foo", "bar", "baz"}) {
+      filesystem.writeContentsToPath(source, Paths.get(source));
+    }
+  }
+
+  @Test
+  public void firstSyncReplacesWhateverWasThere() throws IOException {
+    filesystem.mkdirs(root.resolve("stale"));
+    filesystem.writeContentsToPath("stale", root.resolve("stale/file"));
+
+    sync(ImmutableMap.of("a", "foo", "dir/b", "bar"));
+
+    assertEquals(Optional.of("foo"), filesystem.readFirstLine(root.resolve("a")));
+    assertEquals(Optional.of("bar"), filesystem.readFirstLine(root.resolve("dir/b")));
+    assertFalse(filesystem.exists(root.resolve("stale")));
+  }
+
+  @Test
+  public void laterSyncsOnlyChangeTheLinksWhichDiffer() throws IOException {
+    sync(ImmutableMap.of("a", "foo", "b", "bar", "dir/c", "baz"));
+    Path unchanged = filesystem.readSymLink(root.resolve("a"));
+
+    sync(ImmutableMap.of("a", "foo", "b", "baz", "dir", "bar"));
+
+    assertEquals(Optional.of("foo"), filesystem.readFirstLine(root.resolve("a")));
+    assertEquals(Optional.of("baz"), filesystem.readFirstLine(root.resolve("b")));
+    assertEquals(Optional.of("bar"), filesystem.readFirstLine(root.resolve("dir")));
+    assertEquals(unchanged, filesystem.readSymLink(root.resolve("a")));
+  }
+
+  @Test
+  public void filesWrittenIntoTheTreeAreRemoved() throws IOException {
+    sync(ImmutableMap.of("a.py", "foo", "dir/b.py", "bar", "dir/c.py", "baz"));
+    // As python 2 would after importing the modules from the tree.
+    filesystem.writeContentsToPath("compiled", root.resolve("a.pyc"));
+    filesystem.writeContentsToPath("compiled", root.resolve("dir/b.pyc"));
+    filesystem.writeContentsToPath("compiled", root.resolve("dir/c.pyc"));
+
+    sync(ImmutableMap.of("a.py", "foo", "dir", "bar"));
+
+    assertEquals(Optional.of("foo"), filesystem.readFirstLine(root.resolve("a.py")));
+    assertEquals(Optional.of("bar"), filesystem.readFirstLine(root.resolve("dir")));
+    assertTrue(filesystem.isSymLink(root.resolve("dir")));
+    assertFalse(filesystem.exists(root.resolve("a.pyc")));
+  }
+
+  @Test
+  public void linksRemovedBehindTheManifestsBackAreRecreated() throws IOException {
+    sync(ImmutableMap.of("a", "foo"));
+    filesystem.deleteFileAtPath(root.resolve("a"));
+
+    sync(ImmutableMap.of("a", "foo"));
+
+    assertEquals(Optional.of("foo"), filesystem.readFirstLine(root.resolve("a")));
+  }
+
+  private void sync(ImmutableMap<String, String> links) {
+    ImmutableMap.Builder<Path, Path> paths = ImmutableMap.builder();
+    for (ImmutableMap.Entry<String, String> link : links.entrySet()) {
+      paths.put(Paths.get(link.getKey()), Paths.get(link.getValue()));
+    }
+    SyncSymlinkTreeStep step = new SyncSymlinkTreeStep(filesystem, root, paths.build());
+    assertEquals(0, step.execute(TestExecutionContext.newInstance()).getExitCode());
+  }
+}
@@ -28,6 +28,7 @@ import com.facebook.buck.io.HashingDeterministicJarWriter;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
 import com.google.common.io.ByteSource;
@@ -177,53 +178,57 @@ public class DefaultFileHashCacheTest {
     assertEquals(expected, actual);
   }
 
-  @Test(expected = NoSuchFileException.class)
-  public void whenJarMemberWithoutHashInManifestIsQueriedThenThrow()
+  @Test
+  public void whenJarMemberWithoutHashInManifestIsQueriedThenItsCrcAndSizeAreUsed()
       throws IOException {
     ProjectFilesystem filesystem = new FakeProjectFilesystem();
     DefaultFileHashCache cache = new DefaultFileHashCache(filesystem, Optional.<Path>absent());
 
     Path abiJarPath = Paths.get("test-abi.jar");
     Path memberPath = Paths.get("Unhashed.txt");
-    String memberContents = "Some contents";
+    byte[] memberContents = "Some contents".getBytes(StandardCharsets.UTF_8);
     try (HashingDeterministicJarWriter jar = new HashingDeterministicJarWriter(
         new JarOutputStream(filesystem.newFileOutputStream(abiJarPath)))) {
       jar
           .writeEntry(
               "SomeClass.class",
-              ByteSource.wrap(memberContents.getBytes(StandardCharsets.UTF_8)))
+              ByteSource.wrap(memberContents))
           .writeUnhashedEntry(
               memberPath.toString(),
-              ByteSource.wrap(memberContents.getBytes(StandardCharsets.UTF_8)));
+              ByteSource.wrap(memberContents));
     }
 
-    cache.get(ArchiveMemberPath.of(filesystem.resolve(abiJarPath), memberPath));
+    assertEquals(
+        fingerprint(memberContents),
+        cache.get(ArchiveMemberPath.of(filesystem.resolve(abiJarPath), memberPath)));
   }
 
-  @Test(expected = UnsupportedOperationException.class)
-  public void whenJarMemberWithoutManifestIsQueriedThenThrow() throws IOException {
+  @Test
+  public void whenJarMemberWithoutManifestIsQueriedThenItsCrcAndSizeAreUsed() throws IOException {
     ProjectFilesystem filesystem = new FakeProjectFilesystem();
     DefaultFileHashCache cache = new DefaultFileHashCache(filesystem, Optional.<Path>absent());
 
     Path abiJarPath = Paths.get("no-manifest.jar");
     Path memberPath = Paths.get("Empty.class");
+    byte[] memberContents = "Contents".getBytes(StandardCharsets.UTF_8);
 
     try (JarOutputStream jar = new JarOutputStream(filesystem.newFileOutputStream(abiJarPath))) {
       jar.putNextEntry(new JarEntry(memberPath.toString()));
-      jar.write("Contents".getBytes(StandardCharsets.UTF_8));
+      jar.write(memberContents);
       jar.closeEntry();
     }
 
-    cache.get(ArchiveMemberPath.of(filesystem.resolve(abiJarPath), memberPath));
+    assertEquals(
+        fingerprint(memberContents),
+        cache.get(ArchiveMemberPath.of(filesystem.resolve(abiJarPath), memberPath)));
   }
 
   @Test(expected = NoSuchFileException.class)
-  public void whenJarMemberWithEmptyManifestIsQueriedThenThrow() throws IOException {
+  public void whenMissingJarMemberIsQueriedThenThrow() throws IOException {
     ProjectFilesystem filesystem = new FakeProjectFilesystem();
     DefaultFileHashCache cache = new DefaultFileHashCache(filesystem, Optional.<Path>absent());
 
     Path abiJarPath = Paths.get("empty-manifest.jar");
-    Path memberPath = Paths.get("Empty.class");
 
     try (HashingDeterministicJarWriter jar = new HashingDeterministicJarWriter(
         new JarOutputStream(filesystem.newFileOutputStream(abiJarPath)))) {
@@ -232,11 +237,39 @@ public class DefaultFileHashCacheTest {
               JarFile.MANIFEST_NAME,
               ByteSource.wrap(new byte[0]))
           .writeUnhashedEntry(
-              memberPath.toString(),
+              "Empty.class",
               ByteSource.wrap("Contents".getBytes(StandardCharsets.UTF_8)));
     }
 
-    cache.get(ArchiveMemberPath.of(filesystem.resolve(abiJarPath), memberPath));
+    cache.get(ArchiveMemberPath.of(filesystem.resolve(abiJarPath), Paths.get("Missing.class")));
+  }
+
+  @Test
+  public void strictJarContentHasherHashesMemberContents() throws IOException {
+    ProjectFilesystem filesystem = new FakeProjectFilesystem();
+    Path jarPath = Paths.get("no-manifest.jar");
+    byte[] memberContents = "Contents".getBytes(StandardCharsets.UTF_8);
+
+    try (JarOutputStream jar = new JarOutputStream(filesystem.newFileOutputStream(jarPath))) {
+      jar.putNextEntry(new JarEntry("dir/"));
+      jar.closeEntry();
+      jar.putNextEntry(new JarEntry("dir/Empty.class"));
+      jar.write(memberContents);
+      jar.closeEntry();
+    }
+
+    assertEquals(
+        ImmutableMap.of(
+            Paths.get("dir/Empty.class"),
+            HashCodeAndFileType.ofFile(Hashing.sha1().hashBytes(memberContents))),
+        new JarContentHasher(filesystem, jarPath, /* strict */ true).getContentHashes());
+  }
+
+  private static HashCode fingerprint(byte[] contents) {
+    return Hashing.sha1().newHasher()
+        .putLong(Hashing.crc32().hashBytes(contents).padToLong())
+        .putLong(contents.length)
+        .hash();
   }
 
   @Test
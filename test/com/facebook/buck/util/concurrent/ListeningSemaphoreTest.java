@@ -181,6 +181,33 @@ public class ListeningSemaphoreTest {
     assertTrue(second.get());
   }
 
+  @Test
+  public void blockedAcquisitionsAreGrantedByPriority() {
+    ListeningSemaphore semaphore = new ListeningSemaphore(1);
+    assertTrue(acquire(semaphore, 1).get());
+
+    // Queue up acquisitions of mixed priorities behind the first one.
+    AtomicBoolean low = acquire(semaphore, 1, 1);
+    AtomicBoolean high = acquire(semaphore, 1, 10);
+    AtomicBoolean lowSecond = acquire(semaphore, 1, 1);
+    AtomicBoolean highSecond = acquire(semaphore, 1, 10);
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(4));
+
+    // Higher priorities go first, and equal priorities go in the order they were queued.
+    semaphore.release(1);
+    assertTrue(high.get());
+    assertFalse(highSecond.get());
+    semaphore.release(1);
+    assertTrue(highSecond.get());
+    assertFalse(low.get());
+    semaphore.release(1);
+    assertTrue(low.get());
+    assertFalse(lowSecond.get());
+    semaphore.release(1);
+    assertTrue(lowSecond.get());
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(0));
+  }
+
   @Test
   public void cancelledWhileBlocked() {
     ListeningSemaphore semaphore = new ListeningSemaphore(1);
@@ -252,10 +279,74 @@ public class ListeningSemaphoreTest {
     assertThat(semaphore.availablePermits(), Matchers.equalTo(10));
   }
 
+  @Test
+  public void acquisitionsWaitForEveryResourceTheyNeed() {
+    ListeningSemaphore semaphore = new ListeningSemaphore(
+        ResourceAmounts.of(4, 1000, 1),
+        ListeningSemaphore.Cap.HARD,
+        ListeningSemaphore.Fairness.FAST);
+
+    // Plenty of CPU is left after this, but not enough memory for a second one.
+    ResourceAmounts memoryHungry = ResourceAmounts.of(1, 800, 0);
+    AtomicBoolean first = acquire(semaphore, memoryHungry);
+    AtomicBoolean second = acquire(semaphore, memoryHungry);
+    assertTrue(first.get());
+    assertFalse(second.get());
+
+    // IO-bound work doesn't need the memory, so isn't held up by it.
+    ResourceAmounts ioBound = ResourceAmounts.of(1, 0, 1);
+    AtomicBoolean third = acquire(semaphore, ioBound);
+    AtomicBoolean fourth = acquire(semaphore, ioBound);
+    assertTrue(third.get());
+    assertFalse(fourth.get());
+    assertThat(semaphore.availablePermits(), Matchers.equalTo(2));
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(2));
+
+    semaphore.release(memoryHungry);
+    assertTrue(second.get());
+    assertFalse(fourth.get());
+
+    semaphore.release(ioBound);
+    assertTrue(fourth.get());
+    assertThat(semaphore.getQueueLength(), Matchers.equalTo(0));
+
+    // Waiting is only charged to the resources which were short.
+    assertThat(semaphore.getQueueTimeMillis().get(ResourceType.CPU), Matchers.equalTo(0L));
+  }
+
+  @Test
+  public void softCapAppliesToEachResource() {
+    ListeningSemaphore semaphore = new ListeningSemaphore(
+        ResourceAmounts.of(2, 100, 1),
+        ListeningSemaphore.Cap.SOFT,
+        ListeningSemaphore.Fairness.FAIR);
+
+    // Asking for more memory than there is works as long as no memory is in use.
+    AtomicBoolean first = acquire(semaphore, ResourceAmounts.of(1, 500, 0));
+    AtomicBoolean second = acquire(semaphore, ResourceAmounts.of(1, 1, 0));
+    assertTrue(first.get());
+    assertFalse(second.get());
+
+    semaphore.release(ResourceAmounts.of(1, 500, 0));
+    assertTrue(second.get());
+  }
+
+  private AtomicBoolean acquire(ListeningSemaphore semaphore, ResourceAmounts amounts) {
+    return whenAcquired(semaphore.acquire(amounts, ListeningSemaphore.DEFAULT_PRIORITY));
+  }
+
   private AtomicBoolean acquire(ListeningSemaphore semaphore, int permits) {
+    return acquire(semaphore, permits, ListeningSemaphore.DEFAULT_PRIORITY);
+  }
+
+  private AtomicBoolean acquire(ListeningSemaphore semaphore, int permits, long priority) {
+    return whenAcquired(semaphore.acquire(permits, priority));
+  }
+
+  private AtomicBoolean whenAcquired(ListenableFuture<Void> acquisition) {
     final AtomicBoolean bool = new AtomicBoolean(false);
     Futures.transform(
-        semaphore.acquire(permits),
+        acquisition,
         new Function<Void, Object>() {
           @Override
           public Object apply(Void input) {
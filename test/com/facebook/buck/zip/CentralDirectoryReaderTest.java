@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+public class CentralDirectoryReaderTest {
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void readsTheEntriesOfAZipWithAComment() throws IOException {
+    Path zip = tmp.getRoot().resolve("test.zip");
+    byte[] contents = "Some contents, some contents, some contents".getBytes(UTF_8);
+    try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip))) {
+      out.putNextEntry(new ZipEntry("dir/"));
+      out.closeEntry();
+      out.putNextEntry(new ZipEntry("dir/deflated.txt"));
+      out.write(contents);
+      out.closeEntry();
+      out.setComment("A comment which follows the end of the central directory");
+    }
+
+    ImmutableMap<String, CentralDirectoryReader.Entry> entries = CentralDirectoryReader.read(zip);
+
+    assertEquals(ImmutableList.of("dir/", "dir/deflated.txt"), entries.keySet().asList());
+    assertTrue(entries.get("dir/").isDirectory());
+    CentralDirectoryReader.Entry entry = entries.get("dir/deflated.txt");
+    assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+    assertEquals(Hashing.crc32().hashBytes(contents).padToLong(), entry.getCrc());
+    assertEquals(contents.length, entry.getSize());
+  }
+
+  @Test(expected = ZipException.class)
+  public void rejectsFilesWhichAreNotZips() throws IOException {
+    Path notZip = tmp.getRoot().resolve("not.zip");
+    Files.write(notZip, "This is not a zip file, though it is long enough".getBytes(UTF_8));
+    CentralDirectoryReader.read(notZip);
+  }
+}
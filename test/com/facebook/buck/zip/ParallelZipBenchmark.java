@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Param;
+import com.google.caliper.api.Macrobenchmark;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures how quickly an archive shaped like a large APK (a few big dex files and many small
+ * resources) is compressed, sequentially and with the entries compressed in parallel on
+ * {@code threadCount} threads.
+ */
+public class ParallelZipBenchmark {
+
+  @Param({"0", "1", "2", "4", "8"})
+  private int threadCount = 2;
+
+  @Param({"64"})
+  private int sizeInMegabytes = 4;
+
+  private byte[][] contents;
+  private ListeningExecutorService executor;
+
+  @Before
+  public void setUpTest() {
+    setUpBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() {
+    // Half the data is in four "dex files", the rest in 4KB "resources".  Only a few distinct bytes
+    // are used, so the data compresses about as well as real class files.
+    long total = sizeInMegabytes * 1024L * 1024L;
+    int resourceCount = (int) (total / 2 / 4096);
+    contents = new byte[4 + resourceCount][];
+    Random random = new Random(0);
+    for (int i = 0; i < contents.length; i++) {
+      contents[i] = new byte[i < 4 ? (int) (total / 8) : 4096];
+      for (int j = 0; j < contents[i].length; j++) {
+        contents[i][j] = (byte) random.nextInt(16);
+      }
+    }
+    executor = MoreExecutors.listeningDecorator(
+        Executors.newFixedThreadPool(Math.max(threadCount, 1)));
+  }
+
+  @After
+  @AfterExperiment
+  public void cleanup() {
+    executor.shutdown();
+  }
+
+  @Test
+  public void writeArchiveCorrectness() throws IOException {
+    writeArchive();
+  }
+
+  /**
+   * A {@code threadCount} of 0 writes the archive with the sequential stream, for comparison.
+   */
+  @Macrobenchmark
+  public void writeArchive() throws IOException {
+    CustomZipOutputStream out = threadCount == 0 ?
+        ZipOutputStreams.newOutputStream(ByteStreams.nullOutputStream()) :
+        ZipOutputStreams.newParallelOutputStream(
+            ByteStreams.nullOutputStream(),
+            ZipOutputStreams.HandleDuplicates.THROW_EXCEPTION,
+            executor,
+            threadCount);
+    try {
+      for (int i = 0; i < contents.length; i++) {
+        CustomZipEntry entry = new CustomZipEntry("entry" + i);
+        entry.setFakeTime();
+        entry.setCompressionLevel(ZipCompressionLevel.MAX_COMPRESSION_LEVEL.getValue());
+        out.putNextEntry(entry);
+        out.write(contents[i]);
+        out.closeEntry();
+      }
+    } finally {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+public class ParallelZipOutputStreamTest {
+
+  private ListeningExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void writesTheSameArchiveAsTheSequentialStream() throws IOException {
+    ByteArrayOutputStream sequential = new ByteArrayOutputStream();
+    writeEntries(
+        ZipOutputStreams.newOutputStream(
+            sequential,
+            ZipOutputStreams.HandleDuplicates.THROW_EXCEPTION));
+
+    ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+    writeEntries(
+        ZipOutputStreams.newParallelOutputStream(
+            parallel,
+            ZipOutputStreams.HandleDuplicates.THROW_EXCEPTION,
+            executor,
+            /* parallelism */ 2));
+
+    assertArrayEquals(sequential.toByteArray(), parallel.toByteArray());
+
+    try (ZipInputStream in =
+             new ZipInputStream(new ByteArrayInputStream(parallel.toByteArray()))) {
+      for (int i = 0; i < 10; i++) {
+        ZipEntry entry = in.getNextEntry();
+        assertEquals("entry" + i, entry.getName());
+        assertEquals(contentsOf(i), new String(ByteStreams.toByteArray(in), UTF_8));
+      }
+    }
+  }
+
+  @Test(expected = ZipException.class)
+  public void duplicateEntriesAreRejected() throws IOException {
+    try (CustomZipOutputStream out =
+             ZipOutputStreams.newParallelOutputStream(
+                 new ByteArrayOutputStream(),
+                 ZipOutputStreams.HandleDuplicates.THROW_EXCEPTION,
+                 executor,
+                 /* parallelism */ 2)) {
+      out.putNextEntry(new ZipEntry("entry"));
+      out.putNextEntry(new ZipEntry("entry"));
+    }
+  }
+
+  private void writeEntries(CustomZipOutputStream out) throws IOException {
+    try {
+      for (int i = 0; i < 10; i++) {
+        CustomZipEntry entry = new CustomZipEntry("entry" + i);
+        entry.setFakeTime();
+        // Mix compression levels, including stored entries, to check they stay in order.
+        entry.setCompressionLevel(i % 3 == 0 ? Deflater.NO_COMPRESSION : i % 10);
+        byte[] bytes = contentsOf(i).getBytes(UTF_8);
+        if (entry.getMethod() == ZipEntry.STORED) {
+          entry.setSize(bytes.length);
+          entry.setCompressedSize(bytes.length);
+          entry.setCrc(Hashing.crc32().hashBytes(bytes).padToLong());
+        }
+        out.putNextEntry(entry);
+        out.write(bytes);
+        out.closeEntry();
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  private static String contentsOf(int i) {
+    StringBuilder builder = new StringBuilder();
+    for (int j = 0; j < 1000 * (i + 1); j++) {
+      builder.append("line ").append(j % (i + 7)).append('\n');
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.zip;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class PreviousZipEntriesTest {
+
+  private static final byte[] PREAMBLE = "#!/usr/bin/env python2.7\n".getBytes(UTF_8);
+
+  @Rule
+  public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ListeningExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(4));
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void archivesAreTheSameWhetherOrNotEntriesAreReused() throws IOException {
+    Path previous = tmp.getRoot().resolve("previous.pex");
+    writeArchive(
+        previous,
+        ImmutableMap.of("a.py", contentsOf(1), "b.py", contentsOf(2), "c.so", contentsOf(3)),
+        PreviousZipEntries.empty());
+
+    // One entry is unchanged, one has changed and one has moved.
+    ImmutableMap<String, String> contents =
+        ImmutableMap.of("a.py", contentsOf(1), "b.py", contentsOf(4), "d.so", contentsOf(3));
+    Path reusing = tmp.getRoot().resolve("reusing.pex");
+    writeArchive(reusing, contents, PreviousZipEntries.read(previous));
+    Path fresh = tmp.getRoot().resolve("fresh.pex");
+    writeArchive(fresh, contents, PreviousZipEntries.empty());
+
+    assertArrayEquals(Files.readAllBytes(fresh), Files.readAllBytes(reusing));
+    try (ZipFile zip = new ZipFile(reusing.toFile())) {
+      for (Map.Entry<String, String> entry : contents.entrySet()) {
+        try (InputStream in = zip.getInputStream(zip.getEntry(entry.getKey()))) {
+          assertEquals(entry.getValue(), new String(ByteStreams.toByteArray(in), UTF_8));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void onlyEntriesWithTheSameContentsAreReused() throws IOException {
+    Path previous = tmp.getRoot().resolve("previous.pex");
+    writeArchive(previous, ImmutableMap.of("a.py", contentsOf(1)), PreviousZipEntries.empty());
+
+    PreviousZipEntries entries = PreviousZipEntries.read(previous);
+    assertTrue(getDeflatedBytes(entries, contentsOf(1)).isPresent());
+    assertFalse(getDeflatedBytes(entries, contentsOf(2)).isPresent());
+  }
+
+  @Test
+  public void entriesWithRealTimesAreNotReused() throws IOException {
+    Path previous = tmp.getRoot().resolve("previous.zip");
+    try (CustomZipOutputStream out = ZipOutputStreams.newOutputStream(previous)) {
+      ZipEntry entry = new ZipEntry("a.py");
+      entry.setTime(System.currentTimeMillis());
+      out.putNextEntry(entry);
+      out.write(contentsOf(1).getBytes(UTF_8));
+      out.closeEntry();
+    }
+
+    assertFalse(
+        getDeflatedBytes(PreviousZipEntries.read(previous), contentsOf(1)).isPresent());
+  }
+
+  private void writeArchive(
+      Path path,
+      ImmutableMap<String, String> contents,
+      PreviousZipEntries previousEntries) throws IOException {
+    try (OutputStream file = Files.newOutputStream(path);
+         CustomZipOutputStream out =
+             ZipOutputStreams.newIncrementalOutputStream(
+                 file,
+                 PREAMBLE,
+                 previousEntries,
+                 executor,
+                 /* parallelism */ 2)) {
+      for (Map.Entry<String, String> entry : contents.entrySet()) {
+        out.putNextEntry(new CustomZipEntry(entry.getKey()));
+        out.write(entry.getValue().getBytes(UTF_8));
+        out.closeEntry();
+      }
+    }
+  }
+
+  private static Optional<byte[]> getDeflatedBytes(
+      PreviousZipEntries entries,
+      String contents) {
+    byte[] bytes = contents.getBytes(UTF_8);
+    return entries.getDeflatedBytes(bytes, Hashing.crc32().hashBytes(bytes).padToLong());
+  }
+
+  private static String contentsOf(int i) {
+    StringBuilder builder = new StringBuilder();
+    for (int j = 0; j < 1000 * i; j++) {
+      builder.append("line ").append(j % (i + 7)).append('\n');
+    }
+    return builder.toString();
+  }
+}
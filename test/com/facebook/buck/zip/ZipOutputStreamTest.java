@@ -208,6 +208,29 @@ public class ZipOutputStreamTest {
       }
     }
 
+    @Test
+    public void deterministicArchivesIgnoreTheTimestampOfEntries() throws IOException {
+      Path other = Files.createTempFile("other", ".zip");
+      Calendar cal = Calendar.getInstance();
+      cal.set(1999, SEPTEMBER, 10);
+      writeDeterministically(output, cal.getTimeInMillis());
+      writeDeterministically(other, System.currentTimeMillis());
+
+      assertArrayEquals(Files.readAllBytes(output), Files.readAllBytes(other));
+      try (ZipInputStream in = new ZipInputStream(Files.newInputStream(output))) {
+        assertEquals(ZipConstants.getFakeTime() / 1000, in.getNextEntry().getTime() / 1000);
+      }
+    }
+
+    private void writeDeterministically(Path zip, long time) throws IOException {
+      try (CustomZipOutputStream out = ZipOutputStreams.newDeterministicOutputStream(zip, mode)) {
+        ZipEntry entry = new ZipEntry("entry");
+        entry.setTime(time);
+        out.putNextEntry(entry);
+        out.write("cheese".getBytes(UTF_8));
+      }
+    }
+
     private long getTimeRoundedToSeconds(Date date) {
       long time = date.getTime();
 